@@ -0,0 +1,123 @@
+/*
+ * IJ BAR: https://github.com/tferr/Scripts
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation
+ * (http://www.gnu.org/licenses/gpl.txt).
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ */
+package bar;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import net.imagej.ops.AbstractOp;
+
+import org.scijava.plugin.Parameter;
+import org.scijava.thread.ThreadService;
+
+/**
+ * Base class for BAR ops processing arrays (or images) element-wise. Array
+ * variants of an op are matched once per call (rather than once per element)
+ * and process their inputs in a tight loop, split into contiguous chunks that
+ * run in parallel. New array ops should extend this class, implement the
+ * interface of the op in the {@link BAR} namespace and call
+ * {@link #forEachChunk(long, Chunk)} from {@link #run()}, e.g.:
+ *
+ * <pre>
+ * &#64;Override
+ * public void run() {
+ * 	result = new long[a.length];
+ * 	forEachChunk(a.length, new Chunk() {
+ * 		&#64;Override
+ * 		public void execute(final long start, final long end) {
+ * 			for (int i = (int) start; i &lt; end; i++)
+ * 				result[i] = f(a[i]);
+ * 		}
+ * 	});
+ * }
+ * </pre>
+ *
+ * @see LongArrayGCD
+ */
+public abstract class AbstractChunkedOp extends AbstractOp {
+
+	/** Inputs with fewer elements than this are processed in a single chunk */
+	public static final int MIN_CHUNK_SIZE = 1 << 14;
+
+	@Parameter
+	private ThreadService threadService;
+
+	/** A range of elements processed by a single thread */
+	protected interface Chunk {
+
+		/**
+		 * @param start
+		 *            the index of the first element (inclusive)
+		 * @param end
+		 *            the index of the last element (exclusive)
+		 */
+		void execute(long start, long end);
+	}
+
+	/**
+	 * Processes {@code size} elements in parallel chunks, returning once all
+	 * chunks have been processed.
+	 *
+	 * @param size
+	 *            the number of elements
+	 * @param chunk
+	 *            the code processing a chunk
+	 * @throws RuntimeException
+	 *             if any chunk failed, or if the calling thread was
+	 *             interrupted
+	 */
+	protected void forEachChunk(final long size, final Chunk chunk) {
+		final int nThreads = Runtime.getRuntime().availableProcessors();
+		final long nChunks = Math.min(4L * nThreads, (size + MIN_CHUNK_SIZE - 1) / MIN_CHUNK_SIZE);
+		if (nChunks <= 1 || threadService == null) {
+			chunk.execute(0, size);
+			return;
+		}
+		final List<Future<?>> futures = new ArrayList<>();
+		for (long i = 1; i < nChunks; i++) {
+			final long start = size * i / nChunks;
+			final long end = size * (i + 1) / nChunks;
+			futures.add(threadService.getExecutorService().submit(new Callable<Void>() {
+				@Override
+				public Void call() {
+					chunk.execute(start, end);
+					return null;
+				}
+			}));
+		}
+		chunk.execute(0, size / nChunks); // the calling thread takes the first chunk
+		try {
+			for (final Future<?> future : futures)
+				future.get();
+		} catch (final InterruptedException exc) {
+			for (final Future<?> future : futures)
+				future.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted", exc);
+		} catch (final ExecutionException exc) {
+			if (exc.getCause() instanceof RuntimeException)
+				throw (RuntimeException) exc.getCause();
+			throw new IllegalStateException(exc.getCause());
+		}
+	}
+
+	/**
+	 * Throws an {@link IllegalArgumentException} if inputs differ in length.
+	 */
+	protected static void checkLengths(final long length1, final long length2) {
+		if (length1 != length2)
+			throw new IllegalArgumentException("Inputs differ in size: " + length1 + " vs " + length2);
+	}
+
+}
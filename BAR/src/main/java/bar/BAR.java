@@ -4,6 +4,10 @@ import net.imagej.ops.AbstractNamespace;
 import net.imagej.ops.Namespace;
 import net.imagej.ops.Op;
 import net.imagej.ops.OpMethod;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.Img;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.real.DoubleType;
 
 import org.scijava.plugin.Parameter;
 import org.scijava.plugin.Plugin;
@@ -54,4 +58,26 @@ public class BAR extends AbstractNamespace {
 	public double gcd(final double a, final double b) {
 		return (Double) ops().run(bar.BAR.GCD.class, a, b);
 	}
+
+	// Array variants are matched once and loop over all elements in parallel
+	// chunks (see AbstractChunkedOp). Use these instead of calling the scalar
+	// methods in a loop
+
+	@OpMethod(op = bar.LongArrayGCD.class)
+	public long[] gcd(final long[] a, final long[] b) {
+		return (long[]) ops().run(bar.LongArrayGCD.class, a, b);
+	}
+
+	@OpMethod(op = bar.DoubleArrayGCD.class)
+	public double[] gcd(final double[] a, final double[] b) {
+		return (double[]) ops().run(bar.DoubleArrayGCD.class, a, b);
+	}
+
+	@OpMethod(op = bar.RealImageGCD.class)
+	public <T extends RealType<T>, U extends RealType<U>> Img<DoubleType> gcd(final RandomAccessibleInterval<T> a,
+			final RandomAccessibleInterval<U> b) {
+		@SuppressWarnings("unchecked")
+		final Img<DoubleType> result = (Img<DoubleType>) ops().run(bar.RealImageGCD.class, a, b);
+		return result;
+	}
 }
@@ -1,8 +1,12 @@
 
 package bar;
 
+import org.scijava.event.EventHandler;
+import org.scijava.module.Module;
+import org.scijava.module.event.ModuleStartedEvent;
 import org.scijava.plugin.Parameter;
 import org.scijava.plugin.Plugin;
+import org.scijava.script.ScriptModule;
 import org.scijava.script.ScriptService;
 import org.scijava.service.AbstractService;
 import org.scijava.service.Service;
@@ -23,5 +27,40 @@ public class BARService extends AbstractService implements ImageJService {
 		// instead of
 		// @bar.BAR
 		scriptService.addAlias(bar.BAR.class);
+
+		// Start tracking windows holding tables
+		TableRegistry.getInstance();
+
+		// Index BAR resources so that scripts are found without classpath scans
+		ResourceIndex.build();
+
+		// Initialize script engines in the background, unless disabled by the user
+		EngineWarmer.start(scriptService);
+	}
+
+	/**
+	 * Records the language of every script that is run, regardless of how it
+	 * was launched (menus, Commander, {@link Runner}, etc.), so that
+	 * {@link EngineWarmer} can restrict warm-up to the languages in use.
+	 */
+	@EventHandler
+	protected void onEvent(final ModuleStartedEvent evt) {
+		final Module module = evt.getModule();
+		if (module instanceof ScriptModule)
+			EngineWarmer.recordUse(((ScriptModule) module).getInfo().getPath());
+	}
+
+	/**
+	 * @return the registry of open windows holding tabular data
+	 */
+	public TableRegistry getTableRegistry() {
+		return TableRegistry.getInstance();
+	}
+
+	/**
+	 * @return the execution metrics of scripts run through {@link Runner}
+	 */
+	public ScriptMetrics getScriptMetrics() {
+		return ScriptMetrics.getInstance();
 	}
 }
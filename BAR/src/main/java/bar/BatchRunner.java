@@ -0,0 +1,509 @@
+/*
+ * IJ BAR: https://github.com/tferr/Scripts
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation
+ * (http://www.gnu.org/licenses/gpl.txt).
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ */
+package bar;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+
+import org.scijava.script.ScriptModule;
+
+import ij.measure.ResultsTable;
+
+/**
+ * Runs a BAR script over many inputs. Each item of the batch is a map of
+ * script inputs (see {@link Runner#runScriptAsync(String, Map)}). Items are run
+ * concurrently on a bounded number of workers, except for IJ1 macros, which
+ * are not thread-safe and are run one at a time. Inputs are only consumed
+ * from their iterator once a worker is free, so that lazily generated inputs
+ * (e.g., a listing of thousands of images) are never held in memory at once.
+ * <p>
+ * The outcome of each item (outputs, run time and failure, if any) is sent to
+ * a {@link Sink} as soon as the item completes. Completed items can be
+ * recorded in a checkpoint file, so that an interrupted batch resumes where
+ * it stopped when run again with the same inputs (in the same order). E.g., in
+ * Python:
+ *
+ * <pre>
+ * from bar import BatchRunner, Runner
+ * batch = BatchRunner(Runner(True))
+ * batch.setSink(BatchRunner.CsvSink(File("/path/to/results.csv")))
+ * batch.setCheckpoint(File("/path/to/checkpoint.txt"))
+ * batch.run("scripts/BAR/Segmentation/LoG-DoG_Spot_Counter.py", inputs.iterator())
+ * </pre>
+ */
+public class BatchRunner {
+
+	private final Runner runner;
+	private int nThreads = Runtime.getRuntime().availableProcessors();
+	private long timeout;
+	private Sink sink;
+	private File checkpoint;
+	private volatile boolean cancelled;
+	private final Set<CompletableFuture<ScriptModule>> running = Collections
+			.synchronizedSet(new HashSet<CompletableFuture<ScriptModule>>());
+	private final AtomicInteger succeeded = new AtomicInteger();
+	private final AtomicInteger failed = new AtomicInteger();
+	private final AtomicReference<Exception> storeError = new AtomicReference<>();
+	private int skipped;
+
+	/**
+	 * @param runner
+	 *            the runner executing scripts
+	 */
+	public BatchRunner(final Runner runner) {
+		this.runner = runner;
+	}
+
+	/**
+	 * @param nThreads
+	 *            the maximum number of items running at once. Ignored for IJ1
+	 *            macros
+	 */
+	public void setThreads(final int nThreads) {
+		this.nThreads = Math.max(1, nThreads);
+	}
+
+	/**
+	 * @param timeout
+	 *            the maximum run time of each item, in milliseconds. Items
+	 *            exceeding it are cancelled and reported as failures. No
+	 *            timeout is applied if zero or negative
+	 */
+	public void setTimeout(final long timeout) {
+		this.timeout = timeout;
+	}
+
+	/**
+	 * @param sink
+	 *            the sink receiving the result of each item
+	 */
+	public void setSink(final Sink sink) {
+		this.sink = sink;
+	}
+
+	/**
+	 * @param checkpoint
+	 *            the file recording the indices of completed items. Items
+	 *            listed in an existing file are skipped
+	 */
+	public void setCheckpoint(final File checkpoint) {
+		this.checkpoint = checkpoint;
+	}
+
+	/**
+	 * Stops submitting new items and cancels the running ones.
+	 */
+	public void cancel() {
+		cancelled = true;
+		synchronized (running) {
+			for (final CompletableFuture<ScriptModule> future : running)
+				future.cancel(true);
+		}
+	}
+
+	/**
+	 * Runs the script over all inputs, waiting for all items to complete.
+	 *
+	 * @param path
+	 *            the path of the BAR script to be executed, e.g,
+	 *            {@code scripts/BAR/Segmentation/Threshold_From_Background.ijm}
+	 * @param inputs
+	 *            the inputs of each item, in a reproducible order
+	 * @throws IOException
+	 *             if the checkpoint file could not be read or written, or if
+	 *             the result of any item could not be stored by the sink. In
+	 *             the latter case, the exception is thrown once all items have
+	 *             completed and such items are counted as failed
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for items to complete
+	 */
+	public void run(final String path, final Iterator<Map<String, Object>> inputs)
+			throws IOException, InterruptedException {
+		cancelled = false;
+		succeeded.set(0);
+		failed.set(0);
+		skipped = 0;
+		storeError.set(null);
+		final Set<Integer> done = readCheckpoint();
+		final int permits = (path.toLowerCase().endsWith(".ijm")) ? 1 : nThreads;
+		final Semaphore workers = new Semaphore(permits);
+		final Writer checkpointWriter = (checkpoint == null) ? null
+				: new BufferedWriter(new OutputStreamWriter(new FileOutputStream(checkpoint, true),
+						StandardCharsets.UTF_8));
+		try {
+			int index = -1;
+			while (!cancelled && inputs.hasNext()) {
+				final Map<String, Object> input = inputs.next();
+				index++;
+				if (done.contains(index)) {
+					skipped++;
+					continue;
+				}
+				workers.acquire(); // backpressure: wait for a free worker
+				if (cancelled) {
+					workers.release();
+					break;
+				}
+				submit(path, index, input, workers, checkpointWriter);
+			}
+			workers.acquire(permits); // wait for running items
+			workers.release(permits);
+		} finally {
+			if (checkpointWriter != null)
+				checkpointWriter.close();
+			if (sink != null)
+				sink.close();
+		}
+		final Exception error = storeError.get();
+		if (error != null)
+			throw new IOException("Could not store results: " + error.getMessage(), error);
+	}
+
+	private void submit(final String path, final int index, final Map<String, Object> input,
+			final Semaphore workers, final Writer checkpointWriter) {
+		final long start = System.nanoTime();
+		final CompletableFuture<ScriptModule> future = (timeout > 0)
+				? runner.runScriptAsync(path, input, timeout, TimeUnit.MILLISECONDS)
+				: runner.runScriptAsync(path, input);
+		running.add(future);
+		future.whenComplete(new BiConsumer<ScriptModule, Throwable>() {
+			@Override
+			public void accept(final ScriptModule module, final Throwable exc) {
+				final Result result = new Result(index, input, (System.nanoTime() - start) / 1e6);
+				try {
+					if (exc == null) {
+						result.status = "done";
+						if (module != null)
+							result.outputs.putAll(module.getOutputs());
+					} else {
+						final Throwable cause = (exc instanceof CompletionException && exc.getCause() != null)
+								? exc.getCause() : exc;
+						result.status = (cause instanceof TimeoutException) ? "timeout"
+								: (cause instanceof CancellationException) ? "canceled" : "exception";
+						result.error = String.valueOf(cause.getMessage());
+					}
+					if (sink != null)
+						sink.accept(result);
+					if (checkpointWriter != null && exc == null) {
+						synchronized (checkpointWriter) {
+							checkpointWriter.write(index + "\n");
+							checkpointWriter.flush();
+						}
+					}
+					if (exc == null)
+						succeeded.incrementAndGet();
+					else
+						failed.incrementAndGet();
+				} catch (final IOException | RuntimeException storeExc) {
+					// the result is lost: the item counts as failed and is not
+					// checkpointed, so that it is run again on resume
+					result.status = "exception";
+					result.error = "Could not store result: " + storeExc.getMessage();
+					failed.incrementAndGet();
+					storeError.compareAndSet(null, storeExc);
+				} finally {
+					running.remove(future);
+					workers.release();
+				}
+			}
+		});
+	}
+
+	private Set<Integer> readCheckpoint() throws IOException {
+		final Set<Integer> done = new HashSet<>();
+		if (checkpoint == null || !checkpoint.isFile())
+			return done;
+		try (BufferedReader reader = Files.newBufferedReader(checkpoint.toPath(), StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				try {
+					done.add(Integer.parseInt(line.trim()));
+				} catch (final NumberFormatException ignored) {
+					// e.g., a line truncated by an interrupted write
+				}
+			}
+		}
+		return done;
+	}
+
+	/** @return the number of items that completed successfully in the last run */
+	public int getSucceededCount() {
+		return succeeded.get();
+	}
+
+	/** @return the number of items that failed in the last run */
+	public int getFailedCount() {
+		return failed.get();
+	}
+
+	/** @return the number of items skipped because of the checkpoint */
+	public int getSkippedCount() {
+		return skipped;
+	}
+
+	/** The outcome of a single batch item */
+	public static class Result {
+
+		private final int index;
+		private final Map<String, Object> inputs;
+		private final Map<String, Object> outputs = new LinkedHashMap<>();
+		private final double time;
+		private String status;
+		private String error;
+
+		private Result(final int index, final Map<String, Object> inputs, final double time) {
+			this.index = index;
+			this.inputs = inputs;
+			this.time = time;
+		}
+
+		/** @return the 0-based index of the item in the batch */
+		public int getIndex() {
+			return index;
+		}
+
+		/** @return the script inputs of the item */
+		public Map<String, Object> getInputs() {
+			return inputs;
+		}
+
+		/** @return the script outputs (empty if the item failed) */
+		public Map<String, Object> getOutputs() {
+			return outputs;
+		}
+
+		/** @return the run time, in milliseconds */
+		public double getTime() {
+			return time;
+		}
+
+		/** @return the exit status: done, exception, timeout or canceled */
+		public String getStatus() {
+			return status;
+		}
+
+		/** @return the failure message or {@code null} if item succeeded */
+		public String getError() {
+			return error;
+		}
+	}
+
+	/**
+	 * Receives the results of batch items as they complete. Results may be
+	 * delivered from several threads and in any order.
+	 */
+	public interface Sink {
+
+		/**
+		 * @param result
+		 *            the result of a completed item
+		 * @throws IOException
+		 *             if result could not be stored
+		 */
+		void accept(Result result) throws IOException;
+
+		/**
+		 * Called once all items have completed.
+		 *
+		 * @throws IOException
+		 *             if sink could not be closed
+		 */
+		void close() throws IOException;
+	}
+
+	/** Stores results as rows of a {@link ResultsTable} */
+	public static class ResultsTableSink implements Sink {
+
+		private final ResultsTable rt;
+
+		/**
+		 * @param rt
+		 *            the table to which rows are appended
+		 */
+		public ResultsTableSink(final ResultsTable rt) {
+			this.rt = rt;
+		}
+
+		@Override
+		public synchronized void accept(final Result result) {
+			rt.incrementCounter();
+			rt.addValue("Item", result.getIndex());
+			rt.addValue("Status", result.getStatus());
+			rt.addValue("Time (ms)", result.getTime());
+			rt.addValue("Error", (result.getError() == null) ? "" : result.getError());
+			for (final Map.Entry<String, Object> output : result.getOutputs().entrySet()) {
+				final Object value = output.getValue();
+				if (value instanceof Number)
+					rt.addValue(output.getKey(), ((Number) value).doubleValue());
+				else
+					rt.addValue(output.getKey(), String.valueOf(value));
+			}
+		}
+
+		@Override
+		public void close() {
+			// nothing to release
+		}
+	}
+
+	/**
+	 * Appends results to a CSV file, one line per item, flushing each line so
+	 * that results of interrupted batches are kept. Output columns are those
+	 * of the first result (or of the header of an existing file, when
+	 * resuming). Outputs not seen before are added as new columns: the header
+	 * is rewritten, and cells of the new columns are left empty in previous
+	 * lines (lines are not padded, as trailing fields may be omitted in CSV).
+	 */
+	public static class CsvSink implements Sink {
+
+		private static final String[] FIXED_COLUMNS = { "Item", "Status", "Time (ms)", "Error" };
+
+		private final File file;
+		private Writer writer;
+		private String[] outputColumns;
+		private final HashSet<String> knownColumns = new HashSet<>();
+
+		/**
+		 * @param file
+		 *            the CSV file. Results are appended if file exists
+		 */
+		public CsvSink(final File file) {
+			this.file = file;
+		}
+
+		@Override
+		public synchronized void accept(final Result result) throws IOException {
+			if (writer == null)
+				open(result);
+			addColumns(result);
+			final StringBuilder sb = new StringBuilder();
+			sb.append(result.getIndex()).append(',').append(result.getStatus()).append(',')
+					.append(result.getTime()).append(',').append(quote(result.getError()));
+			for (final String column : outputColumns) {
+				final Object value = result.getOutputs().get(column);
+				sb.append(',').append((value == null) ? "" : quote(String.valueOf(value)));
+			}
+			writer.write(sb.append('\n').toString());
+			writer.flush();
+		}
+
+		private void open(final Result first) throws IOException {
+			if (file.isFile() && file.length() > 0) {
+				try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+					final String[] header = TableReader.splitLine(reader.readLine(), ',');
+					outputColumns = Arrays.copyOfRange(header, Math.min(header.length, FIXED_COLUMNS.length),
+							header.length);
+				}
+				knownColumns.addAll(Arrays.asList(outputColumns));
+				writer = newWriter(true);
+				return;
+			}
+			final ArrayList<String> columns = new ArrayList<>(first.getOutputs().keySet());
+			outputColumns = columns.toArray(new String[columns.size()]);
+			knownColumns.addAll(columns);
+			writer = newWriter(false);
+			writer.write(header(outputColumns));
+		}
+
+		/** Appends columns for outputs not seen before, rewriting the header */
+		private void addColumns(final Result result) throws IOException {
+			final ArrayList<String> columns = new ArrayList<>(Arrays.asList(outputColumns));
+			for (final String key : result.getOutputs().keySet()) {
+				if (knownColumns.add(key))
+					columns.add(key);
+			}
+			if (columns.size() == outputColumns.length)
+				return;
+			outputColumns = columns.toArray(new String[columns.size()]);
+			writer.close();
+			final File temp = File.createTempFile(".bar", ".csv.tmp", file.getAbsoluteFile().getParentFile());
+			try {
+				try (InputStream in = new BufferedInputStream(new FileInputStream(file));
+						OutputStream out = new BufferedOutputStream(new FileOutputStream(temp))) {
+					int b;
+					do { // skip the previous header
+						b = in.read();
+					} while (b >= 0 && b != '\n');
+					out.write(header(outputColumns).getBytes(StandardCharsets.UTF_8));
+					final byte[] buffer = new byte[8192];
+					int n;
+					while ((n = in.read(buffer)) > 0)
+						out.write(buffer, 0, n);
+				}
+				Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			} finally {
+				Files.deleteIfExists(temp.toPath());
+				writer = newWriter(true);
+			}
+		}
+
+		private Writer newWriter(final boolean append) throws IOException {
+			return new BufferedWriter(
+					new OutputStreamWriter(new FileOutputStream(file, append), StandardCharsets.UTF_8));
+		}
+
+		private static String header(final String[] outputColumns) {
+			final StringBuilder sb = new StringBuilder();
+			for (final String column : FIXED_COLUMNS)
+				sb.append(quote(column)).append(',');
+			for (final String column : outputColumns)
+				sb.append(quote(column)).append(',');
+			sb.setLength(sb.length() - 1);
+			return sb.append('\n').toString();
+		}
+
+		private static String quote(final String value) {
+			if (value == null)
+				return "";
+			if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0)
+				return value;
+			return '"' + value.replace("\"", "\"\"") + '"';
+		}
+
+		@Override
+		public synchronized void close() throws IOException {
+			if (writer != null)
+				writer.close();
+			writer = null;
+		}
+	}
+
+}
@@ -0,0 +1,774 @@
+/*
+ * IJ BAR: https://github.com/tferr/Scripts
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation
+ * (http://www.gnu.org/licenses/gpl.txt).
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ */
+package bar;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.function.DoublePredicate;
+
+import ij.measure.ResultsTable;
+
+/**
+ * A lightweight table storing data column-wise in primitive arrays. Numeric
+ * columns are stored as {@code double[]} or {@code int[]}, while text columns
+ * are dictionary-encoded (each distinct string is stored once, and rows hold an
+ * {@code int} code into the dictionary). Column getters return the backing
+ * arrays (no copies are made).
+ * <p>
+ * The class is designed to move heavy loops out of scripts: Rather than
+ * calling {@link ResultsTable#getValue(String, int)} row by row in an
+ * interpreted language, a script can convert a ResultsTable in a single call,
+ * and use the filtering, grouping and aggregation methods, which operate on
+ * whole columns in Java. E.g., in Python:
+ *
+ * <pre>
+ * from bar import ColumnarTable
+ * table = ColumnarTable.fromResultsTable(rt)
+ * rows = table.filterRange("Area", 10, float("inf"))
+ * summary = table.select(rows).summarize("Label", "Mean")
+ * summary.toResultsTable().show("Summary")
+ * </pre>
+ *
+ * @see TableReader
+ */
+public class ColumnarTable {
+
+	/** Column statistics computed by {@link #aggregate(String, Aggregate)} */
+	public enum Aggregate {
+		COUNT, SUM, MEAN, MIN, MAX, SD
+	}
+
+	private final int rowCount;
+	private final ArrayList<String> headings = new ArrayList<>();
+	private final ArrayList<Object> columns = new ArrayList<>();
+
+	/**
+	 * Constructs an empty table.
+	 *
+	 * @param rowCount
+	 *            the number of rows. All columns added to the table must have
+	 *            this length
+	 */
+	public ColumnarTable(final int rowCount) {
+		this.rowCount = rowCount;
+	}
+
+	/**
+	 * Creates a table from a {@link ResultsTable}. Each numeric column is
+	 * retrieved in a single bulk operation. Columns holding text and row labels
+	 * (stored in a column named "Label") are dictionary-encoded.
+	 *
+	 * @param rt
+	 *            the source ResultsTable
+	 * @return the columnar table
+	 */
+	public static ColumnarTable fromResultsTable(final ResultsTable rt) {
+		final int nRows = rt.getCounter();
+		final ColumnarTable table = new ColumnarTable(nRows);
+		if (nRows == 0)
+			return table;
+		if (rt.getLabel(0) != null) {
+			final StringColumnBuilder labels = new StringColumnBuilder(nRows);
+			for (int row = 0; row < nRows; row++)
+				labels.add(rt.getLabel(row));
+			table.addColumn("Label", labels.build());
+		}
+		for (int col = 0; col <= rt.getLastColumn(); col++) {
+			if (!rt.columnExists(col))
+				continue;
+			final String heading = rt.getColumnHeading(col);
+			final double[] values = rt.getColumnAsDoubles(col);
+			if (isTextColumn(rt, col, values)) {
+				final StringColumnBuilder strings = new StringColumnBuilder(nRows);
+				for (int row = 0; row < nRows; row++)
+					strings.add(rt.getStringValue(col, row));
+				table.addColumn(heading, strings.build());
+			} else {
+				table.addColumn(heading, values);
+			}
+		}
+		return table;
+	}
+
+	/** Columns containing only NaNs may hold strings */
+	private static boolean isTextColumn(final ResultsTable rt, final int col, final double[] values) {
+		for (final double v : values) {
+			if (!Double.isNaN(v))
+				return false;
+		}
+		for (int row = 0; row < values.length; row++) {
+			final String value = rt.getStringValue(col, row);
+			if (value != null && !value.isEmpty() && !"NaN".equalsIgnoreCase(value))
+				return true;
+		}
+		return false;
+	}
+
+	/** @return the number of rows in the table */
+	public int getRowCount() {
+		return rowCount;
+	}
+
+	/** @return the number of columns in the table */
+	public int getColumnCount() {
+		return headings.size();
+	}
+
+	/** @return the column headings, in insertion order */
+	public String[] getHeadings() {
+		return headings.toArray(new String[headings.size()]);
+	}
+
+	/**
+	 * @param heading
+	 *            the column heading
+	 * @return the index of the column or {@code -1} if table does not contain
+	 *         the specified column
+	 */
+	public int getColumnIndex(final String heading) {
+		return headings.indexOf(heading);
+	}
+
+	/**
+	 * @param heading
+	 *            the column heading
+	 * @return {@code true} if table contains the specified column and the
+	 *         column holds numeric ({@code double} or {@code int}) data
+	 */
+	public boolean isNumeric(final String heading) {
+		final int idx = getColumnIndex(heading);
+		return idx > -1 && !(columns.get(idx) instanceof StringColumn);
+	}
+
+	/**
+	 * Adds (or replaces) a numeric column.
+	 *
+	 * @param heading
+	 *            the column heading
+	 * @param values
+	 *            the column values. The array is stored without copying
+	 * @throws IllegalArgumentException
+	 *             if array length does not match the number of rows
+	 */
+	public void addColumn(final String heading, final double[] values) {
+		putColumn(heading, values, values.length);
+	}
+
+	/**
+	 * Adds (or replaces) an integer column.
+	 *
+	 * @param heading
+	 *            the column heading
+	 * @param values
+	 *            the column values. The array is stored without copying
+	 * @throws IllegalArgumentException
+	 *             if array length does not match the number of rows
+	 */
+	public void addColumn(final String heading, final int[] values) {
+		putColumn(heading, values, values.length);
+	}
+
+	/**
+	 * Adds (or replaces) a text column.
+	 *
+	 * @param heading
+	 *            the column heading
+	 * @param values
+	 *            the dictionary-encoded values
+	 * @throws IllegalArgumentException
+	 *             if the column length does not match the number of rows
+	 */
+	public void addColumn(final String heading, final StringColumn values) {
+		putColumn(heading, values, values.size());
+	}
+
+	private void putColumn(final String heading, final Object column, final int length) {
+		if (length != rowCount)
+			throw new IllegalArgumentException(
+					"Column '" + heading + "' has " + length + " rows but table has " + rowCount);
+		final int idx = getColumnIndex(heading);
+		if (idx > -1) {
+			columns.set(idx, column);
+		} else {
+			headings.add(heading);
+			columns.add(column);
+		}
+	}
+
+	/**
+	 * Returns the values of a {@code double} column (no copy is made).
+	 *
+	 * @param heading
+	 *            the column heading
+	 * @return the backing array of the column or {@code null} if table does
+	 *         not contain a {@code double} column with the specified heading
+	 * @see #getValues(String)
+	 */
+	public double[] getColumn(final String heading) {
+		final Object column = getObject(heading);
+		return (column instanceof double[]) ? (double[]) column : null;
+	}
+
+	/**
+	 * Returns the values of an {@code int} column (no copy is made).
+	 *
+	 * @param heading
+	 *            the column heading
+	 * @return the backing array of the column or {@code null} if table does
+	 *         not contain an {@code int} column with the specified heading
+	 */
+	public int[] getIntColumn(final String heading) {
+		final Object column = getObject(heading);
+		return (column instanceof int[]) ? (int[]) column : null;
+	}
+
+	/**
+	 * Returns the values of a text column (no copy is made).
+	 *
+	 * @param heading
+	 *            the column heading
+	 * @return the dictionary-encoded column or {@code null} if table does not
+	 *         contain a text column with the specified heading
+	 */
+	public StringColumn getStringColumn(final String heading) {
+		final Object column = getObject(heading);
+		return (column instanceof StringColumn) ? (StringColumn) column : null;
+	}
+
+	/**
+	 * Returns the values of a numeric column as {@code double}s. The backing
+	 * array is returned for {@code double} columns, while {@code int} columns
+	 * are converted.
+	 *
+	 * @param heading
+	 *            the column heading
+	 * @return the column values or {@code null} if table does not contain a
+	 *         numeric column with the specified heading
+	 */
+	public double[] getValues(final String heading) {
+		final Object column = getObject(heading);
+		if (column instanceof double[])
+			return (double[]) column;
+		if (column instanceof int[]) {
+			final int[] ints = (int[]) column;
+			final double[] values = new double[ints.length];
+			for (int i = 0; i < ints.length; i++)
+				values[i] = ints[i];
+			return values;
+		}
+		return null;
+	}
+
+	private Object getObject(final String heading) {
+		final int idx = getColumnIndex(heading);
+		return (idx < 0) ? null : columns.get(idx);
+	}
+
+	private double[] requireValues(final String heading) {
+		final double[] values = getValues(heading);
+		if (values == null)
+			throw new IllegalArgumentException("Not a numeric column: " + heading);
+		return values;
+	}
+
+	private StringColumn requireStrings(final String heading) {
+		final StringColumn values = getStringColumn(heading);
+		if (values == null)
+			throw new IllegalArgumentException("Not a text column: " + heading);
+		return values;
+	}
+
+	// -- Filtering --
+
+	/**
+	 * Retrieves the rows whose values lie within the specified range.
+	 *
+	 * @param heading
+	 *            the heading of a numeric column
+	 * @param min
+	 *            the lower bound (inclusive)
+	 * @param max
+	 *            the upper bound (inclusive)
+	 * @return the indices of matching rows, in ascending order
+	 */
+	public int[] filterRange(final String heading, final double min, final double max) {
+		final double[] values = requireValues(heading);
+		final int[] rows = new int[rowCount];
+		int n = 0;
+		for (int i = 0; i < rowCount; i++) {
+			final double v = values[i];
+			if (v >= min && v <= max)
+				rows[n++] = i;
+		}
+		return Arrays.copyOf(rows, n);
+	}
+
+	/**
+	 * Retrieves the rows holding the specified string.
+	 *
+	 * @param heading
+	 *            the heading of a text column
+	 * @param value
+	 *            the value to be matched
+	 * @return the indices of matching rows, in ascending order
+	 */
+	public int[] filterEquals(final String heading, final String value) {
+		final StringColumn strings = requireStrings(heading);
+		final int code = Arrays.asList(strings.getDictionary()).indexOf(value);
+		if (code < 0)
+			return new int[0];
+		final int[] codes = strings.getCodes();
+		final int[] rows = new int[rowCount];
+		int n = 0;
+		for (int i = 0; i < rowCount; i++) {
+			if (codes[i] == code)
+				rows[n++] = i;
+		}
+		return Arrays.copyOf(rows, n);
+	}
+
+	/**
+	 * Retrieves the rows whose values satisfy the specified predicate.
+	 *
+	 * @param heading
+	 *            the heading of a numeric column
+	 * @param predicate
+	 *            the condition to be met
+	 * @return the indices of matching rows, in ascending order
+	 */
+	public int[] filter(final String heading, final DoublePredicate predicate) {
+		final double[] values = requireValues(heading);
+		final int[] rows = new int[rowCount];
+		int n = 0;
+		for (int i = 0; i < rowCount; i++) {
+			if (predicate.test(values[i]))
+				rows[n++] = i;
+		}
+		return Arrays.copyOf(rows, n);
+	}
+
+	/**
+	 * Creates a new table containing only the specified rows. Dictionaries of
+	 * text columns are shared with this table.
+	 *
+	 * @param rows
+	 *            the indices of the rows to be retained
+	 * @return the new table
+	 */
+	public ColumnarTable select(final int[] rows) {
+		final ColumnarTable table = new ColumnarTable(rows.length);
+		for (int c = 0; c < headings.size(); c++) {
+			final Object column = columns.get(c);
+			if (column instanceof double[]) {
+				final double[] src = (double[]) column;
+				final double[] dst = new double[rows.length];
+				for (int i = 0; i < rows.length; i++)
+					dst[i] = src[rows[i]];
+				table.addColumn(headings.get(c), dst);
+			} else if (column instanceof int[]) {
+				final int[] src = (int[]) column;
+				final int[] dst = new int[rows.length];
+				for (int i = 0; i < rows.length; i++)
+					dst[i] = src[rows[i]];
+				table.addColumn(headings.get(c), dst);
+			} else {
+				final StringColumn src = (StringColumn) column;
+				final int[] srcCodes = src.getCodes();
+				final int[] dst = new int[rows.length];
+				for (int i = 0; i < rows.length; i++)
+					dst[i] = srcCodes[rows[i]];
+				table.addColumn(headings.get(c), new StringColumn(src.getDictionary(), dst));
+			}
+		}
+		return table;
+	}
+
+	// -- Grouping and aggregation --
+
+	/**
+	 * Groups rows by the distinct values of a column. Text columns are grouped
+	 * by their dictionary codes (in linear time), numeric columns by their
+	 * distinct values (sorted in ascending order).
+	 *
+	 * @param heading
+	 *            the heading of the grouping column
+	 * @return the grouping
+	 */
+	public Grouping groupBy(final String heading) {
+		final StringColumn strings = getStringColumn(heading);
+		final int[] groupIds = new int[rowCount];
+		if (strings != null) {
+			// Renumber codes so that only dictionary entries in use are groups
+			final String[] dictionary = strings.getDictionary();
+			final int[] codes = strings.getCodes();
+			final int[] codeToGroup = new int[dictionary.length];
+			Arrays.fill(codeToGroup, -1);
+			final ArrayList<String> keys = new ArrayList<>();
+			for (int i = 0; i < rowCount; i++) {
+				final int code = codes[i];
+				if (codeToGroup[code] < 0) {
+					codeToGroup[code] = keys.size();
+					keys.add(dictionary[code]);
+				}
+				groupIds[i] = codeToGroup[code];
+			}
+			return new Grouping(heading, keys.toArray(new String[keys.size()]), null, groupIds);
+		}
+		final double[] values = requireValues(heading);
+		final double[] distinct = values.clone();
+		Arrays.sort(distinct);
+		int n = 0;
+		for (int i = 0; i < distinct.length; i++) {
+			if (i == 0 || Double.compare(distinct[i], distinct[n - 1]) != 0)
+				distinct[n++] = distinct[i];
+		}
+		final double[] numericKeys = Arrays.copyOf(distinct, n);
+		final String[] keys = new String[n];
+		for (int g = 0; g < n; g++)
+			keys[g] = format(numericKeys[g]);
+		for (int i = 0; i < rowCount; i++)
+			groupIds[i] = Arrays.binarySearch(numericKeys, values[i]);
+		return new Grouping(heading, keys, numericKeys, groupIds);
+	}
+
+	/**
+	 * Computes a statistic over all the values of a numeric column. NaN values
+	 * are ignored.
+	 *
+	 * @param heading
+	 *            the heading of a numeric column
+	 * @param aggregate
+	 *            the statistic to be computed
+	 * @return the computed statistic
+	 */
+	public double aggregate(final String heading, final Aggregate aggregate) {
+		return aggregate(heading, new Grouping(null, new String[] { "" }, null, new int[rowCount]), aggregate)[0];
+	}
+
+	/**
+	 * Computes a statistic for each group of rows in a single pass over the
+	 * column. NaN values are ignored.
+	 *
+	 * @param heading
+	 *            the heading of a numeric column
+	 * @param grouping
+	 *            the grouping of rows, as returned by {@link #groupBy(String)}
+	 * @param aggregate
+	 *            the statistic to be computed
+	 * @return the computed statistic for each group (NaN for groups without
+	 *         valid values, except for {@link Aggregate#COUNT})
+	 */
+	public double[] aggregate(final String heading, final Grouping grouping, final Aggregate aggregate) {
+		final double[] values = requireValues(heading);
+		final int[] groupIds = grouping.getGroupIds();
+		final int nGroups = grouping.getGroupCount();
+		final double[] count = new double[nGroups];
+		final double[] result = new double[nGroups];
+		switch (aggregate) {
+		case MIN:
+			Arrays.fill(result, Double.POSITIVE_INFINITY);
+			break;
+		case MAX:
+			Arrays.fill(result, Double.NEGATIVE_INFINITY);
+			break;
+		default:
+			break;
+		}
+		final double[] mean = (aggregate == Aggregate.SD) ? new double[nGroups] : null;
+		for (int i = 0; i < rowCount; i++) {
+			final double v = values[i];
+			if (Double.isNaN(v))
+				continue;
+			final int g = groupIds[i];
+			count[g]++;
+			switch (aggregate) {
+			case SUM:
+			case MEAN:
+				result[g] += v;
+				break;
+			case MIN:
+				if (v < result[g])
+					result[g] = v;
+				break;
+			case MAX:
+				if (v > result[g])
+					result[g] = v;
+				break;
+			case SD: // Welford's online algorithm
+				final double delta = v - mean[g];
+				mean[g] += delta / count[g];
+				result[g] += delta * (v - mean[g]);
+				break;
+			default:
+				break;
+			}
+		}
+		for (int g = 0; g < nGroups; g++) {
+			switch (aggregate) {
+			case COUNT:
+				result[g] = count[g];
+				break;
+			case MEAN:
+				result[g] = (count[g] == 0) ? Double.NaN : result[g] / count[g];
+				break;
+			case SD:
+				result[g] = (count[g] < 2) ? Double.NaN : Math.sqrt(result[g] / (count[g] - 1));
+				break;
+			case SUM:
+				break;
+			default: // MIN, MAX
+				if (count[g] == 0)
+					result[g] = Double.NaN;
+				break;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Groups rows by the values of one column and computes descriptive
+	 * statistics of another.
+	 *
+	 * @param groupHeading
+	 *            the heading of the grouping column
+	 * @param valueHeading
+	 *            the heading of the numeric column to be summarized
+	 * @return a table with one row per group, holding the group key and the
+	 *         count, mean, SD, min, max and sum of the values in each group
+	 */
+	public ColumnarTable summarize(final String groupHeading, final String valueHeading) {
+		final Grouping grouping = groupBy(groupHeading);
+		final ColumnarTable summary = new ColumnarTable(grouping.getGroupCount());
+		if (grouping.getNumericKeys() != null) {
+			summary.addColumn(groupHeading, grouping.getNumericKeys());
+		} else {
+			final int[] codes = new int[grouping.getGroupCount()];
+			for (int g = 0; g < codes.length; g++)
+				codes[g] = g;
+			summary.addColumn(groupHeading, new StringColumn(grouping.getKeys(), codes));
+		}
+		for (final Aggregate aggregate : Aggregate.values()) {
+			final String name = (aggregate == Aggregate.SD) ? "StdDev"
+					: aggregate.name().charAt(0) + aggregate.name().substring(1).toLowerCase();
+			summary.addColumn(name, aggregate(valueHeading, grouping, aggregate));
+		}
+		return summary;
+	}
+
+	private static String format(final double value) {
+		if (value == Math.rint(value) && !Double.isInfinite(value) && Math.abs(value) < 1e15)
+			return String.valueOf((long) value);
+		return String.valueOf(value);
+	}
+
+	// -- Conversion --
+
+	/**
+	 * Converts this table into a {@link ResultsTable}. Columns are transferred
+	 * one at a time. A text column named "Label" is used as the row labels
+	 * column of the ResultsTable.
+	 *
+	 * @return the ResultsTable
+	 */
+	public ResultsTable toResultsTable() {
+		final ResultsTable rt = new ResultsTable();
+		for (int row = 0; row < rowCount; row++)
+			rt.incrementCounter();
+		for (int c = 0; c < headings.size(); c++) {
+			final String heading = headings.get(c);
+			final Object column = columns.get(c);
+			if (column instanceof StringColumn) {
+				final StringColumn values = (StringColumn) column;
+				final boolean label = "Label".equals(heading);
+				for (int row = 0; row < rowCount; row++) {
+					if (label)
+						rt.setLabel(values.get(row), row);
+					else
+						rt.setValue(heading, row, values.get(row));
+				}
+			} else {
+				final double[] values = getValues(heading);
+				int col = rt.getFreeColumn(heading);
+				if (col == ResultsTable.COLUMN_IN_USE)
+					col = rt.getColumnIndex(heading);
+				for (int row = 0; row < rowCount; row++)
+					rt.setValue(col, row, values[row]);
+			}
+		}
+		return rt;
+	}
+
+	/**
+	 * A dictionary-encoded column of strings. Each distinct value is stored
+	 * once in the dictionary, and each row holds the index of its value.
+	 */
+	public static class StringColumn {
+
+		private final String[] dictionary;
+		private final int[] codes;
+
+		/**
+		 * @param dictionary
+		 *            the distinct values of the column
+		 * @param codes
+		 *            the dictionary index of each row. Stored without copying
+		 */
+		public StringColumn(final String[] dictionary, final int[] codes) {
+			this.dictionary = dictionary;
+			this.codes = codes;
+		}
+
+		/**
+		 * Dictionary-encodes the specified values.
+		 *
+		 * @param values
+		 *            the column values
+		 * @return the encoded column
+		 */
+		public static StringColumn encode(final String[] values) {
+			final StringColumnBuilder builder = new StringColumnBuilder(values.length);
+			for (final String value : values)
+				builder.add(value);
+			return builder.build();
+		}
+
+		/** @return the number of rows */
+		public int size() {
+			return codes.length;
+		}
+
+		/**
+		 * @param row
+		 *            the row index
+		 * @return the value at the specified row
+		 */
+		public String get(final int row) {
+			return dictionary[codes[row]];
+		}
+
+		/** @return the distinct values of the column (no copy is made) */
+		public String[] getDictionary() {
+			return dictionary;
+		}
+
+		/** @return the dictionary code of each row (no copy is made) */
+		public int[] getCodes() {
+			return codes;
+		}
+	}
+
+	/** Incrementally builds a {@link StringColumn} */
+	static class StringColumnBuilder {
+
+		private final HashMap<String, Integer> map = new HashMap<>();
+		private final ArrayList<String> dictionary = new ArrayList<>();
+		private int[] codes;
+		private int size;
+
+		StringColumnBuilder(final int capacity) {
+			codes = new int[Math.max(capacity, 16)];
+		}
+
+		void add(String value) {
+			if (value == null)
+				value = "";
+			Integer code = map.get(value);
+			if (code == null) {
+				code = dictionary.size();
+				map.put(value, code);
+				dictionary.add(value);
+			}
+			if (size == codes.length)
+				codes = Arrays.copyOf(codes, size + (size >> 1));
+			codes[size++] = code;
+		}
+
+		int size() {
+			return size;
+		}
+
+		StringColumn build() {
+			return new StringColumn(dictionary.toArray(new String[dictionary.size()]),
+					(size == codes.length) ? codes : Arrays.copyOf(codes, size));
+		}
+	}
+
+	/**
+	 * The result of grouping table rows by the distinct values of a column.
+	 *
+	 * @see ColumnarTable#groupBy(String)
+	 */
+	public static class Grouping {
+
+		private final String heading;
+		private final String[] keys;
+		private final double[] numericKeys;
+		private final int[] groupIds;
+
+		private Grouping(final String heading, final String[] keys, final double[] numericKeys,
+				final int[] groupIds) {
+			this.heading = heading;
+			this.keys = keys;
+			this.numericKeys = numericKeys;
+			this.groupIds = groupIds;
+		}
+
+		/** @return the heading of the grouping column */
+		public String getHeading() {
+			return heading;
+		}
+
+		/** @return the number of groups */
+		public int getGroupCount() {
+			return keys.length;
+		}
+
+		/** @return the key (distinct value) of each group */
+		public String[] getKeys() {
+			return keys;
+		}
+
+		/**
+		 * @return the key of each group when grouping a numeric column or
+		 *         {@code null} when grouping a text column
+		 */
+		public double[] getNumericKeys() {
+			return numericKeys;
+		}
+
+		/** @return the group index of each table row (no copy is made) */
+		public int[] getGroupIds() {
+			return groupIds;
+		}
+
+		/**
+		 * @param group
+		 *            the group index
+		 * @return the indices of the rows in the specified group
+		 */
+		public int[] getRows(final int group) {
+			int n = 0;
+			for (final int id : groupIds) {
+				if (id == group)
+					n++;
+			}
+			final int[] rows = new int[n];
+			n = 0;
+			for (int i = 0; i < groupIds.length; i++) {
+				if (groupIds[i] == group)
+					rows[n++] = i;
+			}
+			return rows;
+		}
+	}
+
+}
@@ -29,7 +29,42 @@ public class DefaultGCD extends AbstractOp implements BAR.GCD {
 		result = computeGCD(a, b);
 	}
 
-	private double computeGCD(final double p1, final double p2) {
-		return p2 == 0 ? p1 : computeGCD(p2, p1%p2);
+	/** Euclid's algorithm, iteratively: gcd(p1, p2) = gcd(p2, p1 % p2) */
+	static double computeGCD(final double p1, final double p2) {
+		double a = p1;
+		double b = p2;
+		while (b != 0) {
+			final double r = a % b;
+			a = b;
+			b = r;
+		}
+		return a;
+	}
+
+	/**
+	 * Binary (Stein's) algorithm, iteratively. The result is non-negative,
+	 * except for {@code computeGCD(Long.MIN_VALUE, 0)} (and vice versa) and
+	 * {@code computeGCD(Long.MIN_VALUE, Long.MIN_VALUE)}, which return
+	 * {@code Long.MIN_VALUE}, as 2<sup>63</sup> cannot be represented.
+	 */
+	static long computeGCD(final long p1, final long p2) {
+		long a = Math.abs(p1); // Long.MIN_VALUE is kept as unsigned 2^63
+		long b = Math.abs(p2);
+		if (a == 0)
+			return b;
+		if (b == 0)
+			return a;
+		final int shift = Long.numberOfTrailingZeros(a | b);
+		a >>>= Long.numberOfTrailingZeros(a);
+		do {
+			b >>>= Long.numberOfTrailingZeros(b);
+			if (Long.compareUnsigned(a, b) > 0) {
+				final long t = a;
+				a = b;
+				b = t;
+			}
+			b -= a;
+		} while (b != 0);
+		return a << shift;
 	}
 }
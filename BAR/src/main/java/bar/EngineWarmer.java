@@ -0,0 +1,214 @@
+/*
+ * IJ BAR: https://github.com/tferr/Scripts
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation
+ * (http://www.gnu.org/licenses/gpl.txt).
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ */
+package bar;
+
+import java.awt.GraphicsEnvironment;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.prefs.Preferences;
+
+import javax.script.ScriptEngine;
+
+import org.scijava.script.ScriptLanguage;
+import org.scijava.script.ScriptService;
+
+/**
+ * Initializes script engines in the background when BAR starts, so that the
+ * first script of a session does not wait for the initialization of its
+ * language (which may take several seconds for e.g., Jython or Groovy). For
+ * each language, a trivial script is evaluated: What is kept is the
+ * initialized runtime of the language (loaded classes, JIT-compiled code),
+ * shared by all engines later created for it.
+ * <p>
+ * Warm-up is started by {@link BARService} on a low priority thread and is
+ * controlled by two preferences, set in <i>BAR&gt;Utilities&gt;Startup
+ * Options...</i> (see {@link bar.plugin.StartupOptions}) or from a script:
+ *
+ * <pre>
+ * import bar.EngineWarmer
+ * EngineWarmer.setEnabled(false)
+ * EngineWarmer.setUsedLanguagesOnly(false) // all default languages
+ * </pre>
+ *
+ * By default, only the languages of scripts run in previous sessions are
+ * warmed up, so that nothing is initialized for users who never run scripts.
+ * Languages are recorded by {@link BARService} for every script module run,
+ * whether launched from a menu, the Commander or a {@link Runner}.
+ */
+public class EngineWarmer {
+
+	/** The extensions of the languages warmed up by default */
+	public static final List<String> DEFAULT_EXTENSIONS = Collections
+			.unmodifiableList(Arrays.asList("py", "groovy", "bsh"));
+
+	private static final String ENABLED_KEY = "warmup.enabled";
+	private static final String USED_ONLY_KEY = "warmup.usedOnly";
+	private static final String USED_KEY = "warmup.used";
+
+	private static final Preferences prefs = Preferences.userNodeForPackage(EngineWarmer.class);
+	private static final Set<String> usedExtensions = new LinkedHashSet<>();
+	private static boolean usedExtensionsLoaded;
+
+	private EngineWarmer() {
+		// prevent instantiation of utility class
+	}
+
+	/**
+	 * @return {@code true} if script engines are warmed up when BAR starts
+	 *         (the default, restricted by {@link #isUsedLanguagesOnly()})
+	 */
+	public static boolean isEnabled() {
+		return prefs.getBoolean(ENABLED_KEY, true);
+	}
+
+	/**
+	 * Sets whether script engines should be warmed up when BAR starts.
+	 *
+	 * @param enabled
+	 *            the new setting, stored across sessions
+	 */
+	public static void setEnabled(final boolean enabled) {
+		prefs.putBoolean(ENABLED_KEY, enabled);
+	}
+
+	/**
+	 * @return {@code true} if warm-up is restricted to the languages of
+	 *         scripts previously run (the default)
+	 */
+	public static boolean isUsedLanguagesOnly() {
+		return prefs.getBoolean(USED_ONLY_KEY, true);
+	}
+
+	/**
+	 * Sets whether warm-up should be restricted to the languages of scripts
+	 * previously run, rather than
+	 * {@link #DEFAULT_EXTENSIONS}.
+	 *
+	 * @param usedOnly
+	 *            the new setting, stored across sessions
+	 */
+	public static void setUsedLanguagesOnly(final boolean usedOnly) {
+		prefs.putBoolean(USED_ONLY_KEY, usedOnly);
+	}
+
+	/**
+	 * Records the language of a script that has been run. Preferences are
+	 * only written the first time a language is used.
+	 *
+	 * @param filename
+	 *            the script filename (or at least its extension)
+	 */
+	public static void recordUse(final String filename) {
+		if (filename == null)
+			return;
+		final int dot = filename.lastIndexOf('.');
+		if (dot < 0 || dot == filename.length() - 1)
+			return;
+		final String extension = filename.substring(dot + 1).toLowerCase();
+		synchronized (usedExtensions) {
+			loadUsedExtensions();
+			if (usedExtensions.add(extension))
+				prefs.put(USED_KEY, String.join(",", usedExtensions));
+		}
+	}
+
+	/**
+	 * @return the extensions of the languages of scripts run so far, across
+	 *         sessions
+	 */
+	public static List<String> getUsedExtensions() {
+		synchronized (usedExtensions) {
+			loadUsedExtensions();
+			return new ArrayList<>(usedExtensions);
+		}
+	}
+
+	private static void loadUsedExtensions() {
+		if (usedExtensionsLoaded)
+			return;
+		for (final String extension : prefs.get(USED_KEY, "").split(",")) {
+			if (!extension.isEmpty())
+				usedExtensions.add(extension);
+		}
+		usedExtensionsLoaded = true;
+	}
+
+	/**
+	 * @return the extensions of the languages to be warmed up, according to
+	 *         current preferences
+	 */
+	public static List<String> getExtensions() {
+		if (!isUsedLanguagesOnly())
+			return DEFAULT_EXTENSIONS;
+		final List<String> used = getUsedExtensions();
+		used.retainAll(DEFAULT_EXTENSIONS);
+		return used;
+	}
+
+	/**
+	 * Warms up script engines on a low priority background thread, if
+	 * warm-up is enabled. Warm-up is skipped when running headless (e.g., by
+	 * {@link HeadlessRunner}), since there is no interactive use to speed up.
+	 *
+	 * @param scriptService
+	 *            the service providing script languages
+	 * @return the warm-up thread or {@code null} if warm-up is disabled
+	 */
+	public static Thread start(final ScriptService scriptService) {
+		if (!isEnabled() || GraphicsEnvironment.isHeadless())
+			return null;
+		final List<String> extensions = getExtensions();
+		if (extensions.isEmpty())
+			return null;
+		final Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				for (final String extension : extensions) {
+					if (Thread.currentThread().isInterrupted())
+						return;
+					warm(scriptService, extension);
+				}
+			}
+		}, "BAR engine warm-up");
+		thread.setDaemon(true);
+		thread.setPriority(Thread.MIN_PRIORITY);
+		thread.start();
+		return thread;
+	}
+
+	/**
+	 * Warms up the engine of a single language.
+	 *
+	 * @param scriptService
+	 *            the service providing script languages
+	 * @param extension
+	 *            the language extension, e.g., {@code py}
+	 * @return {@code true} if the engine could be initialized
+	 */
+	public static boolean warm(final ScriptService scriptService, final String extension) {
+		final ScriptLanguage language = scriptService.getLanguageByExtension(extension);
+		if (language == null)
+			return false;
+		try {
+			final ScriptEngine engine = language.getScriptEngine();
+			engine.eval(("bsh".equals(extension)) ? "0;" : "0");
+			return true;
+		} catch (final Exception | LinkageError exc) {
+			// The language will be initialized when first used
+			return false;
+		}
+	}
+
+}
@@ -0,0 +1,436 @@
+/*
+ * IJ BAR: https://github.com/tferr/Scripts
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation
+ * (http://www.gnu.org/licenses/gpl.txt).
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ */
+package bar;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import org.scijava.Context;
+import org.scijava.convert.ConvertService;
+import org.scijava.log.LogService;
+import org.scijava.module.ModuleService;
+import org.scijava.script.ScriptService;
+import org.scijava.service.Service;
+import org.scijava.ui.UIService;
+
+import ij.ImagePlus;
+import ij.io.FileSaver;
+import ij.measure.ResultsTable;
+
+/**
+ * Runs BAR routines from the command line, without a display. Rather than
+ * launching ImageJ, only the services required to run scripts are started.
+ * Each input file is processed by a separate run of the routine, in parallel
+ * (see {@link BatchRunner}). Images returned by the routine are saved as TIFF
+ * files and tables as CSV files, named after the input file and mirroring its
+ * path relative to the directory of the input pattern (e.g.,
+ * {@code data/a/img.csv} yields {@code results/a/img_<output>.csv}). The
+ * remaining outputs (and the status and run time of each input) are
+ * tabulated in {@code results.csv}:
+ *
+ * <pre>
+ * java -Djava.awt.headless=true -cp "Fiji.app/jars/*:Fiji.app/plugins/*" bar.HeadlessRunner \
+ *     Distribution_Plotter -i "data/**.csv" -o results/ -t 8 bins=20
+ * </pre>
+ *
+ * Scripts calling {@link Utils#getTable()} receive the input file when it is
+ * a table (see {@link Runner#TABLE_INPUT}) rather than prompting for data.
+ */
+public class HeadlessRunner {
+
+	private static final String USAGE = "Usage: bar.HeadlessRunner ROUTINE [options] [key=value ...]\n"
+			+ "  ROUTINE              BAR script name (e.g., Distribution_Plotter), its path\n"
+			+ "                       relative to scripts/BAR/, or a local script file\n"
+			+ "  -i, --input GLOB     input files, each processed by a separate run (repeatable)\n"
+			+ "  -p, --param NAME     script parameter receiving each input file (default: input)\n"
+			+ "  -o, --output DIR     output directory (default: current directory)\n"
+			+ "  -t, --threads N      maximum number of concurrent runs (default: number of cores)\n"
+			+ "  --timeout SECONDS    maximum run time of each input\n"
+			+ "  --resume             skip inputs processed by a previous (interrupted) run\n"
+			+ "  key=value            script parameters common to all runs";
+
+	private static final String[] TABLE_EXTENSIONS = { ".csv", ".tsv", ".txt", ".xls", TableCache.EXTENSION };
+
+	private final Runner runner;
+	private String routine;
+	private final List<String> globs = new ArrayList<>();
+	private final Map<String, Object> parameters = new LinkedHashMap<>();
+	private String inputParameter = "input";
+	private File outputDir = new File(".");
+	private int nThreads = Runtime.getRuntime().availableProcessors();
+	private long timeout;
+	private boolean resume;
+	private final Map<File, String> outputNames = new HashMap<>();
+
+	/**
+	 * @param context
+	 *            the context providing script services, e.g., as created by
+	 *            {@link #createContext(String)}
+	 */
+	public HeadlessRunner(final Context context) {
+		runner = new Runner(context);
+	}
+
+	/** Entry point. Run without arguments for usage. */
+	public static void main(final String... args) {
+		System.setProperty("java.awt.headless", "true");
+		final long start = System.nanoTime();
+		final String routine = (args.length == 0 || args[0].startsWith("-")) ? null : resolve(args[0]);
+		if (routine == null) {
+			if (args.length > 0 && !args[0].startsWith("-"))
+				System.err.println("Unknown routine: " + args[0]);
+			System.err.println(USAGE);
+			System.exit(2);
+		}
+		final Context context = createContext(routine);
+		int failed;
+		try {
+			final HeadlessRunner cli = new HeadlessRunner(context);
+			cli.parse(args);
+			System.err.printf("BAR: services started in %d ms%n", (System.nanoTime() - start) / 1000000);
+			failed = cli.run();
+			System.err.printf("BAR: finished in %.1f s%n", (System.nanoTime() - start) / 1e9);
+		} catch (final IllegalArgumentException exc) {
+			System.err.println(exc.getMessage());
+			System.err.println(USAGE);
+			failed = -1;
+		} catch (final IOException | InterruptedException exc) {
+			System.err.println("BAR: " + exc.getMessage());
+			failed = -1;
+		} finally {
+			context.dispose();
+		}
+		System.exit((failed < 0) ? 2 : (failed > 0) ? 1 : 0);
+	}
+
+	/**
+	 * Creates a context with only the services required to run a routine
+	 * headless. IJ1 macros also require the legacy service, which runs the
+	 * IJ1 macro interpreter.
+	 *
+	 * @param routine
+	 *            the routine to be run
+	 * @return the context
+	 */
+	public static Context createContext(final String routine) {
+		final List<Class<? extends Service>> services = new ArrayList<>();
+		if (routine.toLowerCase().endsWith(".ijm")) {
+			net.imagej.patcher.LegacyInjector.preinit();
+			services.add(net.imagej.legacy.LegacyService.class);
+		}
+		Collections.addAll(services, ScriptService.class, ModuleService.class, ConvertService.class,
+				LogService.class, UIService.class, BARService.class);
+		final Context context = new Context(services);
+		context.getService(UIService.class).setHeadless(true);
+		return context;
+	}
+
+	/**
+	 * Parses command-line arguments.
+	 *
+	 * @param args
+	 *            the arguments, starting with the routine name
+	 * @throws IllegalArgumentException
+	 *             if arguments are invalid
+	 */
+	public void parse(final String... args) {
+		setRoutine(args[0]);
+		for (int i = 1; i < args.length; i++) {
+			final String arg = args[i];
+			if (arg.startsWith("-") && !arg.equals("--resume") && i == args.length - 1)
+				throw new IllegalArgumentException("Missing value of " + arg);
+			switch (arg) {
+			case "-i":
+			case "--input":
+				globs.add(args[++i]);
+				break;
+			case "-p":
+			case "--param":
+				inputParameter = args[++i];
+				break;
+			case "-o":
+			case "--output":
+				outputDir = new File(args[++i]);
+				break;
+			case "-t":
+			case "--threads":
+				nThreads = Integer.parseInt(args[++i]);
+				break;
+			case "--timeout":
+				timeout = (long) (Double.parseDouble(args[++i]) * 1000);
+				break;
+			case "--resume":
+				resume = true;
+				break;
+			default:
+				final int eq = arg.indexOf('=');
+				if (arg.startsWith("-") || eq < 1)
+					throw new IllegalArgumentException("Invalid argument: " + arg);
+				parameters.put(arg.substring(0, eq), arg.substring(eq + 1));
+			}
+		}
+	}
+
+	/**
+	 * @param routine
+	 *            the BAR script name, its path relative to
+	 *            {@code scripts/BAR/}, or a local script file
+	 * @throws IllegalArgumentException
+	 *             if routine could not be found
+	 */
+	public void setRoutine(final String routine) {
+		this.routine = resolve(routine);
+		if (this.routine == null)
+			throw new IllegalArgumentException("Unknown routine: " + routine);
+	}
+
+	/** @return the path of a routine or null if it could not be found */
+	private static String resolve(final String routine) {
+		return (new File(routine).isFile()) ? routine : ResourceIndex.findScript(routine);
+	}
+
+	/**
+	 * Processes all inputs, waiting for all runs to complete.
+	 *
+	 * @return the number of failed runs
+	 * @throws IOException
+	 *             if inputs could not be listed or results could not be
+	 *             saved
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for runs to complete
+	 */
+	public int run() throws IOException, InterruptedException {
+		if (!outputDir.isDirectory() && !outputDir.mkdirs())
+			throw new IOException("Could not create " + outputDir);
+		final List<File> files = new ArrayList<>();
+		for (final String glob : globs) {
+			final Path base = base(glob);
+			for (final File file : expand(glob)) {
+				if (outputNames.containsKey(file))
+					continue;
+				// mirror the path relative to the glob base, so that files of
+				// different subdirectories have distinct outputs
+				String name = stripExtension(base.relativize(file.toPath().toAbsolutePath().normalize()).toString());
+				if (outputNames.containsValue(name))
+					name += "_" + files.size();
+				outputNames.put(file, name);
+				files.add(file);
+			}
+		}
+		if (!globs.isEmpty() && files.isEmpty())
+			throw new IOException("No input files match " + globs);
+		System.err.printf("BAR: running %s on %d input(s)%n", routine, Math.max(1, files.size()));
+
+		runner.setSilent(false);
+		final BatchRunner batch = new BatchRunner(runner);
+		batch.setThreads(nThreads);
+		batch.setTimeout(timeout);
+		batch.setSink(new OutputSink(Math.max(1, files.size())));
+		final File checkpoint = new File(outputDir, ".bar-checkpoint");
+		if (!resume) {
+			Files.deleteIfExists(checkpoint.toPath());
+			Files.deleteIfExists(new File(outputDir, "results.csv").toPath());
+		}
+		batch.setCheckpoint(checkpoint);
+		try {
+			batch.run(routine, inputs(files));
+		} finally {
+			System.err.printf("BAR: %d done, %d failed, %d skipped%n", batch.getSucceededCount(),
+					batch.getFailedCount(), batch.getSkippedCount());
+		}
+		if (batch.getFailedCount() == 0)
+			Files.deleteIfExists(checkpoint.toPath());
+		return batch.getFailedCount();
+	}
+
+	/** Creates the input map of each run lazily, one run per input file */
+	private Iterator<Map<String, Object>> inputs(final List<File> files) {
+		if (files.isEmpty())
+			return Collections.singletonList((Map<String, Object>) new LinkedHashMap<>(parameters)).iterator();
+		final Iterator<File> iterator = files.iterator();
+		return new Iterator<Map<String, Object>>() {
+			@Override
+			public boolean hasNext() {
+				return iterator.hasNext();
+			}
+
+			@Override
+			public Map<String, Object> next() {
+				final File file = iterator.next();
+				final Map<String, Object> input = new LinkedHashMap<>(parameters);
+				input.put(inputParameter, file);
+				if (isTable(file))
+					input.put(Runner.TABLE_INPUT, file);
+				return input;
+			}
+		};
+	}
+
+	private static boolean isTable(final File file) {
+		final String name = file.getName().toLowerCase();
+		for (final String extension : TABLE_EXTENSIONS) {
+			if (name.endsWith(extension))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Lists the files matching a glob pattern, in alphabetical order. Patterns
+	 * without wildcards are treated as a single file or, for directories, as
+	 * the files in the directory.
+	 *
+	 * @param glob
+	 *            the pattern, e.g., {@code data/*.tif} or
+	 *            {@code data/**.csv} to include subdirectories
+	 * @return the matching files
+	 * @throws IOException
+	 *             if a directory could not be listed
+	 */
+	public static List<File> expand(final String glob) throws IOException {
+		final List<File> files = new ArrayList<>();
+		final int wildcard = firstWildcard(glob);
+		if (wildcard < 0) {
+			final File file = new File(glob);
+			if (file.isFile())
+				files.add(file);
+			else if (file.isDirectory())
+				files.addAll(expand(new File(file, "*").getPath()));
+			return files;
+		}
+		final Path base = base(glob);
+		if (!Files.isDirectory(base))
+			return files;
+		final String pattern = glob.substring(separator(glob, wildcard) + 1);
+		final PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+		final int depth = (pattern.contains("**")) ? Integer.MAX_VALUE : pattern.split("/").length;
+		try (Stream<Path> paths = Files.walk(base, depth)) {
+			final Iterator<Path> iterator = paths.iterator();
+			while (iterator.hasNext()) {
+				final Path path = iterator.next();
+				if (Files.isRegularFile(path) && matcher.matches(base.relativize(path)))
+					files.add(path.toFile());
+			}
+		}
+		Collections.sort(files);
+		return files;
+	}
+
+	/**
+	 * @return the directory that paths matched by a glob pattern are relative
+	 *         to, i.e., the pattern's directory up to its first wildcard, the
+	 *         directory itself or the parent of a single file
+	 */
+	private static Path base(final String glob) {
+		final int wildcard = firstWildcard(glob);
+		if (wildcard < 0) {
+			final File file = new File(glob).getAbsoluteFile();
+			return ((file.isDirectory()) ? file : file.getParentFile()).toPath().normalize();
+		}
+		final int separator = separator(glob, wildcard);
+		return Paths.get((separator < 0) ? "." : glob.substring(0, separator + 1)).toAbsolutePath().normalize();
+	}
+
+	private static int separator(final String glob, final int wildcard) {
+		return Math.max(glob.lastIndexOf('/', wildcard), glob.lastIndexOf(File.separatorChar, wildcard));
+	}
+
+	private static int firstWildcard(final String glob) {
+		for (int i = 0; i < glob.length(); i++) {
+			if ("*?[{".indexOf(glob.charAt(i)) >= 0)
+				return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Saves image and table outputs of each run, tabulating the remaining
+	 * outputs in {@code results.csv}
+	 */
+	private class OutputSink implements BatchRunner.Sink {
+
+		private final BatchRunner.CsvSink csv = new BatchRunner.CsvSink(new File(outputDir, "results.csv"));
+		private final AtomicInteger completed = new AtomicInteger();
+		private final int total;
+
+		private OutputSink(final int total) {
+			this.total = total;
+		}
+
+		@Override
+		public void accept(final BatchRunner.Result result) throws IOException {
+			final Object input = result.getInputs().get(inputParameter);
+			final String basename = (input instanceof File && outputNames.containsKey(input))
+					? outputNames.get(input) : "item" + result.getIndex();
+			try {
+				for (final Map.Entry<String, Object> output : result.getOutputs().entrySet()) {
+					final Object value = output.getValue();
+					if (value instanceof ImagePlus) {
+						final File file = outputFile(basename + "_" + output.getKey() + ".tif");
+						if (!new FileSaver((ImagePlus) value).saveAsTiff(file.getPath()))
+							throw new IOException("Could not save " + file);
+						output.setValue(file.getPath());
+					} else if (value instanceof ResultsTable || value instanceof ColumnarTable) {
+						final File file = outputFile(basename + "_" + output.getKey() + ".csv");
+						final ResultsTable rt = (value instanceof ResultsTable) ? (ResultsTable) value
+								: ((ColumnarTable) value).toResultsTable();
+						rt.saveAs(file.getPath());
+						output.setValue(file.getPath());
+					}
+				}
+				if (input != null)
+					result.getOutputs().put("Input", String.valueOf(input));
+				csv.accept(result);
+			} catch (final IOException | RuntimeException exc) {
+				System.err.printf("[%d/%d] exception %s: could not store result: %s%n", completed.incrementAndGet(),
+						total, basename, exc.getMessage());
+				throw exc;
+			}
+			System.err.printf("[%d/%d] %s %s (%.0f ms)%s%n", completed.incrementAndGet(), total,
+					result.getStatus(), basename, result.getTime(),
+					(result.getError() == null) ? "" : ": " + result.getError());
+		}
+
+		@Override
+		public void close() throws IOException {
+			csv.close();
+		}
+
+		/** @return the output file, creating the subdirectory holding it */
+		private File outputFile(final String name) throws IOException {
+			final File file = new File(outputDir, name);
+			final File dir = file.getParentFile();
+			if (!dir.isDirectory() && !dir.mkdirs())
+				throw new IOException("Could not create " + dir);
+			return file;
+		}
+	}
+
+	private static String stripExtension(final String path) {
+		final int dot = path.lastIndexOf('.');
+		return (dot > path.lastIndexOf(File.separatorChar) + 1) ? path.substring(0, dot) : path;
+	}
+
+}
@@ -0,0 +1,52 @@
+/*
+ * IJ BAR: https://github.com/tferr/Scripts
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation
+ * (http://www.gnu.org/licenses/gpl.txt).
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ */
+package bar;
+
+import org.scijava.ItemIO;
+import org.scijava.plugin.Attr;
+import org.scijava.plugin.Parameter;
+import org.scijava.plugin.Plugin;
+
+/**
+ * Computes the element-wise greatest common divisor of two {@code long}
+ * arrays, using the binary GCD algorithm (see
+ * {@link DefaultGCD#computeGCD(long, long)}).
+ */
+@Plugin(type = BAR.GCD.class, name = BAR.GCD.NAME, attrs = { @Attr(name = "aliases", value = BAR.GCD.ALIASES) })
+public class LongArrayGCD extends AbstractChunkedOp implements BAR.GCD {
+
+	// -- Inputs --
+
+	@Parameter
+	private long[] a;
+
+	@Parameter
+	private long[] b;
+
+	// -- Outputs --
+
+	@Parameter(type = ItemIO.OUTPUT)
+	private long[] result;
+
+	@Override
+	public void run() {
+		checkLengths(a.length, b.length);
+		final long[] gcds = new long[a.length];
+		forEachChunk(a.length, new Chunk() {
+			@Override
+			public void execute(final long start, final long end) {
+				for (int i = (int) start; i < end; i++)
+					gcds[i] = DefaultGCD.computeGCD(a[i], b[i]);
+			}
+		});
+		result = gcds;
+	}
+}
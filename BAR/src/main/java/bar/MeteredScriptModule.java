@@ -0,0 +1,62 @@
+/*
+ * IJ BAR: https://github.com/tferr/Scripts
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation
+ * (http://www.gnu.org/licenses/gpl.txt).
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ */
+package bar;
+
+import org.scijava.script.ScriptInfo;
+import org.scijava.script.ScriptModule;
+
+/**
+ * A {@link ScriptModule} that measures its execution (time and allocated
+ * bytes) on the thread running it, recording it in {@link ScriptMetrics}. It
+ * also provides the table returned by {@link Utils#getTable()} in headless
+ * mode, if any (see {@link Runner#TABLE_INPUT}).
+ */
+class MeteredScriptModule extends ScriptModule {
+
+	private volatile ScriptMetrics.Call call;
+	private volatile Object table;
+
+	MeteredScriptModule(final ScriptInfo info) {
+		super(info);
+	}
+
+	/** Sets the measurement to be updated once the module runs */
+	void setCall(final ScriptMetrics.Call call) {
+		this.call = call;
+	}
+
+	/** Sets the table source of headless calls to {@link Utils#getTable()} */
+	void setTable(final Object table) {
+		this.table = table;
+	}
+
+	@Override
+	public final void run() {
+		final ScriptMetrics.Call call = this.call;
+		if (table != null)
+			Utils.HEADLESS_TABLE.set(table);
+		if (call != null)
+			call.start();
+		try {
+			execute();
+		} finally {
+			if (call != null)
+				call.executed();
+			Utils.HEADLESS_TABLE.remove();
+		}
+	}
+
+	/** Runs the script. */
+	protected void execute() {
+		super.run();
+	}
+
+}
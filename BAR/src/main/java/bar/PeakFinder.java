@@ -0,0 +1,539 @@
+/*
+ * IJ BAR: https://github.com/tferr/Scripts
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation
+ * (http://www.gnu.org/licenses/gpl.txt).
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ */
+package bar;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+import ij.gui.PlotWindow;
+import ij.measure.ResultsTable;
+
+/**
+ * Detects local maxima and minima of 1D series (e.g., profiles, spectra and
+ * the series of a plot) held in primitive arrays. Peaks are filtered by:
+ * <ul>
+ * <li>Prominence: how much a peak stands out from the higher of the two
+ * valleys separating it from a taller peak (or from the edge of the series).
+ * Prominences of all samples are computed in linear time with monotonic
+ * stacks. Unless set explicitly, the minimum prominence can be estimated for
+ * each series as the standard deviation of its values.</li>
+ * <li>Height: the minimum value of maxima, or the maximum value of
+ * minima.</li>
+ * <li>Distance: a peak is discarded if a higher-ranked peak (i.e., a taller
+ * maximum or a deeper minimum) lies closer than the minimum distance along the
+ * x-axis. Suppression sorts peaks by position once and then finds the nearest
+ * higher-ranked peak on either side with a monotonic stack: O(p log p) for p
+ * peaks, instead of comparing every pair of peaks.</li>
+ * </ul>
+ * Flat peaks (plateaus) are reported at their center. NaN values are never
+ * peaks. Peaks are returned by rank (tallest maxima or deepest minima first).
+ *
+ * <pre>
+ * from bar import PeakFinder
+ * finder = PeakFinder()
+ * finder.setMinProminence(10)
+ * finder.setMinDistance(5)
+ * maxima = finder.findMaxima(x, y)
+ * finder.toResultsTable(finder.findPeaks(plotWindow)).show("Peaks")
+ * </pre>
+ */
+public class PeakFinder {
+
+	private double minProminence;
+	private double minDistance;
+	private double minMaximaValue = Double.NaN;
+	private double maxMinimaValue = Double.NaN;
+	private boolean excludeEdges;
+
+	/**
+	 * Sets the minimum prominence of peaks ({@code Min. peak amplitude} in
+	 * Find_Peaks). Only peaks that stand out by more than this value are
+	 * detected. If NaN, the threshold of each series is the standard deviation
+	 * of its (non-NaN) values, so that series of different scales in the same
+	 * plot or table are filtered alike.
+	 */
+	public void setMinProminence(final double minProminence) {
+		this.minProminence = minProminence;
+	}
+
+	/**
+	 * Sets the minimum distance between peaks, in x-axis units. Set it to 0
+	 * for no distance suppression.
+	 */
+	public void setMinDistance(final double minDistance) {
+		this.minDistance = minDistance;
+	}
+
+	/** Sets the minimum value of maxima, or NaN for no height filtering */
+	public void setMinMaximaValue(final double minMaximaValue) {
+		this.minMaximaValue = minMaximaValue;
+	}
+
+	/** Sets the maximum value of minima, or NaN for no height filtering */
+	public void setMaxMinimaValue(final double maxMinimaValue) {
+		this.maxMinimaValue = maxMinimaValue;
+	}
+
+	/** Sets whether peaks at the first or last sample should be ignored */
+	public void setExcludeEdges(final boolean excludeEdges) {
+		this.excludeEdges = excludeEdges;
+	}
+
+	/**
+	 * Detects local maxima.
+	 *
+	 * @param x
+	 *            the x-values, or {@code null} to use sample indices
+	 * @param y
+	 *            the y-values
+	 * @return the maxima, tallest first
+	 */
+	public Peaks findMaxima(final double[] x, final double[] y) {
+		return find(x, y, false);
+	}
+
+	/**
+	 * Detects local minima.
+	 *
+	 * @param x
+	 *            the x-values, or {@code null} to use sample indices
+	 * @param y
+	 *            the y-values
+	 * @return the minima, deepest first
+	 */
+	public Peaks findMinima(final double[] x, final double[] y) {
+		return find(x, y, true);
+	}
+
+	/**
+	 * Detects maxima and minima in all the series of a plot.
+	 *
+	 * @see #findPeaks(ResultsTable)
+	 */
+	public List<Series> findPeaks(final PlotWindow pw) {
+		return findPeaks(pw.getResultsTable());
+	}
+
+	/**
+	 * Detects maxima and minima in all the numeric columns of a table, in
+	 * parallel. A column whose heading starts with "X" (as in the tables of
+	 * plots) provides the x-values of the columns that follow it; columns
+	 * preceding any such column are indexed by row number. Trailing NaNs
+	 * (padding of shorter series) are ignored.
+	 *
+	 * @param rt
+	 *            the table
+	 * @return the series, in column order
+	 */
+	public List<Series> findPeaks(final ResultsTable rt) {
+		final List<Series> series = new ArrayList<>();
+		final String[] headings = rt.getHeadings();
+		double[] x = null;
+		String xHeading = null;
+		for (final String heading : headings) {
+			final int col = rt.getColumnIndex(heading);
+			if (col == ResultsTable.COLUMN_NOT_FOUND || !rt.columnExists(col))
+				continue; // e.g., the 'Label' column
+			final double[] values = rt.getColumnAsDoubles(col);
+			if (values == null)
+				continue;
+			if (heading.toUpperCase().startsWith("X")) {
+				x = values;
+				xHeading = heading;
+				continue;
+			}
+			final int n = trimmedLength(values);
+			series.add(new Series(xHeading, heading, (x == null) ? null : trim(x, n), trim(values, n)));
+		}
+		IntStream.range(0, series.size()).parallel().forEach(new IntConsumer() {
+			@Override
+			public void accept(final int i) {
+				final Series s = series.get(i);
+				s.maxima = findMaxima(s.x, s.y);
+				s.minima = findMinima(s.x, s.y);
+			}
+		});
+		return series;
+	}
+
+	/**
+	 * Lists detected peaks, with one row per peak.
+	 *
+	 * @param series
+	 *            the series, as returned by {@link #findPeaks(ResultsTable)}
+	 * @return a table with columns {@code Series}, {@code Type},
+	 *         {@code Index}, {@code X}, {@code Y} and {@code Prominence}
+	 */
+	public ResultsTable toResultsTable(final List<Series> series) {
+		final ResultsTable rt = new ResultsTable();
+		for (final Series s : series) {
+			addRows(rt, s.getHeading(), "Max", s.maxima);
+			addRows(rt, s.getHeading(), "Min", s.minima);
+		}
+		rt.showRowNumbers(false);
+		return rt;
+	}
+
+	private static void addRows(final ResultsTable rt, final String series, final String type,
+			final Peaks peaks) {
+		if (peaks == null)
+			return;
+		final double[] x = peaks.getXValues();
+		final double[] y = peaks.getYValues();
+		for (int i = 0; i < peaks.size(); i++) {
+			rt.incrementCounter();
+			rt.addValue("Series", series);
+			rt.addValue("Type", type);
+			rt.addValue("Index", peaks.positions[i]);
+			rt.addValue("X", x[i]);
+			rt.addValue("Y", y[i]);
+			rt.addValue("Prominence", peaks.prominences[i]);
+		}
+	}
+
+	private static int trimmedLength(final double[] values) {
+		int n = values.length;
+		while (n > 0 && Double.isNaN(values[n - 1]))
+			n--;
+		return n;
+	}
+
+	private static double[] trim(final double[] values, final int n) {
+		if (values.length == n)
+			return values;
+		final double[] trimmed = new double[n];
+		System.arraycopy(values, 0, trimmed, 0, Math.min(n, values.length));
+		return trimmed;
+	}
+
+	// -- Detection --
+
+	private Peaks find(final double[] x, final double[] y, final boolean minima) {
+		if (x != null && x.length != y.length)
+			throw new IllegalArgumentException("X- and Y-values differ in length");
+		final int n = y.length;
+		// maxima of w are the maxima of y or, for minima, of -y. NaNs are
+		// 'bottomless' so that they never become (or join) a peak
+		final double[] w = new double[n];
+		for (int i = 0; i < n; i++)
+			w[i] = Double.isNaN(y[i]) ? Double.NEGATIVE_INFINITY : (minima ? -y[i] : y[i]);
+		final double[][] sides = new double[2][];
+		IntStream.range(0, 2).parallel().forEach(new IntConsumer() {
+			@Override
+			public void accept(final int side) {
+				sides[side] = bases(w, side == 1);
+			}
+		});
+		final double[] leftBases = sides[0];
+		final double[] rightBases = sides[1];
+		final double threshold = minima ? maxMinimaValue : minMaximaValue;
+		final double prominenceThreshold = Double.isNaN(minProminence) ? standardDeviation(y) : minProminence;
+
+		int[] positions = new int[16];
+		double[] prominences = new double[16];
+		int count = 0;
+		for (int start = 0; start < n;) {
+			int end = start;
+			while (end + 1 < n && w[end + 1] == w[start])
+				end++;
+			final boolean risesOnLeft = (start > 0) && w[start - 1] < w[start];
+			final boolean fallsOnRight = (end < n - 1) && w[end + 1] < w[end];
+			final boolean leftEdge = start == 0 && !excludeEdges;
+			final boolean rightEdge = end == n - 1 && !excludeEdges;
+			if ((risesOnLeft || leftEdge) && (fallsOnRight || rightEdge) && (risesOnLeft || fallsOnRight)
+					&& w[start] != Double.NEGATIVE_INFINITY) {
+				// bases over an empty side (the edge of an edge peak) are
+				// infinite, and the other side is used
+				final double left = leftBases[start];
+				final double right = rightBases[end];
+				final double base = (left == Double.POSITIVE_INFINITY) ? right
+						: (right == Double.POSITIVE_INFINITY) ? left : Math.max(left, right);
+				final double prominence = w[start] - base;
+				final boolean tallEnough = Double.isNaN(threshold)
+						|| (minima ? y[start] < threshold : y[start] > threshold);
+				if (prominence > prominenceThreshold && tallEnough) {
+					if (count == positions.length) {
+						positions = Arrays.copyOf(positions, 2 * count);
+						prominences = Arrays.copyOf(prominences, 2 * count);
+					}
+					positions[count] = (start + end) >>> 1;
+					prominences[count++] = prominence;
+				}
+			}
+			start = end + 1;
+		}
+
+		// rank peaks: tallest maxima (deepest minima) first
+		final int[] found = positions;
+		final int[] order = sortedIndices(count, new Key() {
+			@Override
+			public double get(final int i) {
+				return -w[found[i]];
+			}
+		});
+		final int[] rankedPositions = new int[count];
+		final double[] rankedProminences = new double[count];
+		for (int r = 0; r < count; r++) {
+			rankedPositions[r] = positions[order[r]];
+			rankedProminences[r] = prominences[order[r]];
+		}
+		final boolean[] keep = suppress(x, rankedPositions, order);
+		return new Peaks(x, y, rankedPositions, rankedProminences, keep);
+	}
+
+	/** @return the standard deviation of the non-NaN values, 0 if fewer than two */
+	private static double standardDeviation(final double[] values) {
+		int n = 0;
+		double mean = 0;
+		double m2 = 0;
+		for (final double v : values) { // Welford's algorithm
+			if (Double.isNaN(v))
+				continue;
+			final double delta = v - mean;
+			mean += delta / ++n;
+			m2 += delta * (v - mean);
+		}
+		return (n < 2) ? 0 : Math.sqrt(m2 / (n - 1));
+	}
+
+	/**
+	 * For each sample, computes the lowest value between it and the nearest
+	 * strictly higher sample on one side (or the edge of the series), using a
+	 * monotonic stack in which each entry holds the lowest value between it and
+	 * the entry above.
+	 *
+	 * @return the bases, {@code +Infinity} where the side is empty
+	 */
+	private static double[] bases(final double[] w, final boolean fromRight) {
+		final int n = w.length;
+		final double[] bases = new double[n];
+		final int[] stack = new int[n + 1];
+		final double[] gaps = new double[n + 1];
+		int top = 0; // stack[0] is a sentinel standing for the edge
+		gaps[0] = Double.POSITIVE_INFINITY;
+		for (int k = 0; k < n; k++) {
+			final int i = fromRight ? n - 1 - k : k;
+			double lowest = Double.POSITIVE_INFINITY;
+			while (top > 0 && w[stack[top]] <= w[i]) {
+				lowest = Math.min(lowest, Math.min(gaps[top], w[stack[top]]));
+				top--;
+			}
+			gaps[top] = Math.min(gaps[top], lowest);
+			bases[i] = gaps[top];
+			stack[++top] = i;
+			gaps[top] = Double.POSITIVE_INFINITY;
+		}
+		return bases;
+	}
+
+	/**
+	 * Flags ranked peaks that have no higher-ranked peak closer than the
+	 * minimum distance, whether or not that peak is itself suppressed.
+	 */
+	private boolean[] suppress(final double[] x, final int[] ranked, final int[] order) {
+		final int p = ranked.length;
+		final boolean[] keep = new boolean[p];
+		Arrays.fill(keep, true);
+		if (!(minDistance > 0) || p < 2)
+			return keep;
+		// ranks, sorted by position along the x-axis. Peaks were found in
+		// order of position, so for sorted x-values this inverts the ranking
+		final int[] byX;
+		if (x == null || SeriesDecimator.isMonotonic(x)) {
+			byX = new int[p];
+			for (int r = 0; r < p; r++)
+				byX[order[r]] = r;
+		} else {
+			byX = sortedIndices(p, new Key() {
+				@Override
+				public double get(final int r) {
+					return x[ranked[r]];
+				}
+			});
+		}
+		final int[] stack = new int[p];
+		for (int pass = 0; pass < 2; pass++) {
+			int top = -1;
+			for (int k = 0; k < p; k++) {
+				final int r = byX[(pass == 0) ? k : p - 1 - k];
+				while (top >= 0 && stack[top] > r)
+					top--;
+				if (top >= 0 && Math.abs(xOf(x, ranked[stack[top]]) - xOf(x, ranked[r])) < minDistance)
+					keep[r] = false;
+				stack[++top] = r;
+			}
+		}
+		return keep;
+	}
+
+	private static double xOf(final double[] x, final int position) {
+		return (x == null) ? position : x[position];
+	}
+
+	private interface Key {
+		double get(int i);
+	}
+
+	/**
+	 * @return the indices {@code 0..n-1} sorted by ascending key. Ties keep
+	 *         their original order (merge sort, moving keys along with indices
+	 *         to avoid indirect lookups)
+	 */
+	private static int[] sortedIndices(final int n, final Key key) {
+		double[] keys = new double[n];
+		int[] indices = new int[n];
+		for (int i = 0; i < n; i++) {
+			keys[i] = key.get(i);
+			indices[i] = i;
+		}
+		double[] keysBuffer = new double[n];
+		int[] indicesBuffer = new int[n];
+		for (int width = 1; width < n; width *= 2) {
+			for (int lo = 0; lo < n; lo += 2 * width) {
+				final int mid = Math.min(n, lo + width);
+				final int hi = Math.min(n, lo + 2 * width);
+				int i = lo, j = mid, k = lo;
+				while (i < mid && j < hi) {
+					if (keys[j] < keys[i]) {
+						keysBuffer[k] = keys[j];
+						indicesBuffer[k++] = indices[j++];
+					} else {
+						keysBuffer[k] = keys[i];
+						indicesBuffer[k++] = indices[i++];
+					}
+				}
+				System.arraycopy(keys, i, keysBuffer, k, mid - i);
+				System.arraycopy(indices, i, indicesBuffer, k, mid - i);
+				k += mid - i;
+				System.arraycopy(keys, j, keysBuffer, k, hi - j);
+				System.arraycopy(indices, j, indicesBuffer, k, hi - j);
+			}
+			final double[] swapKeys = keys;
+			keys = keysBuffer;
+			keysBuffer = swapKeys;
+			final int[] swapIndices = indices;
+			indices = indicesBuffer;
+			indicesBuffer = swapIndices;
+		}
+		return indices;
+	}
+
+	/** Detected peaks of a series, ranked tallest (or deepest) first. */
+	public static class Peaks {
+
+		private final double[] x;
+		private final double[] y;
+		private final int[] positions;
+		private final double[] prominences;
+
+		private Peaks(final double[] x, final double[] y, final int[] ranked, final double[] rankedProminences,
+				final boolean[] keep) {
+			this.x = x;
+			this.y = y;
+			int count = 0;
+			for (final boolean k : keep)
+				if (k)
+					count++;
+			positions = new int[count];
+			prominences = new double[count];
+			count = 0;
+			for (int r = 0; r < ranked.length; r++) {
+				if (!keep[r])
+					continue;
+				positions[count] = ranked[r];
+				prominences[count++] = rankedProminences[r];
+			}
+		}
+
+		/** @return the number of peaks */
+		public int size() {
+			return positions.length;
+		}
+
+		/** @return the indices of peaks in the series */
+		public int[] getPositions() {
+			return positions.clone();
+		}
+
+		/** @return the prominences of peaks (always positive) */
+		public double[] getProminences() {
+			return prominences.clone();
+		}
+
+		/** @return the x-values of peaks (sample indices if x was not specified) */
+		public double[] getXValues() {
+			final double[] values = new double[positions.length];
+			for (int i = 0; i < values.length; i++)
+				values[i] = xOf(x, positions[i]);
+			return values;
+		}
+
+		/** @return the y-values of peaks */
+		public double[] getYValues() {
+			final double[] values = new double[positions.length];
+			for (int i = 0; i < values.length; i++)
+				values[i] = y[positions[i]];
+			return values;
+		}
+	}
+
+	/** A series of a table (or plot), and its detected peaks. */
+	public static class Series {
+
+		private final String xHeading;
+		private final String yHeading;
+		private final double[] x;
+		private final double[] y;
+		private Peaks maxima;
+		private Peaks minima;
+
+		private Series(final String xHeading, final String yHeading, final double[] x, final double[] y) {
+			this.xHeading = xHeading;
+			this.yHeading = yHeading;
+			this.x = x;
+			this.y = y;
+		}
+
+		/** @return the heading of the y-values */
+		public String getHeading() {
+			return yHeading;
+		}
+
+		/** @return the heading of the x-values, or {@code null} if indexed by row */
+		public String getXHeading() {
+			return xHeading;
+		}
+
+		/** @return the x-values, or {@code null} if indexed by row */
+		public double[] getXValues() {
+			return x;
+		}
+
+		/** @return the y-values */
+		public double[] getYValues() {
+			return y;
+		}
+
+		/** @return the detected maxima */
+		public Peaks getMaxima() {
+			return maxima;
+		}
+
+		/** @return the detected minima */
+		public Peaks getMinima() {
+			return minima;
+		}
+	}
+
+}
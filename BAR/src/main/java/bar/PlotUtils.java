@@ -12,23 +12,36 @@ package bar;
 
 import java.awt.Graphics2D;
 import java.awt.Rectangle;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
-import org.apache.batik.dom.GenericDOMImplementation;
-import org.apache.batik.svggen.SVGGraphics2D;
 import org.jfree.chart.JFreeChart;
-import org.w3c.dom.DOMImplementation;
 
 import com.itextpdf.awt.DefaultFontMapper;
+import com.itextpdf.awt.FontMapper;
 import com.itextpdf.text.Document;
 import com.itextpdf.text.DocumentException;
 import com.itextpdf.text.pdf.PdfContentByte;
+import com.itextpdf.text.pdf.PdfReader;
 import com.itextpdf.text.pdf.PdfTemplate;
 import com.itextpdf.text.pdf.PdfWriter;
 
@@ -39,18 +52,18 @@ import ij.io.SaveDialog;
  * Provides utility methods that improve ImageJ's plotting capabilities. Most
  * methods require third-party libraries bundled with Fiji, including
  * <a href= "http://javadoc.imagej.net/JFreeChart/" target="_blank">JFreeChart
- * </a>, <a href= "http://itextpdf.com" target="_blank">iText </a> and
- * <a href= "http://xmlgraphics.apache.org/batik/" target="_blank">Batik</a>.
+ * </a> and <a href= "http://itextpdf.com" target="_blank">iText </a>.
  * <p>
  * Warning: the API remains quite immature and may change in future releases
  */
 public class PlotUtils {
 
 	/**
-	 * Exports a JFreeChart to a SVG file using the
-	 * <a href= "http://xmlgraphics.apache.org/batik/" target="_blank">Batik SVG
-	 * Toolkit</a>, bundled with Fiji. This method is taken from
-	 * {@literal http://dolf.trieschnigg.nl/jfreechart/}
+	 * Exports a JFreeChart to a SVG file. The SVG document is streamed to the
+	 * file as the chart is drawn (see {@link StreamingSVGGraphics2D}), so that
+	 * charts with many data points can be exported with little memory.
+	 * Consecutive shapes sharing the same style (e.g., the markers of a
+	 * series) are merged into a single path.
 	 *
 	 * @param chart
 	 *            the <a href= "http://javadoc.imagej.net/JFreeChart/" target=
@@ -69,32 +82,22 @@ public class PlotUtils {
 	public static void exportChartAsSVG(final JFreeChart chart, final Rectangle bounds, final File file)
 			throws IOException {
 
-		// Get a DOMImplementation and create an XML document
-		final DOMImplementation domImpl = GenericDOMImplementation.getDOMImplementation();
-		final org.w3c.dom.Document document = domImpl.createDocument(null, "svg", null);
+		try (final Writer out = new BufferedWriter(
+				new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8), 1 << 16)) {
+			final StreamingSVGGraphics2D g2 = new StreamingSVGGraphics2D(out, bounds.width, bounds.height);
 
-		// Create an instance of the SVG Generator
-		final SVGGraphics2D svgGenerator = new SVGGraphics2D(document);
-
-		// draw the chart in the SVG generator
-		chart.draw(svgGenerator, bounds);
-
-		// Write svg file
-		final OutputStream outputStream = new FileOutputStream(file);
-		final Writer out = new OutputStreamWriter(outputStream, "UTF-8");
-		svgGenerator.stream(out, true /* use css */);
-		outputStream.flush();
-		outputStream.close();
+			// draw the chart at the origin of the document
+			g2.translate(-bounds.x, -bounds.y);
+			chart.draw(g2, bounds);
+			g2.finish();
+		}
 	}
 
 	/**
-	 * Exports the specified JFreeChart to a SVG file using the
-	 * <a href="http://xmlgraphics.apache.org/batik/" target="_blank">Batik SVG
-	 * Toolkit</a>, , assumed to be installed as third party-library in the
-	 * ImageJ {@code jars} directory (Batik is bundled with Fiji). The
-	 * destination file is specified by the user in a save dialog prompt. An
-	 * error message is displayed if the file could not be saved. Does nothing
-	 * if {@code chart} is {@code null}.
+	 * Exports the specified JFreeChart to a SVG file. The destination file is
+	 * specified by the user in a save dialog prompt. An error message is
+	 * displayed if the file could not be saved. Does nothing if {@code chart}
+	 * is {@code null}.
 	 *
 	 * @param chart
 	 *            the <a href="http://javadoc.imagej.net/JFreeChart/" target=
@@ -129,20 +132,27 @@ public class PlotUtils {
 	 */
 	public static void exportChartAsPDF(final JFreeChart chart, final Rectangle bounds, final File f)
 			throws FileNotFoundException, DocumentException {
+		final OutputStream out = new BufferedOutputStream(new FileOutputStream(f));
+		writePDF(chart, bounds, new DefaultFontMapper(), out);
+	}
+
+	/** Draws a chart as the single page of a PDF document, closing the stream */
+	private static void writePDF(final JFreeChart chart, final Rectangle bounds, final FontMapper fontMapper,
+			final OutputStream out) throws DocumentException {
 
 		final int margin = 0; // page margins
 
 		// Initialize writer
 		final Document document = new Document(new com.itextpdf.text.Rectangle(bounds.width, bounds.height), margin,
 				margin, margin, margin);
-		final PdfWriter writer = PdfWriter.getInstance(document, new FileOutputStream(f));
+		final PdfWriter writer = PdfWriter.getInstance(document, out);
 
 		document.open();
 		final PdfContentByte cb = writer.getDirectContent();
 		final PdfTemplate tp = cb.createTemplate(bounds.width, bounds.height);
 
 		// Draw the chart. Release resources upon completion
-		final Graphics2D g2 = tp.createGraphics(bounds.width, bounds.height, new DefaultFontMapper());
+		final Graphics2D g2 = tp.createGraphics(bounds.width, bounds.height, fontMapper);
 		chart.draw(g2, bounds);
 		g2.dispose();
 
@@ -152,6 +162,140 @@ public class PlotUtils {
 		document.close();
 	}
 
+	/**
+	 * Exports a list of JFreeCharts to a single PDF file using
+	 * <a href="http://itextpdf.com" target="_blank">iText</a>, one chart per
+	 * page. Charts are drawn in parallel and pages are written in list order
+	 * as soon as they become available, so that only a few pages are kept in
+	 * memory at any time. A single font mapper is shared by all pages.
+	 * {@code null} charts are skipped. Drawing a chart updates its state, so
+	 * each task draws a clone of its chart. Charts that cannot be cloned are
+	 * drawn one at a time, while holding their lock.
+	 *
+	 * @param charts
+	 *            the <a href="http://javadoc.imagej.net/JFreeChart/" target=
+	 *            "_blank">JFreeCharts </a> to export.
+	 * @param bounds
+	 *            the Rectangle delimiting the boundaries within which each
+	 *            chart should be drawn. It also defines the page size.
+	 * @param f
+	 *            the output (destination) file. Nothing is written if
+	 *            {@code charts} has no (non-null) charts.
+	 * @throws IOException
+	 *             if writing to output file fails.
+	 * @throws DocumentException
+	 *             if a chart could not be drawn
+	 * @see #exportChartsAsPDF(List, Rectangle)
+	 * @see #exportChartAsPDF(JFreeChart, Rectangle, File)
+	 */
+	public static void exportChartsAsPDF(final List<JFreeChart> charts, final Rectangle bounds, final File f)
+			throws IOException, DocumentException {
+
+		final List<JFreeChart> pages = new ArrayList<>();
+		for (final JFreeChart chart : charts) {
+			if (chart != null)
+				pages.add(chart);
+		}
+		if (pages.isEmpty())
+			return;
+
+		final FontMapper fontMapper = new DefaultFontMapper();
+		final int nThreads = Math.max(1, Math.min(pages.size(), Runtime.getRuntime().availableProcessors()));
+		final ExecutorService executor = Executors.newFixedThreadPool(nThreads);
+		final Deque<Future<byte[]>> queue = new ArrayDeque<>();
+		final Document document = new Document(new com.itextpdf.text.Rectangle(bounds.width, bounds.height), 0, 0,
+				0, 0);
+		try {
+			final PdfWriter writer = PdfWriter.getInstance(document,
+					new BufferedOutputStream(new FileOutputStream(f)));
+			document.open();
+			int next = 0;
+			for (int page = 0; page < pages.size(); page++) {
+
+				// Keep a few pages ahead of the one being written
+				while (next < pages.size() && queue.size() < 2 * nThreads) {
+					final JFreeChart chart = pages.get(next++);
+					queue.add(executor.submit(new Callable<byte[]>() {
+						@Override
+						public byte[] call() throws DocumentException {
+							final ByteArrayOutputStream out = new ByteArrayOutputStream();
+							try {
+								writePDF((JFreeChart) chart.clone(), bounds, fontMapper, out);
+							} catch (final CloneNotSupportedException exc) {
+								synchronized (chart) {
+									writePDF(chart, bounds, fontMapper, out);
+								}
+							}
+							return out.toByteArray();
+						}
+					}));
+				}
+
+				// Import the rendered page as a template of the final document
+				final PdfReader reader = new PdfReader(getPage(queue.remove()));
+				if (page > 0)
+					document.newPage();
+				writer.getDirectContent().addTemplate(writer.getImportedPage(reader, 1), 0, 0);
+				writer.freeReader(reader);
+				reader.close();
+				IJ.showProgress(page + 1, pages.size());
+			}
+		} finally {
+			executor.shutdownNow();
+			if (document.isOpen())
+				document.close();
+		}
+	}
+
+	private static byte[] getPage(final Future<byte[]> future) throws IOException, DocumentException {
+		try {
+			return future.get();
+		} catch (final InterruptedException exc) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Export interrupted");
+		} catch (final ExecutionException exc) {
+			final Throwable cause = exc.getCause();
+			if (cause instanceof DocumentException)
+				throw (DocumentException) cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			throw new IOException(cause);
+		}
+	}
+
+	/**
+	 * Exports a list of JFreeCharts to a single PDF file, one chart per page
+	 * (see {@link #exportChartsAsPDF(List, Rectangle, File)}). The destination
+	 * file is specified by the user in a save dialog prompt. An error message
+	 * is displayed if the file could not be saved. Does nothing if
+	 * {@code charts} has no (non-null) charts.
+	 *
+	 * @param charts
+	 *            the <a href="http://javadoc.imagej.net/JFreeChart/" target=
+	 *            "_blank">JFreeCharts </a> to export.
+	 * @param bounds
+	 *            the Rectangle delimiting the boundaries within which each
+	 *            chart should be drawn.
+	 * @see #exportChartsAsPDF(List, Rectangle, File)
+	 */
+	public static void exportChartsAsPDF(final List<JFreeChart> charts, final Rectangle bounds) {
+		if (charts == null || charts.isEmpty())
+			return;
+		final File saveFile = promptForFile("Charts", ".pdf");
+		if (saveFile == null)
+			return;
+		try {
+			exportChartsAsPDF(charts, bounds, saveFile);
+			IJ.showStatus("Graphs saved, " + saveFile.getAbsolutePath());
+		} catch (final Exception e) {
+			IJ.error("Error", "Saving to " + saveFile.getAbsolutePath() + " failed");
+			if (IJ.debugMode)
+				IJ.handleException(e);
+		} finally {
+			IJ.showProgress(1, 1);
+		}
+	}
+
 	/**
 	 * Exports the specified JFreeChart to a PDF file using
 	 * <a href="http://itextpdf.com" target="_blank">iText</a>, assumed to be
@@ -174,6 +318,71 @@ public class PlotUtils {
 		exportChart(chart, bounds, ".pdf");
 	}
 
+	/**
+	 * Exports a JFreeChart to a PNG or TIFF image, e.g., for publication. The
+	 * image is rendered in parallel tiles that are encoded as soon as they are
+	 * available, so that large (high-resolution) images can be exported
+	 * without holding the whole canvas in memory.
+	 *
+	 * @param chart
+	 *            the <a href= "http://javadoc.imagej.net/JFreeChart/" target=
+	 *            "_blank">JFreeChart </a> to export.
+	 * @param bounds
+	 *            the Rectangle delimiting the boundaries within which the chart
+	 *            should be drawn, in points (i.e., at 72 dpi).
+	 * @param dpi
+	 *            the resolution of the image, e.g., 600. The image is
+	 *            {@code bounds.width * dpi / 72} pixels wide.
+	 * @param file
+	 *            the output (destination) file. Its extension ({@code .png},
+	 *            {@code .tif} or {@code .tiff}) specifies the format.
+	 * @throws IOException
+	 *             if writing to output file fails.
+	 * @throws IllegalArgumentException
+	 *             if the format or the resolution are not valid
+	 * @see #exportChartAsImage(JFreeChart, Rectangle, double)
+	 */
+	public static void exportChartAsImage(final JFreeChart chart, final Rectangle bounds, final double dpi,
+			final File file) throws IOException {
+		new TiledRasterExporter(chart, bounds, dpi).export(file);
+	}
+
+	/**
+	 * Exports the specified JFreeChart to a PNG or TIFF image (see
+	 * {@link #exportChartAsImage(JFreeChart, Rectangle, double, File)}). The
+	 * destination file is specified by the user in a save dialog prompt, PNG
+	 * being the default format. An error message is displayed if the file
+	 * could not be saved. Does nothing if {@code chart} is {@code null}.
+	 *
+	 * @param chart
+	 *            the <a href= "http://javadoc.imagej.net/JFreeChart/" target=
+	 *            "_blank">JFreeChart </a> to export.
+	 * @param bounds
+	 *            the Rectangle delimiting the boundaries within which the chart
+	 *            should be drawn, in points (i.e., at 72 dpi).
+	 * @param dpi
+	 *            the resolution of the image, e.g., 600
+	 * @see #exportChartAsImage(JFreeChart, Rectangle, double, File)
+	 */
+	public static void exportChartAsImage(final JFreeChart chart, final Rectangle bounds, final double dpi) {
+		if (chart == null)
+			return;
+		final String defaultName = (chart.getTitle() == null) ? "Chart" : chart.getTitle().getText();
+		final File saveFile = promptForFile(defaultName, ".png");
+		if (saveFile == null)
+			return;
+		try {
+			exportChartAsImage(chart, bounds, dpi, saveFile);
+			IJ.showStatus("Graph saved, " + saveFile.getAbsolutePath());
+		} catch (final Exception e) {
+			IJ.error("Error", "Saving to " + saveFile.getAbsolutePath() + " failed");
+			if (IJ.debugMode)
+				IJ.handleException(e);
+		} finally {
+			IJ.showProgress(1, 1);
+		}
+	}
+
 	/**
 	 * Exports the specified JFreeChart to a SVG or PDF file. Destination file
 	 * is specified by the user in a save dialog prompt. An error message is
@@ -195,15 +404,9 @@ public class PlotUtils {
 		if (chart == null)
 			return;
 		final String defaultName = (chart.getTitle() == null) ? "Chart" : chart.getTitle().getText();
-		final SaveDialog sd = new SaveDialog("Export graph as...", defaultName, extension);
-		if (sd.getFileName() == null)
+		final File saveFile = promptForFile(defaultName, extension);
+		if (saveFile == null)
 			return;
-		final File saveFile = new File(sd.getDirectory(), sd.getFileName());
-		if ((saveFile != null) && saveFile.exists()) {
-			if (!IJ.showMessageWithCancel("Export graph...",
-					saveFile.getAbsolutePath() + " already exists.\nReplace it?"))
-				return;
-		}
 		try {
 			if (extension.toLowerCase().endsWith(".svg"))
 				exportChartAsSVG(chart, bounds, saveFile);
@@ -218,4 +421,23 @@ public class PlotUtils {
 		}
 	}
 
+	/**
+	 * Prompts the user for the destination of an exported graph, confirming
+	 * the replacement of existing files.
+	 *
+	 * @return the destination file or {@code null} if the user canceled
+	 */
+	private static File promptForFile(final String defaultName, final String extension) {
+		final SaveDialog sd = new SaveDialog("Export graph as...", defaultName, extension);
+		if (sd.getFileName() == null)
+			return null;
+		final File saveFile = new File(sd.getDirectory(), sd.getFileName());
+		if (saveFile.exists()) {
+			if (!IJ.showMessageWithCancel("Export graph...",
+					saveFile.getAbsolutePath() + " already exists.\nReplace it?"))
+				return null;
+		}
+		return saveFile;
+	}
+
 }
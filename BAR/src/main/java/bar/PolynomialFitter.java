@@ -0,0 +1,467 @@
+/*
+ * IJ BAR: https://github.com/tferr/Scripts
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation
+ * (http://www.gnu.org/licenses/gpl.txt).
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ */
+package bar;
+
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Fits polynomials to XY data by linear least squares. Since polynomials are
+ * linear in their coefficients, fits are solved directly (no iterative
+ * optimization) from the Householder QR decomposition of a Vandermonde matrix
+ * of centered and scaled x-values, which is far better conditioned than one of
+ * raw x-values.
+ * <p>
+ * The QR decomposition of the Vandermonde matrix of degree d contains those of
+ * all lower degrees, so a single decomposition yields the fits of all
+ * candidate degrees, which are then evaluated in parallel. The degree of 'best
+ * fit' can be selected by Akaike's or Bayesian information criterion, or by
+ * k-fold cross-validation (one decomposition per fold, folds processed in
+ * parallel).
+ *
+ * <pre>
+ * from bar import PolynomialFitter
+ * fitter = PolynomialFitter(x, y)
+ * best = fitter.fitBest(1, 20, PolynomialFitter.Criterion.BIC)
+ * print best.getDegree(), best.getRSquared(), best.getCoefficients()
+ * </pre>
+ */
+public class PolynomialFitter {
+
+	/** Criteria for the selection of the degree of 'best fit' */
+	public enum Criterion {
+		/** Akaike information criterion */
+		AIC,
+		/** Bayesian (Schwarz) information criterion: penalizes degree more */
+		BIC,
+		/** Mean squared prediction error of k-fold cross-validation */
+		CV
+	}
+
+	/** Relative column norm below which the Vandermonde matrix is deemed rank deficient */
+	private static final double RANK_TOLERANCE = 64 * Math.ulp(1.0);
+
+	/** Matrix size above which Householder reflections are applied in parallel */
+	private static final long PARALLEL_THRESHOLD = 1 << 16;
+
+	private final double[] x;
+	private final double[] y;
+	private final double center;
+	private final double scale;
+	private int folds = 10;
+
+	/**
+	 * Creates a fitter for the specified data. Pairs holding NaN values are
+	 * ignored.
+	 *
+	 * @param x
+	 *            the x-values
+	 * @param y
+	 *            the y-values
+	 * @throws IllegalArgumentException
+	 *             if arrays differ in length or no valid pairs exist
+	 */
+	public PolynomialFitter(final double[] x, final double[] y) {
+		if (x.length != y.length)
+			throw new IllegalArgumentException("X- and Y-values differ in length");
+		int n = 0;
+		for (int i = 0; i < x.length; i++)
+			if (!Double.isNaN(x[i]) && !Double.isNaN(y[i]))
+				n++;
+		if (n == 0)
+			throw new IllegalArgumentException("No valid data points");
+		this.x = new double[n];
+		this.y = new double[n];
+		double min = Double.POSITIVE_INFINITY;
+		double max = Double.NEGATIVE_INFINITY;
+		n = 0;
+		for (int i = 0; i < x.length; i++) {
+			if (Double.isNaN(x[i]) || Double.isNaN(y[i]))
+				continue;
+			this.x[n] = x[i];
+			this.y[n++] = y[i];
+			min = Math.min(min, x[i]);
+			max = Math.max(max, x[i]);
+		}
+		// x-values are mapped to [-1, 1]
+		center = (min + max) / 2;
+		scale = (max > min) ? (max - min) / 2 : 1;
+	}
+
+	/** @return the number of valid data points */
+	public int size() {
+		return x.length;
+	}
+
+	/**
+	 * Sets the number of folds used by cross-validation. Data points are
+	 * assigned to folds in an interleaved fashion (point i to fold i % k), so
+	 * that each fold spans the whole x-range of sorted data.
+	 */
+	public void setFolds(final int folds) {
+		if (folds < 2)
+			throw new IllegalArgumentException("At least 2 folds are required");
+		this.folds = folds;
+	}
+
+	/**
+	 * Fits a polynomial of the specified degree.
+	 *
+	 * @param degree
+	 *            the polynomial degree
+	 * @return the fit
+	 * @throws IllegalArgumentException
+	 *             if data has too few distinct x-values for the degree
+	 */
+	public Fit fit(final int degree) {
+		final Fit[] fits = fitAll(degree, degree, false);
+		if (fits[0] == null)
+			throw new IllegalArgumentException("Too few distinct x-values for a polynomial of degree " + degree);
+		return fits[0];
+	}
+
+	/**
+	 * Fits polynomials of all degrees in a range.
+	 *
+	 * @param minDegree
+	 *            the smallest degree
+	 * @param maxDegree
+	 *            the largest degree
+	 * @return the fits, indexed by {@code degree - minDegree}. Degrees that
+	 *         cannot be fitted (too few distinct x-values) are {@code null}
+	 */
+	public Fit[] fitAll(final int minDegree, final int maxDegree) {
+		return fitAll(minDegree, maxDegree, false);
+	}
+
+	/**
+	 * Retrieves the polynomial of 'best fit'. Degrees are capped so that at
+	 * least one residual degree of freedom remains.
+	 *
+	 * @param minDegree
+	 *            the smallest degree to consider
+	 * @param maxDegree
+	 *            the largest degree to consider
+	 * @param criterion
+	 *            the selection criterion. Ties favor the lowest degree
+	 * @return the best fit
+	 * @throws IllegalArgumentException
+	 *             if no degree in the range can be fitted
+	 */
+	public Fit fitBest(final int minDegree, final int maxDegree, final Criterion criterion) {
+		final int max = Math.min(maxDegree, x.length - 2);
+		Fit best = null;
+		if (max >= minDegree) {
+			for (final Fit fit : fitAll(minDegree, max, criterion == Criterion.CV)) {
+				if (fit != null && (best == null || fit.getScore(criterion) < best.getScore(criterion)))
+					best = fit;
+			}
+		}
+		if (best == null)
+			throw new IllegalArgumentException("No polynomial of degree " + minDegree + "-" + maxDegree
+					+ " can be fitted to " + x.length + " data points");
+		return best;
+	}
+
+	private Fit[] fitAll(final int minDegree, final int maxDegree, final boolean crossValidate) {
+		if (minDegree < 0 || maxDegree < minDegree)
+			throw new IllegalArgumentException("Invalid degree range: " + minDegree + "-" + maxDegree);
+		final int n = x.length;
+		final double[] t = scaled(x);
+		final QR qr = new QR(t, y, Math.min(maxDegree, n - 1));
+		final Fit[] fits = new Fit[maxDegree - minDegree + 1];
+		double sum = 0;
+		for (final double v : y)
+			sum += v;
+		final double mean = sum / n;
+		double tss = 0;
+		for (final double v : y)
+			tss += (v - mean) * (v - mean);
+		final double totalSS = tss;
+		IntStream.rangeClosed(minDegree, Math.min(maxDegree, qr.getRank() - 1)).parallel()
+				.forEach(new IntConsumer() {
+					@Override
+					public void accept(final int degree) {
+						final double[] coefficients = qr.solve(degree);
+						double rss = 0;
+						for (int i = 0; i < n; i++) {
+							final double residual = y[i] - horner(coefficients, t[i]);
+							rss += residual * residual;
+						}
+						fits[degree - minDegree] = new Fit(coefficients, center, scale, n, rss, totalSS);
+					}
+				});
+		if (crossValidate)
+			crossValidate(t, fits, minDegree);
+		return fits;
+	}
+
+	/**
+	 * Computes the k-fold cross-validation error of each fit. Folds are
+	 * decomposed (once each, for all degrees) in parallel.
+	 */
+	private void crossValidate(final double[] t, final Fit[] fits, final int minDegree) {
+		final int n = t.length;
+		final int k = Math.min(folds, n);
+		final int maxDegree = minDegree + fits.length - 1;
+		final double[][] errors = new double[k][fits.length];
+		IntStream.range(0, k).parallel().forEach(new IntConsumer() {
+			@Override
+			public void accept(final int fold) {
+				final int testSize = (n - fold + k - 1) / k;
+				final double[] trainT = new double[n - testSize];
+				final double[] trainY = new double[n - testSize];
+				for (int i = 0, j = 0; i < n; i++) {
+					if (i % k != fold) {
+						trainT[j] = t[i];
+						trainY[j++] = y[i];
+					}
+				}
+				final QR qr = new QR(trainT, trainY, Math.min(maxDegree, trainT.length - 1));
+				for (int degree = minDegree; degree <= maxDegree; degree++) {
+					if (degree >= qr.getRank()) {
+						errors[fold][degree - minDegree] = Double.POSITIVE_INFINITY;
+						continue;
+					}
+					final double[] coefficients = qr.solve(degree);
+					double sse = 0;
+					for (int i = fold; i < n; i += k) {
+						final double residual = y[i] - horner(coefficients, t[i]);
+						sse += residual * residual;
+					}
+					errors[fold][degree - minDegree] = sse;
+				}
+			}
+		});
+		for (int d = 0; d < fits.length; d++) {
+			if (fits[d] == null)
+				continue;
+			double sse = 0;
+			for (int fold = 0; fold < k; fold++)
+				sse += errors[fold][d];
+			fits[d].cvError = sse / n;
+		}
+	}
+
+	private double[] scaled(final double[] values) {
+		final double[] t = new double[values.length];
+		for (int i = 0; i < t.length; i++)
+			t[i] = (values[i] - center) / scale;
+		return t;
+	}
+
+	private static double horner(final double[] coefficients, final double t) {
+		double value = 0;
+		for (int j = coefficients.length - 1; j >= 0; j--)
+			value = value * t + coefficients[j];
+		return value;
+	}
+
+	/**
+	 * Householder QR decomposition of the Vandermonde matrix
+	 * {@code [1 t t^2 ... t^maxDegree]}, with the same reflections applied to
+	 * y. The leading columns of the decomposition are the decompositions of
+	 * all lower degrees, so that the fit of any degree up to the numerical rank
+	 * is obtained by back-substitution alone.
+	 */
+	private static class QR {
+
+		/** Columns, holding R above and on the diagonal after decomposition */
+		private final double[][] a;
+		private final double[] qty;
+		private int rank;
+
+		private QR(final double[] t, final double[] y, final int maxDegree) {
+			final int n = t.length;
+			final int p = Math.max(0, maxDegree + 1);
+			a = new double[p][n];
+			for (int j = 0; j < p; j++) {
+				for (int i = 0; i < n; i++)
+					a[j][i] = (j == 0) ? 1 : a[j - 1][i] * t[i];
+			}
+			qty = y.clone();
+			final double[] v = new double[n];
+			rank = p;
+			for (int j = 0; j < p; j++) {
+				final double[] col = a[j];
+				double originalNorm = 0;
+				for (int i = 0; i < n; i++)
+					originalNorm += col[i] * col[i];
+				double norm = 0;
+				for (int i = j; i < n; i++)
+					norm += col[i] * col[i];
+				norm = Math.sqrt(norm);
+				if (norm <= RANK_TOLERANCE * Math.sqrt(originalNorm)) {
+					rank = j; // higher degrees are not identifiable
+					break;
+				}
+				final double alpha = (col[j] > 0) ? -norm : norm;
+				double vNorm2 = 0;
+				for (int i = j; i < n; i++) {
+					v[i] = (i == j) ? col[j] - alpha : col[i];
+					vNorm2 += v[i] * v[i];
+				}
+				final int from = j;
+				final double norm2 = vNorm2;
+				final IntStream columns = IntStream.range(j + 1, p);
+				((long) n * (p - j - 1) >= PARALLEL_THRESHOLD ? columns.parallel() : columns)
+						.forEach(new IntConsumer() {
+							@Override
+							public void accept(final int k) {
+								reflect(v, norm2, a[k], from, n);
+							}
+						});
+				reflect(v, vNorm2, qty, j, n);
+				col[j] = alpha;
+			}
+		}
+
+		private static void reflect(final double[] v, final double vNorm2, final double[] target, final int from,
+				final int n) {
+			double dot = 0;
+			for (int i = from; i < n; i++)
+				dot += v[i] * target[i];
+			final double f = 2 * dot / vNorm2;
+			for (int i = from; i < n; i++)
+				target[i] -= f * v[i];
+		}
+
+		/** @return the number of identifiable coefficients */
+		private int getRank() {
+			return rank;
+		}
+
+		/** @return the coefficients (in scaled x) of the specified degree */
+		private double[] solve(final int degree) {
+			final double[] b = new double[degree + 1];
+			for (int j = degree; j >= 0; j--) {
+				double s = qty[j];
+				for (int k = j + 1; k <= degree; k++)
+					s -= a[k][j] * b[k];
+				b[j] = s / a[j][j];
+			}
+			return b;
+		}
+	}
+
+	/** A polynomial fit, and its goodness-of-fit statistics. */
+	public static class Fit {
+
+		private final double[] scaledCoefficients;
+		private final double center;
+		private final double scale;
+		private final int n;
+		private final double rss;
+		private final double tss;
+		private double cvError = Double.NaN;
+
+		private Fit(final double[] scaledCoefficients, final double center, final double scale, final int n,
+				final double rss, final double tss) {
+			this.scaledCoefficients = scaledCoefficients;
+			this.center = center;
+			this.scale = scale;
+			this.n = n;
+			this.rss = rss;
+			this.tss = tss;
+		}
+
+		/** @return the polynomial degree */
+		public int getDegree() {
+			return scaledCoefficients.length - 1;
+		}
+
+		/**
+		 * @return the coefficients of the polynomial in x, lowest order first,
+		 *         i.e., {@code y = c[0] + c[1]x + c[2]x^2 + ...}. Note that for
+		 *         high degrees these can be large and of alternating sign:
+		 *         {@link #value(double)} is more accurate than evaluating them
+		 */
+		public double[] getCoefficients() {
+			// Horner expansion of p((x - center) / scale)
+			final int degree = getDegree();
+			final double[] c = new double[degree + 1];
+			c[0] = scaledCoefficients[degree];
+			for (int j = degree - 1; j >= 0; j--) {
+				final int order = degree - j; // current order of c
+				for (int i = order; i >= 0; i--)
+					c[i] = ((i > 0 ? c[i - 1] : 0) - center * c[i]) / scale;
+				c[0] += scaledCoefficients[j];
+			}
+			return c;
+		}
+
+		/** @return the fitted value at x */
+		public double value(final double x) {
+			return horner(scaledCoefficients, (x - center) / scale);
+		}
+
+		/** @return the fitted values at each x */
+		public double[] values(final double[] x) {
+			final double[] values = new double[x.length];
+			for (int i = 0; i < x.length; i++)
+				values[i] = value(x[i]);
+			return values;
+		}
+
+		/** @return the residual sum of squares */
+		public double getRSS() {
+			return rss;
+		}
+
+		/** @return the coefficient of determination */
+		public double getRSquared() {
+			return (tss > 0) ? 1 - rss / tss : 0;
+		}
+
+		/** @return the coefficient of determination, adjusted for degree */
+		public double getAdjustedRSquared() {
+			final int dof = n - getDegree() - 1;
+			return (dof > 0) ? 1 - (1 - getRSquared()) * (n - 1) / dof : Double.NaN;
+		}
+
+		/**
+		 * @return Akaike information criterion (least squares form, up to a
+		 *         constant): {@code n ln(RSS/n) + 2k}, with k coefficients
+		 */
+		public double getAIC() {
+			return n * Math.log(rss / n) + 2 * (getDegree() + 1);
+		}
+
+		/**
+		 * @return Bayesian information criterion (least squares form, up to a
+		 *         constant): {@code n ln(RSS/n) + k ln(n)}, with k coefficients
+		 */
+		public double getBIC() {
+			return n * Math.log(rss / n) + (getDegree() + 1) * Math.log(n);
+		}
+
+		/**
+		 * @return the mean squared prediction error of cross-validation, or NaN
+		 *         if not computed
+		 */
+		public double getCVError() {
+			return cvError;
+		}
+
+		/** @return the value of the criterion (lower is better) */
+		public double getScore(final Criterion criterion) {
+			switch (criterion) {
+			case AIC:
+				return getAIC();
+			case BIC:
+				return getBIC();
+			default:
+				return cvError;
+			}
+		}
+	}
+
+}
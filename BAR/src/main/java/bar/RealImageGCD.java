@@ -0,0 +1,72 @@
+/*
+ * IJ BAR: https://github.com/tferr/Scripts
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation
+ * (http://www.gnu.org/licenses/gpl.txt).
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ */
+package bar;
+
+import net.imglib2.Cursor;
+import net.imglib2.IterableInterval;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.Img;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.real.DoubleType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+
+import org.scijava.ItemIO;
+import org.scijava.plugin.Attr;
+import org.scijava.plugin.Parameter;
+import org.scijava.plugin.Plugin;
+
+/**
+ * Computes the pixel-wise greatest common divisor of two images of equal
+ * dimensions. Results are identical to those of {@link DefaultGCD}.
+ */
+@Plugin(type = BAR.GCD.class, name = BAR.GCD.NAME, attrs = { @Attr(name = "aliases", value = BAR.GCD.ALIASES) })
+public class RealImageGCD<T extends RealType<T>, U extends RealType<U>> extends AbstractChunkedOp
+		implements BAR.GCD {
+
+	// -- Inputs --
+
+	@Parameter
+	private RandomAccessibleInterval<T> a;
+
+	@Parameter
+	private RandomAccessibleInterval<U> b;
+
+	// -- Outputs --
+
+	@Parameter(type = ItemIO.OUTPUT)
+	private Img<DoubleType> result;
+
+	@Override
+	public void run() {
+		if (!Intervals.equalDimensions(a, b))
+			throw new IllegalArgumentException("Inputs differ in dimensions");
+		final Img<DoubleType> gcds = ops().create().img(a, new DoubleType());
+		// flat iteration order is identical for inputs and output
+		final IterableInterval<T> iterA = Views.flatIterable(a);
+		final IterableInterval<U> iterB = Views.flatIterable(b);
+		final IterableInterval<DoubleType> iterOut = Views.flatIterable(gcds);
+		forEachChunk(iterA.size(), new Chunk() {
+			@Override
+			public void execute(final long start, final long end) {
+				final Cursor<T> ca = iterA.cursor();
+				final Cursor<U> cb = iterB.cursor();
+				final Cursor<DoubleType> co = iterOut.cursor();
+				ca.jumpFwd(start);
+				cb.jumpFwd(start);
+				co.jumpFwd(start);
+				for (long i = start; i < end; i++)
+					co.next().set(DefaultGCD.computeGCD(ca.next().getRealDouble(), cb.next().getRealDouble()));
+			}
+		});
+		result = gcds;
+	}
+}
@@ -0,0 +1,279 @@
+/*
+ * IJ BAR: https://github.com/tferr/Scripts
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation
+ * (http://www.gnu.org/licenses/gpl.txt).
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ */
+package bar;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.security.CodeSource;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Locates and reads BAR resources (scripts, macros, tools, etc.) without
+ * repeatedly scanning the classpath. The index of resource paths is built
+ * once (by {@link BARService} on startup) from the BAR jar, or from the
+ * classes directory when running from an IDE. Lookups of resources outside
+ * the index fall back to a classpath scan, whose result is then remembered.
+ * <p>
+ * Text resources are read as UTF-8 through NIO channels and kept in a
+ * bounded, least-recently-used cache. Cached files on the local file system
+ * are reread if modified.
+ */
+public class ResourceIndex {
+
+	/** The maximum number of characters held by the text cache */
+	public static final int MAX_CACHED_CHARS = 1 << 22;
+
+	private static final String SCRIPTS_DIR = "scripts/BAR/";
+	private static final Map<String, URL> INDEX = new ConcurrentHashMap<>();
+	private static volatile boolean built;
+
+	private static final LinkedHashMap<String, CachedText> TEXT_CACHE = new LinkedHashMap<>(16, 0.75f, true);
+	private static long cachedChars;
+
+	private ResourceIndex() {
+		// prevent instantiation of utility class
+	}
+
+	/** A cached text resource */
+	private static class CachedText {
+		private final String text;
+		private final long lastModified;
+
+		private CachedText(final String text, final long lastModified) {
+			this.text = text;
+			this.lastModified = lastModified;
+		}
+	}
+
+	/**
+	 * Indexes all the resources packaged with BAR. Subsequent calls have no
+	 * effect.
+	 */
+	public static synchronized void build() {
+		if (built)
+			return;
+		try {
+			final CodeSource source = ResourceIndex.class.getProtectionDomain().getCodeSource();
+			if (source != null && source.getLocation() != null) {
+				final File location = new File(source.getLocation().toURI());
+				if (location.isDirectory())
+					indexDirectory(location, "");
+				else if (location.isFile())
+					indexJar(location);
+			}
+		} catch (final IOException | URISyntaxException | SecurityException | IllegalArgumentException exc) {
+			// lookups will fall back to classpath scans
+		}
+		built = true;
+	}
+
+	private static void indexJar(final File jar) throws IOException {
+		final String prefix = "jar:" + jar.toURI().toURL() + "!/";
+		try (JarFile jarFile = new JarFile(jar)) {
+			final Enumeration<JarEntry> entries = jarFile.entries();
+			while (entries.hasMoreElements()) {
+				final JarEntry entry = entries.nextElement();
+				if (!entry.isDirectory())
+					INDEX.put(entry.getName(), new URL(prefix + entry.getName()));
+			}
+		}
+	}
+
+	private static void indexDirectory(final File dir, final String relativePath) throws MalformedURLException {
+		final File[] files = dir.listFiles();
+		if (files == null)
+			return;
+		for (final File file : files) {
+			final String path = relativePath + file.getName();
+			if (file.isDirectory())
+				indexDirectory(file, path + "/");
+			else
+				INDEX.put(path, file.toURI().toURL());
+		}
+	}
+
+	/**
+	 * Retrieves the URL of a BAR resource.
+	 *
+	 * @param resourcePath
+	 *            the path of the resource, e.g.,
+	 *            {@code scripts/BAR/Data_Analysis/Distribution_Plotter.ijm}
+	 * @return the URL of the resource or {@code null} if it could not be
+	 *         found
+	 */
+	public static URL getURL(final String resourcePath) {
+		if (resourcePath == null)
+			return null;
+		final String path = (resourcePath.startsWith("/")) ? resourcePath.substring(1) : resourcePath;
+		if (!built)
+			build();
+		URL url = INDEX.get(path);
+		if (url == null) {
+			url = scanClasspath(path);
+			if (url != null)
+				INDEX.put(path, url);
+		}
+		return url;
+	}
+
+	/**
+	 * Finds a BAR script by name.
+	 *
+	 * @param name
+	 *            the script filename, e.g., {@code Distribution_Plotter.ijm},
+	 *            or its path relative to {@code scripts/BAR/}, e.g.,
+	 *            {@code Data_Analysis/Distribution_Plotter.ijm}. The extension
+	 *            may be omitted
+	 * @return the resource path of the script or {@code null} if no indexed
+	 *         script matches name. The first match (in alphabetical order) is
+	 *         returned if several scripts match
+	 */
+	public static String findScript(final String name) {
+		if (!built)
+			build();
+		final String path = name.replace('\\', '/');
+		if (INDEX.containsKey(path))
+			return path;
+		final String suffix = "/" + ((path.startsWith("/")) ? path.substring(1) : path);
+		final TreeSet<String> matches = new TreeSet<>();
+		final TreeSet<String> extensionlessMatches = new TreeSet<>();
+		for (final String key : INDEX.keySet()) {
+			if (!key.startsWith(SCRIPTS_DIR))
+				continue;
+			if (key.endsWith(suffix))
+				matches.add(key);
+			final int dot = key.lastIndexOf('.');
+			if (dot > 0 && key.substring(0, dot).endsWith(suffix))
+				extensionlessMatches.add(key);
+		}
+		if (!matches.isEmpty())
+			return matches.first();
+		return (extensionlessMatches.isEmpty()) ? null : extensionlessMatches.first();
+	}
+
+	/** Finds a resource in the classpath, giving preference to BAR's */
+	private static URL scanClasspath(final String resourcePath) {
+		final ClassLoader loader = Thread.currentThread().getContextClassLoader();
+		URL resource = null;
+		try {
+			final Enumeration<URL> resources = loader.getResources(resourcePath);
+			while (resources.hasMoreElements()) {
+				resource = resources.nextElement();
+				final String path = urlPath(resource);
+				if (path == null)
+					continue;
+				if (path.contains("BAR"))
+					return resource;
+			}
+		} catch (final IOException exc) {
+			// proceed with return null;
+		}
+		return resource;
+	}
+
+	private static String urlPath(final URL url) {
+		try {
+			return url.toURI().toString();
+		} catch (final URISyntaxException exc) {
+			return null;
+		}
+	}
+
+	/**
+	 * Reads a text resource as UTF-8, using the text cache.
+	 *
+	 * @param url
+	 *            the resource URL
+	 * @return the resource contents
+	 * @throws IOException
+	 *             if resource could not be read
+	 */
+	public static String readText(final URL url) throws IOException {
+		final String key = url.toString();
+		final File file = toFile(url);
+		final long lastModified = (file == null) ? 0 : file.lastModified();
+		synchronized (TEXT_CACHE) {
+			final CachedText cached = TEXT_CACHE.get(key);
+			if (cached != null && cached.lastModified == lastModified)
+				return cached.text;
+		}
+		final String text = (file == null) ? decode(Channels.newChannel(url.openStream()), 8192)
+				: decode(FileChannel.open(file.toPath(), StandardOpenOption.READ), (int) file.length());
+		if (text.length() <= MAX_CACHED_CHARS / 4) {
+			synchronized (TEXT_CACHE) {
+				final CachedText previous = TEXT_CACHE.put(key, new CachedText(text, lastModified));
+				if (previous != null)
+					cachedChars -= previous.text.length();
+				cachedChars += text.length();
+				while (cachedChars > MAX_CACHED_CHARS) {
+					final Map.Entry<String, CachedText> eldest = TEXT_CACHE.entrySet().iterator().next();
+					cachedChars -= eldest.getValue().text.length();
+					TEXT_CACHE.remove(eldest.getKey());
+				}
+			}
+		}
+		return text;
+	}
+
+	/** Empties the text cache. */
+	public static void clearTextCache() {
+		synchronized (TEXT_CACHE) {
+			TEXT_CACHE.clear();
+			cachedChars = 0;
+		}
+	}
+
+	private static String decode(final ReadableByteChannel channel, final int sizeHint) throws IOException {
+		try {
+			ByteBuffer buffer = ByteBuffer.allocate(Math.max(sizeHint, 16) + 1);
+			while (channel.read(buffer) >= 0) {
+				if (!buffer.hasRemaining()) {
+					final ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+					buffer.flip();
+					larger.put(buffer);
+					buffer = larger;
+				}
+			}
+			buffer.flip();
+			return StandardCharsets.UTF_8.newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+					.onUnmappableCharacter(CodingErrorAction.REPLACE).decode(buffer).toString();
+		} finally {
+			channel.close();
+		}
+	}
+
+	private static File toFile(final URL url) {
+		if (!"file".equals(url.getProtocol()))
+			return null;
+		try {
+			return new File(url.toURI());
+		} catch (final URISyntaxException | IllegalArgumentException exc) {
+			return null;
+		}
+	}
+
+}
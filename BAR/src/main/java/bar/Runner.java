@@ -5,17 +5,34 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.io.StringReader;
+import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
 
 import net.imagej.ImageJ;
 
 import org.scijava.Context;
 import org.scijava.command.Command;
 import org.scijava.log.LogService;
+import org.scijava.module.ModuleService;
 import org.scijava.plugin.Parameter;
 import org.scijava.plugin.Plugin;
+import org.scijava.script.ScriptInfo;
 import org.scijava.script.ScriptModule;
 import org.scijava.script.ScriptService;
 import org.scijava.ui.UIService;
@@ -39,6 +56,9 @@ public class Runner {
 	@Parameter
 	private LogService logService;
 
+	@Parameter
+	private ModuleService moduleService;
+
 	@Parameter
 	private UIService uiService;
 
@@ -49,7 +69,7 @@ public class Runner {
 	private Boolean loaded;
 
 	@Parameter
-	private String exitStatus;
+	private volatile String exitStatus;
 
 	@Parameter
 	private URL lastLoadedURL;
@@ -60,6 +80,28 @@ public class Runner {
 	private static final String WAS_LOADED = "loaded";
 	private static final String IO_ERROR = "io error";
 	private static final String EXCEPTION = "exception";
+	private static final String TIMED_OUT = "timeout";
+
+	/**
+	 * Key of input maps holding the table to be returned by
+	 * {@link Utils#getTable()} when running headless, where the user cannot
+	 * be prompted for data. Its value can be a {@link ij.measure.ResultsTable},
+	 * a {@link File} or a file path. It is not passed to the script as an
+	 * input
+	 */
+	public static final String TABLE_INPUT = "BAR.table";
+
+	/** Threads waiting for scripts to complete, so that exit status is recorded */
+	private static final ExecutorService WAITERS = Executors.newCachedThreadPool(new ThreadFactory() {
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(final Runnable runnable) {
+			final Thread thread = new Thread(runnable, "BAR Runner-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
 
 	/** Default constructor-based dependency injection */
 	public Runner(final Context context) {
@@ -80,6 +122,8 @@ public class Runner {
 			scriptService = context.getService(ScriptService.class);
 		if (logService == null)
 			logService = context.getService(LogService.class);
+		if (moduleService == null)
+			moduleService = context.getService(ModuleService.class);
 		if (uiService == null)
 			uiService = context.getService(UIService.class);
 		setSilent(silent);
@@ -92,14 +136,223 @@ public class Runner {
 		runner.runScript("Data_Analysis", "Distribution_Plotter.ijm");
 	}
 
+	/**
+	 * Runs a script from a URL. Compiled scripts are cached (see
+	 * {@link ScriptCache}), so that repeated runs of the same script skip
+	 * parsing and compilation.
+	 */
 	private void runScript(final URL url, final String filename, final Map<String, Object> inputMap) {
-		try {
-			runScript(url.openStream(), filename, inputMap);
-			lastLoadedURL = url;
-		} catch (final IOException exc) {
+		final ScriptMetrics.Call call = ScriptMetrics.getInstance().begin(filename);
+		track(submit(url, filename, inputMap, call), filename, 0, null, call);
+	}
+
+	/**
+	 * Submits a script for execution, returning null if it could not be
+	 * loaded. Loading, compilation and execution are measured by {@code call}.
+	 */
+	private Future<ScriptModule> submit(final URL url, final String filename, final Map<String, Object> inputMap,
+			final ScriptMetrics.Call call) {
+		if (url == null) {
+			error("Could not find " + filename, IO_ERROR);
+			call.finish(IO_ERROR);
+			return null;
+		}
+		call.start();
+		final String contents = readContents(url, false);
+		call.loaded();
+		if (contents == null) {
 			error("Could not run " + url.toString(), IO_ERROR);
-			exc.printStackTrace();
+			call.finish(IO_ERROR);
+			return null;
+		}
+		lastLoadedURL = url;
+		call.start();
+		final ScriptModule module = ScriptCache.createModule(context, url, filename, contents);
+		if (module != null)
+			call.compiled();
+		return run((module == null) ? new MeteredScriptModule(new ScriptInfo(context, filename,
+				new StringReader(contents))) : module, module == null, inputMap, call);
+	}
+
+	private Future<ScriptModule> submit(final InputStream in, final String filename,
+			final Map<String, Object> inputMap, final ScriptMetrics.Call call) {
+		if (in == null) {
+			error("Could not find " + filename, IO_ERROR);
+			call.finish(IO_ERROR);
+			return null;
+		}
+		final Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8);
+		setLoaded(true);
+		return run(new MeteredScriptModule(new ScriptInfo(context, filename, reader)), true, inputMap, call);
+	}
+
+	/** Runs a script module whose execution is measured by {@code call} */
+	private Future<ScriptModule> run(final ScriptModule module, final boolean inject,
+			final Map<String, Object> inputMap, final ScriptMetrics.Call call) {
+		if (inject)
+			context.inject(module);
+		Map<String, Object> inputs = inputMap;
+		if (module instanceof MeteredScriptModule) {
+			((MeteredScriptModule) module).setCall(call);
+			if (inputMap != null && inputMap.containsKey(TABLE_INPUT)) {
+				inputs = new HashMap<>(inputMap);
+				((MeteredScriptModule) module).setTable(inputs.remove(TABLE_INPUT));
+			}
 		}
+		return moduleService.run(module, true, inputs);
+	}
+
+	/**
+	 * Waits (in a background thread) for a submitted script to complete,
+	 * recording its exit status in this runner and in {@link ScriptMetrics}.
+	 *
+	 * @return the future completed with the script module. Cancelling it
+	 *         interrupts the script
+	 */
+	private CompletableFuture<ScriptModule> track(final Future<ScriptModule> fsm, final String filename,
+			final long timeout, final TimeUnit unit, final ScriptMetrics.Call call) {
+		final CompletableFuture<ScriptModule> result = new CompletableFuture<>();
+		if (fsm == null) {
+			result.completeExceptionally(new IOException("Could not load " + filename));
+			return result;
+		}
+		result.whenComplete(new BiConsumer<ScriptModule, Throwable>() {
+			@Override
+			public void accept(final ScriptModule module, final Throwable exc) {
+				if (result.isCancelled() && fsm.cancel(true))
+					setStatus(WAS_CANCELED, call);
+			}
+		});
+		WAITERS.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					final ScriptModule module = (unit == null) ? fsm.get() : fsm.get(timeout, unit);
+					setStatus(WAS_DONE, call);
+					result.complete(module);
+				} catch (final CancellationException exc) {
+					setStatus(WAS_CANCELED, call);
+					result.cancel(false);
+				} catch (final TimeoutException exc) {
+					fsm.cancel(true);
+					setStatus(TIMED_OUT, call);
+					result.completeExceptionally(exc);
+				} catch (final ExecutionException exc) {
+					setStatus(EXCEPTION, call);
+					result.completeExceptionally(exc.getCause());
+				} catch (final InterruptedException exc) {
+					fsm.cancel(true);
+					setStatus(WAS_CANCELED, call);
+					result.cancel(false);
+				}
+			}
+		});
+		return result;
+	}
+
+	/** Locates a BAR resource, or a local file if path is not a BAR resource */
+	private static URL locate(final String path) {
+		final URL url = Utils.getBARresource(path);
+		if (url != null)
+			return url;
+		final File file = new File(path);
+		try {
+			return (file.isFile()) ? file.toURI().toURL() : null;
+		} catch (final MalformedURLException exc) {
+			return null;
+		}
+	}
+
+	/**
+	 * Runs a (JARified) BAR script asynchronously.
+	 *
+	 * @param path
+	 *            the path of the BAR script to be executed, e.g,
+	 *            {@code scripts/BAR/Data_Analysis/Distribution_Plotter.ijm}.
+	 *            Paths that are not BAR resources are looked up in the local
+	 *            file system
+	 * @param inputMap
+	 *            see {@link ScriptService#run(String, Reader, boolean, Map)}
+	 * @return the future completed with the script module once the script
+	 *         finishes. The future completes exceptionally if the script could
+	 *         not be loaded. Cancelling the future interrupts the script,
+	 *         which is expected to stop cooperatively, e.g., by checking
+	 *         {@link Thread#isInterrupted()}
+	 */
+	public CompletableFuture<ScriptModule> runScriptAsync(final String path, final Map<String, Object> inputMap) {
+		final ScriptMetrics.Call call = ScriptMetrics.getInstance().begin(path);
+		return track(submit(locate(path), path, inputMap, call), path, 0, null, call);
+	}
+
+	/**
+	 * Runs a (JARified) BAR script asynchronously, cancelling it if it does
+	 * not complete in time.
+	 *
+	 * @param path
+	 *            the path of the BAR script to be executed
+	 * @param inputMap
+	 *            see {@link ScriptService#run(String, Reader, boolean, Map)}
+	 * @param timeout
+	 *            the maximum time to wait for the script to complete
+	 * @param unit
+	 *            the time unit of the timeout argument
+	 * @return the future completed with the script module. It completes
+	 *         exceptionally with a {@link TimeoutException} if the script
+	 *         timed out
+	 * @see #runScriptAsync(String, Map)
+	 */
+	public CompletableFuture<ScriptModule> runScriptAsync(final String path, final Map<String, Object> inputMap,
+			final long timeout, final TimeUnit unit) {
+		final ScriptMetrics.Call call = ScriptMetrics.getInstance().begin(path);
+		return track(submit(locate(path), path, inputMap, call), path, timeout, unit, call);
+	}
+
+	/**
+	 * Runs a script from an InputStream asynchronously.
+	 *
+	 * @param in
+	 *            the {@link InputStream} loading the script to be executed
+	 * @param filename
+	 *            the script filename (or at least its extension)
+	 * @param inputMap
+	 *            see {@link ScriptService#run(String, Reader, boolean, Map)}
+	 * @param timeout
+	 *            the maximum time to wait for the script to complete. Ignored
+	 *            if {@code unit} is {@code null}
+	 * @param unit
+	 *            the time unit of the timeout argument or {@code null} to
+	 *            wait indefinitely
+	 * @return the future completed with the script module
+	 * @see #runScriptAsync(String, Map)
+	 */
+	public CompletableFuture<ScriptModule> runScriptAsync(final InputStream in, final String filename,
+			final Map<String, Object> inputMap, final long timeout, final TimeUnit unit) {
+		final ScriptMetrics.Call call = ScriptMetrics.getInstance().begin(filename);
+		return track(submit(in, filename, inputMap, call), filename, timeout, unit, call);
+	}
+
+	/**
+	 * Runs a (JARified) BAR script over many inputs on a bounded number of
+	 * workers, waiting for all of them to complete. Use {@link BatchRunner}
+	 * directly to set timeouts, the number of workers or checkpoints.
+	 *
+	 * @param path
+	 *            the path of the BAR script to be executed
+	 * @param inputs
+	 *            the input map of each run
+	 * @param sink
+	 *            the sink receiving outputs, run times and failures of each
+	 *            run, e.g., a {@link BatchRunner.ResultsTableSink}
+	 * @throws IOException
+	 *             if the results sink could not be written
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for runs to complete
+	 */
+	public void runBatch(final String path, final Iterator<Map<String, Object>> inputs,
+			final BatchRunner.Sink sink) throws IOException, InterruptedException {
+		final BatchRunner batch = new BatchRunner(this);
+		batch.setSink(sink);
+		batch.run(path, inputs);
 	}
 
 	/**
@@ -151,7 +404,7 @@ public class Runner {
 	 */
 	public void runScript(final String dir, final String file, final Map<String, Object> inputMap) {
 		final String path = "scripts/BAR/" + dir + "/" + file;
-		runScript(Utils.getBARresource(path), file, inputMap);
+		runScript(Utils.getBARresource(path), path, inputMap);
 	}
 
 	/**
@@ -179,17 +432,8 @@ public class Runner {
 	 *            see {@link ScriptService#run(String, Reader, boolean, Map)}
 	 */
 	public void runScript(final InputStream in, final String filename, final Map<String, Object> inputMap) {
-		if (in == null) {
-			error("Could not find " + filename, IO_ERROR);
-			return;
-		}
-		final Reader reader = new InputStreamReader(in);
-		setLoaded(true);
-		final Future<ScriptModule> fsm = scriptService.run(filename, reader, true, inputMap);
-		if (fsm.isCancelled())
-			setStatus(WAS_CANCELED);
-		else if (fsm.isDone())
-			setStatus(WAS_DONE);
+		final ScriptMetrics.Call call = ScriptMetrics.getInstance().begin(filename);
+		track(submit(in, filename, inputMap, call), filename, 0, null, call);
 	}
 
 	/**
@@ -218,8 +462,19 @@ public class Runner {
 	 *            macro function {@code getArgument()}
 	 */
 	public void runIJ1Macro(final String path, final String arg) {
+		final ScriptMetrics.Call call = ScriptMetrics.getInstance().begin(path);
+		call.start();
 		final String macro = readContents(path, true);
-		setStatus((macro == null) ? EXCEPTION : (new Macro_Runner()).runMacro(macro, arg));
+		call.loaded();
+		if (macro == null) {
+			setStatus(EXCEPTION, call);
+			return;
+		}
+		call.start();
+		final String result = (new Macro_Runner()).runMacro(macro, arg);
+		call.executed();
+		setStatus(result);
+		call.finish(("[aborted]".equals(result)) ? WAS_CANCELED : WAS_DONE);
 	}
 
 	public void installIJ1Macro(final String path) {
@@ -227,16 +482,24 @@ public class Runner {
 	}
 
 	public void installIJ1Macro(final String path, final boolean singleTool) {
+		final ScriptMetrics.Call call = ScriptMetrics.getInstance().begin(path);
+		call.start();
 		final String macro = readContents(path, true);
-		if (macro != null) {
-			final MacroInstaller mi = new MacroInstaller();
-			if (singleTool) {
-				mi.installSingleTool(macro);
-			} else {
-				mi.install(macro);
-			}
+		call.loaded();
+		if (macro == null) {
+			setStatus(EXCEPTION, call);
+			return;
 		}
-		setStatus((macro == null) ? EXCEPTION : path + " installed");
+		call.start();
+		final MacroInstaller mi = new MacroInstaller();
+		if (singleTool) {
+			mi.installSingleTool(macro);
+		} else {
+			mi.install(macro);
+		}
+		call.executed();
+		setStatus(path + " installed");
+		call.finish(WAS_DONE);
 	}
 
 	public String readContents(final String resourcePath) {
@@ -247,25 +510,30 @@ public class Runner {
 		return readContents(Utils.getBARresource(resourcePath), setGlobalFlags);
 	}
 
+	/**
+	 * Reads a text resource as UTF-8. Contents are cached (see
+	 * {@link ResourceIndex#readText(URL)}), so that repeated reads do not
+	 * incur any I/O.
+	 *
+	 * @param url
+	 *            the resource URL
+	 * @param setGlobalFlags
+	 *            if {@code true} loading status and last loaded resource are
+	 *            recorded
+	 * @return the contents of the resource or {@code null} if it could not be
+	 *         read
+	 */
 	public String readContents(final URL url, final boolean setGlobalFlags) {
 		String contents = null;
 		try {
-			final InputStream is = url.openStream();
-			if (is == null) {
+			if (url == null) {
 				if (setGlobalFlags)
-					error("Could not find " + url, IO_ERROR);
+					error("Could not find resource", IO_ERROR);
 				return contents;
 			}
-			final InputStreamReader isr = new InputStreamReader(is);
+			contents = ResourceIndex.readText(url);
 			setLoaded(true);
-			final StringBuffer sb = new StringBuffer();
-			final char[] b = new char[8192];
-			int n;
-			while ((n = isr.read(b)) > 0)
-				sb.append(b, 0, n);
-			contents = sb.toString();
-			is.close();
-		} catch (final NullPointerException | IOException ignored) {
+		} catch (final IOException ignored) {
 			if (setGlobalFlags)
 				error("There was an error reading " + url, IO_ERROR);
 		} finally {
@@ -286,6 +554,11 @@ public class Runner {
 		this.exitStatus = status;
 	}
 
+	private void setStatus(final String status, final ScriptMetrics.Call call) {
+		setStatus(status);
+		call.finish(status);
+	}
+
 	private void setLoaded(final boolean loaded) {
 		if (loaded)
 			setStatus(WAS_LOADED);
@@ -324,10 +597,14 @@ public class Runner {
 	}
 
 	/**
-	 * @return the exit status: {@code cancelled}, {@code done},
-	 *         {@code exception}, {@code loaded}, {@code io error}, or in the
-	 *         case of IJ1 macros loaded through legacy mechanisms the String
-	 *         value returned by the
+	 * Scripts run asynchronously: their status is {@code loaded} while running
+	 * and is updated once they complete. Use
+	 * {@link #runScriptAsync(String, Map)} to wait for completion.
+	 *
+	 * @return the exit status: {@code canceled}, {@code done},
+	 *         {@code exception}, {@code timeout}, {@code loaded},
+	 *         {@code io error}, or in the case of IJ1 macros loaded through
+	 *         legacy mechanisms the String value returned by the
 	 *         {@link Macro_Runner#runMacro(String, String)}
 	 */
 	public String getStatus() {
@@ -0,0 +1,324 @@
+/*
+ * IJ BAR: https://github.com/tferr/Scripts
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation
+ * (http://www.gnu.org/licenses/gpl.txt).
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ */
+package bar;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+
+import org.scijava.Context;
+import org.scijava.convert.ConvertService;
+import org.scijava.log.LogService;
+import org.scijava.module.ModuleItem;
+import org.scijava.script.ScriptInfo;
+import org.scijava.script.ScriptLanguage;
+import org.scijava.script.ScriptModule;
+
+/**
+ * Caches compiled scripts, so that scripts run repeatedly by {@link Runner}
+ * are parsed and compiled only once. Entries are keyed by the script URL and
+ * validated against a hash of the script contents: A script that changed
+ * since it was cached is recompiled. The least recently used entries are
+ * evicted once the cache is full.
+ * <p>
+ * Only languages whose {@link ScriptEngine} is {@link Compilable} (e.g.,
+ * Python, Groovy, BeanShell, JavaScript) are cached. Script parameter lines
+ * ({@code #@}) are blanked before compilation, as SciJava does before
+ * evaluating a script, so that languages in which they are not comments can
+ * be compiled. Scripts that are not cached are logged at debug level.
+ * <p>
+ * Engines are not shared between concurrent runs: each entry keeps a pool of
+ * idle engines (each holding its own compiled copy of the script), a run
+ * borrows one (compiling the script into a new engine if none is idle) and
+ * returns it once finished. Every run is evaluated with fresh bindings, so
+ * that variables do not leak between runs.
+ */
+public class ScriptCache {
+
+	/** The maximum number of cached scripts */
+	public static final int MAX_SIZE = 64;
+
+	/** The maximum number of idle engines kept per script */
+	public static final int MAX_IDLE_ENGINES = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+	private static final String PARAMETER_PREFIX = "#@";
+
+	private static final LinkedHashMap<String, Entry> CACHE = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(final Map.Entry<String, Entry> eldest) {
+			return size() > MAX_SIZE;
+		}
+	};
+
+	private ScriptCache() {
+		// prevent instantiation of utility class
+	}
+
+	/** A cached script and the resources needed to run it */
+	private static class Entry {
+		private final byte[] hash;
+		private final ScriptInfo info;
+		private final ScriptLanguage language;
+		private final String source;
+		private final ConcurrentLinkedQueue<Instance> idle = new ConcurrentLinkedQueue<>();
+
+		private Entry(final byte[] hash, final ScriptInfo info, final ScriptLanguage language,
+				final String source) {
+			this.hash = hash;
+			this.info = info;
+			this.language = language;
+			this.source = source;
+		}
+
+		/** Retrieves an idle engine, compiling the script into a new one if none is available */
+		private Instance acquire() throws ScriptException {
+			final Instance instance = idle.poll();
+			return (instance == null) ? Instance.compile(language, source) : instance;
+		}
+
+		private void release(final Instance instance) {
+			if (idle.size() < MAX_IDLE_ENGINES)
+				idle.offer(instance);
+		}
+	}
+
+	/** An engine and the script compiled by it */
+	private static class Instance {
+		private final ScriptEngine engine;
+		private final CompiledScript compiled;
+
+		private Instance(final ScriptEngine engine, final CompiledScript compiled) {
+			this.engine = engine;
+			this.compiled = compiled;
+		}
+
+		/**
+		 * @return a new engine with the compiled script or {@code null} if the
+		 *         engine of {@code language} does not support compilation
+		 */
+		private static Instance compile(final ScriptLanguage language, final String source)
+				throws ScriptException {
+			final ScriptEngine engine = language.getScriptEngine(); // a new engine on each call
+			if (!(engine instanceof Compilable))
+				return null;
+			return new Instance(engine, ((Compilable) engine).compile(source));
+		}
+	}
+
+	/**
+	 * Creates a module for running the specified script, compiling the script
+	 * only if it is not cached (or if its contents changed).
+	 *
+	 * @param context
+	 *            the SciJava context
+	 * @param url
+	 *            the script location, used as cache key
+	 * @param filename
+	 *            the script filename (or at least its extension)
+	 * @param contents
+	 *            the script contents
+	 * @return the module ready to be run (e.g., by
+	 *         {@link org.scijava.module.ModuleService#run(org.scijava.module.Module, boolean, Map)}
+	 *         ) or {@code null} if the script language does not support
+	 *         compilation or if the script could not be compiled
+	 */
+	public static ScriptModule createModule(final Context context, final URL url, final String filename,
+			final String contents) {
+		final Entry entry = getEntry(context, url, filename, contents);
+		return (entry == null) ? null : new CompiledScriptModule(entry);
+	}
+
+	private static Entry getEntry(final Context context, final URL url, final String filename,
+			final String contents) {
+		final String key = url.toString();
+		final byte[] hash = hash(contents);
+		Entry entry;
+		synchronized (CACHE) {
+			entry = CACHE.get(key);
+		}
+		if (entry == null || !Arrays.equals(entry.hash, hash)) {
+			entry = compile(context, url, filename, contents, hash);
+			if (entry == null)
+				return null;
+			synchronized (CACHE) {
+				CACHE.put(key, entry);
+			}
+		}
+		return entry;
+	}
+
+	/**
+	 * Removes a script from the cache.
+	 *
+	 * @param url
+	 *            the script location
+	 */
+	public static void invalidate(final URL url) {
+		synchronized (CACHE) {
+			CACHE.remove(url.toString());
+		}
+	}
+
+	/** Empties the cache. */
+	public static void clear() {
+		synchronized (CACHE) {
+			CACHE.clear();
+		}
+	}
+
+	/** @return the number of cached scripts */
+	public static int size() {
+		synchronized (CACHE) {
+			return CACHE.size();
+		}
+	}
+
+	private static Entry compile(final Context context, final URL url, final String filename,
+			final String contents, final byte[] hash) {
+		final ScriptInfo info = new ScriptInfo(context, filename, new StringReader(contents));
+		final ScriptLanguage language = info.getLanguage();
+		if (language == null) {
+			debug(context, url, "unknown language");
+			return null;
+		}
+		final Entry entry = new Entry(hash, info, language, stripParameters(contents));
+		try {
+			final Instance instance = Instance.compile(language, entry.source);
+			if (instance == null) {
+				debug(context, url, language.getLanguageName() + " engine does not support compilation");
+				return null;
+			}
+			entry.release(instance);
+			info.inputs(); // parse script parameters now rather than on first run
+			return entry;
+		} catch (final ScriptException | RuntimeException exc) {
+			// Let the ScriptService report compilation errors when running
+			debug(context, url, exc.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Blanks script parameter lines (lines starting with {@code #@}), keeping
+	 * line numbers of compilation errors unchanged.
+	 */
+	private static String stripParameters(final String contents) {
+		if (!contents.contains(PARAMETER_PREFIX))
+			return contents;
+		final StringBuilder sb = new StringBuilder(contents.length());
+		try (final BufferedReader reader = new BufferedReader(new StringReader(contents))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (!line.trim().startsWith(PARAMETER_PREFIX))
+					sb.append(line);
+				sb.append('\n');
+			}
+		} catch (final IOException exc) {
+			return contents; // not thrown by StringReader
+		}
+		return sb.toString();
+	}
+
+	private static void debug(final Context context, final URL url, final String reason) {
+		final LogService log = context.getService(LogService.class);
+		if (log != null && log.isDebug())
+			log.debug("BAR: " + url + " not cached (" + reason + ")");
+	}
+
+	private static byte[] hash(final String contents) {
+		try {
+			return MessageDigest.getInstance("SHA-1").digest(contents.getBytes(StandardCharsets.UTF_8));
+		} catch (final NoSuchAlgorithmException exc) {
+			return contents.getBytes(StandardCharsets.UTF_8);
+		}
+	}
+
+	/**
+	 * A {@link ScriptModule} that evaluates a cached {@link CompiledScript}
+	 * instead of parsing the script.
+	 */
+	private static class CompiledScriptModule extends MeteredScriptModule {
+
+		private final Entry entry;
+		private Instance instance;
+
+		private CompiledScriptModule(final Entry entry) {
+			super(entry.info);
+			this.entry = entry;
+		}
+
+		@Override
+		public ScriptEngine getEngine() {
+			if (instance == null) {
+				try {
+					instance = entry.acquire();
+				} catch (final ScriptException exc) {
+					return null;
+				}
+			}
+			return instance.engine;
+		}
+
+		@Override
+		protected void execute() {
+			final ScriptLanguage language = getInfo().getLanguage();
+			final ConvertService convertService = getInfo().context().getService(ConvertService.class);
+			final Object returnValue;
+			final Bindings bindings;
+			try {
+				if (instance == null)
+					instance = entry.acquire();
+				bindings = instance.engine.createBindings();
+				for (final ModuleItem<?> item : getInfo().inputs())
+					bindings.put(item.getName(), getInput(item.getName()));
+				bindings.put(ScriptEngine.FILENAME, getInfo().getPath());
+				returnValue = instance.compiled.eval(bindings);
+			} catch (final ScriptException exc) {
+				final LogService log = getInfo().context().getService(LogService.class);
+				if (log != null)
+					log.error(exc);
+				return;
+			} finally {
+				// The engine is returned to the pool once the run is over
+				if (instance != null)
+					entry.release(instance);
+				instance = null;
+			}
+
+			for (final ModuleItem<?> item : getInfo().outputs()) {
+				final String name = item.getName();
+				if (isOutputResolved(name))
+					continue;
+				final Object value = (ScriptModule.RETURN_VALUE.equals(name)) ? returnValue : bindings.get(name);
+				final Object decoded = language.decode(value);
+				final Object typed = (convertService == null) ? decoded : convertService.convert(decoded, item.getType());
+				setOutput(name, typed);
+			}
+		}
+	}
+
+}
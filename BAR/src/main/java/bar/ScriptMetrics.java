@@ -0,0 +1,582 @@
+/*
+ * IJ BAR: https://github.com/tferr/Scripts
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation
+ * (http://www.gnu.org/licenses/gpl.txt).
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ */
+package bar;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import ij.measure.ResultsTable;
+
+/**
+ * Records per-script execution metrics of scripts and macros run through
+ * {@link Runner}: load, compile and execution times, exit status and the
+ * number of bytes allocated by each call. Measurements are aggregated per
+ * script into histograms with bounded relative error, so that percentiles of
+ * long-running sessions can be reported without keeping individual
+ * measurements.
+ * <p>
+ * Allocated bytes are obtained from the JVM's per-thread allocation counters
+ * and are reported as {@code NaN} on JVMs that do not support them. The
+ * metrics are available from scripts through {@link BARService}:
+ *
+ * <pre>
+ * #@BARService bar
+ * metrics = bar.getScriptMetrics()
+ * metrics.toResultsTable().show("BAR Performance Report")
+ * metrics.write(File("/path/to/metrics.json"))
+ * </pre>
+ *
+ * @see bar.plugin.PerformanceReport
+ */
+public class ScriptMetrics {
+
+	/** Column headings of reports */
+	private static final String[] HEADINGS = { "Script", "Runs", "Status", "Load mean (ms)", "Compile mean (ms)",
+			"Exec mean (ms)", "Exec p50 (ms)", "Exec p90 (ms)", "Exec p99 (ms)", "Exec max (ms)", "Exec total (s)",
+			"Alloc mean (MB)", "Alloc max (MB)" };
+
+	private static ScriptMetrics instance;
+	private static final java.lang.management.ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+	private static final boolean ALLOCATION_SUPPORTED = isAllocationSupported();
+
+	private final LinkedHashMap<String, Stats> stats = new LinkedHashMap<>();
+	private volatile boolean enabled = true;
+
+	private ScriptMetrics() {
+		// use getInstance()
+	}
+
+	/**
+	 * Returns the metrics registry.
+	 *
+	 * @return the registry instance
+	 */
+	public static synchronized ScriptMetrics getInstance() {
+		if (instance == null)
+			instance = new ScriptMetrics();
+		return instance;
+	}
+
+	private static boolean isAllocationSupported() {
+		try {
+			if (!(THREADS instanceof com.sun.management.ThreadMXBean))
+				return false;
+			final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) THREADS;
+			if (!threads.isThreadAllocatedMemorySupported())
+				return false;
+			if (!threads.isThreadAllocatedMemoryEnabled())
+				threads.setThreadAllocatedMemoryEnabled(true);
+			return true;
+		} catch (final UnsupportedOperationException | SecurityException | LinkageError exc) {
+			return false;
+		}
+	}
+
+	/**
+	 * @return the number of bytes allocated so far by the current thread or
+	 *         -1 if allocation counters are not supported
+	 */
+	public static long threadAllocatedBytes() {
+		if (!ALLOCATION_SUPPORTED)
+			return -1;
+		return ((com.sun.management.ThreadMXBean) THREADS).getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * @return {@code true} if calls are being recorded
+	 */
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Enables or disables recording. Disabling recording does not discard
+	 * recorded metrics.
+	 *
+	 * @param enabled
+	 *            if calls should be recorded
+	 */
+	public void setEnabled(final boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	/**
+	 * Starts measuring a call.
+	 *
+	 * @param script
+	 *            the script path or filename identifying the script
+	 * @return the measurement of the call, to be finished with
+	 *         {@link Call#finish(String)}
+	 */
+	public Call begin(final String script) {
+		return new Call(this, script);
+	}
+
+	private void record(final Call call, final String status) {
+		if (!enabled)
+			return;
+		Stats scriptStats;
+		synchronized (stats) {
+			scriptStats = stats.get(call.script);
+			if (scriptStats == null) {
+				scriptStats = new Stats(call.script);
+				stats.put(call.script, scriptStats);
+			}
+		}
+		scriptStats.record(call, status);
+	}
+
+	/**
+	 * Returns the metrics of a script.
+	 *
+	 * @param script
+	 *            the script path or filename, as passed to {@link Runner}
+	 * @return the script metrics or {@code null} if the script has not been
+	 *         run
+	 */
+	public Stats getStats(final String script) {
+		synchronized (stats) {
+			return stats.get(script);
+		}
+	}
+
+	/**
+	 * Returns the metrics of all the scripts that have been run, sorted by
+	 * total execution time, so that hotspots are listed first.
+	 *
+	 * @return the list of script metrics
+	 */
+	public List<Stats> getStats() {
+		final List<Stats> list;
+		synchronized (stats) {
+			list = new ArrayList<>(stats.values());
+		}
+		Collections.sort(list, new Comparator<Stats>() {
+			@Override
+			public int compare(final Stats s1, final Stats s2) {
+				return Long.compare(s2.getExecution().getTotal(), s1.getExecution().getTotal());
+			}
+		});
+		return list;
+	}
+
+	/** Discards all recorded metrics. */
+	public void reset() {
+		synchronized (stats) {
+			stats.clear();
+		}
+	}
+
+	/**
+	 * Tabulates recorded metrics, one row per script.
+	 *
+	 * @return the table of metrics, sorted by total execution time
+	 */
+	public ResultsTable toResultsTable() {
+		final ResultsTable rt = new ResultsTable();
+		int row = 0;
+		for (final Stats scriptStats : getStats()) {
+			rt.incrementCounter();
+			final Object[] values = scriptStats.toRow();
+			for (int i = 0; i < HEADINGS.length; i++) {
+				if (values[i] instanceof String)
+					rt.setValue(HEADINGS[i], row, (String) values[i]);
+				else
+					rt.setValue(HEADINGS[i], row, ((Number) values[i]).doubleValue());
+			}
+			row++;
+		}
+		return rt;
+	}
+
+	/**
+	 * Saves recorded metrics as JSON, if the file extension is {@code .json},
+	 * or as CSV otherwise.
+	 *
+	 * @param file
+	 *            the output file. It is overwritten if it exists
+	 * @throws IOException
+	 *             if file could not be written
+	 */
+	public void write(final File file) throws IOException {
+		if (file.getName().toLowerCase().endsWith(".json"))
+			writeJSON(file);
+		else
+			writeCSV(file);
+	}
+
+	/**
+	 * Saves recorded metrics as CSV, one line per script.
+	 *
+	 * @param file
+	 *            the output file. It is overwritten if it exists
+	 * @throws IOException
+	 *             if file could not be written
+	 */
+	public void writeCSV(final File file) throws IOException {
+		try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+			for (int i = 0; i < HEADINGS.length; i++) {
+				if (i > 0)
+					writer.write(',');
+				writer.write(HEADINGS[i]);
+			}
+			writer.newLine();
+			for (final Stats scriptStats : getStats()) {
+				final Object[] values = scriptStats.toRow();
+				for (int i = 0; i < values.length; i++) {
+					if (i > 0)
+						writer.write(',');
+					if (values[i] instanceof String)
+						writer.write("\"" + ((String) values[i]).replace("\"", "\"\"") + "\"");
+					else
+						writer.write(String.valueOf(values[i]));
+				}
+				writer.newLine();
+			}
+		}
+	}
+
+	/**
+	 * Saves recorded metrics as JSON: An array of objects, one per script,
+	 * holding the run count per exit status and summaries of load, compile and
+	 * execution times (in milliseconds) and of allocated bytes.
+	 *
+	 * @param file
+	 *            the output file. It is overwritten if it exists
+	 * @throws IOException
+	 *             if file could not be written
+	 */
+	public void writeJSON(final File file) throws IOException {
+		try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+			writer.write("[");
+			boolean first = true;
+			for (final Stats scriptStats : getStats()) {
+				writer.write(first ? "\n" : ",\n");
+				first = false;
+				synchronized (scriptStats) {
+					writer.write("  {\"script\": " + quote(scriptStats.script) + ", \"runs\": "
+							+ scriptStats.getRuns() + ", \"status\": {");
+					boolean firstStatus = true;
+					for (final Map.Entry<String, Long> entry : scriptStats.statusCounts.entrySet()) {
+						writer.write((firstStatus ? "" : ", ") + quote(entry.getKey()) + ": " + entry.getValue());
+						firstStatus = false;
+					}
+					writer.write("},\n");
+					writer.write("   \"load_ms\": " + json(scriptStats.load, 1e-6) + ",\n");
+					writer.write("   \"compile_ms\": " + json(scriptStats.compile, 1e-6) + ",\n");
+					writer.write("   \"exec_ms\": " + json(scriptStats.execution, 1e-6) + ",\n");
+					writer.write("   \"alloc_bytes\": " + json(scriptStats.allocated, 1) + "}");
+				}
+			}
+			writer.write("\n]\n");
+		}
+	}
+
+	private static String json(final Histogram histogram, final double scale) {
+		if (histogram.getCount() == 0)
+			return "null";
+		return "{\"count\": " + histogram.getCount() + ", \"mean\": " + histogram.getMean() * scale
+				+ ", \"p50\": " + histogram.getValueAtPercentile(50) * scale + ", \"p90\": "
+				+ histogram.getValueAtPercentile(90) * scale + ", \"p99\": "
+				+ histogram.getValueAtPercentile(99) * scale + ", \"max\": " + histogram.getMax() * scale + "}";
+	}
+
+	private static String quote(final String string) {
+		final StringBuilder sb = new StringBuilder(string.length() + 2).append('"');
+		for (int i = 0; i < string.length(); i++) {
+			final char c = string.charAt(i);
+			if (c == '"' || c == '\\')
+				sb.append('\\').append(c);
+			else if (c < 0x20)
+				sb.append(String.format("\\u%04x", (int) c));
+			else
+				sb.append(c);
+		}
+		return sb.append('"').toString();
+	}
+
+	/**
+	 * The measurement of a single call. Phases (loading, compilation and
+	 * execution) are measured in sequence, possibly by different threads.
+	 */
+	public static class Call {
+
+		private final ScriptMetrics metrics;
+		private final String script;
+		private final AtomicBoolean finished = new AtomicBoolean();
+		private volatile long mark;
+		private volatile long markAllocated;
+		private volatile long loadNanos = -1;
+		private volatile long compileNanos = -1;
+		private volatile long executionNanos = -1;
+		private volatile long allocatedBytes = -1;
+
+		private Call(final ScriptMetrics metrics, final String script) {
+			this.metrics = metrics;
+			this.script = script;
+		}
+
+		/** Starts measuring a phase on the current thread. */
+		void start() {
+			markAllocated = threadAllocatedBytes();
+			mark = System.nanoTime();
+		}
+
+		/** @return the duration of the phase started by {@link #start()} */
+		private long stop() {
+			final long elapsed = System.nanoTime() - mark;
+			final long allocated = threadAllocatedBytes();
+			if (allocated >= 0 && markAllocated >= 0)
+				allocatedBytes = Math.max(0, allocatedBytes) + allocated - markAllocated;
+			return elapsed;
+		}
+
+		/** Ends the loading phase. */
+		void loaded() {
+			loadNanos = stop();
+		}
+
+		/** Ends the compilation phase. */
+		void compiled() {
+			compileNanos = stop();
+		}
+
+		/** Ends the execution phase. */
+		void executed() {
+			executionNanos = stop();
+		}
+
+		/**
+		 * Records the call. Subsequent calls have no effect.
+		 *
+		 * @param status
+		 *            the exit status of the call, as reported by
+		 *            {@link Runner#getStatus()}
+		 */
+		public void finish(final String status) {
+			if (finished.compareAndSet(false, true))
+				metrics.record(this, status);
+		}
+	}
+
+	/** The aggregated metrics of a script */
+	public static class Stats {
+
+		private final String script;
+		private final TreeMap<String, Long> statusCounts = new TreeMap<>();
+		private final Histogram load = new Histogram();
+		private final Histogram compile = new Histogram();
+		private final Histogram execution = new Histogram();
+		private final Histogram allocated = new Histogram();
+		private long runs;
+
+		private Stats(final String script) {
+			this.script = script;
+		}
+
+		private synchronized void record(final Call call, final String status) {
+			runs++;
+			final Long count = statusCounts.get(status);
+			statusCounts.put(status, (count == null) ? 1L : count + 1);
+			if (call.loadNanos >= 0)
+				load.record(call.loadNanos);
+			if (call.compileNanos >= 0)
+				compile.record(call.compileNanos);
+			if (call.executionNanos >= 0)
+				execution.record(call.executionNanos);
+			if (call.allocatedBytes >= 0)
+				allocated.record(call.allocatedBytes);
+		}
+
+		/** @return the script path or filename */
+		public String getScript() {
+			return script;
+		}
+
+		/** @return the number of recorded calls */
+		public synchronized long getRuns() {
+			return runs;
+		}
+
+		/** @return the number of calls per exit status */
+		public synchronized Map<String, Long> getStatusCounts() {
+			return new TreeMap<>(statusCounts);
+		}
+
+		/** @return the histogram of load times, in nanoseconds */
+		public Histogram getLoad() {
+			return load;
+		}
+
+		/**
+		 * @return the histogram of compile times, in nanoseconds. Only calls
+		 *         of scripts compiled ahead of execution (see
+		 *         {@link ScriptCache}) are recorded. Other scripts are parsed
+		 *         as part of their execution
+		 */
+		public Histogram getCompile() {
+			return compile;
+		}
+
+		/** @return the histogram of execution times, in nanoseconds */
+		public Histogram getExecution() {
+			return execution;
+		}
+
+		/** @return the histogram of bytes allocated per call */
+		public Histogram getAllocated() {
+			return allocated;
+		}
+
+		private synchronized Object[] toRow() {
+			final StringBuilder status = new StringBuilder();
+			for (final Map.Entry<String, Long> entry : statusCounts.entrySet()) {
+				if (status.length() > 0)
+					status.append("; ");
+				status.append(entry.getKey()).append(": ").append(entry.getValue());
+			}
+			final double ms = 1e-6;
+			final double mb = 1d / (1024 * 1024);
+			return new Object[] { script, runs, status.toString(), load.getMean() * ms, compile.getMean() * ms,
+					execution.getMean() * ms, execution.getValueAtPercentile(50) * ms,
+					execution.getValueAtPercentile(90) * ms, execution.getValueAtPercentile(99) * ms,
+					max(execution) * ms, execution.getTotal() * 1e-9, allocated.getMean() * mb,
+					max(allocated) * mb };
+		}
+
+		private static double max(final Histogram histogram) {
+			return (histogram.getCount() == 0) ? Double.NaN : histogram.getMax();
+		}
+	}
+
+	/**
+	 * A histogram of non-negative values with log-linear buckets: Values below
+	 * 2&times;{@value #SUB_BUCKETS} are counted exactly, and each higher power
+	 * of two is split into {@value #SUB_BUCKETS} buckets, so that recorded
+	 * values are resolved with a relative error below 1/{@value #SUB_BUCKETS}
+	 * (about 3%) while the histogram holds fewer than two thousand counts,
+	 * regardless of the number and range of recorded values. Count, minimum, maximum and total
+	 * are kept exactly.
+	 */
+	public static class Histogram {
+
+		/** The number of buckets per power of two */
+		public static final int SUB_BUCKETS = 32;
+		private static final int SUB_BITS = 5; // log2(SUB_BUCKETS)
+
+		private long[] counts = new long[2 * SUB_BUCKETS];
+		private long count;
+		private long total;
+		private long min = Long.MAX_VALUE;
+		private long max;
+
+		/**
+		 * Records a value.
+		 *
+		 * @param value
+		 *            the value to be recorded. Negative values are recorded as
+		 *            zero
+		 */
+		public synchronized void record(final long value) {
+			final long v = Math.max(0, value);
+			final int index = indexOf(v);
+			if (index >= counts.length)
+				counts = Arrays.copyOf(counts, Math.max(index + 1, counts.length * 2));
+			counts[index]++;
+			count++;
+			total += v;
+			if (v < min)
+				min = v;
+			if (v > max)
+				max = v;
+		}
+
+		private static int indexOf(final long value) {
+			if (value < 2 * SUB_BUCKETS)
+				return (int) value;
+			// value >>> shift keeps the SUB_BITS bits below the leading one,
+			// i.e., it lies in [SUB_BUCKETS, 2 * SUB_BUCKETS)
+			final int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+			return shift * SUB_BUCKETS + (int) (value >>> shift);
+		}
+
+		/** @return the largest value that falls in the bucket */
+		private static long highestValueOf(final int index) {
+			if (index < 2 * SUB_BUCKETS)
+				return index;
+			final int shift = index / SUB_BUCKETS - 1;
+			final long sub = index - shift * SUB_BUCKETS;
+			return (sub << shift) + (1L << shift) - 1;
+		}
+
+		/** @return the number of recorded values */
+		public synchronized long getCount() {
+			return count;
+		}
+
+		/** @return the sum of recorded values */
+		public synchronized long getTotal() {
+			return total;
+		}
+
+		/** @return the smallest recorded value or 0 if histogram is empty */
+		public synchronized long getMin() {
+			return (count == 0) ? 0 : min;
+		}
+
+		/** @return the largest recorded value or 0 if histogram is empty */
+		public synchronized long getMax() {
+			return max;
+		}
+
+		/** @return the mean of recorded values or NaN if histogram is empty */
+		public synchronized double getMean() {
+			return (count == 0) ? Double.NaN : (double) total / count;
+		}
+
+		/**
+		 * Estimates a percentile of recorded values.
+		 *
+		 * @param percentile
+		 *            the percentile, between 0 and 100
+		 * @return the estimated value (the upper bound of the bucket holding
+		 *         the percentile, capped at the maximum) or NaN if histogram is
+		 *         empty
+		 */
+		public synchronized double getValueAtPercentile(final double percentile) {
+			if (count == 0)
+				return Double.NaN;
+			final double p = Math.min(100, Math.max(0, percentile));
+			final long rank = Math.max(1, (long) Math.ceil(p / 100 * count));
+			long cumulative = 0;
+			for (int i = 0; i < counts.length; i++) {
+				cumulative += counts[i];
+				if (cumulative >= rank)
+					return Math.max(min, Math.min(max, highestValueOf(i)));
+			}
+			return max;
+		}
+	}
+
+}
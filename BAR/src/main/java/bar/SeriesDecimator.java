@@ -0,0 +1,219 @@
+/*
+ * IJ BAR: https://github.com/tferr/Scripts
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation
+ * (http://www.gnu.org/licenses/gpl.txt).
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ */
+package bar;
+
+import java.util.Arrays;
+
+/**
+ * Reduces large XY series to a number of points that can be drawn without any
+ * visible loss of shape. Data is split into as many buckets of equal x-width as
+ * pixels along the plot's x-axis (so that irregularly spaced data is bucketed
+ * by pixel column, not by index), and the minimum and maximum of each bucket
+ * are retained (in their original order). Since each pixel column displays at most one vertical
+ * stroke, the decimated series is rendered identically to the original one,
+ * while the full-resolution arrays can be kept aside for later re-decimation
+ * (e.g., when zooming).
+ * <p>
+ * Decimation assumes that x-values are sorted in ascending order (see
+ * {@link #isMonotonic(double[])}). NaN y-values are preserved as gaps.
+ */
+public class SeriesDecimator {
+
+	/**
+	 * Series with fewer points than this multiple of the number of buckets are
+	 * not worth decimating
+	 */
+	private static final int MIN_RATIO = 4;
+
+	private SeriesDecimator() {
+		// prevent instantiation of utility class
+	}
+
+	/**
+	 * Assesses whether a series is large enough to benefit from decimation.
+	 *
+	 * @param length
+	 *            the number of data points in the series
+	 * @param nBuckets
+	 *            the number of buckets (typically the plot width in pixels)
+	 * @return {@code true} if series should be decimated
+	 */
+	public static boolean isWorthDecimating(final int length, final int nBuckets) {
+		return nBuckets > 0 && length > MIN_RATIO * nBuckets;
+	}
+
+	/**
+	 * Checks if the specified array is sorted in ascending order and free of
+	 * NaN values.
+	 *
+	 * @param values
+	 *            the array to be checked
+	 * @return {@code true} if values never decrease
+	 */
+	public static boolean isMonotonic(final double[] values) {
+		if (values == null)
+			return false;
+		double last = Double.NEGATIVE_INFINITY;
+		for (final double v : values) {
+			if (Double.isNaN(v) || v < last)
+				return false;
+			last = v;
+		}
+		return true;
+	}
+
+	/**
+	 * Decimates the entire series.
+	 *
+	 * @see #minMax(double[], double[], double, double, int)
+	 */
+	public static double[][] minMax(final double[] x, final double[] y, final int nBuckets) {
+		return minMax(x, y, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, nBuckets);
+	}
+
+	/**
+	 * Decimates the portion of a series delimited by the specified x-range
+	 * using min/max buckets. The data points immediately outside the range are
+	 * retained so that connecting lines still reach the plot frame.
+	 *
+	 * @param x
+	 *            the x-values, sorted in ascending order
+	 * @param y
+	 *            the y-values
+	 * @param xMin
+	 *            the lower bound of the visible x-range
+	 * @param xMax
+	 *            the upper bound of the visible x-range
+	 * @param nBuckets
+	 *            the number of buckets, typically the plot width in pixels.
+	 *            At most {@code 2*nBuckets+2} points are returned
+	 * @return a two-element array holding the decimated x- and y-values
+	 */
+	public static double[][] minMax(final double[] x, final double[] y, final double xMin, final double xMax,
+			final int nBuckets) {
+		return minMax(x, y, Math.min(x.length, y.length), xMin, xMax, nBuckets);
+	}
+
+	/**
+	 * Decimates the first {@code n} data points of a series, which is useful
+	 * when series are stored in buffers larger than their actual size.
+	 *
+	 * @see #minMax(double[], double[], double, double, int)
+	 */
+	public static double[][] minMax(final double[] x, final double[] y, final int n, final double xMin,
+			final double xMax, final int nBuckets) {
+		if (n == 0)
+			return new double[][] { new double[0], new double[0] };
+		final int lo = Math.max(0, lowerBound(x, n, xMin) - 1);
+		final int hi = Math.min(n - 1, upperBound(x, n, xMax));
+		if (hi < lo)
+			return new double[][] { new double[0], new double[0] };
+		final int count = hi - lo + 1;
+		if (nBuckets < 1 || count <= 2 * nBuckets + 2) {
+			return new double[][] { Arrays.copyOfRange(x, lo, hi + 1), Arrays.copyOfRange(y, lo, hi + 1) };
+		}
+
+		final double[] dx = new double[2 * nBuckets + 2];
+		final double[] dy = new double[2 * nBuckets + 2];
+		int size = 0;
+		dx[size] = x[lo];
+		dy[size++] = y[lo];
+
+		// Interior points are split into buckets of equal x-width, one per
+		// pixel column of the visible range. End points are kept
+		final double left = Math.max(xMin, x[lo]);
+		final double right = Math.min(xMax, x[hi]);
+		final double bucketScale = (right > left) ? nBuckets / (right - left) : 0;
+		int bucket = -1;
+		int start = -1;
+		int minIdx = -1;
+		int maxIdx = -1;
+		for (int i = lo + 1; i <= hi; i++) {
+			final int b = (i == hi) ? nBuckets
+					: Math.max(0, Math.min(nBuckets - 1, (int) ((x[i] - left) * bucketScale)));
+			if (b != bucket) {
+				if (start >= 0)
+					size = addBucket(x, y, start, minIdx, maxIdx, dx, dy, size);
+				if (i == hi)
+					break;
+				bucket = b;
+				start = i;
+				minIdx = -1;
+				maxIdx = -1;
+			}
+			final double v = y[i];
+			if (Double.isNaN(v))
+				continue;
+			if (minIdx < 0 || v < y[minIdx])
+				minIdx = i;
+			if (maxIdx < 0 || v > y[maxIdx])
+				maxIdx = i;
+		}
+
+		dx[size] = x[hi];
+		dy[size++] = y[hi];
+		return new double[][] { Arrays.copyOf(dx, size), Arrays.copyOf(dy, size) };
+	}
+
+	/**
+	 * Appends the extrema of a bucket (in their original order), or a NaN gap
+	 * if the bucket holds only NaNs.
+	 *
+	 * @return the new size of the decimated series
+	 */
+	private static int addBucket(final double[] x, final double[] y, final int start, final int minIdx,
+			final int maxIdx, final double[] dx, final double[] dy, int size) {
+		if (minIdx < 0) { // only NaNs: keep the gap
+			dx[size] = x[start];
+			dy[size++] = Double.NaN;
+		} else if (minIdx == maxIdx) {
+			dx[size] = x[minIdx];
+			dy[size++] = y[minIdx];
+		} else {
+			final int i1 = Math.min(minIdx, maxIdx);
+			final int i2 = Math.max(minIdx, maxIdx);
+			dx[size] = x[i1];
+			dy[size++] = y[i1];
+			dx[size] = x[i2];
+			dy[size++] = y[i2];
+		}
+		return size;
+	}
+
+	/** Returns the index of the first element that is not less than key */
+	private static int lowerBound(final double[] values, final int n, final double key) {
+		int low = 0;
+		int high = n;
+		while (low < high) {
+			final int mid = (low + high) >>> 1;
+			if (values[mid] < key)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		return low;
+	}
+
+	/** Returns the index of the first element that is greater than key */
+	private static int upperBound(final double[] values, final int n, final double key) {
+		int low = 0;
+		int high = n;
+		while (low < high) {
+			final int mid = (low + high) >>> 1;
+			if (values[mid] <= key)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		return low;
+	}
+
+}
@@ -0,0 +1,496 @@
+/*
+ * IJ BAR: https://github.com/tferr/Scripts
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation
+ * (http://www.gnu.org/licenses/gpl.txt).
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ */
+package bar;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+import ij.measure.ResultsTable;
+
+/**
+ * A k-d tree over 2D or 3D point coordinates, for nearest neighbor (NN)
+ * queries. The tree is built once, in O(n log n) time, from primitive
+ * coordinate arrays (e.g., the columns of a ResultsTable) and is immutable
+ * afterwards, so that it can be queried concurrently. Retrieving the nearest
+ * neighbors of all points takes O(n log n) time and runs in parallel, rather
+ * than the O(n<sup>2</sup>) of pairwise comparisons.
+ * <p>
+ * Points with a non-finite (e.g., NaN) coordinate are not indexed: They are
+ * never the neighbor of another point, and their own neighbors are reported
+ * as missing (index -1, distance NaN).
+ *
+ * <pre>
+ * from bar import SpatialIndex
+ * index = SpatialIndex(x, y, z) # z may be None for 2D data
+ * nn = index.allNearestNeighbors(1, True)
+ * nn.addToTable(rt, "NN pair", "NN distance")
+ * </pre>
+ */
+public class SpatialIndex {
+
+	/** Ranges with at most this number of points are scanned linearly */
+	private static final int LEAF_SIZE = 8;
+
+	/** The number of queries processed by a parallel task */
+	private static final int CHUNK_SIZE = 1024;
+
+	/** The number of points, including those that are not indexed */
+	private final int length;
+	/** The number of indexed points */
+	private final int n;
+	private final int dims;
+	/** The coordinates of each point, interleaved, in tree order */
+	private final double[] coords;
+	/** The original index of each point, in tree order */
+	private final int[] ids;
+	/** The split axis of each internal node, stored at its median position */
+	private final byte[] axes;
+
+	/**
+	 * Creates an index of 2D points.
+	 *
+	 * @param x
+	 *            the x-coordinates
+	 * @param y
+	 *            the y-coordinates
+	 */
+	public SpatialIndex(final double[] x, final double[] y) {
+		this(x, y, null);
+	}
+
+	/**
+	 * Creates an index of 2D or 3D points. Coordinates are copied: The arrays
+	 * are not modified nor referenced once the index is built. Points with a
+	 * non-finite coordinate are excluded from the index.
+	 *
+	 * @param x
+	 *            the x-coordinates
+	 * @param y
+	 *            the y-coordinates
+	 * @param z
+	 *            the z-coordinates or {@code null} for 2D points
+	 * @throws IllegalArgumentException
+	 *             if arrays differ in length
+	 */
+	public SpatialIndex(final double[] x, final double[] y, final double[] z) {
+		if (x.length != y.length || (z != null && z.length != x.length))
+			throw new IllegalArgumentException("Coordinate arrays differ in length");
+		length = x.length;
+		dims = (z == null) ? 2 : 3;
+		// NaNs would break the ordering assumed by the selection of medians
+		int count = 0;
+		for (int i = 0; i < length; i++) {
+			if (isFinite(x[i], y[i], z, i))
+				count++;
+		}
+		n = count;
+		coords = new double[n * dims];
+		ids = new int[n];
+		axes = new byte[n];
+		int j = 0;
+		for (int i = 0; i < length; i++) {
+			if (!isFinite(x[i], y[i], z, i))
+				continue;
+			ids[j] = i;
+			coords[j * dims] = x[i];
+			coords[j * dims + 1] = y[i];
+			if (z != null)
+				coords[j * dims + 2] = z[i];
+			j++;
+		}
+		build(0, n);
+	}
+
+	private static boolean isFinite(final double x, final double y, final double[] z, final int i) {
+		return !Double.isNaN(x) && !Double.isInfinite(x) && !Double.isNaN(y) && !Double.isInfinite(y)
+				&& (z == null || (!Double.isNaN(z[i]) && !Double.isInfinite(z[i])));
+	}
+
+	/**
+	 * @return the number of indexed points, i.e., the number of points with
+	 *         finite coordinates
+	 */
+	public int size() {
+		return n;
+	}
+
+	/** @return the number of dimensions (2 or 3) */
+	public int getDimensions() {
+		return dims;
+	}
+
+	// -- Construction --
+
+	private void build(final int lo, final int hi) {
+		if (hi - lo <= LEAF_SIZE)
+			return;
+		final int axis = widestAxis(lo, hi);
+		final int median = (lo + hi) >>> 1;
+		select(lo, hi - 1, median, axis);
+		axes[median] = (byte) axis;
+		build(lo, median);
+		build(median + 1, hi);
+	}
+
+	/** @return the axis along which points in [lo, hi) are most spread */
+	private int widestAxis(final int lo, final int hi) {
+		int axis = 0;
+		double widest = -1;
+		for (int d = 0; d < dims; d++) {
+			double min = Double.POSITIVE_INFINITY;
+			double max = Double.NEGATIVE_INFINITY;
+			for (int i = lo; i < hi; i++) {
+				final double v = coords[i * dims + d];
+				if (v < min)
+					min = v;
+				if (v > max)
+					max = v;
+			}
+			if (max - min > widest) {
+				widest = max - min;
+				axis = d;
+			}
+		}
+		return axis;
+	}
+
+	/**
+	 * Partially sorts points in [left, right] (Hoare's selection), so that the
+	 * k-th point is in place along the specified axis, with no larger points
+	 * before it and no smaller points after it.
+	 */
+	private void select(int left, int right, final int k, final int axis) {
+		while (right > left) {
+			final double pivot = coords[((left + right) >>> 1) * dims + axis];
+			int i = left;
+			int j = right;
+			while (i <= j) {
+				while (coords[i * dims + axis] < pivot)
+					i++;
+				while (coords[j * dims + axis] > pivot)
+					j--;
+				if (i <= j)
+					swap(i++, j--);
+			}
+			if (k <= j)
+				right = j;
+			else if (k >= i)
+				left = i;
+			else
+				return;
+		}
+	}
+
+	private void swap(final int i, final int j) {
+		final int id = ids[i];
+		ids[i] = ids[j];
+		ids[j] = id;
+		for (int d = 0; d < dims; d++) {
+			final double v = coords[i * dims + d];
+			coords[i * dims + d] = coords[j * dims + d];
+			coords[j * dims + d] = v;
+		}
+	}
+
+	// -- Queries --
+
+	/** The state of a k-NN query, reused across queries of a thread */
+	private class Query {
+
+		private final double[] point = new double[3];
+		private final int k;
+		private final boolean ignoreCoincident;
+		/** Max-heap of the k best candidates, by squared distance */
+		private final double[] heapDist;
+		private final int[] heapIds;
+		private int count;
+		private int exclude;
+
+		private Query(final int k, final boolean ignoreCoincident) {
+			this.k = k;
+			this.ignoreCoincident = ignoreCoincident;
+			heapDist = new double[k];
+			heapIds = new int[k];
+		}
+
+		private void run(final int excludedId) {
+			count = 0;
+			exclude = excludedId;
+			search(0, n);
+		}
+
+		private double worst() {
+			return (count < k) ? Double.POSITIVE_INFINITY : heapDist[0];
+		}
+
+		private void search(final int lo, final int hi) {
+			if (hi - lo <= LEAF_SIZE) {
+				for (int i = lo; i < hi; i++)
+					consider(i);
+				return;
+			}
+			final int median = (lo + hi) >>> 1;
+			final int axis = axes[median];
+			final double diff = point[axis] - coords[median * dims + axis];
+			if (diff < 0) {
+				search(lo, median);
+				consider(median);
+				if (diff * diff < worst())
+					search(median + 1, hi);
+			} else {
+				search(median + 1, hi);
+				consider(median);
+				if (diff * diff < worst())
+					search(lo, median);
+			}
+		}
+
+		private void consider(final int i) {
+			final int id = ids[i];
+			if (id == exclude)
+				return;
+			double d2 = 0;
+			for (int d = 0; d < dims; d++) {
+				final double delta = point[d] - coords[i * dims + d];
+				d2 += delta * delta;
+			}
+			if (d2 >= worst() || (ignoreCoincident && d2 == 0) || Double.isNaN(d2))
+				return;
+			if (count < k) { // sift up
+				int child = count++;
+				while (child > 0) {
+					final int parent = (child - 1) >>> 1;
+					if (heapDist[parent] >= d2)
+						break;
+					heapDist[child] = heapDist[parent];
+					heapIds[child] = heapIds[parent];
+					child = parent;
+				}
+				heapDist[child] = d2;
+				heapIds[child] = id;
+			} else { // replace root and sift down
+				int parent = 0;
+				while (true) {
+					int child = 2 * parent + 1;
+					if (child >= k)
+						break;
+					if (child + 1 < k && heapDist[child + 1] > heapDist[child])
+						child++;
+					if (heapDist[child] <= d2)
+						break;
+					heapDist[parent] = heapDist[child];
+					heapIds[parent] = heapIds[child];
+					parent = child;
+				}
+				heapDist[parent] = d2;
+				heapIds[parent] = id;
+			}
+		}
+
+		/** Stores results sorted by increasing distance, padding with -1/NaN */
+		private void store(final int[] indices, final double[] distances, final int offset) {
+			Arrays.fill(indices, offset, offset + k, -1);
+			Arrays.fill(distances, offset, offset + k, Double.NaN);
+			for (int rank = count - 1; rank >= 0; rank--) { // pop the heap
+				indices[offset + rank] = heapIds[0];
+				distances[offset + rank] = Math.sqrt(heapDist[0]);
+				final double last = heapDist[rank];
+				final int lastId = heapIds[rank];
+				int parent = 0;
+				while (true) {
+					int child = 2 * parent + 1;
+					if (child >= rank)
+						break;
+					if (child + 1 < rank && heapDist[child + 1] > heapDist[child])
+						child++;
+					if (heapDist[child] <= last)
+						break;
+					heapDist[parent] = heapDist[child];
+					heapIds[parent] = heapIds[child];
+					parent = child;
+				}
+				heapDist[parent] = last;
+				heapIds[parent] = lastId;
+			}
+		}
+	}
+
+	/**
+	 * Retrieves the k nearest indexed points of an arbitrary location.
+	 *
+	 * @param x
+	 *            the x-coordinate of the location
+	 * @param y
+	 *            the y-coordinate of the location
+	 * @param z
+	 *            the z-coordinate of the location (ignored for 2D indices)
+	 * @param k
+	 *            the number of neighbors
+	 * @return the neighbors of the location. No neighbors are found if a
+	 *         coordinate of the location is NaN
+	 */
+	public Neighbors nearestNeighbors(final double x, final double y, final double z, final int k) {
+		final Query query = new Query(checkK(k), false);
+		query.point[0] = x;
+		query.point[1] = y;
+		query.point[2] = z;
+		query.run(-1);
+		final Neighbors result = new Neighbors(1, k);
+		query.store(result.indices, result.distances, 0);
+		return result;
+	}
+
+	/**
+	 * Retrieves the k nearest neighbors of every indexed point, in parallel. A
+	 * point is never its own neighbor.
+	 *
+	 * @param k
+	 *            the number of neighbors of each point
+	 * @param ignoreCoincident
+	 *            if {@code true}, points at the same location of a point
+	 *            (i.e., duplicates) are not considered its neighbors
+	 * @return the neighbors of all points, in the order of the coordinate
+	 *         arrays used to build the index. Points that are not indexed
+	 *         (non-finite coordinates) have no neighbors
+	 */
+	public Neighbors allNearestNeighbors(final int k, final boolean ignoreCoincident) {
+		checkK(k);
+		final Neighbors result = new Neighbors(length, k);
+		if (n < length) {
+			Arrays.fill(result.indices, -1);
+			Arrays.fill(result.distances, Double.NaN);
+		}
+		final int nChunks = (n + CHUNK_SIZE - 1) / CHUNK_SIZE;
+		final IntConsumer chunk = new IntConsumer() {
+			@Override
+			public void accept(final int c) {
+				final Query query = new Query(k, ignoreCoincident);
+				// queries in tree order visit similar nodes consecutively
+				for (int i = c * CHUNK_SIZE; i < Math.min(n, (c + 1) * CHUNK_SIZE); i++) {
+					System.arraycopy(coords, i * dims, query.point, 0, dims);
+					query.run(ids[i]);
+					query.store(result.indices, result.distances, ids[i] * k);
+				}
+			}
+		};
+		if (nChunks <= 1) {
+			if (n > 0)
+				chunk.accept(0);
+		} else {
+			IntStream.range(0, nChunks).parallel().forEach(chunk);
+		}
+		return result;
+	}
+
+	private static int checkK(final int k) {
+		if (k < 1)
+			throw new IllegalArgumentException("Number of neighbors must be positive: " + k);
+		return k;
+	}
+
+	/**
+	 * The result of a NN query: for each query point, the indices and
+	 * distances of its k nearest neighbors, sorted by increasing distance.
+	 * Missing neighbors (e.g., when there are fewer than k candidates) have
+	 * index -1 and distance NaN.
+	 */
+	public static class Neighbors {
+
+		private final int k;
+		private final int[] indices;
+		private final double[] distances;
+
+		private Neighbors(final int nPoints, final int k) {
+			this.k = k;
+			indices = new int[nPoints * k];
+			distances = new double[nPoints * k];
+		}
+
+		/** @return the number of neighbors retrieved for each point */
+		public int getK() {
+			return k;
+		}
+
+		/** @return the number of query points */
+		public int size() {
+			return indices.length / k;
+		}
+
+		/**
+		 * @return the index of the specified neighbor of a point, or -1
+		 * @param point
+		 *            the index of the query point
+		 * @param rank
+		 *            the rank of the neighbor (0 for the nearest)
+		 */
+		public int getIndex(final int point, final int rank) {
+			return indices[point * k + rank];
+		}
+
+		/**
+		 * @return the distance to the specified neighbor of a point, or NaN
+		 * @param point
+		 *            the index of the query point
+		 * @param rank
+		 *            the rank of the neighbor (0 for the nearest)
+		 */
+		public double getDistance(final int point, final int rank) {
+			return distances[point * k + rank];
+		}
+
+		/** @return the indices of the neighbors of the given rank, for all points */
+		public int[] getIndices(final int rank) {
+			final int[] column = new int[size()];
+			for (int i = 0; i < column.length; i++)
+				column[i] = indices[i * k + rank];
+			return column;
+		}
+
+		/** @return the distances to the neighbors of the given rank, for all points */
+		public double[] getDistances(final int rank) {
+			final double[] column = new double[size()];
+			for (int i = 0; i < column.length; i++)
+				column[i] = distances[i * k + rank];
+			return column;
+		}
+
+		/**
+		 * Writes the nearest neighbor of each point to a table, with one row
+		 * per point. Rows are appended to the table if needed.
+		 *
+		 * @param rt
+		 *            the table
+		 * @param pairHeading
+		 *            the heading of the column receiving the (1-based) row
+		 *            number of each nearest neighbor, 0 if none was found
+		 * @param distanceHeading
+		 *            the heading of the column receiving NN distances
+		 */
+		public void addToTable(final ResultsTable rt, final String pairHeading, final String distanceHeading) {
+			final int n = size();
+			while (rt.getCounter() < n)
+				rt.incrementCounter();
+			final int pairCol = columnIndex(rt, pairHeading);
+			final int distCol = columnIndex(rt, distanceHeading);
+			for (int i = 0; i < n; i++) {
+				rt.setValue(pairCol, i, indices[i * k] + 1);
+				rt.setValue(distCol, i, distances[i * k]);
+			}
+		}
+
+		private static int columnIndex(final ResultsTable rt, final String heading) {
+			final int col = rt.getColumnIndex(heading);
+			return (col == ResultsTable.COLUMN_NOT_FOUND) ? rt.getFreeColumn(heading) : col;
+		}
+	}
+
+}
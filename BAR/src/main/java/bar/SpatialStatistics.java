@@ -0,0 +1,576 @@
+/*
+ * IJ BAR: https://github.com/tferr/Scripts
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation
+ * (http://www.gnu.org/licenses/gpl.txt).
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ */
+package bar;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+import ij.measure.ResultsTable;
+
+/**
+ * Second-order statistics of 2D or 3D point patterns (e.g., the centroids of
+ * detected foci): fixed-radius neighbor counts, Ripley's K and L functions and
+ * the pair-correlation function. Pairs of points are found through a cell
+ * list (a spatial hash of cells as large as the largest radius of interest),
+ * so that only nearby points are compared: All radii are computed in a single
+ * parallel pass over the points, instead of the O(n<sup>2</sup>) of pairwise
+ * comparisons.
+ * <p>
+ * K is estimated with translation edge correction over a rectangular (or
+ * box-shaped) study region, by default the bounding box of the points.
+ * Significance can be assessed with pointwise Monte Carlo envelopes of L under
+ * complete spatial randomness (CSR), i.e., from uniformly distributed patterns
+ * with the same number of points.
+ *
+ * <pre>
+ * from bar import SpatialStatistics
+ * stats = SpatialStatistics(x, y, None)
+ * result = stats.ripley(SpatialStatistics.radii(50, 100), 99)
+ * result.toResultsTable().show("Ripley's K")
+ * stats.addNeighborCounts(rt, 10, "Neighbors (r=10)")
+ * </pre>
+ */
+public class SpatialStatistics {
+
+	/** The number of points processed by a parallel task */
+	private static final int CHUNK_SIZE = 512;
+
+	/** The number of points, including those with non-finite coordinates */
+	private final int length;
+	/** The number of points with finite coordinates */
+	private final int n;
+	private final int dims;
+	/** The finite coordinates, per axis */
+	private final double[][] coords;
+	/** The original index of each point with finite coordinates */
+	private final int[] ids;
+	private final double[] min = new double[3];
+	private final double[] max = new double[3];
+	private long seed = 1L;
+
+	/**
+	 * Creates statistics of 2D points.
+	 *
+	 * @param x
+	 *            the x-coordinates
+	 * @param y
+	 *            the y-coordinates
+	 */
+	public SpatialStatistics(final double[] x, final double[] y) {
+		this(x, y, null);
+	}
+
+	/**
+	 * Creates statistics of 2D or 3D points. Coordinates are copied. Points
+	 * with a non-finite coordinate (e.g., empty table cells) are excluded. The
+	 * study region is initially the bounding box of the remaining points.
+	 *
+	 * @param x
+	 *            the x-coordinates
+	 * @param y
+	 *            the y-coordinates
+	 * @param z
+	 *            the z-coordinates or {@code null} for 2D points
+	 * @throws IllegalArgumentException
+	 *             if arrays differ in length
+	 */
+	public SpatialStatistics(final double[] x, final double[] y, final double[] z) {
+		if (x.length != y.length || (z != null && z.length != x.length))
+			throw new IllegalArgumentException("Coordinate arrays differ in length");
+		length = x.length;
+		dims = (z == null) ? 2 : 3;
+		int count = 0;
+		for (int i = 0; i < length; i++) {
+			if (isFinite(x[i], y[i], z, i))
+				count++;
+		}
+		n = count;
+		coords = new double[dims][n];
+		ids = new int[n];
+		int j = 0;
+		for (int i = 0; i < length; i++) {
+			if (!isFinite(x[i], y[i], z, i))
+				continue;
+			ids[j] = i;
+			coords[0][j] = x[i];
+			coords[1][j] = y[i];
+			if (z != null)
+				coords[2][j] = z[i];
+			j++;
+		}
+		for (int d = 0; d < dims; d++) {
+			min[d] = Double.POSITIVE_INFINITY;
+			max[d] = Double.NEGATIVE_INFINITY;
+			for (final double v : coords[d]) {
+				min[d] = Math.min(min[d], v);
+				max[d] = Math.max(max[d], v);
+			}
+		}
+	}
+
+	private static boolean isFinite(final double x, final double y, final double[] z, final int i) {
+		return !Double.isNaN(x) && !Double.isInfinite(x) && !Double.isNaN(y) && !Double.isInfinite(y)
+				&& (z == null || (!Double.isNaN(z[i]) && !Double.isInfinite(z[i])));
+	}
+
+	/**
+	 * @return the number of points with finite coordinates, i.e., the points
+	 *         included in the statistics
+	 */
+	public int size() {
+		return n;
+	}
+
+	/** @return the number of dimensions (2 or 3) */
+	public int getDimensions() {
+		return dims;
+	}
+
+	/**
+	 * Sets a rectangular study region, e.g., the image bounds.
+	 *
+	 * @param minX
+	 *            the left edge of the region
+	 * @param maxX
+	 *            the right edge of the region
+	 * @param minY
+	 *            the top edge of the region
+	 * @param maxY
+	 *            the bottom edge of the region
+	 */
+	public void setRegion(final double minX, final double maxX, final double minY, final double maxY) {
+		setRegion(minX, maxX, minY, maxY, min[2], max[2]);
+	}
+
+	/**
+	 * Sets a box-shaped study region, e.g., the calibrated bounds of a stack.
+	 * Z-limits are ignored for 2D points.
+	 */
+	public void setRegion(final double minX, final double maxX, final double minY, final double maxY,
+			final double minZ, final double maxZ) {
+		if (!(maxX > minX && maxY > minY && (dims == 2 || maxZ > minZ)))
+			throw new IllegalArgumentException("Region is empty");
+		min[0] = minX;
+		max[0] = maxX;
+		min[1] = minY;
+		max[1] = maxY;
+		min[2] = minZ;
+		max[2] = maxZ;
+	}
+
+	/** @return the area (2D) or volume (3D) of the study region */
+	public double getRegionSize() {
+		double size = 1;
+		for (int d = 0; d < dims; d++)
+			size *= max[d] - min[d];
+		return size;
+	}
+
+	/**
+	 * Sets the seed of the random patterns of Monte Carlo envelopes, so that
+	 * envelopes can be reproduced.
+	 */
+	public void setSeed(final long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * Creates equally spaced radii.
+	 *
+	 * @param maxRadius
+	 *            the largest radius
+	 * @param steps
+	 *            the number of radii
+	 * @return the radii {@code maxRadius/steps, 2*maxRadius/steps, ..., maxRadius}
+	 */
+	public static double[] radii(final double maxRadius, final int steps) {
+		final double[] radii = new double[steps];
+		for (int i = 0; i < steps; i++)
+			radii[i] = maxRadius * (i + 1) / steps;
+		return radii;
+	}
+
+	// -- Neighbor counts --
+
+	/**
+	 * Counts, for each point, the other points within the specified distance.
+	 *
+	 * @param radius
+	 *            the distance (inclusive)
+	 * @return the counts, in the order of the coordinate arrays. Counts of
+	 *         points with non-finite coordinates are NaN
+	 */
+	public double[] countNeighbors(final double radius) {
+		if (!(radius > 0))
+			throw new IllegalArgumentException("Radius must be positive: " + radius);
+		final CellList cells = new CellList(coords, radius);
+		final double r2 = radius * radius;
+		final double[] counts = new double[length];
+		if (n < length)
+			Arrays.fill(counts, Double.NaN);
+		parallelFor(n, new IntConsumer() {
+			@Override
+			public void accept(final int i) {
+				counts[ids[i]] = cells.visit(i, r2, null);
+			}
+		});
+		return counts;
+	}
+
+	/**
+	 * Writes fixed-radius neighbor counts to a table, with one row per point.
+	 * Rows are appended to the table if needed.
+	 *
+	 * @see #countNeighbors(double)
+	 */
+	public void addNeighborCounts(final ResultsTable rt, final double radius, final String heading) {
+		final double[] counts = countNeighbors(radius);
+		while (rt.getCounter() < length)
+			rt.incrementCounter();
+		int col = rt.getColumnIndex(heading);
+		if (col == ResultsTable.COLUMN_NOT_FOUND)
+			col = rt.getFreeColumn(heading);
+		for (int i = 0; i < length; i++)
+			rt.setValue(col, i, counts[i]);
+	}
+
+	// -- Ripley's K --
+
+	/**
+	 * Computes Ripley's K and L functions and the pair-correlation function.
+	 *
+	 * @param radii
+	 *            the radii at which functions are estimated, in increasing
+	 *            order
+	 * @return the estimated functions
+	 */
+	public Result ripley(final double[] radii) {
+		return ripley(radii, 0);
+	}
+
+	/**
+	 * Computes Ripley's K and L functions and the pair-correlation function,
+	 * with pointwise Monte Carlo envelopes of L under complete spatial
+	 * randomness.
+	 *
+	 * @param radii
+	 *            the radii at which functions are estimated, in increasing
+	 *            order
+	 * @param simulations
+	 *            the number of random patterns (e.g., 99 for a 2% two-sided
+	 *            significance level) or 0 for no envelopes
+	 * @return the estimated functions
+	 */
+	public Result ripley(final double[] radii, final int simulations) {
+		checkRadii(radii);
+		final Result result = new Result(radii, dims);
+		result.k = estimateK(coords, radii);
+		if (simulations > 0) {
+			result.lower = new double[radii.length];
+			result.upper = new double[radii.length];
+			Arrays.fill(result.lower, Double.POSITIVE_INFINITY);
+			Arrays.fill(result.upper, Double.NEGATIVE_INFINITY);
+			final Random random = new Random(seed);
+			final double[][] csr = new double[dims][n];
+			for (int s = 0; s < simulations; s++) {
+				for (int d = 0; d < dims; d++) {
+					for (int i = 0; i < n; i++)
+						csr[d][i] = min[d] + random.nextDouble() * (max[d] - min[d]);
+				}
+				final double[] k = estimateK(csr, radii);
+				for (int r = 0; r < radii.length; r++) {
+					final double l = result.toL(k[r]);
+					result.lower[r] = Math.min(result.lower[r], l);
+					result.upper[r] = Math.max(result.upper[r], l);
+				}
+			}
+		}
+		return result;
+	}
+
+	private static void checkRadii(final double[] radii) {
+		if (radii.length == 0 || !(radii[0] > 0))
+			throw new IllegalArgumentException("Radii must be positive");
+		for (int i = 1; i < radii.length; i++) {
+			if (!(radii[i] > radii[i - 1]))
+				throw new IllegalArgumentException("Radii must be increasing");
+		}
+	}
+
+	/** Estimates K with translation edge correction, in a single pass */
+	private double[] estimateK(final double[][] points, final double[] radii) {
+		final double rMax = radii[radii.length - 1];
+		final CellList cells = new CellList(points, rMax);
+		final int nChunks = (n + CHUNK_SIZE - 1) / CHUNK_SIZE;
+		final double[][] partials = new double[nChunks][];
+		final double[] extent = new double[dims];
+		for (int d = 0; d < dims; d++)
+			extent[d] = max[d] - min[d];
+		IntStream.range(0, nChunks).parallel().forEach(new IntConsumer() {
+			@Override
+			public void accept(final int c) {
+				// weights of pairs binned by the smallest radius including them
+				final double[] bins = new double[radii.length];
+				final PairVisitor visitor = new PairVisitor() {
+					@Override
+					public void visit(final int i, final int j, final double d2) {
+						final double distance = Math.sqrt(d2);
+						int bin = Arrays.binarySearch(radii, distance);
+						if (bin < 0)
+							bin = -bin - 1;
+						double weight = 1;
+						for (int d = 0; d < dims; d++) {
+							final double overlap = extent[d] - Math.abs(points[d][i] - points[d][j]);
+							if (overlap <= 0)
+								return;
+							weight *= extent[d] / overlap;
+						}
+						bins[bin] += weight;
+					}
+				};
+				final double r2 = rMax * rMax;
+				for (int i = c * CHUNK_SIZE; i < Math.min(n, (c + 1) * CHUNK_SIZE); i++)
+					cells.visit(i, r2, visitor);
+				partials[c] = bins;
+			}
+		});
+		final double[] k = new double[radii.length];
+		final double scale = (n < 2) ? Double.NaN : getRegionSize() / ((double) n * (n - 1));
+		double sum = 0;
+		for (int r = 0; r < radii.length; r++) {
+			for (final double[] bins : partials)
+				sum += bins[r];
+			k[r] = sum * scale;
+		}
+		return k;
+	}
+
+	/** Receives pairs of points closer than the search radius */
+	private interface PairVisitor {
+		void visit(int i, int j, double d2);
+	}
+
+	/**
+	 * A uniform grid of cells, at least as large as the search radius, with
+	 * point indices sorted by cell (counting sort), so that the points of a
+	 * cell are contiguous.
+	 */
+	private static class CellList {
+
+		private final double[][] points;
+		private final int dims;
+		private final double[] origin = new double[3];
+		private final int[] size = { 1, 1, 1 };
+		private final double cellSize;
+		private final int[] start;
+		private final int[] sorted;
+
+		private CellList(final double[][] points, final double radius) {
+			this.points = points;
+			dims = points.length;
+			final int n = points[0].length;
+			final double[] extent = new double[3];
+			for (int d = 0; d < dims; d++) {
+				double lo = Double.POSITIVE_INFINITY;
+				double hi = Double.NEGATIVE_INFINITY;
+				for (final double v : points[d]) {
+					lo = Math.min(lo, v);
+					hi = Math.max(hi, v);
+				}
+				origin[d] = (n == 0) ? 0 : lo;
+				extent[d] = (n == 0) ? 0 : hi - lo;
+			}
+			// Cells may need to be larger than radius to keep the grid small
+			double cell = radius;
+			while (cellCount(extent, cell) > Math.max(64, 2L * n))
+				cell *= 2;
+			cellSize = cell;
+			for (int d = 0; d < dims; d++)
+				size[d] = (int) Math.min(Integer.MAX_VALUE, 1 + (long) (extent[d] / cellSize));
+			start = new int[size[0] * size[1] * size[2] + 1];
+			sorted = new int[n];
+			final int[] cellOf = new int[n];
+			for (int i = 0; i < n; i++) {
+				cellOf[i] = cellIndex(i);
+				start[cellOf[i] + 1]++;
+			}
+			for (int c = 1; c < start.length; c++)
+				start[c] += start[c - 1];
+			final int[] next = Arrays.copyOf(start, start.length - 1);
+			for (int i = 0; i < n; i++)
+				sorted[next[cellOf[i]]++] = i;
+		}
+
+		private long cellCount(final double[] extent, final double cell) {
+			long count = 1;
+			for (int d = 0; d < dims; d++)
+				count *= 1 + (long) (extent[d] / cell);
+			return count;
+		}
+
+		private int cell(final int i, final int d) {
+			if (d >= dims)
+				return 0;
+			final double v = (points[d][i] - origin[d]) / cellSize;
+			return (v >= 0 && v < size[d]) ? (int) v : (v >= size[d]) ? size[d] - 1 : 0;
+		}
+
+		private int cellIndex(final int i) {
+			return (cell(i, 2) * size[1] + cell(i, 1)) * size[0] + cell(i, 0);
+		}
+
+		/**
+		 * Visits the points within the search radius of point i (excluding
+		 * itself), in the cells adjacent to its own.
+		 *
+		 * @return the number of visited points
+		 */
+		private int visit(final int i, final double r2, final PairVisitor visitor) {
+			final int cx = cell(i, 0);
+			final int cy = cell(i, 1);
+			final int cz = cell(i, 2);
+			int count = 0;
+			for (int z = Math.max(0, cz - 1); z <= Math.min(size[2] - 1, cz + 1); z++) {
+				for (int y = Math.max(0, cy - 1); y <= Math.min(size[1] - 1, cy + 1); y++) {
+					final int row = (z * size[1] + y) * size[0];
+					final int from = start[row + Math.max(0, cx - 1)];
+					final int to = start[row + Math.min(size[0] - 1, cx + 1) + 1];
+					for (int s = from; s < to; s++) {
+						final int j = sorted[s];
+						if (j == i)
+							continue;
+						double d2 = 0;
+						for (int d = 0; d < dims; d++) {
+							final double delta = points[d][i] - points[d][j];
+							d2 += delta * delta;
+						}
+						if (d2 <= r2) {
+							count++;
+							if (visitor != null)
+								visitor.visit(i, j, d2);
+						}
+					}
+				}
+			}
+			return count;
+		}
+	}
+
+	private static void parallelFor(final int n, final IntConsumer body) {
+		final int nChunks = (n + CHUNK_SIZE - 1) / CHUNK_SIZE;
+		IntStream.range(0, nChunks).parallel().forEach(new IntConsumer() {
+			@Override
+			public void accept(final int c) {
+				for (int i = c * CHUNK_SIZE; i < Math.min(n, (c + 1) * CHUNK_SIZE); i++)
+					body.accept(i);
+			}
+		});
+	}
+
+	/**
+	 * Estimates of Ripley's K and L functions and of the pair-correlation
+	 * function g, at increasing radii. For complete spatial randomness,
+	 * {@code L(r) = r} and {@code g(r) = 1}: Larger values indicate clustering
+	 * and smaller values dispersion at distance r.
+	 */
+	public static class Result {
+
+		private final double[] radii;
+		private final int dims;
+		private double[] k;
+		private double[] lower;
+		private double[] upper;
+
+		private Result(final double[] radii, final int dims) {
+			this.radii = radii.clone();
+			this.dims = dims;
+		}
+
+		private double toL(final double k) {
+			return (dims == 2) ? Math.sqrt(k / Math.PI) : Math.cbrt(3 * k / (4 * Math.PI));
+		}
+
+		/** @return the volume (3D) or area (2D) of a ball of radius r */
+		private double ball(final double r) {
+			return (dims == 2) ? Math.PI * r * r : 4 * Math.PI * r * r * r / 3;
+		}
+
+		/** @return the radii */
+		public double[] getRadii() {
+			return radii.clone();
+		}
+
+		/** @return K(r) */
+		public double[] getK() {
+			return k.clone();
+		}
+
+		/** @return L(r), the variance-stabilized K, i.e., the radius of a ball of volume K */
+		public double[] getL() {
+			final double[] l = new double[k.length];
+			for (int r = 0; r < l.length; r++)
+				l[r] = toL(k[r]);
+			return l;
+		}
+
+		/**
+		 * @return g(r), the pair-correlation function, estimated from the
+		 *         increments of K between consecutive radii
+		 */
+		public double[] getG() {
+			final double[] g = new double[k.length];
+			for (int r = 0; r < g.length; r++) {
+				final double previousK = (r == 0) ? 0 : k[r - 1];
+				final double previousR = (r == 0) ? 0 : radii[r - 1];
+				g[r] = (k[r] - previousK) / (ball(radii[r]) - ball(previousR));
+			}
+			return g;
+		}
+
+		/** @return the lower envelope of L under CSR, or null */
+		public double[] getLowerEnvelope() {
+			return (lower == null) ? null : lower.clone();
+		}
+
+		/** @return the upper envelope of L under CSR, or null */
+		public double[] getUpperEnvelope() {
+			return (upper == null) ? null : upper.clone();
+		}
+
+		/**
+		 * @return a table with one row per radius, with columns {@code r},
+		 *         {@code K}, {@code L}, {@code L-r}, {@code g} and, if
+		 *         computed, {@code L low} and {@code L high} (the envelopes)
+		 */
+		public ResultsTable toResultsTable() {
+			final ResultsTable rt = new ResultsTable();
+			final double[] l = getL();
+			final double[] g = getG();
+			for (int r = 0; r < radii.length; r++) {
+				rt.incrementCounter();
+				rt.addValue("r", radii[r]);
+				rt.addValue("K", k[r]);
+				rt.addValue("L", l[r]);
+				rt.addValue("L-r", l[r] - radii[r]);
+				rt.addValue("g", g[r]);
+				if (lower != null) {
+					rt.addValue("L low", lower[r]);
+					rt.addValue("L high", upper[r]);
+				}
+			}
+			rt.showRowNumbers(false);
+			return rt;
+		}
+	}
+
+}
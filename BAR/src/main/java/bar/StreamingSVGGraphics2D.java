@@ -0,0 +1,1237 @@
+/*
+ * IJ BAR: https://github.com/tferr/Scripts
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation
+ * (http://www.gnu.org/licenses/gpl.txt).
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ */
+package bar;
+
+import java.awt.AlphaComposite;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Composite;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Image;
+import java.awt.LinearGradientPaint;
+import java.awt.MultipleGradientPaint;
+import java.awt.Paint;
+import java.awt.RadialGradientPaint;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.Stroke;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.font.TextLayout;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Arc2D;
+import java.awt.geom.Area;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Line2D;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.geom.RoundRectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.BufferedImageOp;
+import java.awt.image.ImageObserver;
+import java.awt.image.RenderedImage;
+import java.awt.image.renderable.RenderableImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.text.AttributedCharacterIterator;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+
+/**
+ * A {@link Graphics2D} that writes SVG straight to a {@link Writer}, without
+ * building a DOM. Consecutive shapes drawn (or filled) with the same style are
+ * coalesced into a single {@code <path>} element, whose coordinates are
+ * written in device space with a fixed number of decimal places. Memory use
+ * is thus independent of the number of shapes drawn, and files are much
+ * smaller than those of DOM-based generators, which write one element (and
+ * one set of attributes) per shape.
+ * <p>
+ * Shapes are only coalesced when doing so does not change the rendering, i.e.,
+ * for opaque paints: Translucent shapes are written as separate elements, so
+ * that overlapping areas are blended as usual. Filled shapes are written with
+ * a consistent orientation, so that overlapping shapes merged in a path are
+ * not rendered as holes under the non-zero fill rule.
+ *
+ * <pre>
+ * try (Writer writer = Files.newBufferedWriter(path)) {
+ *     final StreamingSVGGraphics2D g2 = new StreamingSVGGraphics2D(writer, 600, 400);
+ *     chart.draw(g2, new Rectangle(600, 400));
+ *     g2.finish();
+ * }
+ * </pre>
+ *
+ * Supported paints are {@link Color}s and gradients; other paints are
+ * rendered with the current color. Composites other than the alpha of
+ * {@link AlphaComposite}s are ignored.
+ *
+ * @see PlotUtils#exportChartAsSVG(org.jfree.chart.JFreeChart, Rectangle,
+ *      java.io.File)
+ */
+public class StreamingSVGGraphics2D extends Graphics2D {
+
+	/** The default number of decimal places of coordinates */
+	public static final int DEFAULT_PRECISION = 2;
+
+	/** Paths are split once their data exceeds this number of characters */
+	private static final int MAX_PATH_LENGTH = 1 << 16;
+
+	/** The maximum number of remembered clip paths and gradients */
+	private static final int MAX_DEFS = 256;
+
+	private static Graphics2D metrics;
+
+	private final Output out;
+	private AffineTransform transform = new AffineTransform();
+	private Paint paint = Color.BLACK;
+	private Color color = Color.BLACK;
+	private Color background = Color.WHITE;
+	private Stroke stroke = new BasicStroke(1f);
+	private Font font = new Font(Font.SANS_SERIF, Font.PLAIN, 12);
+	private Composite composite = AlphaComposite.SrcOver;
+	private final RenderingHints hints = new RenderingHints(null);
+	/** The clip, in device space or null if unclipped */
+	private Shape clip;
+	private String clipId;
+
+	/** The state shared by a graphics context and all its children */
+	private static class Output {
+
+		private final Writer writer;
+		private final int precision;
+		private final long scale;
+		private final StringBuilder pathData = new StringBuilder();
+		private String pathAttributes;
+		private int nextId;
+		private IOException error;
+		private boolean finished;
+		private final LinkedHashMap<String, String> defs = new LinkedHashMap<String, String>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<String, String> eldest) {
+				return size() > MAX_DEFS;
+			}
+		};
+
+		private Output(final Writer writer, final int precision) {
+			this.writer = writer;
+			this.precision = precision;
+			long s = 1;
+			for (int i = 0; i < precision; i++)
+				s *= 10;
+			scale = s;
+		}
+
+		private void write(final CharSequence chars) {
+			if (error != null)
+				return;
+			try {
+				writer.append(chars);
+			} catch (final IOException exc) {
+				error = exc;
+			}
+		}
+	}
+
+	/**
+	 * Creates a new SVG document, with {@link #DEFAULT_PRECISION}.
+	 *
+	 * @param writer
+	 *            the writer receiving the document. For performance, it
+	 *            should be buffered
+	 * @param width
+	 *            the document width
+	 * @param height
+	 *            the document height
+	 * @throws IOException
+	 *             if the document header could not be written
+	 */
+	public StreamingSVGGraphics2D(final Writer writer, final int width, final int height) throws IOException {
+		this(writer, width, height, DEFAULT_PRECISION);
+	}
+
+	/**
+	 * Creates a new SVG document.
+	 *
+	 * @param writer
+	 *            the writer receiving the document. For performance, it
+	 *            should be buffered
+	 * @param width
+	 *            the document width
+	 * @param height
+	 *            the document height
+	 * @param precision
+	 *            the number of decimal places of coordinates (0-6)
+	 * @throws IOException
+	 *             if the document header could not be written
+	 */
+	public StreamingSVGGraphics2D(final Writer writer, final int width, final int height, final int precision)
+			throws IOException {
+		out = new Output(writer, Math.max(0, Math.min(6, precision)));
+		writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+		writer.write("<svg xmlns=\"http://www.w3.org/2000/svg\" xmlns:xlink=\"http://www.w3.org/1999/xlink\""
+				+ " version=\"1.1\" width=\"" + width + "\" height=\"" + height + "\" viewBox=\"0 0 " + width + " "
+				+ height + "\">\n");
+		hints.put(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+		hints.put(RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_ON);
+	}
+
+	private StreamingSVGGraphics2D(final StreamingSVGGraphics2D parent) {
+		out = parent.out;
+		transform = new AffineTransform(parent.transform);
+		paint = parent.paint;
+		color = parent.color;
+		background = parent.background;
+		stroke = parent.stroke;
+		font = parent.font;
+		composite = parent.composite;
+		hints.putAll(parent.hints);
+		clip = parent.clip;
+		clipId = parent.clipId;
+	}
+
+	/**
+	 * Completes the document. The writer is flushed but not closed. Subsequent
+	 * calls have no effect.
+	 *
+	 * @throws IOException
+	 *             if the document (or any of its elements) could not be
+	 *             written
+	 */
+	public void finish() throws IOException {
+		if (!out.finished) {
+			flushPath();
+			out.write("</svg>\n");
+			out.finished = true;
+		}
+		if (out.error != null)
+			throw out.error;
+		out.writer.flush();
+	}
+
+	/* Path output */
+
+	/** Writes the pending path, if any */
+	private void flushPath() {
+		if (out.pathData.length() == 0)
+			return;
+		final StringBuilder sb = new StringBuilder(out.pathData.length() + out.pathAttributes.length() + 20);
+		sb.append("<path").append(out.pathAttributes).append(" d=\"").append(out.pathData).append("\"/>\n");
+		out.write(sb);
+		out.pathData.setLength(0);
+		out.pathAttributes = null;
+	}
+
+	/**
+	 * Appends a shape (in user space) to the pending path, starting a new path
+	 * if attributes differ from those of the pending one.
+	 */
+	private void emit(final Shape shape, final String attributes, final boolean coalesce, final boolean orient) {
+		if (!attributes.equals(out.pathAttributes) || out.pathData.length() > MAX_PATH_LENGTH)
+			flushPath();
+		out.pathAttributes = attributes;
+		final PathIterator it = shape.getPathIterator(transform);
+		if (orient)
+			appendOriented(out.pathData, it);
+		else
+			appendPath(out.pathData, it);
+		if (!coalesce)
+			flushPath();
+	}
+
+	private void appendPath(final StringBuilder sb, final PathIterator it) {
+		final double[] c = new double[6];
+		char last = 0;
+		while (!it.isDone()) {
+			final int type = it.currentSegment(c);
+			last = appendSegment(sb, type, c, 0, last);
+			it.next();
+		}
+	}
+
+	private char appendSegment(final StringBuilder sb, final int type, final double[] c, final int offset,
+			final char last) {
+		final char command;
+		final int n;
+		switch (type) {
+		case PathIterator.SEG_MOVETO:
+			command = 'M';
+			n = 2;
+			break;
+		case PathIterator.SEG_LINETO:
+			command = 'L';
+			n = 2;
+			break;
+		case PathIterator.SEG_QUADTO:
+			command = 'Q';
+			n = 4;
+			break;
+		case PathIterator.SEG_CUBICTO:
+			command = 'C';
+			n = 6;
+			break;
+		default:
+			command = 'Z';
+			n = 0;
+		}
+		if (command != last || command == 'M' || command == 'Z')
+			sb.append(command);
+		for (int i = 0; i < n; i++)
+			appendNumber(sb, c[offset + i]);
+		return command;
+	}
+
+	/**
+	 * Appends a filled shape with a positive orientation (i.e., with a
+	 * positive signed area), reversing all of its subpaths if necessary. This
+	 * preserves the shape itself (holes included) under the non-zero rule.
+	 */
+	private void appendOriented(final StringBuilder sb, final PathIterator it) {
+		int[] types = new int[16];
+		double[] coords = new double[16 * 6];
+		int n = 0;
+		final double[] c = new double[6];
+		double area = 0;
+		double startX = 0, startY = 0, lastX = 0, lastY = 0;
+		while (!it.isDone()) {
+			if (n == types.length) {
+				types = Arrays.copyOf(types, n * 2);
+				coords = Arrays.copyOf(coords, n * 12);
+			}
+			final int type = it.currentSegment(c);
+			types[n] = type;
+			System.arraycopy(c, 0, coords, n * 6, 6);
+			n++;
+			final int points = pointCount(type);
+			if (type == PathIterator.SEG_MOVETO) {
+				area += lastX * startY - startX * lastY; // close previous subpath
+				startX = lastX = c[0];
+				startY = lastY = c[1];
+			} else {
+				for (int p = 0; p < points; p++) { // control polygon
+					area += lastX * c[2 * p + 1] - c[2 * p] * lastY;
+					lastX = c[2 * p];
+					lastY = c[2 * p + 1];
+				}
+			}
+			it.next();
+		}
+		area += lastX * startY - startX * lastY;
+		char last = 0;
+		if (area >= 0) {
+			for (int i = 0; i < n; i++)
+				last = appendSegment(sb, types[i], coords, i * 6, last);
+			return;
+		}
+		final double[] r = new double[6];
+		int end = n;
+		while (end > 0) { // subpaths, last to first (order is irrelevant)
+			int start = end - 1;
+			while (start > 0 && types[start] != PathIterator.SEG_MOVETO)
+				start--;
+			final boolean closed = types[end - 1] == PathIterator.SEG_CLOSE;
+			final int lastSegment = (closed) ? end - 2 : end - 1;
+			// move to the end point of the subpath
+			endPoint(types, coords, lastSegment, r);
+			last = appendSegment(sb, PathIterator.SEG_MOVETO, r, 0, last);
+			for (int i = lastSegment; i > start; i--) {
+				final int type = types[i];
+				final int points = pointCount(type);
+				final double[] previous = new double[2];
+				endPoint(types, coords, i - 1, previous);
+				// control points in reverse order, ending at previous end point
+				for (int p = 0; p < points - 1; p++) {
+					r[2 * p] = coords[i * 6 + 2 * (points - 2 - p)];
+					r[2 * p + 1] = coords[i * 6 + 2 * (points - 2 - p) + 1];
+				}
+				r[2 * (points - 1)] = previous[0];
+				r[2 * (points - 1) + 1] = previous[1];
+				last = appendSegment(sb, type, r, 0, last);
+			}
+			if (closed)
+				last = appendSegment(sb, PathIterator.SEG_CLOSE, r, 0, last);
+			end = start;
+		}
+	}
+
+	private static int pointCount(final int type) {
+		switch (type) {
+		case PathIterator.SEG_MOVETO:
+		case PathIterator.SEG_LINETO:
+			return 1;
+		case PathIterator.SEG_QUADTO:
+			return 2;
+		case PathIterator.SEG_CUBICTO:
+			return 3;
+		default:
+			return 0;
+		}
+	}
+
+	/** Retrieves the end point of a segment, skipping back over closures */
+	private static void endPoint(final int[] types, final double[] coords, final int segment, final double[] point) {
+		int i = segment;
+		while (i > 0 && types[i] == PathIterator.SEG_CLOSE)
+			i--;
+		final int points = Math.max(1, pointCount(types[i]));
+		point[0] = coords[i * 6 + 2 * (points - 1)];
+		point[1] = coords[i * 6 + 2 * (points - 1) + 1];
+	}
+
+	/** Appends a number with fixed precision, separated from the previous one */
+	private void appendNumber(final StringBuilder sb, final double value) {
+		long scaled = Math.round(value * out.scale);
+		final int length = sb.length();
+		final char previous = (length == 0) ? ' ' : sb.charAt(length - 1);
+		if (scaled < 0) {
+			sb.append('-');
+			scaled = -scaled;
+		} else if (Character.isDigit(previous) || previous == '.') {
+			sb.append(' ');
+		}
+		sb.append(scaled / out.scale);
+		long fraction = scaled % out.scale;
+		if (fraction == 0)
+			return;
+		int digits = out.precision;
+		while (fraction % 10 == 0) {
+			fraction /= 10;
+			digits--;
+		}
+		sb.append('.');
+		final String f = Long.toString(fraction);
+		for (int i = f.length(); i < digits; i++)
+			sb.append('0');
+		sb.append(f);
+	}
+
+	private String format(final double value) {
+		final StringBuilder sb = new StringBuilder(12);
+		appendNumber(sb, value);
+		return sb.toString();
+	}
+
+	/* Styles */
+
+	/** @return the opacity of composite operations */
+	private float compositeAlpha() {
+		return (composite instanceof AlphaComposite) ? ((AlphaComposite) composite).getAlpha() : 1f;
+	}
+
+	/**
+	 * Appends the attributes of the current paint (the color or gradient and
+	 * its opacity) with the specified prefix ({@code fill} or {@code stroke}).
+	 *
+	 * @return {@code true} if paint is opaque
+	 */
+	private boolean appendPaint(final StringBuilder sb, final String prefix) {
+		final float alpha = compositeAlpha();
+		if (paint instanceof Color || !(paint instanceof GradientPaint || paint instanceof MultipleGradientPaint)) {
+			final Color c = (paint instanceof Color) ? (Color) paint : color;
+			sb.append(' ').append(prefix).append("=\"").append(hex(c)).append('"');
+			final double opacity = alpha * c.getAlpha() / 255d;
+			if (opacity < 1) {
+				sb.append(' ').append(prefix).append("-opacity=\"").append(formatOpacity(opacity)).append('"');
+				return false;
+			}
+			return true;
+		}
+		sb.append(' ').append(prefix).append("=\"url(#").append(gradientId()).append(")\"");
+		if (alpha < 1) {
+			sb.append(' ').append(prefix).append("-opacity=\"").append(formatOpacity(alpha)).append('"');
+			return false;
+		}
+		return paint.getTransparency() == java.awt.Transparency.OPAQUE;
+	}
+
+	private static String formatOpacity(final double opacity) {
+		return String.valueOf(Math.round(opacity * 1000) / 1000d);
+	}
+
+	private static String hex(final Color c) {
+		final String rgb = Integer.toHexString(c.getRGB() & 0xffffff);
+		return "#000000".substring(0, 7 - rgb.length()) + rgb;
+	}
+
+	/** @return the id of the definition of the current gradient paint */
+	private String gradientId() {
+		final StringBuilder def = new StringBuilder();
+		if (paint instanceof GradientPaint) {
+			final GradientPaint gp = (GradientPaint) paint;
+			final Point2D p1 = transform.transform(gp.getPoint1(), null);
+			final Point2D p2 = transform.transform(gp.getPoint2(), null);
+			def.append("<linearGradient gradientUnits=\"userSpaceOnUse\" x1=\"").append(format(p1.getX()))
+					.append("\" y1=\"").append(format(p1.getY())).append("\" x2=\"").append(format(p2.getX()))
+					.append("\" y2=\"").append(format(p2.getY())).append('"');
+			if (gp.isCyclic())
+				def.append(" spreadMethod=\"reflect\"");
+			def.append('>');
+			appendStop(def, 0, gp.getColor1());
+			appendStop(def, 1, gp.getColor2());
+			def.append("</linearGradient>");
+		} else {
+			final MultipleGradientPaint mgp = (MultipleGradientPaint) paint;
+			final AffineTransform at = new AffineTransform(transform);
+			at.concatenate(mgp.getTransform());
+			if (mgp instanceof LinearGradientPaint) {
+				final LinearGradientPaint lgp = (LinearGradientPaint) mgp;
+				def.append("<linearGradient gradientUnits=\"userSpaceOnUse\" x1=\"")
+						.append(format(lgp.getStartPoint().getX())).append("\" y1=\"")
+						.append(format(lgp.getStartPoint().getY())).append("\" x2=\"")
+						.append(format(lgp.getEndPoint().getX())).append("\" y2=\"")
+						.append(format(lgp.getEndPoint().getY())).append('"');
+			} else {
+				final RadialGradientPaint rgp = (RadialGradientPaint) mgp;
+				def.append("<radialGradient gradientUnits=\"userSpaceOnUse\" cx=\"")
+						.append(format(rgp.getCenterPoint().getX())).append("\" cy=\"")
+						.append(format(rgp.getCenterPoint().getY())).append("\" r=\"")
+						.append(format(rgp.getRadius())).append("\" fx=\"")
+						.append(format(rgp.getFocusPoint().getX())).append("\" fy=\"")
+						.append(format(rgp.getFocusPoint().getY())).append('"');
+			}
+			def.append(" gradientTransform=\"").append(matrix(at)).append('"');
+			if (mgp.getCycleMethod() == MultipleGradientPaint.CycleMethod.REFLECT)
+				def.append(" spreadMethod=\"reflect\"");
+			else if (mgp.getCycleMethod() == MultipleGradientPaint.CycleMethod.REPEAT)
+				def.append(" spreadMethod=\"repeat\"");
+			def.append('>');
+			for (int i = 0; i < mgp.getFractions().length; i++)
+				appendStop(def, mgp.getFractions()[i], mgp.getColors()[i]);
+			def.append((mgp instanceof LinearGradientPaint) ? "</linearGradient>" : "</radialGradient>");
+		}
+		return define(def.toString(), "g");
+	}
+
+	private static void appendStop(final StringBuilder sb, final float offset, final Color c) {
+		sb.append("<stop offset=\"").append(offset).append("\" stop-color=\"").append(hex(c)).append('"');
+		if (c.getAlpha() < 255)
+			sb.append(" stop-opacity=\"").append(formatOpacity(c.getAlpha() / 255d)).append('"');
+		sb.append("/>");
+	}
+
+	/**
+	 * Writes a definition (e.g., a gradient) unless it has been written
+	 * recently, in which case its id is reused.
+	 *
+	 * @param def
+	 *            the element, without id
+	 * @return the element id
+	 */
+	private String define(final String def, final String prefix) {
+		String id = out.defs.get(def);
+		if (id == null) {
+			id = prefix + out.nextId++;
+			out.defs.put(def, id);
+			int end = 1; // insert id after the element name
+			while (Character.isLetter(def.charAt(end)))
+				end++;
+			out.write("<defs>" + def.substring(0, end) + " id=\"" + id + "\"" + def.substring(end) + "</defs>\n");
+		}
+		return id;
+	}
+
+	private String matrix(final AffineTransform at) {
+		return "matrix(" + format(at.getScaleX()) + " " + format(at.getShearY()) + " " + format(at.getShearX())
+				+ " " + format(at.getScaleY()) + " " + format(at.getTranslateX()) + " " + format(at.getTranslateY())
+				+ ")";
+	}
+
+	private String clipAttribute() {
+		if (clip == null)
+			return "";
+		if (clipId == null) {
+			final StringBuilder d = new StringBuilder();
+			appendPath(d, clip.getPathIterator(null));
+			clipId = define("<clipPath><path d=\"" + d + "\"/></clipPath>", "c");
+		}
+		return " clip-path=\"url(#" + clipId + ")\"";
+	}
+
+	/** @return the factor by which the current transform scales lengths */
+	private double lengthScale() {
+		return Math.sqrt(Math.abs(transform.getDeterminant()));
+	}
+
+	/* Graphics2D */
+
+	@Override
+	public void draw(final Shape s) {
+		if (!(stroke instanceof BasicStroke)) {
+			fill(stroke.createStrokedShape(s));
+			return;
+		}
+		final BasicStroke bs = (BasicStroke) stroke;
+		final StringBuilder sb = new StringBuilder(" fill=\"none\"");
+		final boolean opaque = appendPaint(sb, "stroke");
+		final double scale = lengthScale();
+		sb.append(" stroke-width=\"").append(format(Math.max(bs.getLineWidth() * scale, 1d / out.scale)))
+				.append('"');
+		if (bs.getEndCap() == BasicStroke.CAP_ROUND)
+			sb.append(" stroke-linecap=\"round\"");
+		else if (bs.getEndCap() == BasicStroke.CAP_SQUARE)
+			sb.append(" stroke-linecap=\"square\"");
+		if (bs.getLineJoin() == BasicStroke.JOIN_ROUND)
+			sb.append(" stroke-linejoin=\"round\"");
+		else if (bs.getLineJoin() == BasicStroke.JOIN_BEVEL)
+			sb.append(" stroke-linejoin=\"bevel\"");
+		else if (bs.getMiterLimit() != 4f)
+			sb.append(" stroke-miterlimit=\"").append(format(Math.max(1, bs.getMiterLimit()))).append('"');
+		final float[] dashes = bs.getDashArray();
+		if (dashes != null && dashes.length > 0) {
+			sb.append(" stroke-dasharray=\"");
+			for (int i = 0; i < dashes.length; i++) {
+				if (i > 0)
+					sb.append(',');
+				sb.append(format(dashes[i] * scale));
+			}
+			sb.append('"');
+			if (bs.getDashPhase() != 0)
+				sb.append(" stroke-dashoffset=\"").append(format(bs.getDashPhase() * scale)).append('"');
+		}
+		sb.append(clipAttribute());
+		emit(s, sb.toString(), opaque, false);
+	}
+
+	@Override
+	public void fill(final Shape s) {
+		final StringBuilder sb = new StringBuilder();
+		final boolean opaque = appendPaint(sb, "fill");
+		final boolean evenOdd = s.getPathIterator(null).getWindingRule() == PathIterator.WIND_EVEN_ODD;
+		if (evenOdd)
+			sb.append(" fill-rule=\"evenodd\"");
+		sb.append(clipAttribute());
+		emit(s, sb.toString(), opaque && !evenOdd, !evenOdd);
+	}
+
+	@Override
+	public boolean hit(final Rectangle rect, final Shape s, final boolean onStroke) {
+		final Shape shape = (onStroke) ? stroke.createStrokedShape(s) : s;
+		return transform.createTransformedShape(shape).intersects(rect);
+	}
+
+	@Override
+	public void drawString(final String str, final int x, final int y) {
+		drawString(str, (float) x, (float) y);
+	}
+
+	@Override
+	public void drawString(final String str, final float x, final float y) {
+		if (str == null || str.isEmpty())
+			return;
+		if (!font.isTransformed() && font.getAttributes().get(java.awt.font.TextAttribute.UNDERLINE) == null
+				&& font.getAttributes().get(java.awt.font.TextAttribute.STRIKETHROUGH) == null) {
+			writeText(str, x, y);
+			return;
+		}
+		fill(font.createGlyphVector(getFontRenderContext(), str).getOutline(x, y));
+	}
+
+	private void writeText(final String str, final float x, final float y) {
+		flushPath();
+		// Clip paths are in device space, while clip-path is resolved in the
+		// user space of the element it is set on: Transformed elements are
+		// wrapped in a clipped group
+		final String clipAttribute = clipAttribute();
+		final boolean transformed = transform.getType() != AffineTransform.TYPE_IDENTITY
+				&& transform.getType() != AffineTransform.TYPE_TRANSLATION;
+		final boolean grouped = transformed && !clipAttribute.isEmpty();
+		final StringBuilder sb = new StringBuilder();
+		if (grouped)
+			sb.append("<g").append(clipAttribute).append('>');
+		sb.append("<text");
+		if (!transformed) {
+			sb.append(" x=\"").append(format(x + transform.getTranslateX())).append("\" y=\"")
+					.append(format(y + transform.getTranslateY())).append('"');
+		} else {
+			sb.append(" x=\"").append(format(x)).append("\" y=\"").append(format(y)).append("\" transform=\"")
+					.append(matrix(transform)).append('"');
+		}
+		sb.append(" font-family=\"").append(escape(fontFamily(font))).append("\" font-size=\"")
+				.append(format(font.getSize2D())).append('"');
+		if (font.isBold())
+			sb.append(" font-weight=\"bold\"");
+		if (font.isItalic())
+			sb.append(" font-style=\"italic\"");
+		appendPaint(sb, "fill");
+		if (!grouped)
+			sb.append(clipAttribute);
+		sb.append(" xml:space=\"preserve\">").append(escape(str)).append("</text>");
+		if (grouped)
+			sb.append("</g>");
+		out.write(sb.append('\n'));
+	}
+
+	private static String fontFamily(final Font font) {
+		final String family = font.getFamily();
+		switch (family) {
+		case Font.SANS_SERIF:
+		case Font.DIALOG:
+		case Font.DIALOG_INPUT:
+			return "sans-serif";
+		case Font.SERIF:
+			return "serif";
+		case Font.MONOSPACED:
+			return "monospace";
+		default:
+			return "'" + family.replace("'", "") + "', sans-serif";
+		}
+	}
+
+	private static String escape(final String str) {
+		final StringBuilder sb = new StringBuilder(str.length());
+		for (int i = 0; i < str.length(); i++) {
+			final char c = str.charAt(i);
+			switch (c) {
+			case '&':
+				sb.append("&amp;");
+				break;
+			case '<':
+				sb.append("&lt;");
+				break;
+			case '>':
+				sb.append("&gt;");
+				break;
+			case '"':
+				sb.append("&quot;");
+				break;
+			default:
+				if (c >= 0x20 || c == '\t' || c == '\n')
+					sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+
+	@Override
+	public void drawString(final AttributedCharacterIterator iterator, final int x, final int y) {
+		drawString(iterator, (float) x, (float) y);
+	}
+
+	@Override
+	public void drawString(final AttributedCharacterIterator iterator, final float x, final float y) {
+		if (iterator.getEndIndex() <= iterator.getBeginIndex())
+			return;
+		final TextLayout layout = new TextLayout(iterator, getFontRenderContext());
+		fill(layout.getOutline(AffineTransform.getTranslateInstance(x, y)));
+	}
+
+	@Override
+	public void drawGlyphVector(final GlyphVector g, final float x, final float y) {
+		fill(g.getOutline(x, y));
+	}
+
+	/* Images */
+
+	/** Writes an image as an embedded PNG, streaming its encoding */
+	private void writeImage(final RenderedImage image, final AffineTransform xform) {
+		flushPath();
+		final AffineTransform at = new AffineTransform(transform);
+		if (xform != null)
+			at.concatenate(xform);
+		// The image carries its own transform: clip it through a parent group
+		// so that the (device space) clip path is not transformed
+		final String clipAttribute = clipAttribute();
+		if (!clipAttribute.isEmpty())
+			out.write("<g" + clipAttribute + ">");
+		out.write("<image width=\"" + image.getWidth() + "\" height=\"" + image.getHeight() + "\" transform=\""
+				+ matrix(at) + "\" preserveAspectRatio=\"none\" xlink:href=\"data:image/png;base64,");
+		final OutputStream base64 = Base64.getEncoder().wrap(new OutputStream() {
+			@Override
+			public void write(final int b) {
+				out.write(String.valueOf((char) b));
+			}
+
+			@Override
+			public void write(final byte[] b, final int off, final int len) {
+				final char[] chars = new char[len];
+				for (int i = 0; i < len; i++)
+					chars[i] = (char) b[off + i];
+				out.write(java.nio.CharBuffer.wrap(chars));
+			}
+		});
+		try {
+			ImageIO.write(image, "png", base64);
+			base64.close();
+		} catch (final IOException exc) {
+			if (out.error == null)
+				out.error = exc;
+		}
+		out.write(clipAttribute.isEmpty() ? "\"/>\n" : "\"/></g>\n");
+	}
+
+	private static BufferedImage toBufferedImage(final Image img) {
+		if (img instanceof BufferedImage)
+			return (BufferedImage) img;
+		final int w = img.getWidth(null);
+		final int h = img.getHeight(null);
+		if (w <= 0 || h <= 0)
+			return null;
+		final BufferedImage bi = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+		final Graphics2D g = bi.createGraphics();
+		g.drawImage(img, 0, 0, null);
+		g.dispose();
+		return bi;
+	}
+
+	@Override
+	public boolean drawImage(final Image img, final AffineTransform xform, final ImageObserver obs) {
+		final BufferedImage bi = toBufferedImage(img);
+		if (bi != null)
+			writeImage(bi, xform);
+		return true;
+	}
+
+	@Override
+	public void drawImage(final BufferedImage img, final BufferedImageOp op, final int x, final int y) {
+		final BufferedImage filtered = (op == null) ? img : op.filter(img, null);
+		writeImage(filtered, AffineTransform.getTranslateInstance(x, y));
+	}
+
+	@Override
+	public void drawRenderedImage(final RenderedImage img, final AffineTransform xform) {
+		writeImage(img, xform);
+	}
+
+	@Override
+	public void drawRenderableImage(final RenderableImage img, final AffineTransform xform) {
+		writeImage(img.createDefaultRendering(), xform);
+	}
+
+	@Override
+	public boolean drawImage(final Image img, final int x, final int y, final ImageObserver observer) {
+		return drawImage(img, AffineTransform.getTranslateInstance(x, y), observer);
+	}
+
+	@Override
+	public boolean drawImage(final Image img, final int x, final int y, final int width, final int height,
+			final ImageObserver observer) {
+		final BufferedImage bi = toBufferedImage(img);
+		if (bi == null)
+			return true;
+		final AffineTransform at = AffineTransform.getTranslateInstance(x, y);
+		at.scale((double) width / bi.getWidth(), (double) height / bi.getHeight());
+		writeImage(bi, at);
+		return true;
+	}
+
+	@Override
+	public boolean drawImage(final Image img, final int x, final int y, final Color bgcolor,
+			final ImageObserver observer) {
+		final BufferedImage bi = toBufferedImage(img);
+		if (bi == null)
+			return true;
+		return drawImage(img, x, y, bi.getWidth(), bi.getHeight(), bgcolor, observer);
+	}
+
+	@Override
+	public boolean drawImage(final Image img, final int x, final int y, final int width, final int height,
+			final Color bgcolor, final ImageObserver observer) {
+		if (bgcolor != null) {
+			final Paint saved = paint;
+			setPaint(bgcolor);
+			fill(new Rectangle(x, y, width, height));
+			setPaint(saved);
+		}
+		return drawImage(img, x, y, width, height, observer);
+	}
+
+	@Override
+	public boolean drawImage(final Image img, final int dx1, final int dy1, final int dx2, final int dy2,
+			final int sx1, final int sy1, final int sx2, final int sy2, final ImageObserver observer) {
+		final BufferedImage bi = toBufferedImage(img);
+		if (bi == null)
+			return true;
+		final int sx = Math.max(0, Math.min(sx1, sx2));
+		final int sy = Math.max(0, Math.min(sy1, sy2));
+		final int sw = Math.min(bi.getWidth(), Math.max(sx1, sx2)) - sx;
+		final int sh = Math.min(bi.getHeight(), Math.max(sy1, sy2)) - sy;
+		if (sw <= 0 || sh <= 0)
+			return true;
+		final AffineTransform at = AffineTransform.getTranslateInstance(dx1, dy1);
+		at.scale((double) (dx2 - dx1) / (sx2 - sx1), (double) (dy2 - dy1) / (sy2 - sy1));
+		at.translate(Math.min(sx1, sx2) - sx1 + (sx - Math.min(sx1, sx2)), sy - sy1);
+		writeImage(bi.getSubimage(sx, sy, sw, sh), at);
+		return true;
+	}
+
+	@Override
+	public boolean drawImage(final Image img, final int dx1, final int dy1, final int dx2, final int dy2,
+			final int sx1, final int sy1, final int sx2, final int sy2, final Color bgcolor,
+			final ImageObserver observer) {
+		if (bgcolor != null) {
+			final Paint saved = paint;
+			setPaint(bgcolor);
+			fill(new Rectangle(Math.min(dx1, dx2), Math.min(dy1, dy2), Math.abs(dx2 - dx1), Math.abs(dy2 - dy1)));
+			setPaint(saved);
+		}
+		return drawImage(img, dx1, dy1, dx2, dy2, sx1, sy1, sx2, sy2, observer);
+	}
+
+	/* Primitives */
+
+	@Override
+	public void drawLine(final int x1, final int y1, final int x2, final int y2) {
+		draw(new Line2D.Double(x1, y1, x2, y2));
+	}
+
+	@Override
+	public void drawRect(final int x, final int y, final int width, final int height) {
+		draw(new Rectangle(x, y, width, height));
+	}
+
+	@Override
+	public void fillRect(final int x, final int y, final int width, final int height) {
+		fill(new Rectangle(x, y, width, height));
+	}
+
+	@Override
+	public void clearRect(final int x, final int y, final int width, final int height) {
+		final Paint saved = paint;
+		final Composite savedComposite = composite;
+		setPaint(background);
+		composite = AlphaComposite.SrcOver;
+		fill(new Rectangle(x, y, width, height));
+		setPaint(saved);
+		composite = savedComposite;
+	}
+
+	@Override
+	public void drawRoundRect(final int x, final int y, final int width, final int height, final int arcWidth,
+			final int arcHeight) {
+		draw(new RoundRectangle2D.Double(x, y, width, height, arcWidth, arcHeight));
+	}
+
+	@Override
+	public void fillRoundRect(final int x, final int y, final int width, final int height, final int arcWidth,
+			final int arcHeight) {
+		fill(new RoundRectangle2D.Double(x, y, width, height, arcWidth, arcHeight));
+	}
+
+	@Override
+	public void drawOval(final int x, final int y, final int width, final int height) {
+		draw(new Ellipse2D.Double(x, y, width, height));
+	}
+
+	@Override
+	public void fillOval(final int x, final int y, final int width, final int height) {
+		fill(new Ellipse2D.Double(x, y, width, height));
+	}
+
+	@Override
+	public void drawArc(final int x, final int y, final int width, final int height, final int startAngle,
+			final int arcAngle) {
+		draw(new Arc2D.Double(x, y, width, height, startAngle, arcAngle, Arc2D.OPEN));
+	}
+
+	@Override
+	public void fillArc(final int x, final int y, final int width, final int height, final int startAngle,
+			final int arcAngle) {
+		fill(new Arc2D.Double(x, y, width, height, startAngle, arcAngle, Arc2D.PIE));
+	}
+
+	@Override
+	public void drawPolyline(final int[] xPoints, final int[] yPoints, final int nPoints) {
+		if (nPoints < 1)
+			return;
+		final Path2D.Double path = new Path2D.Double();
+		path.moveTo(xPoints[0], yPoints[0]);
+		for (int i = 1; i < nPoints; i++)
+			path.lineTo(xPoints[i], yPoints[i]);
+		draw(path);
+	}
+
+	@Override
+	public void drawPolygon(final int[] xPoints, final int[] yPoints, final int nPoints) {
+		draw(new java.awt.Polygon(xPoints, yPoints, nPoints));
+	}
+
+	@Override
+	public void fillPolygon(final int[] xPoints, final int[] yPoints, final int nPoints) {
+		fill(new java.awt.Polygon(xPoints, yPoints, nPoints));
+	}
+
+	@Override
+	public void copyArea(final int x, final int y, final int width, final int height, final int dx, final int dy) {
+		// not supported: the document cannot be read back
+	}
+
+	/* State */
+
+	@Override
+	public java.awt.Graphics create() {
+		return new StreamingSVGGraphics2D(this);
+	}
+
+	@Override
+	public void dispose() {
+		// the document is completed by finish()
+	}
+
+	@Override
+	public GraphicsConfiguration getDeviceConfiguration() {
+		return metrics().getDeviceConfiguration();
+	}
+
+	@Override
+	public void setComposite(final Composite comp) {
+		if (comp != null)
+			composite = comp;
+	}
+
+	@Override
+	public Composite getComposite() {
+		return composite;
+	}
+
+	@Override
+	public void setPaint(final Paint paint) {
+		if (paint == null)
+			return;
+		this.paint = paint;
+		if (paint instanceof Color)
+			color = (Color) paint;
+	}
+
+	@Override
+	public Paint getPaint() {
+		return paint;
+	}
+
+	@Override
+	public void setColor(final Color c) {
+		if (c == null)
+			return;
+		color = c;
+		paint = c;
+	}
+
+	@Override
+	public Color getColor() {
+		return color;
+	}
+
+	@Override
+	public void setPaintMode() {
+		// only paint mode is supported
+	}
+
+	@Override
+	public void setXORMode(final Color c1) {
+		// not supported
+	}
+
+	@Override
+	public void setStroke(final Stroke s) {
+		if (s != null)
+			stroke = s;
+	}
+
+	@Override
+	public Stroke getStroke() {
+		return stroke;
+	}
+
+	@Override
+	public void setBackground(final Color color) {
+		if (color != null)
+			background = color;
+	}
+
+	@Override
+	public Color getBackground() {
+		return background;
+	}
+
+	@Override
+	public void setFont(final Font font) {
+		if (font != null)
+			this.font = font;
+	}
+
+	@Override
+	public Font getFont() {
+		return font;
+	}
+
+	private static synchronized Graphics2D metrics() {
+		if (metrics == null) {
+			metrics = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB).createGraphics();
+			metrics.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS,
+					RenderingHints.VALUE_FRACTIONALMETRICS_ON);
+			metrics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+		}
+		return metrics;
+	}
+
+	@Override
+	public FontMetrics getFontMetrics(final Font f) {
+		final Graphics2D g = metrics();
+		synchronized (g) {
+			return g.getFontMetrics(f);
+		}
+	}
+
+	@Override
+	public FontRenderContext getFontRenderContext() {
+		return new FontRenderContext(new AffineTransform(), true, true);
+	}
+
+	@Override
+	public void setRenderingHint(final RenderingHints.Key hintKey, final Object hintValue) {
+		hints.put(hintKey, hintValue);
+	}
+
+	@Override
+	public Object getRenderingHint(final RenderingHints.Key hintKey) {
+		return hints.get(hintKey);
+	}
+
+	@Override
+	public void setRenderingHints(final Map<?, ?> hints) {
+		this.hints.clear();
+		this.hints.putAll(hints);
+	}
+
+	@Override
+	public void addRenderingHints(final Map<?, ?> hints) {
+		this.hints.putAll(hints);
+	}
+
+	@Override
+	public RenderingHints getRenderingHints() {
+		return (RenderingHints) hints.clone();
+	}
+
+	/* Transforms */
+
+	@Override
+	public void translate(final int x, final int y) {
+		transform.translate(x, y);
+	}
+
+	@Override
+	public void translate(final double tx, final double ty) {
+		transform.translate(tx, ty);
+	}
+
+	@Override
+	public void rotate(final double theta) {
+		transform.rotate(theta);
+	}
+
+	@Override
+	public void rotate(final double theta, final double x, final double y) {
+		transform.rotate(theta, x, y);
+	}
+
+	@Override
+	public void scale(final double sx, final double sy) {
+		transform.scale(sx, sy);
+	}
+
+	@Override
+	public void shear(final double shx, final double shy) {
+		transform.shear(shx, shy);
+	}
+
+	@Override
+	public void transform(final AffineTransform tx) {
+		transform.concatenate(tx);
+	}
+
+	@Override
+	public void setTransform(final AffineTransform tx) {
+		transform = new AffineTransform(tx);
+	}
+
+	@Override
+	public AffineTransform getTransform() {
+		return new AffineTransform(transform);
+	}
+
+	/* Clipping */
+
+	@Override
+	public void clip(final Shape s) {
+		if (s == null) {
+			setClip(null);
+			return;
+		}
+		final Shape deviceShape = transform.createTransformedShape(s);
+		if (clip == null) {
+			setDeviceClip(deviceShape);
+		} else if (clip instanceof Rectangle2D && deviceShape instanceof Rectangle2D) {
+			setDeviceClip(((Rectangle2D) clip).createIntersection((Rectangle2D) deviceShape));
+		} else {
+			final Area area = new Area(clip);
+			area.intersect(new Area(deviceShape));
+			setDeviceClip(area);
+		}
+	}
+
+	@Override
+	public void clipRect(final int x, final int y, final int width, final int height) {
+		clip(new Rectangle(x, y, width, height));
+	}
+
+	@Override
+	public void setClip(final int x, final int y, final int width, final int height) {
+		setClip(new Rectangle(x, y, width, height));
+	}
+
+	@Override
+	public void setClip(final Shape s) {
+		setDeviceClip((s == null) ? null : transform.createTransformedShape(s));
+	}
+
+	private void setDeviceClip(final Shape deviceShape) {
+		// Transformed rectangles are returned as paths: restore them
+		Shape shape = deviceShape;
+		if (shape instanceof Path2D && transform.getType() <= AffineTransform.TYPE_MASK_SCALE) {
+			final Rectangle2D bounds = shape.getBounds2D();
+			if (new Area(shape).isRectangular())
+				shape = bounds;
+		}
+		clip = shape;
+		clipId = null;
+	}
+
+	@Override
+	public Shape getClip() {
+		if (clip == null)
+			return null;
+		try {
+			return transform.createInverse().createTransformedShape(clip);
+		} catch (final NoninvertibleTransformException exc) {
+			return null;
+		}
+	}
+
+	@Override
+	public Rectangle getClipBounds() {
+		final Shape userClip = getClip();
+		return (userClip == null) ? null : userClip.getBounds();
+	}
+
+}
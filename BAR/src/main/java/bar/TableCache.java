@@ -0,0 +1,477 @@
+/*
+ * IJ BAR: https://github.com/tferr/Scripts
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation
+ * (http://www.gnu.org/licenses/gpl.txt).
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ */
+package bar;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Reads and writes {@link ColumnarTable}s in BAR's binary table format
+ * ({@value #EXTENSION} files), so that large tables can be reopened without
+ * parsing text. Each column is stored contiguously as little-endian
+ * {@code double}s or {@code int}s (text columns are stored as {@code int}
+ * dictionary codes). Uncompressed columns are bulk-copied into the table's
+ * arrays when read. Files are read through positional channel reads rather
+ * than memory-mapped, so that no mapping outlives {@link #read(File)}: mapped
+ * regions are only released by the garbage collector and, on Windows, a file
+ * with live mappings cannot be replaced when its cache is rewritten. Columns
+ * may optionally be deflate-compressed, trading loading speed for file size.
+ * <p>
+ * The file layout is:
+ *
+ * <pre>
+ * header:    magic "BARTABLE", version (int), flags (int), source size (long),
+ *            source modification time (long), rows (int), columns (int),
+ *            directory offset (long)
+ * data:      one block per column
+ * directory: per column: heading, type (byte), data offset (long), data
+ *            length (long) and, for text columns, the dictionary
+ * </pre>
+ *
+ * Strings are stored as UTF-8 bytes preceded by their length (int).
+ * <p>
+ * Cache files are also used as sidecars of delimited text files: The cache of
+ * {@code data.csv} is {@code data.csv.bartable}, and it is only considered
+ * valid while the size and modification time of {@code data.csv} match those
+ * recorded in its header (see {@link #readCached(File)}).
+ */
+public class TableCache {
+
+	/** The extension of BAR binary tables */
+	public static final String EXTENSION = ".bartable";
+
+	/** Text files smaller than this are parsed quickly and are not cached */
+	public static final long MIN_CACHED_SIZE = 16L << 20;
+
+	private static final byte[] MAGIC = "BARTABLE".getBytes(StandardCharsets.US_ASCII);
+	private static final int VERSION = 1;
+	private static final int FLAG_COMPRESSED = 1;
+	private static final int HEADER_SIZE = 48;
+	private static final int BUFFER_SIZE = 1 << 20;
+
+	/** Prefix and suffix of the temporary files of sidecar caches being written */
+	private static final String TEMP_PREFIX = ".bar";
+	private static final String TEMP_SUFFIX = EXTENSION + ".tmp";
+
+	/**
+	 * Age after which temporary files are deemed to be left over from an
+	 * interrupted write (files being written are modified continuously)
+	 */
+	private static final long STALE_TEMP_AGE = 10 * 60 * 1000L;
+
+	private static final byte TYPE_DOUBLE = 0;
+	private static final byte TYPE_INT = 1;
+	private static final byte TYPE_STRING = 2;
+
+	private TableCache() {
+		// prevent instantiation of utility class
+	}
+
+	/**
+	 * Returns the sidecar cache file of the specified file.
+	 *
+	 * @param source
+	 *            the delimited text file
+	 * @return the cache file (which may not exist)
+	 */
+	public static File getCacheFile(final File source) {
+		return new File(source.getPath() + EXTENSION);
+	}
+
+	/**
+	 * Assesses whether the specified file is large enough to benefit from
+	 * caching.
+	 *
+	 * @param source
+	 *            the delimited text file
+	 * @return {@code true} if file should be cached
+	 */
+	public static boolean isWorthCaching(final File source) {
+		return source.length() >= MIN_CACHED_SIZE;
+	}
+
+	/**
+	 * Reads the sidecar cache of the specified file.
+	 *
+	 * @param source
+	 *            the delimited text file
+	 * @return the cached table or {@code null} if no cache exists, if the cache
+	 *         is out of date (size or modification time of {@code source}
+	 *         changed) or if it could not be read
+	 */
+	public static ColumnarTable readCached(final File source) {
+		final File cache = getCacheFile(source);
+		if (!cache.isFile())
+			return null;
+		try (final FileChannel channel = FileChannel.open(cache.toPath(), StandardOpenOption.READ)) {
+			final Header header = readHeader(channel);
+			if (header.sourceSize != source.length() || header.sourceModified != source.lastModified())
+				return null;
+			return read(channel, header);
+		} catch (final IOException | RuntimeException exc) {
+			return null;
+		}
+	}
+
+	/**
+	 * Writes the sidecar cache of the specified file. The cache is written to
+	 * a temporary file that replaces any existing cache once complete, so that
+	 * incomplete caches are never read. Temporary files left over by writes
+	 * that never completed (e.g., if the JVM exited) are deleted.
+	 *
+	 * @param source
+	 *            the delimited text file from which {@code table} was parsed
+	 * @param sourceSize
+	 *            the size of {@code source} when it was parsed
+	 * @param sourceModified
+	 *            the modification time of {@code source} when it was parsed
+	 * @param table
+	 *            the parsed table
+	 * @throws IOException
+	 *             if cache could not be written, e.g., if the directory of
+	 *             {@code source} is read-only
+	 */
+	public static void writeCache(final File source, final long sourceSize, final long sourceModified,
+			final ColumnarTable table) throws IOException {
+		final File cache = getCacheFile(source);
+		final File dir = cache.getAbsoluteFile().getParentFile();
+		deleteStaleTemps(dir);
+		final File temp = File.createTempFile(TEMP_PREFIX, TEMP_SUFFIX, dir);
+		try {
+			write(table, temp, false, sourceSize, sourceModified);
+			Files.move(temp.toPath(), cache.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			Files.deleteIfExists(temp.toPath());
+		}
+	}
+
+	private static void deleteStaleTemps(final File dir) {
+		final long stale = System.currentTimeMillis() - STALE_TEMP_AGE;
+		try (final DirectoryStream<Path> temps = Files.newDirectoryStream(dir.toPath(),
+				TEMP_PREFIX + "*" + TEMP_SUFFIX)) {
+			for (final Path temp : temps) {
+				try {
+					if (Files.getLastModifiedTime(temp).toMillis() < stale)
+						Files.deleteIfExists(temp);
+				} catch (final IOException ignored) {
+					// e.g., deleted or still open elsewhere: retried on next write
+				}
+			}
+		} catch (final IOException | RuntimeException ignored) {
+			// the cache can still be written
+		}
+	}
+
+	/**
+	 * Saves a table in BAR's binary format.
+	 *
+	 * @param table
+	 *            the table to be saved
+	 * @param file
+	 *            the output file (typically with a {@value #EXTENSION}
+	 *            extension)
+	 * @param compress
+	 *            if {@code true} columns are deflate-compressed. Compressed
+	 *            files are smaller but slower to read
+	 * @throws IOException
+	 *             if file could not be written
+	 */
+	public static void write(final ColumnarTable table, final File file, final boolean compress)
+			throws IOException {
+		write(table, file, compress, -1, -1);
+	}
+
+	private static void write(final ColumnarTable table, final File file, final boolean compress,
+			final long sourceSize, final long sourceModified) throws IOException {
+		final String[] headings = table.getHeadings();
+		final long[] offsets = new long[headings.length];
+		final long[] lengths = new long[headings.length];
+		try (final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+
+			// Column data
+			channel.position(HEADER_SIZE);
+			for (int c = 0; c < headings.length; c++) {
+				offsets[c] = channel.position();
+				writeBlock(channel, table, headings[c], compress);
+				lengths[c] = channel.position() - offsets[c];
+			}
+
+			// Directory
+			final long directoryOffset = channel.position();
+			final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			for (int c = 0; c < headings.length; c++) {
+				putString(channel, buffer, headings[c]);
+				final ColumnarTable.StringColumn strings = table.getStringColumn(headings[c]);
+				ensureRemaining(channel, buffer, 21);
+				buffer.put((strings != null) ? TYPE_STRING
+						: (table.getIntColumn(headings[c]) != null) ? TYPE_INT : TYPE_DOUBLE);
+				buffer.putLong(offsets[c]);
+				buffer.putLong(lengths[c]);
+				if (strings != null) {
+					final String[] dictionary = strings.getDictionary();
+					buffer.putInt(dictionary.length);
+					for (final String value : dictionary)
+						putString(channel, buffer, value);
+				}
+			}
+			flush(channel, buffer);
+
+			// Header
+			buffer.clear();
+			buffer.put(MAGIC);
+			buffer.putInt(VERSION);
+			buffer.putInt((compress) ? FLAG_COMPRESSED : 0);
+			buffer.putLong(sourceSize);
+			buffer.putLong(sourceModified);
+			buffer.putInt(table.getRowCount());
+			buffer.putInt(headings.length);
+			buffer.putLong(directoryOffset);
+			buffer.flip();
+			channel.position(0);
+			while (buffer.hasRemaining())
+				channel.write(buffer);
+		}
+	}
+
+	private static void writeBlock(final FileChannel channel, final ColumnarTable table, final String heading,
+			final boolean compress) throws IOException {
+		final double[] doubles = table.getColumn(heading);
+		final ColumnarTable.StringColumn strings = table.getStringColumn(heading);
+		final int[] ints = (strings != null) ? strings.getCodes() : table.getIntColumn(heading);
+		final Deflater deflater = (compress) ? new Deflater(Deflater.BEST_SPEED) : null;
+		final OutputStream channelOut = Channels.newOutputStream(channel); // not closed: channel is reused
+		final DeflaterOutputStream deflaterOut = (compress)
+				? new DeflaterOutputStream(channelOut, deflater, BUFFER_SIZE) : null;
+		final OutputStream out = (compress) ? deflaterOut : channelOut;
+		try {
+			final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			final int n = table.getRowCount();
+			final int step = BUFFER_SIZE / 8;
+			for (int offset = 0; offset < n; offset += step) {
+				final int len = Math.min(step, n - offset);
+				buffer.clear();
+				if (doubles != null) {
+					buffer.asDoubleBuffer().put(doubles, offset, len);
+					out.write(buffer.array(), 0, 8 * len);
+				} else {
+					buffer.asIntBuffer().put(ints, offset, len);
+					out.write(buffer.array(), 0, 4 * len);
+				}
+			}
+			if (compress)
+				deflaterOut.finish();
+		} finally {
+			if (compress)
+				deflater.end();
+		}
+	}
+
+	/**
+	 * Opens a table saved in BAR's binary format.
+	 *
+	 * @param file
+	 *            the {@value #EXTENSION} file
+	 * @return the table
+	 * @throws IOException
+	 *             if file could not be read or is not a valid BAR table
+	 */
+	public static ColumnarTable read(final File file) throws IOException {
+		try (final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			return read(channel, readHeader(channel));
+		}
+	}
+
+	private static ColumnarTable read(final FileChannel channel, final Header header) throws IOException {
+		final long directorySize = channel.size() - header.directoryOffset;
+		if (header.directoryOffset < HEADER_SIZE || directorySize > Integer.MAX_VALUE)
+			throw new IOException("Corrupted table directory");
+		final ByteBuffer directory = ByteBuffer.allocate((int) directorySize).order(ByteOrder.LITTLE_ENDIAN);
+		readFully(channel, header.directoryOffset, directory);
+		directory.flip();
+		final ColumnarTable table = new ColumnarTable(header.rows);
+		for (int c = 0; c < header.columns; c++) {
+			final String heading = getString(directory);
+			final byte type = directory.get();
+			final long offset = directory.getLong();
+			final long length = directory.getLong();
+			switch (type) {
+			case TYPE_DOUBLE:
+				final double[] doubles = new double[header.rows];
+				readBlock(channel, offset, length, header.compressed, doubles, null);
+				table.addColumn(heading, doubles);
+				break;
+			case TYPE_INT:
+			case TYPE_STRING:
+				final int[] ints = new int[header.rows];
+				readBlock(channel, offset, length, header.compressed, null, ints);
+				if (type == TYPE_INT) {
+					table.addColumn(heading, ints);
+				} else {
+					final String[] dictionary = new String[directory.getInt()];
+					for (int i = 0; i < dictionary.length; i++)
+						dictionary[i] = getString(directory);
+					table.addColumn(heading, new ColumnarTable.StringColumn(dictionary, ints));
+				}
+				break;
+			default:
+				throw new IOException("Unknown column type: " + type);
+			}
+		}
+		return table;
+	}
+
+	private static void readBlock(final FileChannel channel, final long offset, final long length,
+			final boolean compressed, final double[] doubles, final int[] ints) throws IOException {
+		final int n = (doubles != null) ? doubles.length : ints.length;
+		final int bytesPerValue = (doubles != null) ? 8 : 4;
+		if (!compressed) {
+			if (length != (long) n * bytesPerValue)
+				throw new IOException("Corrupted column data");
+			final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			final int step = BUFFER_SIZE / bytesPerValue;
+			for (int i = 0; i < n; i += step) {
+				final int len = Math.min(step, n - i);
+				buffer.clear().limit(len * bytesPerValue);
+				readFully(channel, offset + (long) i * bytesPerValue, buffer);
+				buffer.flip();
+				if (doubles != null)
+					buffer.asDoubleBuffer().get(doubles, i, len);
+				else
+					buffer.asIntBuffer().get(ints, i, len);
+			}
+			return;
+		}
+		channel.position(offset);
+		final Inflater inflater = new Inflater();
+		try {
+			final InputStream in = new InflaterInputStream(Channels.newInputStream(channel), inflater,
+					BUFFER_SIZE);
+			final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			final int step = BUFFER_SIZE / bytesPerValue;
+			for (int i = 0; i < n; i += step) {
+				final int len = Math.min(step, n - i);
+				readFully(in, buffer.array(), len * bytesPerValue);
+				buffer.clear();
+				if (doubles != null)
+					buffer.asDoubleBuffer().get(doubles, i, len);
+				else
+					buffer.asIntBuffer().get(ints, i, len);
+			}
+		} finally {
+			inflater.end();
+		}
+	}
+
+	private static void readFully(final InputStream in, final byte[] bytes, final int length) throws IOException {
+		int read = 0;
+		while (read < length) {
+			final int n = in.read(bytes, read, length - read);
+			if (n < 0)
+				throw new IOException("Unexpected end of column data");
+			read += n;
+		}
+	}
+
+	private static void readFully(final FileChannel channel, final long position, final ByteBuffer buffer)
+			throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0)
+				throw new IOException("Unexpected end of table");
+		}
+	}
+
+	private static Header readHeader(final FileChannel channel) throws IOException {
+		final ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, buffer.position()) < 0)
+				throw new IOException("Not a BAR table");
+		}
+		buffer.flip();
+		final byte[] magic = new byte[MAGIC.length];
+		buffer.get(magic);
+		if (!Arrays.equals(magic, MAGIC))
+			throw new IOException("Not a BAR table");
+		final int version = buffer.getInt();
+		if (version != VERSION)
+			throw new IOException("Unsupported BAR table version: " + version);
+		final Header header = new Header();
+		header.compressed = (buffer.getInt() & FLAG_COMPRESSED) != 0;
+		header.sourceSize = buffer.getLong();
+		header.sourceModified = buffer.getLong();
+		header.rows = buffer.getInt();
+		header.columns = buffer.getInt();
+		header.directoryOffset = buffer.getLong();
+		return header;
+	}
+
+	private static void putString(final FileChannel channel, final ByteBuffer buffer, final String value)
+			throws IOException {
+		final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		ensureRemaining(channel, buffer, 4);
+		buffer.putInt(bytes.length);
+		int offset = 0;
+		while (offset < bytes.length) {
+			if (!buffer.hasRemaining())
+				flush(channel, buffer);
+			final int len = Math.min(buffer.remaining(), bytes.length - offset);
+			buffer.put(bytes, offset, len);
+			offset += len;
+		}
+	}
+
+	private static String getString(final ByteBuffer buffer) {
+		final byte[] bytes = new byte[buffer.getInt()];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static void ensureRemaining(final FileChannel channel, final ByteBuffer buffer, final int n)
+			throws IOException {
+		if (buffer.remaining() < n)
+			flush(channel, buffer);
+	}
+
+	private static void flush(final FileChannel channel, final ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+		buffer.clear();
+	}
+
+	/** The fixed-size header of a BAR table */
+	private static class Header {
+		private boolean compressed;
+		private long sourceSize;
+		private long sourceModified;
+		private int rows;
+		private int columns;
+		private long directoryOffset;
+	}
+
+}
@@ -0,0 +1,749 @@
+/*
+ * IJ BAR: https://github.com/tferr/Scripts
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation
+ * (http://www.gnu.org/licenses/gpl.txt).
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ */
+package bar;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Reads large tab or comma delimited text files into a {@link ColumnarTable}.
+ * The file is memory-mapped and split into chunks at line boundaries. Chunks
+ * are then parsed in parallel, directly into primitive arrays: numeric columns
+ * are stored as {@code double[]} and text columns are dictionary-encoded.
+ * <p>
+ * The first line is assumed to contain the column headings. The delimiter
+ * (tab, comma or semicolon) is detected from the headings line. Fields may be
+ * enclosed in double quotes. As with {@link ij.measure.ResultsTable#open(String)},
+ * a leading column with an empty heading is assumed to hold row numbers and is
+ * skipped, and non-numeric values in numeric columns are read as NaN.
+ * Character streams (e.g., clipboard contents) are parsed sequentially by
+ * {@link #read(Reader)}.
+ */
+public class TableReader {
+
+	/** The maximum size of a memory-mapped chunk */
+	private static final int MAX_CHUNK_SIZE = 1 << 28;
+
+	/** The minimum size of a chunk, so that small files are not split */
+	private static final int MIN_CHUNK_SIZE = 1 << 20;
+
+	/** The number of rows used to detect column types */
+	private static final int SAMPLE_SIZE = 1000;
+
+	private static final double[] POW10 = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12,
+			1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+	private final byte delimiter;
+	private final String[] headings;
+	private final boolean skipFirstColumn;
+	private final MappedByteBuffer[] chunks;
+	private boolean[] numeric;
+
+	/** Parsing state of a single chunk */
+	private class ChunkData {
+		private int rowOffset;
+		private int rows;
+		private ArrayList<ArrayList<String>> dictionaries;
+	}
+
+	private TableReader(final byte delimiter, final String[] headings, final boolean skipFirstColumn,
+			final MappedByteBuffer[] chunks) {
+		this.delimiter = delimiter;
+		this.headings = headings;
+		this.skipFirstColumn = skipFirstColumn;
+		this.chunks = chunks;
+	}
+
+	/**
+	 * Reads the specified file.
+	 *
+	 * @param path
+	 *            the absolute path of the file
+	 * @return the parsed table
+	 * @throws IOException
+	 *             if file could not be read or does not contain a headings line
+	 * @see #read(File)
+	 */
+	public static ColumnarTable read(final String path) throws IOException {
+		return read(new File(path));
+	}
+
+	/**
+	 * Reads the specified file. As with {@link #read(Reader)}, if all the
+	 * fields of the first line are numeric, the line is assumed to contain data
+	 * rather than headings, and columns are named {@code C1}, {@code C2}, etc.
+	 *
+	 * @param file
+	 *            the tab or comma delimited file
+	 * @return the parsed table
+	 * @throws IOException
+	 *             if file could not be read or does not contain a headings line
+	 */
+	public static ColumnarTable read(final File file) throws IOException {
+		try (final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			final long size = channel.size();
+
+			// Read the headings line
+			long dataStart = nextLineStart(channel, 0, size);
+			final ByteBuffer headerBuffer = ByteBuffer.allocate((int) Math.min(dataStart, Integer.MAX_VALUE));
+			channel.read(headerBuffer, 0);
+			final String header = trimLineEnd(new String(headerBuffer.array(), 0, headerBuffer.position(),
+					StandardCharsets.UTF_8));
+			if (header.trim().isEmpty())
+				throw new IOException(file.getName() + " does not contain a headings line");
+			final byte delimiter = detectDelimiter(header);
+			String[] headings = splitLine(header, (char) delimiter);
+			final boolean headerless = isNumericRow(headings);
+			for (int i = 0; i < headings.length; i++)
+				headings[i] = (headerless) ? "C" + (i + 1) : headings[i].trim();
+			if (headerless)
+				dataStart = 0;
+			final boolean skipFirstColumn = headings.length > 1 && headings[0].isEmpty();
+			if (skipFirstColumn) {
+				final String[] trimmed = new String[headings.length - 1];
+				System.arraycopy(headings, 1, trimmed, 0, trimmed.length);
+				headings = trimmed;
+			}
+
+			// Split data into chunks at line boundaries and map them
+			final long dataSize = size - dataStart;
+			final int nThreads = Runtime.getRuntime().availableProcessors();
+			int nChunks = (int) Math.max(1, Math.min(4L * nThreads, dataSize / MIN_CHUNK_SIZE));
+			nChunks = (int) Math.max(nChunks, dataSize / MAX_CHUNK_SIZE + 1);
+			final ArrayList<MappedByteBuffer> buffers = new ArrayList<>();
+			long start = dataStart;
+			for (int i = 1; i <= nChunks && start < size; i++) {
+				final long end = (i == nChunks) ? size
+						: nextLineStart(channel, Math.max(start, dataStart + dataSize * i / nChunks), size);
+				if (end > start)
+					buffers.add(channel.map(FileChannel.MapMode.READ_ONLY, start, end - start));
+				start = end;
+			}
+
+			final TableReader reader = new TableReader(delimiter, headings, skipFirstColumn,
+					buffers.toArray(new MappedByteBuffer[buffers.size()]));
+			return reader.parse();
+		}
+	}
+
+	/**
+	 * Reads delimited text from a character stream (e.g., data pasted from a
+	 * spreadsheet) in a single pass. The stream is never held in memory as a
+	 * whole: Only the first rows are retained to detect column types, and all
+	 * rows are then parsed directly into growable primitive columns.
+	 * <p>
+	 * The delimiter is detected from the first non-blank line. If all the
+	 * fields of that line are numeric, the line is assumed to contain data
+	 * rather than headings, and columns are named {@code C1}, {@code C2}, etc.
+	 *
+	 * @param reader
+	 *            the character stream. It is not closed by this method
+	 * @return the parsed table
+	 * @throws IOException
+	 *             if stream could not be read or does not contain any text
+	 */
+	public static ColumnarTable read(final Reader reader) throws IOException {
+		final BufferedReader in = (reader instanceof BufferedReader) ? (BufferedReader) reader
+				: new BufferedReader(reader);
+		String line = in.readLine();
+		while (line != null && line.trim().isEmpty())
+			line = in.readLine();
+		if (line == null)
+			throw new IOException("No delimited text found");
+		final char delimiter = (char) detectDelimiter(line);
+
+		// Detect headings
+		final ArrayList<String[]> sample = new ArrayList<>();
+		final String[] firstRow = splitLine(line, delimiter);
+		String[] headings = new String[firstRow.length];
+		if (isNumericRow(firstRow)) {
+			for (int i = 0; i < headings.length; i++)
+				headings[i] = "C" + (i + 1);
+			sample.add(firstRow);
+		} else {
+			for (int i = 0; i < headings.length; i++)
+				headings[i] = firstRow[i].trim();
+		}
+		final int offset = (headings.length > 1 && headings[0].isEmpty()) ? 1 : 0;
+		if (offset > 0)
+			headings = Arrays.copyOfRange(headings, 1, headings.length);
+
+		// Detect column types from the first rows
+		while (sample.size() < SAMPLE_SIZE && (line = in.readLine()) != null) {
+			if (!line.trim().isEmpty())
+				sample.add(splitLine(line, delimiter));
+		}
+		final boolean[] numeric = new boolean[headings.length];
+		Arrays.fill(numeric, true);
+		for (final String[] row : sample) {
+			for (int c = 0; c < numeric.length && c + offset < row.length; c++) {
+				final String field = row[c + offset].trim();
+				if (numeric[c] && !field.isEmpty() && Double.isNaN(parseDouble(field))
+						&& !"nan".equalsIgnoreCase(field))
+					numeric[c] = false;
+			}
+		}
+
+		// Parse sampled rows, then stream the remainder
+		final StreamedColumns columns = new StreamedColumns(numeric, offset, Math.max(16, 2 * sample.size()));
+		for (final String[] row : sample)
+			columns.add(row);
+		sample.clear();
+		while ((line = in.readLine()) != null) {
+			if (!line.trim().isEmpty())
+				columns.add(splitLine(line, delimiter));
+		}
+		return columns.toTable(headings);
+	}
+
+	/** Growable columns filled one row at a time by {@link #read(Reader)} */
+	private static class StreamedColumns {
+
+		private final boolean[] numeric;
+		private final int offset;
+		private final double[][] doubles;
+		private final ColumnarTable.StringColumnBuilder[] strings;
+		private int size;
+
+		private StreamedColumns(final boolean[] numeric, final int offset, final int capacity) {
+			this.numeric = numeric;
+			this.offset = offset;
+			doubles = new double[numeric.length][];
+			strings = new ColumnarTable.StringColumnBuilder[numeric.length];
+			for (int c = 0; c < numeric.length; c++) {
+				if (numeric[c])
+					doubles[c] = new double[capacity];
+				else
+					strings[c] = new ColumnarTable.StringColumnBuilder(capacity);
+			}
+		}
+
+		private void add(final String[] fields) {
+			for (int c = 0; c < numeric.length; c++) {
+				final int f = c + offset;
+				if (numeric[c]) {
+					final String field = (f < fields.length) ? fields[f].trim() : "";
+					final double value = parseDouble(field);
+					if (!Double.isNaN(value) || field.isEmpty() || "nan".equalsIgnoreCase(field)) {
+						if (size == doubles[c].length)
+							doubles[c] = Arrays.copyOf(doubles[c], size + (size >> 1));
+						doubles[c][size] = value;
+						continue;
+					}
+					toStrings(c); // text past the sampled rows
+				}
+				strings[c].add((f < fields.length) ? fields[f] : "");
+			}
+			size++;
+		}
+
+		/**
+		 * Converts a numeric column into a text column. Values read so far are
+		 * formatted as text (integers without decimals, NaNs as blanks).
+		 */
+		private void toStrings(final int c) {
+			final ColumnarTable.StringColumnBuilder builder = new ColumnarTable.StringColumnBuilder(
+					doubles[c].length);
+			for (int row = 0; row < size; row++) {
+				final double v = doubles[c][row];
+				if (Double.isNaN(v))
+					builder.add("");
+				else if (v == Math.rint(v) && Math.abs(v) < 1e15)
+					builder.add(Long.toString((long) v));
+				else
+					builder.add(Double.toString(v));
+			}
+			strings[c] = builder;
+			doubles[c] = null;
+			numeric[c] = false;
+		}
+
+		private ColumnarTable toTable(final String[] headings) {
+			final ColumnarTable table = new ColumnarTable(size);
+			for (int c = 0; c < numeric.length; c++) {
+				if (numeric[c])
+					table.addColumn(headings[c], Arrays.copyOf(doubles[c], size));
+				else
+					table.addColumn(headings[c], strings[c].build());
+			}
+			return table;
+		}
+	}
+
+	private static boolean isNumericRow(final String[] fields) {
+		for (final String field : fields) {
+			if (Double.isNaN(parseDouble(field.trim())))
+				return false;
+		}
+		return true;
+	}
+
+	private static double parseDouble(final String field) {
+		if (field.isEmpty())
+			return Double.NaN;
+		try {
+			return Double.parseDouble(field);
+		} catch (final NumberFormatException ignored) {
+			return Double.NaN;
+		}
+	}
+
+	private ColumnarTable parse() throws IOException {
+		final int nCols = headings.length;
+		numeric = detectTypes();
+
+		// Pass 1: count rows in each chunk
+		final ChunkData[] data = new ChunkData[chunks.length];
+		parallelFor(chunks.length, new IntConsumer() {
+			@Override
+			public void accept(final int i) {
+				data[i] = new ChunkData();
+				data[i].rows = countRows(chunks[i]);
+			}
+		});
+		long total = 0;
+		for (final ChunkData d : data) {
+			d.rowOffset = (int) total;
+			total += d.rows;
+		}
+		if (total > Integer.MAX_VALUE - 8)
+			throw new IOException("Too many rows: " + total);
+		final int nRows = (int) total;
+
+		// Pass 2: parse chunks directly into the final arrays
+		final double[][] doubles = new double[nCols][];
+		final int[][] codes = new int[nCols][];
+		for (int c = 0; c < nCols; c++) {
+			if (numeric[c])
+				doubles[c] = new double[nRows];
+			else
+				codes[c] = new int[nRows];
+		}
+		final boolean[] allColumns = new boolean[nCols];
+		Arrays.fill(allColumns, true);
+		final boolean[] text = new boolean[nCols];
+		parallelFor(chunks.length, new IntConsumer() {
+			@Override
+			public void accept(final int i) {
+				parseChunk(chunks[i], data[i], allColumns, doubles, codes, text);
+			}
+		});
+
+		// Columns deemed numeric from the sampled rows may hold text further
+		// down: Those are parsed again, as text, so that no values are lost
+		boolean anyText = false;
+		for (int c = 0; c < nCols; c++) {
+			if (text[c]) {
+				numeric[c] = false;
+				doubles[c] = null;
+				codes[c] = new int[nRows];
+				anyText = true;
+			}
+		}
+		if (anyText) {
+			parallelFor(chunks.length, new IntConsumer() {
+				@Override
+				public void accept(final int i) {
+					parseChunk(chunks[i], data[i], text, doubles, codes, null);
+				}
+			});
+		}
+
+		// Merge chunk dictionaries of text columns and assemble table
+		final ColumnarTable table = new ColumnarTable(nRows);
+		for (int c = 0; c < nCols; c++) {
+			if (numeric[c]) {
+				table.addColumn(headings[c], doubles[c]);
+				continue;
+			}
+			final HashMap<String, Integer> globalMap = new HashMap<>();
+			final ArrayList<String> globalDictionary = new ArrayList<>();
+			final int[][] remaps = new int[data.length][];
+			for (int i = 0; i < data.length; i++) {
+				final ArrayList<String> local = data[i].dictionaries.get(c);
+				remaps[i] = new int[local.size()];
+				for (int k = 0; k < local.size(); k++) {
+					final String value = local.get(k);
+					Integer code = globalMap.get(value);
+					if (code == null) {
+						code = globalDictionary.size();
+						globalMap.put(value, code);
+						globalDictionary.add(value);
+					}
+					remaps[i][k] = code;
+				}
+			}
+			final int[] colCodes = codes[c];
+			parallelFor(data.length, new IntConsumer() {
+				@Override
+				public void accept(final int i) {
+					final int[] remap = remaps[i];
+					final int end = data[i].rowOffset + data[i].rows;
+					for (int row = data[i].rowOffset; row < end; row++)
+						colCodes[row] = remap[colCodes[row]];
+				}
+			});
+			table.addColumn(headings[c],
+					new ColumnarTable.StringColumn(globalDictionary.toArray(new String[globalDictionary.size()]),
+							colCodes));
+		}
+		return table;
+	}
+
+	/**
+	 * Assesses column types from the first rows of the file. A column is
+	 * numeric if all of its non-empty fields can be parsed as numbers.
+	 */
+	private boolean[] detectTypes() {
+		final boolean[] types = new boolean[headings.length];
+		Arrays.fill(types, true);
+		if (chunks.length == 0)
+			return types;
+		final ByteBuffer buffer = chunks[0];
+		final int limit = buffer.limit();
+		final int[] bounds = new int[2 * headings.length];
+		int pos = 0;
+		int sampled = 0;
+		while (pos < limit && sampled < SAMPLE_SIZE) {
+			final int lineEnd = lineEnd(buffer, pos, limit);
+			if (!isBlank(buffer, pos, lineEnd)) {
+				final int nFields = splitFields(buffer, pos, lineEnd, bounds);
+				for (int c = 0; c < nFields; c++) {
+					if (!types[c])
+						continue;
+					final int s = bounds[2 * c];
+					final int e = bounds[2 * c + 1];
+					if (Double.isNaN(parseDouble(buffer, s, e)) && isText(buffer, s, e))
+						types[c] = false;
+				}
+				sampled++;
+			}
+			pos = lineEnd + 1;
+		}
+		return types;
+	}
+
+	/**
+	 * @return {@code true} if the specified field is neither blank nor "NaN",
+	 *         i.e., if a NaN parsed from it would be a loss of data
+	 */
+	private boolean isText(final ByteBuffer buffer, final int start, final int end) {
+		return !isBlank(buffer, start, end) && !"nan".equalsIgnoreCase(decode(buffer, start, end).trim());
+	}
+
+	private int countRows(final ByteBuffer buffer) {
+		final int limit = buffer.limit();
+		int rows = 0;
+		int pos = 0;
+		while (pos < limit) {
+			final int lineEnd = lineEnd(buffer, pos, limit);
+			if (!isBlank(buffer, pos, lineEnd))
+				rows++;
+			pos = lineEnd + 1;
+		}
+		return rows;
+	}
+
+	/**
+	 * Parses the specified columns of a chunk.
+	 *
+	 * @param text
+	 *            flags set for numeric columns holding fields that are not
+	 *            numbers, or {@code null}
+	 */
+	private void parseChunk(final ByteBuffer buffer, final ChunkData data, final boolean[] columns,
+			final double[][] doubles, final int[][] codes, final boolean[] text) {
+		final int nCols = headings.length;
+		if (data.dictionaries == null) {
+			data.dictionaries = new ArrayList<>();
+			for (int c = 0; c < nCols; c++)
+				data.dictionaries.add(null);
+		}
+		final ArrayList<HashMap<String, Integer>> maps = new ArrayList<>();
+		for (int c = 0; c < nCols; c++) {
+			final boolean textColumn = columns[c] && !numeric[c];
+			maps.add(textColumn ? new HashMap<String, Integer>() : null);
+			if (textColumn)
+				data.dictionaries.set(c, new ArrayList<String>());
+		}
+		final int limit = buffer.limit();
+		final int[] bounds = new int[2 * nCols];
+		int row = data.rowOffset;
+		int pos = 0;
+		while (pos < limit) {
+			final int lineEnd = lineEnd(buffer, pos, limit);
+			if (!isBlank(buffer, pos, lineEnd)) {
+				final int nFields = splitFields(buffer, pos, lineEnd, bounds);
+				for (int c = 0; c < nCols; c++) {
+					if (!columns[c])
+						continue;
+					final boolean missing = c >= nFields;
+					if (numeric[c]) {
+						final double value = (missing) ? Double.NaN
+								: parseDouble(buffer, bounds[2 * c], bounds[2 * c + 1]);
+						doubles[c][row] = value;
+						if (Double.isNaN(value) && !missing && text != null && !text[c]
+								&& isText(buffer, bounds[2 * c], bounds[2 * c + 1]))
+							text[c] = true;
+					} else {
+						final String value = (missing) ? "" : decode(buffer, bounds[2 * c], bounds[2 * c + 1]);
+						final HashMap<String, Integer> map = maps.get(c);
+						Integer code = map.get(value);
+						if (code == null) {
+							final ArrayList<String> dictionary = data.dictionaries.get(c);
+							code = dictionary.size();
+							map.put(value, code);
+							dictionary.add(value);
+						}
+						codes[c][row] = code;
+					}
+				}
+				row++;
+			}
+			pos = lineEnd + 1;
+		}
+	}
+
+	/**
+	 * Locates the fields of a line, storing their start (inclusive) and end
+	 * (exclusive) positions in {@code bounds}. Quotes surrounding fields are
+	 * excluded from the bounds.
+	 *
+	 * @return the number of fields found (at most {@code bounds.length/2})
+	 */
+	private int splitFields(final ByteBuffer buffer, final int lineStart, int lineEnd, final int[] bounds) {
+		if (lineEnd > lineStart && buffer.get(lineEnd - 1) == '\r')
+			lineEnd--;
+		final int maxFields = bounds.length / 2;
+		int field = (skipFirstColumn) ? -1 : 0;
+		int pos = lineStart;
+		while (pos <= lineEnd && field < maxFields) {
+			int start = pos;
+			int end;
+			if (pos < lineEnd && buffer.get(pos) == '"') {
+				start = pos + 1;
+				end = start;
+				while (end < lineEnd) {
+					if (buffer.get(end) == '"') {
+						if (end + 1 < lineEnd && buffer.get(end + 1) == '"')
+							end += 2; // escaped quote
+						else
+							break;
+					} else {
+						end++;
+					}
+				}
+				pos = end + 1;
+				while (pos < lineEnd && buffer.get(pos) != delimiter)
+					pos++;
+			} else {
+				end = pos;
+				while (end < lineEnd && buffer.get(end) != delimiter)
+					end++;
+				pos = end;
+			}
+			if (field >= 0) {
+				bounds[2 * field] = start;
+				bounds[2 * field + 1] = end;
+			}
+			field++;
+			pos++; // skip delimiter
+		}
+		return Math.max(0, field);
+	}
+
+	/**
+	 * Parses a number from the specified range of bytes. Plain decimal numbers
+	 * are parsed without creating intermediate objects. Other notations are
+	 * delegated to {@link Double#parseDouble(String)}.
+	 *
+	 * @return the parsed value or NaN if range does not contain a number
+	 */
+	static double parseDouble(final ByteBuffer buffer, int start, int end) {
+		while (start < end && buffer.get(start) == ' ')
+			start++;
+		while (end > start && buffer.get(end - 1) == ' ')
+			end--;
+		if (start == end)
+			return Double.NaN;
+		int i = start;
+		boolean negative = false;
+		byte b = buffer.get(i);
+		if (b == '-' || b == '+') {
+			negative = b == '-';
+			i++;
+		}
+		long mantissa = 0;
+		int digits = 0;
+		int exp10 = 0;
+		boolean anyDigit = false;
+		while (i < end && (b = buffer.get(i)) >= '0' && b <= '9') {
+			if (digits < 18) {
+				mantissa = mantissa * 10 + (b - '0');
+				if (mantissa != 0)
+					digits++;
+			} else {
+				exp10++;
+			}
+			anyDigit = true;
+			i++;
+		}
+		if (i < end && buffer.get(i) == '.') {
+			i++;
+			while (i < end && (b = buffer.get(i)) >= '0' && b <= '9') {
+				if (digits < 18) {
+					mantissa = mantissa * 10 + (b - '0');
+					if (mantissa != 0)
+						digits++;
+					exp10--;
+				}
+				anyDigit = true;
+				i++;
+			}
+		}
+		if (anyDigit && i < end && ((b = buffer.get(i)) == 'e' || b == 'E')) {
+			i++;
+			boolean negativeExp = false;
+			if (i < end && ((b = buffer.get(i)) == '-' || b == '+')) {
+				negativeExp = b == '-';
+				i++;
+			}
+			int exp = 0;
+			boolean anyExpDigit = false;
+			while (i < end && (b = buffer.get(i)) >= '0' && b <= '9') {
+				if (exp < 10000)
+					exp = exp * 10 + (b - '0');
+				anyExpDigit = true;
+				i++;
+			}
+			if (!anyExpDigit)
+				return parseDoubleSlow(buffer, start, end);
+			exp10 += (negativeExp) ? -exp : exp;
+		}
+		if (!anyDigit || i != end || mantissa >= (1L << 53) || exp10 < -22 || exp10 > 22)
+			return parseDoubleSlow(buffer, start, end);
+		final double value = (exp10 >= 0) ? mantissa * POW10[exp10] : mantissa / POW10[-exp10];
+		return (negative) ? -value : value;
+	}
+
+	private static double parseDoubleSlow(final ByteBuffer buffer, final int start, final int end) {
+		try {
+			return Double.parseDouble(decode(buffer, start, end));
+		} catch (final NumberFormatException ignored) {
+			return Double.NaN;
+		}
+	}
+
+	private static String decode(final ByteBuffer buffer, final int start, final int end) {
+		final byte[] bytes = new byte[end - start];
+		for (int i = 0; i < bytes.length; i++)
+			bytes[i] = buffer.get(start + i);
+		String value = new String(bytes, StandardCharsets.UTF_8);
+		if (value.indexOf('"') > -1)
+			value = value.replace("\"\"", "\"");
+		return value;
+	}
+
+	private static boolean isBlank(final ByteBuffer buffer, final int start, final int end) {
+		for (int i = start; i < end; i++) {
+			final byte b = buffer.get(i);
+			if (b != ' ' && b != '\r' && b != '\t')
+				return false;
+		}
+		return true;
+	}
+
+	/** Returns the position of the next '\n' or the limit if none is found */
+	private static int lineEnd(final ByteBuffer buffer, int pos, final int limit) {
+		while (pos < limit && buffer.get(pos) != '\n')
+			pos++;
+		return pos;
+	}
+
+	/** Returns the position following the first '\n' at or after pos */
+	private static long nextLineStart(final FileChannel channel, long pos, final long size) throws IOException {
+		final ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+		while (pos < size) {
+			buffer.clear();
+			final int n = channel.read(buffer, pos);
+			if (n <= 0)
+				break;
+			for (int i = 0; i < n; i++) {
+				if (buffer.get(i) == '\n')
+					return pos + i + 1;
+			}
+			pos += n;
+		}
+		return size;
+	}
+
+	private static String trimLineEnd(final String line) {
+		int end = line.length();
+		while (end > 0 && (line.charAt(end - 1) == '\n' || line.charAt(end - 1) == '\r'))
+			end--;
+		return line.substring(0, end);
+	}
+
+	private static byte detectDelimiter(final String header) {
+		if (header.indexOf('\t') > -1)
+			return '\t';
+		if (header.indexOf(',') > -1)
+			return ',';
+		if (header.indexOf(';') > -1)
+			return ';';
+		return '\t';
+	}
+
+	/** Splits a line of text, taking quoted fields into account */
+	static String[] splitLine(final String line, final char delimiter) {
+		final ArrayList<String> fields = new ArrayList<>();
+		final StringBuilder sb = new StringBuilder();
+		boolean quoted = false;
+		for (int i = 0; i < line.length(); i++) {
+			final char c = line.charAt(i);
+			if (c == '"') {
+				if (quoted && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+					sb.append('"');
+					i++;
+				} else {
+					quoted = !quoted;
+				}
+			} else if (c == delimiter && !quoted) {
+				fields.add(sb.toString());
+				sb.setLength(0);
+			} else {
+				sb.append(c);
+			}
+		}
+		fields.add(sb.toString());
+		return fields.toArray(new String[fields.size()]);
+	}
+
+	private static void parallelFor(final int n, final IntConsumer body) {
+		if (n == 1)
+			body.accept(0);
+		else
+			IntStream.range(0, n).parallel().forEach(body);
+	}
+
+}
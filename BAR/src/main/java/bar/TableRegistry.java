@@ -0,0 +1,193 @@
+/*
+ * IJ BAR: https://github.com/tferr/Scripts
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation
+ * (http://www.gnu.org/licenses/gpl.txt).
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ */
+package bar;
+
+import java.awt.AWTEvent;
+import java.awt.Frame;
+import java.awt.GraphicsEnvironment;
+import java.awt.Toolkit;
+import java.awt.Window;
+import java.awt.event.AWTEventListener;
+import java.awt.event.WindowEvent;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import bar.gui.TableViewer;
+import ij.ImagePlus;
+import ij.WindowManager;
+import ij.gui.PlotWindow;
+import ij.measure.ResultsTable;
+import ij.text.TextWindow;
+
+/**
+ * Keeps track of the windows holding tabular data ({@link TextWindow}s
+ * displaying a {@link ResultsTable}, {@link PlotWindow}s and BAR's
+ * {@link TableViewer}s). Windows are registered and unregistered as they are
+ * opened and closed, so that listing available tables does not require
+ * scanning all of ImageJ's windows. Tables are only retrieved from a window
+ * when requested, which avoids e.g., converting every plot into a table.
+ * <p>
+ * The registry is started by {@link BARService} and can be used from scripts:
+ *
+ * <pre>
+ * #@BARService bar
+ * registry = bar.getTableRegistry()
+ * for (window in registry.getTableWindows())
+ *     println(window.getTitle())
+ * </pre>
+ */
+public class TableRegistry {
+
+	private static TableRegistry instance;
+
+	private final LinkedHashSet<Frame> windows = new LinkedHashSet<>();
+
+	private TableRegistry() {
+		// Windows opened before the registry was created
+		final Frame[] frames = WindowManager.getNonImageWindows();
+		if (frames != null) {
+			for (final Frame frame : frames)
+				register(frame);
+		}
+		final int[] ids = WindowManager.getIDList();
+		if (ids != null) {
+			for (final int id : ids) {
+				final ImagePlus imp = WindowManager.getImage(id);
+				if (imp != null)
+					register(imp.getWindow());
+			}
+		}
+		if (GraphicsEnvironment.isHeadless())
+			return;
+		Toolkit.getDefaultToolkit().addAWTEventListener(new AWTEventListener() {
+			@Override
+			public void eventDispatched(final AWTEvent event) {
+				if (event.getID() == WindowEvent.WINDOW_OPENED)
+					register(((WindowEvent) event).getWindow());
+				else if (event.getID() == WindowEvent.WINDOW_CLOSED)
+					unregister(((WindowEvent) event).getWindow());
+			}
+		}, AWTEvent.WINDOW_EVENT_MASK);
+	}
+
+	/**
+	 * Returns the registry, starting it if necessary.
+	 *
+	 * @return the registry instance
+	 */
+	public static synchronized TableRegistry getInstance() {
+		if (instance == null)
+			instance = new TableRegistry();
+		return instance;
+	}
+
+	/**
+	 * Checks if a window can hold tabular data.
+	 *
+	 * @param window
+	 *            the window to be checked
+	 * @return {@code true} if window is a {@link TextWindow}, a
+	 *         {@link PlotWindow} or a {@link TableViewer}
+	 */
+	public static boolean isTableWindow(final Window window) {
+		return window instanceof TextWindow || window instanceof PlotWindow || window instanceof TableViewer;
+	}
+
+	/**
+	 * Adds a window to the registry. Windows that cannot hold tables are
+	 * ignored. There is no need to call this method for windows opened after
+	 * the registry was started.
+	 *
+	 * @param window
+	 *            the window to be registered
+	 */
+	public void register(final Window window) {
+		if (isTableWindow(window)) {
+			synchronized (windows) {
+				windows.add((Frame) window);
+			}
+		}
+	}
+
+	/**
+	 * Removes a window from the registry.
+	 *
+	 * @param window
+	 *            the window to be removed
+	 */
+	public void unregister(final Window window) {
+		synchronized (windows) {
+			windows.remove(window);
+		}
+	}
+
+	/**
+	 * Returns the open windows holding tables, in the order they were opened.
+	 * Text windows that do not display a {@link ResultsTable} (e.g., the Log
+	 * window) are excluded, as are listings displayed by {@link TableViewer}s.
+	 *
+	 * @return the list of windows
+	 */
+	public List<Frame> getTableWindows() {
+		final ArrayList<Frame> list;
+		synchronized (windows) {
+			list = new ArrayList<>(windows);
+		}
+		final ArrayList<Frame> tableWindows = new ArrayList<>(list.size());
+		for (final Frame window : list) {
+			if (!window.isDisplayable())
+				continue;
+			if (window instanceof TextWindow && ((TextWindow) window).getTextPanel().getResultsTable() == null)
+				continue;
+			if (window instanceof TableViewer && ((TableViewer) window).getColumnarTable() == null)
+				continue;
+			tableWindows.add(window);
+		}
+		return tableWindows;
+	}
+
+	/**
+	 * Retrieves the table of a registered window.
+	 *
+	 * @param window
+	 *            the window holding the table
+	 * @return the table or {@code null} if no table could be retrieved. Tables
+	 *         of plots and of {@link TableViewer}s are created on demand
+	 */
+	public ResultsTable getResultsTable(final Frame window) {
+		if (window instanceof TextWindow)
+			return ((TextWindow) window).getTextPanel().getResultsTable();
+		if (window instanceof PlotWindow)
+			return ((PlotWindow) window).getResultsTable();
+		if (window instanceof TableViewer) {
+			final ColumnarTable table = ((TableViewer) window).getColumnarTable();
+			return (table == null) ? null : table.toResultsTable();
+		}
+		return null;
+	}
+
+	/**
+	 * Retrieves the table of the window with the specified title.
+	 *
+	 * @param title
+	 *            the window title
+	 * @return the table or {@code null} if no such window is registered
+	 */
+	public ResultsTable getResultsTable(final String title) {
+		for (final Frame window : getTableWindows()) {
+			if (window.getTitle().equals(title))
+				return getResultsTable(window);
+		}
+		return null;
+	}
+
+}
@@ -0,0 +1,411 @@
+/*
+ * IJ BAR: https://github.com/tferr/Scripts
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation
+ * (http://www.gnu.org/licenses/gpl.txt).
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ */
+package bar;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import org.jfree.chart.JFreeChart;
+
+import ij.IJ;
+
+/**
+ * Renders a JFreeChart at high resolution to a PNG or TIFF file, without
+ * holding the full canvas in memory. The canvas is split into horizontal tiles
+ * (strips of {@link #TILE_HEIGHT} rows spanning the full width) that are
+ * rendered in parallel, each by a worker drawing its own copy of the chart
+ * into a translated {@link Graphics2D}. Tiles are passed to a streaming
+ * encoder in order, as soon as they become available, so that peak memory is
+ * bounded by a few tiles, regardless of the image size.
+ *
+ * @see PlotUtils#exportChartAsImage(JFreeChart, Rectangle, double, File)
+ */
+class TiledRasterExporter {
+
+	/** The number of rows in a tile */
+	static final int TILE_HEIGHT = 256;
+
+	private final JFreeChart chart;
+	private final Rectangle bounds;
+	private final double dpi;
+	private final double scale;
+	private final int width;
+	private final int height;
+	private final ThreadLocal<JFreeChart> copies = new ThreadLocal<>();
+	private final Object lock = new Object();
+
+	/**
+	 * @param chart
+	 *            the chart to be rendered
+	 * @param bounds
+	 *            the Rectangle delimiting the boundaries within which the chart
+	 *            should be drawn, in points (1/72 inch)
+	 * @param dpi
+	 *            the output resolution, in dots per inch
+	 */
+	TiledRasterExporter(final JFreeChart chart, final Rectangle bounds, final double dpi) {
+		if (!(dpi > 0))
+			throw new IllegalArgumentException("Invalid resolution: " + dpi);
+		this.chart = chart;
+		this.bounds = bounds;
+		this.dpi = dpi;
+		scale = dpi / 72d;
+		width = (int) Math.ceil(bounds.width * scale);
+		height = (int) Math.ceil(bounds.height * scale);
+		if (width <= 0 || height <= 0)
+			throw new IllegalArgumentException("Invalid bounds: " + bounds);
+	}
+
+	/**
+	 * Renders the chart to the specified file.
+	 *
+	 * @param file
+	 *            the output file. Its extension ({@code .png}, {@code .tif} or
+	 *            {@code .tiff}) specifies the format
+	 * @throws IOException
+	 *             if the file could not be written
+	 */
+	void export(final File file) throws IOException {
+		final String name = file.getName().toLowerCase();
+		final TileWriter writer;
+		final OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 1 << 16);
+		try {
+			if (name.endsWith(".png"))
+				writer = new PngWriter(out, width, height, dpi);
+			else if (name.endsWith(".tif") || name.endsWith(".tiff"))
+				writer = new TiffWriter(out, width, height, dpi);
+			else
+				throw new IllegalArgumentException("Unsupported format: " + file.getName());
+		} catch (final IOException | RuntimeException exc) {
+			out.close();
+			throw exc;
+		}
+		try {
+			render(writer);
+		} finally {
+			writer.close();
+		}
+	}
+
+	private void render(final TileWriter writer) throws IOException {
+		final int nTiles = (height + TILE_HEIGHT - 1) / TILE_HEIGHT;
+		final int nThreads = Math.max(1, Math.min(nTiles, Runtime.getRuntime().availableProcessors()));
+		final ExecutorService executor = Executors.newFixedThreadPool(nThreads);
+		final Deque<Future<int[]>> queue = new ArrayDeque<>();
+		try {
+			int next = 0;
+			for (int tile = 0; tile < nTiles; tile++) {
+				// Keep a few tiles ahead of the one being written
+				while (next < nTiles && queue.size() < 2 * nThreads) {
+					final int y = next++ * TILE_HEIGHT;
+					queue.add(executor.submit(new Callable<int[]>() {
+						@Override
+						public int[] call() {
+							return renderTile(y, Math.min(TILE_HEIGHT, height - y));
+						}
+					}));
+				}
+				final int y = tile * TILE_HEIGHT;
+				writer.write(getTile(queue.remove()), Math.min(TILE_HEIGHT, height - y));
+				IJ.showProgress(tile + 1, nTiles);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static int[] getTile(final Future<int[]> future) throws IOException {
+		try {
+			return future.get();
+		} catch (final InterruptedException exc) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Export interrupted");
+		} catch (final ExecutionException exc) {
+			if (exc.getCause() instanceof RuntimeException)
+				throw (RuntimeException) exc.getCause();
+			throw new IOException(exc.getCause());
+		}
+	}
+
+	/** @return the RGB pixels of the specified rows */
+	private int[] renderTile(final int y, final int rows) {
+		final BufferedImage tile = new BufferedImage(width, rows, BufferedImage.TYPE_INT_RGB);
+		final Graphics2D g2 = tile.createGraphics();
+		g2.setColor(Color.WHITE);
+		g2.fillRect(0, 0, width, rows);
+		g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+		g2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+		g2.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_ON);
+		g2.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
+		g2.translate(0, -y);
+		g2.scale(scale, scale);
+		g2.translate(-bounds.x, -bounds.y);
+		final JFreeChart copy = getCopy();
+		if (copy != null) {
+			copy.draw(g2, bounds);
+		} else {
+			synchronized (lock) {
+				chart.draw(g2, bounds);
+			}
+		}
+		g2.dispose();
+		return ((DataBufferInt) tile.getRaster().getDataBuffer()).getData();
+	}
+
+	/**
+	 * @return the copy of the chart drawn by the calling thread (charts are not
+	 *         thread-safe), or {@code null} if the chart cannot be cloned
+	 */
+	private JFreeChart getCopy() {
+		JFreeChart copy = copies.get();
+		if (copy == null) {
+			try {
+				copy = (JFreeChart) chart.clone();
+				copies.set(copy);
+			} catch (final CloneNotSupportedException | RuntimeException exc) {
+				return null;
+			}
+		}
+		return copy;
+	}
+
+	/** A streaming encoder receiving consecutive tiles of RGB pixels */
+	private interface TileWriter extends Closeable {
+		void write(int[] pixels, int rows) throws IOException;
+	}
+
+	/** Writes a PNG with a single IDAT stream, compressed as tiles arrive */
+	private static class PngWriter implements TileWriter {
+
+		private static final int CHUNK_SIZE = 1 << 16;
+
+		private final DataOutputStream out;
+		private final int width;
+		private final DeflaterOutputStream idat;
+		private final Deflater deflater = new Deflater(6);
+		private final byte[] row;
+
+		private PngWriter(final OutputStream stream, final int width, final int height, final double dpi)
+				throws IOException {
+			out = new DataOutputStream(stream);
+			this.width = width;
+			row = new byte[1 + 3 * width];
+			out.write(new byte[] { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n' });
+			final ByteBuffer ihdr = ByteBuffer.allocate(13);
+			ihdr.putInt(width).putInt(height).put((byte) 8).put((byte) 2).put((byte) 0).put((byte) 0)
+					.put((byte) 0); // 8-bit RGB, no interlace
+			writeChunk("IHDR", ihdr.array(), 13);
+			final int ppm = (int) Math.round(dpi / 0.0254);
+			final ByteBuffer phys = ByteBuffer.allocate(9);
+			phys.putInt(ppm).putInt(ppm).put((byte) 1); // pixels per meter
+			writeChunk("pHYs", phys.array(), 9);
+			idat = new DeflaterOutputStream(new OutputStream() {
+				private final byte[] buffer = new byte[CHUNK_SIZE];
+				private int count;
+
+				@Override
+				public void write(final int b) throws IOException {
+					if (count == buffer.length)
+						flush();
+					buffer[count++] = (byte) b;
+				}
+
+				@Override
+				public void write(final byte[] b, int off, int len) throws IOException {
+					while (len > 0) {
+						if (count == buffer.length)
+							flush();
+						final int n = Math.min(len, buffer.length - count);
+						System.arraycopy(b, off, buffer, count, n);
+						count += n;
+						off += n;
+						len -= n;
+					}
+				}
+
+				@Override
+				public void flush() throws IOException {
+					if (count > 0)
+						writeChunk("IDAT", buffer, count);
+					count = 0;
+				}
+			}, deflater, CHUNK_SIZE);
+		}
+
+		private void writeChunk(final String type, final byte[] data, final int length) throws IOException {
+			final CRC32 crc = new CRC32();
+			final byte[] typeBytes = type.getBytes("US-ASCII");
+			crc.update(typeBytes);
+			crc.update(data, 0, length);
+			out.writeInt(length);
+			out.write(typeBytes);
+			out.write(data, 0, length);
+			out.writeInt((int) crc.getValue());
+		}
+
+		@Override
+		public void write(final int[] pixels, final int rows) throws IOException {
+			row[0] = 1; // 'Sub' filter: flat chart areas compress well
+			for (int y = 0; y < rows; y++) {
+				int previous = 0;
+				for (int x = 0, i = y * width, j = 1; x < width; x++, i++) {
+					final int rgb = pixels[i];
+					row[j++] = (byte) ((rgb >> 16) - (previous >> 16));
+					row[j++] = (byte) ((rgb >> 8) - (previous >> 8));
+					row[j++] = (byte) (rgb - previous);
+					previous = rgb;
+				}
+				idat.write(row);
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				idat.finish();
+				idat.flush();
+				writeChunk("IEND", new byte[0], 0);
+			} finally {
+				deflater.end();
+				out.close();
+			}
+		}
+	}
+
+	/**
+	 * Writes an uncompressed, baseline RGB TIFF. Since the size of the pixel
+	 * data is known in advance, the image directory is written after it,
+	 * without seeking back.
+	 */
+	private static class TiffWriter implements TileWriter {
+
+		private final OutputStream out;
+		private final int width;
+		private final int height;
+		private final double dpi;
+		private final byte[] row;
+
+		private TiffWriter(final OutputStream out, final int width, final int height, final double dpi)
+				throws IOException {
+			this.out = out;
+			this.width = width;
+			this.height = height;
+			this.dpi = dpi;
+			row = new byte[3 * width];
+			final long dataSize = 3L * width * height;
+			if (dataSize + 8 + 1024 + 8L * ((height + TILE_HEIGHT - 1) / TILE_HEIGHT) > 0xffffffffL)
+				throw new IOException("Image too large for TIFF: " + width + "x" + height);
+			final ByteBuffer header = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+			header.put((byte) 'I').put((byte) 'I').putShort((short) 42).putInt((int) ifdOffset());
+			out.write(header.array());
+		}
+
+		private long ifdOffset() {
+			final long dataSize = 3L * width * height;
+			return 8 + dataSize + (dataSize & 1); // word aligned
+		}
+
+		@Override
+		public void write(final int[] pixels, final int rows) throws IOException {
+			for (int y = 0; y < rows; y++) {
+				for (int x = 0, i = y * width, j = 0; x < width; x++, i++) {
+					final int rgb = pixels[i];
+					row[j++] = (byte) (rgb >> 16);
+					row[j++] = (byte) (rgb >> 8);
+					row[j++] = (byte) rgb;
+				}
+				out.write(row);
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				writeDirectory();
+			} finally {
+				out.close();
+			}
+		}
+
+		private void writeDirectory() throws IOException {
+			if ((3L * width * height & 1) != 0)
+				out.write(0);
+			final int nStrips = (height + TILE_HEIGHT - 1) / TILE_HEIGHT;
+			final int nEntries = 12;
+			final long ifd = ifdOffset();
+			final long extra = ifd + 2 + 12 * nEntries + 4;
+			final long bitsOffset = extra;
+			final long xResOffset = bitsOffset + 8;
+			final long yResOffset = xResOffset + 8;
+			final long offsetsOffset = yResOffset + 8;
+			final long countsOffset = offsetsOffset + 4L * nStrips;
+			final ByteBuffer buf = ByteBuffer.allocate((int) (countsOffset + 4L * nStrips - ifd))
+					.order(ByteOrder.LITTLE_ENDIAN);
+			buf.putShort((short) nEntries);
+			entry(buf, 256, 4, 1, width); // ImageWidth
+			entry(buf, 257, 4, 1, height); // ImageLength
+			entry(buf, 258, 3, 3, bitsOffset); // BitsPerSample
+			entry(buf, 259, 3, 1, 1); // Compression: none
+			entry(buf, 262, 3, 1, 2); // PhotometricInterpretation: RGB
+			entry(buf, 273, 4, nStrips, (nStrips == 1) ? 8 : offsetsOffset); // StripOffsets
+			entry(buf, 277, 3, 1, 3); // SamplesPerPixel
+			entry(buf, 278, 4, 1, TILE_HEIGHT); // RowsPerStrip
+			entry(buf, 279, 4, nStrips, (nStrips == 1) ? 3L * width * height : countsOffset); // StripByteCounts
+			entry(buf, 282, 5, 1, xResOffset); // XResolution
+			entry(buf, 283, 5, 1, yResOffset); // YResolution
+			entry(buf, 296, 3, 1, 2); // ResolutionUnit: inch
+			buf.putInt(0); // no further directories
+			buf.putShort((short) 8).putShort((short) 8).putShort((short) 8).putShort((short) 0);
+			final int denominator = 1000;
+			buf.putInt((int) Math.round(dpi * denominator)).putInt(denominator);
+			buf.putInt((int) Math.round(dpi * denominator)).putInt(denominator);
+			for (int i = 0; i < nStrips; i++)
+				buf.putInt((int) (8 + 3L * width * TILE_HEIGHT * i));
+			for (int i = 0; i < nStrips; i++)
+				buf.putInt((int) (3L * width * Math.min(TILE_HEIGHT, height - i * TILE_HEIGHT)));
+			out.write(buf.array());
+		}
+
+		private static void entry(final ByteBuffer buf, final int tag, final int type, final int count,
+				final long value) {
+			buf.putShort((short) tag).putShort((short) type).putInt(count);
+			if (type == 3 && count == 1)
+				buf.putShort((short) value).putShort((short) 0);
+			else
+				buf.putInt((int) value);
+		}
+	}
+
+}
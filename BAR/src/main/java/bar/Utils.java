@@ -13,6 +13,7 @@ package bar;
 import java.awt.Component;
 import java.awt.Desktop;
 import java.awt.Frame;
+import java.awt.GraphicsEnvironment;
 import java.awt.Menu;
 import java.awt.MenuItem;
 import java.awt.PopupMenu;
@@ -20,15 +21,17 @@ import java.awt.Toolkit;
 import java.awt.Window;
 import java.awt.datatransfer.Clipboard;
 import java.awt.datatransfer.DataFlavor;
+import java.awt.datatransfer.Transferable;
+import java.awt.datatransfer.UnsupportedFlavorException;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
 import java.awt.event.WindowListener;
 import java.io.File;
 import java.io.FileFilter;
 import java.io.IOException;
-import java.io.PrintStream;
-import java.net.URISyntaxException;
+import java.io.Reader;
 import java.net.URL;
 import java.util.ArrayList;
-import java.util.Enumeration;
 import java.util.Random;
 import java.util.jar.Attributes;
 import java.util.jar.Manifest;
@@ -36,20 +39,18 @@ import java.util.jar.Manifest;
 import org.scijava.Context;
 import org.scijava.ui.swing.script.TextEditor;
 
+import bar.gui.TableViewer;
 import ij.IJ;
-import ij.ImagePlus;
 import ij.Menus;
 import ij.Prefs;
 import ij.WindowManager;
 import ij.gui.GenericDialog;
-import ij.gui.ImageWindow;
 import ij.gui.PlotWindow;
 import ij.io.OpenDialog;
 import ij.measure.ResultsTable;
 import ij.plugin.MacroInstaller;
 import ij.plugin.PlugIn;
 import ij.plugin.frame.Editor;
-import ij.text.TextPanel;
 import ij.text.TextWindow;
 
 /**
@@ -84,6 +85,12 @@ public class Utils implements PlugIn {
 	/** The absolute path to the /BAR/lib/ directory */
 	static final String LIB_DIR = BAR_DIR + "lib" + File.separator;
 
+	/**
+	 * The table source of the script running on the current thread, used by
+	 * {@link #getTable()} in headless mode (see {@link Runner#TABLE_INPUT})
+	 */
+	static final ThreadLocal<Object> HEADLESS_TABLE = new ThreadLocal<>();
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -297,17 +304,16 @@ public class Utils implements PlugIn {
 	}
 
 	/**
-	 * Prints the contents of a directory to a dedicated TextWindow displayed at
-	 * the specified location. The location reverts to the center of the screen
-	 * if one of the specified coordinates is invalid).
+	 * Lists the contents of a directory in a dedicated {@link TableViewer}
+	 * displayed at the specified location. The location reverts to the center
+	 * of the screen if one of the specified coordinates is invalid).
 	 * <p>
 	 * An error message is displayed in a dialog box if directory could not be
 	 * found or if directory is empty (see {@link #fileExists(File)}).
 	 * <p>
 	 * A {@link bar.FileDrop FileDrop} listener is attached to the
-	 * {@link ij.text.TextWindow TextWindow}, which means that, once displayed,
-	 * the method can be triggered by dragging and dropping files from the
-	 * native file manager.
+	 * {@link TableViewer}, which means that, once displayed, the method can be
+	 * triggered by dragging and dropping files from the native file manager.
 	 * <p>
 	 * Some system files (hidden files, {@code Thumbs.db}) are excluded from the
 	 * list. If the directory is empty, users are prompted with the option to
@@ -315,15 +321,16 @@ public class Utils implements PlugIn {
 	 * {@link #revealFile(String)}).
 	 * <p>
 	 * Users can double click on a listed file path to have it open by ImageJ.
+	 * Files are listed lazily, i.e., paths are only formatted when displayed.
 	 *
 	 * @param dir
 	 *            Path of the directory to be listed
 	 * @param xPos
 	 *            The screen x location (from top-left corner) where the
-	 *            TextWindow should be displayed
+	 *            list should be displayed
 	 * @param yPos
 	 *            The screen y location (from top-left corner) where the
-	 *            TextWindow should be displayed
+	 *            list should be displayed
 	 *
 	 * @see #listDirectory(String)
 	 * @see #listDirectory(String, boolean)
@@ -355,16 +362,11 @@ public class Utils implements PlugIn {
 			return;
 		}
 
-		// Create Window and validate positioning
-		final int T_WIDTH = 550;
-		final int T_HEIGHT = 200;
-		final TextWindow tw = new TextWindow(dir + " [All files]", "", T_WIDTH, T_HEIGHT);
-		if (xPos > IJ.getScreenSize().getWidth() - (T_WIDTH / 2))
-			xPos = -1;
-		if (yPos > IJ.getScreenSize().getHeight() - (T_HEIGHT / 2))
-			yPos = -1;
-		if (xPos > 0 && yPos > 0)
-			tw.setLocation(xPos, yPos);
+		// Create Window. Rows are formatted only when displayed
+		final TableViewer.ListingModel listing = new TableViewer.ListingModel(dir, files);
+		final TableViewer tw = new TableViewer(dir + " [All files]", listing);
+		tw.getTable().getColumnModel().getColumn(0).setMaxWidth(60);
+		tw.setSize(550, 200);
 
 		// Implement drag and drop support. Consider only first file dropped
 		new FileDrop(tw, new FileDrop.Listener() {
@@ -393,31 +395,36 @@ public class Utils implements PlugIn {
 			}
 		});
 
-		// Populate TextPanel
-		final TextPanel tp = tw.getTextPanel();
-		final String HEADING = "Double-click on a filename to open it. Drag & " + "drop a folder to generate new lists";
-		tp.setColumnHeadings(HEADING);
-
-		final int padDigits = (int) (Math.log10(files.length) + 1);
-		for (int i = 0; i < files.length; i++) {
-			final String fname = (files[i].isDirectory()) ? files[i].getName() + File.separator : files[i].getName();
-			tp.appendWithoutUpdate("" + IJ.pad((i + 1), padDigits) + ": " + dir + fname);
-		}
-
-		// Hack: create an empty row as wide as heading to ensure heading is
-		// fully visible
-		final String spacer = "                                                 "
-				+ "                                                             " + "                          ";
-		tp.appendWithoutUpdate(spacer);
+		// Open double-clicked files
+		tw.getTable().addMouseListener(new MouseAdapter() {
+			@Override
+			public void mouseClicked(final MouseEvent e) {
+				if (e.getClickCount() != 2)
+					return;
+				final int row = tw.getTable().rowAtPoint(e.getPoint());
+				if (row < 0)
+					return;
+				final File file = listing.getFile(tw.getModelRow(row));
+				if (file.isDirectory())
+					listDirectory(file.getPath(), tw.getX() + 20, tw.getY() + 40);
+				else
+					IJ.open(file.getPath());
+			}
+		});
 
-		tp.updateDisplay();
+		// Validate positioning
+		if (xPos > IJ.getScreenSize().getWidth() - (tw.getWidth() / 2))
+			xPos = -1;
+		if (yPos > IJ.getScreenSize().getHeight() - (tw.getHeight() / 2))
+			yPos = -1;
+		tw.display(xPos, yPos);
 		IJ.showStatus(String.valueOf(files.length) + " items in " + dir);
 
 	}
 
 	/**
-	 * Prints the contents of a directory to a dedicated TextWindow displayed on
-	 * the center of the screen.
+	 * Lists the contents of a directory in a dedicated window displayed on the
+	 * center of the screen.
 	 *
 	 * @param dir
 	 *            the path of the directory to be listed
@@ -430,18 +437,17 @@ public class Utils implements PlugIn {
 	}
 
 	/**
-	 * Prints the contents of a directory to a dedicated TextWindow allowed to
-	 * be displayed with a slight offset from frontmost window. This "cascade"
+	 * Lists the contents of a directory in a dedicated window allowed to be
+	 * displayed with a slight offset from frontmost window. This "cascade"
 	 * positioning defaults to the center of the screen if frontmost window
 	 * could not be retrieved or is too close to screen boundaries.
 	 *
 	 * @param dir
 	 *            the path of the directory to be listed
 	 * @param cascade
-	 *            if {@code true} {@link ij.text.TextWindow TextWindow}
-	 *            "cascades" from ImageJ's
+	 *            if {@code true} the list "cascades" from ImageJ's
 	 *            {@link ij.WindowManager#getFrontWindow() frontmost} window. If
-	 *            {@code false}, TextWidow is displayed in the center of the
+	 *            {@code false}, the list is displayed in the center of the
 	 *            screen
 	 *
 	 * @see #listDirectory(String, int, int)
@@ -913,45 +919,20 @@ public class Utils implements PlugIn {
 	public static ResultsTable getTable(final Component relativeComponent, final boolean displayInResults,
 			final boolean offerSampleChoice, final WindowListener listener) {
 
+		if (GraphicsEnvironment.isHeadless())
+			return getHeadlessTable();
+
 		ResultsTable rt = null;
-		final ArrayList<ResultsTable> tables = new ArrayList<>();
+		final ArrayList<Frame> tableWindows = new ArrayList<>();
 		final ArrayList<String> tableTitles = new ArrayList<>();
 
-		// Retrieve tables from all available TextWindows
-		final Frame[] windows = WindowManager.getNonImageWindows();
-		for (final Frame w : windows) {
-			if (w == null)
+		// Retrieve windows holding tables. Tables are only retrieved once chosen
+		final TableRegistry registry = TableRegistry.getInstance();
+		for (final Frame w : registry.getTableWindows()) {
+			if (displayInResults && w == ResultsTable.getResultsWindow())
 				continue;
-			if (w instanceof TextWindow) {
-				final TextWindow rtWindow = (TextWindow) w;
-				rt = ((TextWindow) w).getTextPanel().getResultsTable();
-				if (rt != null) {
-					if (displayInResults && rt == ResultsTable.getResultsTable())
-						continue;
-					tables.add(rt);
-					tableTitles.add(rtWindow.getTitle());
-				}
-			}
-		}
-
-		// Retrieve tables from all available PlotWindows
-		final int[] ids = WindowManager.getIDList();
-		if (ids != null) {
-			for (final int id : ids) {
-				final ImagePlus pImp = WindowManager.getImage(id);
-				if (pImp == null)
-					continue;
-				final ImageWindow pWin = pImp.getWindow();
-				if (pWin == null)
-					continue;
-				if (pWin instanceof PlotWindow) {
-					rt = ((PlotWindow) pWin).getResultsTable();
-					if (rt != null) {
-						tables.add(rt);
-						tableTitles.add(pWin.getTitle());
-					}
-				}
-			}
+			tableWindows.add(w);
+			tableTitles.add(w.getTitle());
 		}
 		final boolean noTablesOpened = tableTitles.isEmpty();
 
@@ -995,41 +976,35 @@ public class Utils implements PlugIn {
 			if (choice.equals("External file...")) {
 
 				rtTitle = (displayInResults) ? "Results" : null;
+				final Frame window;
 				try {
-					return openAndDisplayTable("", rtTitle, listener);
+					window = openTableWindow("", rtTitle);
 				} catch (final IOException exc) {
 					IJ.error(exc.getMessage());
 					return null;
 				}
+				if (window == null)
+					return null;
+				// Tables displayed by a TableViewer are only converted here,
+				// as the caller requires a ResultsTable
+				rt = registry.getResultsTable(window);
+				win = window;
 
 				// Clipboard
 			} else if (choice.equals("Clipboard")) {
-				final String clipboard = getClipboardText();
 				final String error = "Clipboard does not seem to contain valid data";
-				if (clipboard == null || clipboard.isEmpty()) {
-					IJ.error(error);
-					return null;
-				}
 				try {
-					final File temp = File.createTempFile("BARclipboard", ".txt");
-					temp.deleteOnExit();
-					try (PrintStream out = new PrintStream(temp.getAbsolutePath())) {
-						out.println(clipboard);
-						out.close();
-					} catch (final Exception exc) {
-						IJ.error("Could not extract data from clipboard.");
-						return null;
-					}
-					rtTitle = (displayInResults) ? "Results" : "Clipboard Data";
-					rt = openAndDisplayTable(temp.getAbsolutePath(), rtTitle, listener, true);
-					if (rt == null) {
-						IJ.error(error);
-						return null;
-					}
-				} catch (final IOException exc) {
+					rt = readClipboardTable();
+				} catch (final IOException | RuntimeException exc) {
 					IJ.error("Could not extract data from clipboard.");
 					return null;
 				}
+				if (rt == null) {
+					IJ.error(error);
+					return null;
+				}
+				rtTitle = (displayInResults) ? "Results" : "Clipboard Data";
+				win = displayTable(rt, rtTitle);
 
 			} else if (choice.equals("Demo sample of Gaussian values")) {
 
@@ -1043,12 +1018,17 @@ public class Utils implements PlugIn {
 				// Any other ResultsTable in available TextWindows/PlotWindows
 			} else if (!noTablesOpened) {
 
-				rt = tables.get(tableTitles.indexOf(choice));
+				final Frame chosenWindow = tableWindows.get(tableTitles.indexOf(choice));
+				rt = registry.getResultsTable(chosenWindow);
+				if (rt == null) {
+					IJ.error("No tabular data in " + choice);
+					return null;
+				}
 				if (displayInResults) {
 					rt.show("Results");
 					win = ResultsTable.getResultsWindow();
 				} else {
-					win = WindowManager.getFrame(choice);
+					win = chosenWindow;
 				}
 
 				// ??
@@ -1067,6 +1047,31 @@ public class Utils implements PlugIn {
 
 	}
 
+	/**
+	 * Headless replacement of the data source prompt of
+	 * {@link #getTable(Component, boolean, boolean, WindowListener)}. Returns
+	 * the table passed to the running script through
+	 * {@link Runner#TABLE_INPUT} (a {@link ResultsTable}, a {@link File} or a
+	 * file path), or the system "Results" table if no table was passed.
+	 *
+	 * @return the table or {@code null} if no table is available
+	 */
+	private static ResultsTable getHeadlessTable() {
+		final Object source = HEADLESS_TABLE.get();
+		if (source instanceof ResultsTable)
+			return (ResultsTable) source;
+		if (source instanceof File || source instanceof String) {
+			try {
+				return readTable(source.toString());
+			} catch (final IOException exc) {
+				IJ.log("BAR: Could not read " + source + " (" + exc.getMessage() + ")");
+				return null;
+			}
+		}
+		final ResultsTable rt = ResultsTable.getResultsTable();
+		return (rt == null || rt.getCounter() == 0) ? null : rt;
+	}
+
 	/**
 	 * Opens a tab or comma delimited text file.
 	 *
@@ -1104,7 +1109,14 @@ public class Utils implements PlugIn {
 	}
 
 	/**
-	 * Opens a tab or comma delimited text file.
+	 * Opens a tab or comma delimited text file. Tables with at least
+	 * {@value TableViewer#LARGE_TABLE_ROWS} rows are displayed in a
+	 * {@link TableViewer}, which formats only visible rows, unless they are
+	 * to be displayed in the "Results" window. Such tables are converted to
+	 * the returned {@link ResultsTable} (see
+	 * {@link TableRegistry#getResultsTable(Frame)}): use
+	 * {@link #openAndDisplayColumnarTable(String, String, WindowListener)} to
+	 * avoid the conversion.
 	 *
 	 * @param path
 	 *            The absolute pathname string of the file. A file open dialog
@@ -1124,22 +1136,220 @@ public class Utils implements PlugIn {
 	 *         table was empty.
 	 *
 	 * @see #getTable()
+	 * @see #openAndDisplayColumnarTable(String, String, WindowListener)
 	 * @see ij.io.Opener#openTable(String)
 	 */
 	public static ResultsTable openAndDisplayTable(final String path, final String title, final WindowListener listener)
 			throws IOException {
-		ResultsTable rt = null;
-		rt = ResultsTable.open(path);
+		final Frame rtWindow = openTableWindow(path, title);
+		if (rtWindow == null)
+			return null;
+		if (listener != null)
+			rtWindow.addWindowListener(listener);
+		return TableRegistry.getInstance().getResultsTable(rtWindow);
+	}
+
+	/**
+	 * Opens and displays a table file (see
+	 * {@link #openAndDisplayTable(String, String, WindowListener)}).
+	 *
+	 * @return the window displaying the table or {@code null} if the file
+	 *         dialog was dismissed or the table was empty
+	 */
+	private static Frame openTableWindow(final String path, final String title) throws IOException {
+		String filePath = path;
+		if (filePath == null || filePath.isEmpty()) {
+			final OpenDialog od = new OpenDialog("Open Table...", "");
+			if (od.getFileName() == null) // dialog was dismissed
+				return null;
+			filePath = od.getPath();
+		}
+		final String rtTitle = (title != null && !title.isEmpty()) ? title : new File(filePath).getName();
+		final ColumnarTable table = readColumnarTable(filePath);
+		if (table != null)
+			return (table.getRowCount() == 0) ? null : displayColumnarTable(table, rtTitle);
+		final ResultsTable rt = ResultsTable.open(filePath);
 		if (rt == null || rt.getCounter() == 0) // nothing to be displayed
 			return null;
+		return displayTable(rt, rtTitle);
+	}
+
+	/**
+	 * Opens a tab or comma delimited text file (or a {@value TableCache#EXTENSION}
+	 * file) and displays it, without converting it to a {@link ResultsTable}
+	 * when it is large enough to be displayed in a {@link TableViewer}: the
+	 * table read from the file (or from its binary cache) is displayed as is.
+	 *
+	 * @param path
+	 *            The absolute pathname string of the file. A file open dialog
+	 *            is displayed if path is {@code null} or an empty string.
+	 * @param title
+	 *            The title of the window in which data is displayed. The
+	 *            filename is used if title is null or an empty string.
+	 * @param listener
+	 *            The {@link WindowListener} to be added to the window
+	 *            containing data if retrieval was successful. It is ignored
+	 *            when {@code null}.
+	 * @throws IOException
+	 *             if file could not be opened
+	 * @return the displayed table or {@code null} if table was empty or file
+	 *         is not a delimited text file
+	 *
+	 * @see #openAndDisplayTable(String, String, WindowListener)
+	 */
+	public static ColumnarTable openAndDisplayColumnarTable(final String path, final String title,
+			final WindowListener listener) throws IOException {
+		String filePath = path;
+		if (filePath == null || filePath.isEmpty()) {
+			final OpenDialog od = new OpenDialog("Open Table...", "");
+			if (od.getFileName() == null) // dialog was dismissed
+				return null;
+			filePath = od.getPath();
+		}
+		final String rtTitle = (title != null && !title.isEmpty()) ? title : new File(filePath).getName();
+		final ColumnarTable table = readColumnarTable(filePath);
+		if (table == null || table.getRowCount() == 0)
+			return null;
+		final Frame window = displayColumnarTable(table, rtTitle);
+		if (window != null && listener != null)
+			window.addWindowListener(listener);
+		return table;
+	}
+
+	/**
+	 * Displays a table in a {@link TableViewer} if it is large (and not meant
+	 * for the "Results" window), or as a {@link ResultsTable} otherwise.
+	 *
+	 * @return the window displaying the table
+	 */
+	private static Frame displayColumnarTable(final ColumnarTable table, final String title) {
+		if (table.getRowCount() >= TableViewer.LARGE_TABLE_ROWS && !"Results".equals(title))
+			return TableViewer.show(table, WindowManager.makeUniqueName(title));
+		return displayTable(table.toResultsTable(), title);
+	}
+
+	/**
+	 * Displays a table (without row numbers) in a window with a unique title.
+	 *
+	 * @return the window displaying the table or {@code null} if it could not
+	 *         be retrieved
+	 */
+	private static Frame displayTable(final ResultsTable rt, final String title) {
 		rt.showRowNumbers(false);
-		String rtTitle = (title != null && !title.isEmpty()) ? title : OpenDialog.getLastName();
-		rtTitle = WindowManager.makeUniqueName(rtTitle);
+		final String rtTitle = WindowManager.makeUniqueName(title);
 		rt.show(rtTitle);
-		final TextWindow rtWindow = (TextWindow) WindowManager.getFrame(rtTitle);
-		if (rtWindow != null && listener != null)
-			rtWindow.addWindowListener(listener);
-		return rt;
+		return WindowManager.getFrame(rtTitle);
+	}
+
+	/**
+	 * Reads tab or comma delimited text from the system clipboard without
+	 * displaying it. Clipboard contents are streamed directly into the table's
+	 * columns by {@link TableReader#read(java.io.Reader)}, i.e., no temporary
+	 * files are created.
+	 *
+	 * @throws IOException
+	 *             if clipboard contents could not be read
+	 * @return the {@link ResultsTable} or {@code null} if the clipboard does
+	 *         not contain text or the parsed table is empty
+	 *
+	 * @see #getClipboardText()
+	 */
+	public static ResultsTable readClipboardTable() throws IOException {
+		final Transferable contents = Toolkit.getDefaultToolkit().getSystemClipboard().getContents(null);
+		if (contents == null)
+			return null;
+		final DataFlavor flavor = DataFlavor.selectBestTextFlavor(contents.getTransferDataFlavors());
+		if (flavor == null)
+			return null;
+		try (Reader reader = flavor.getReaderForText(contents)) {
+			final ColumnarTable table = TableReader.read(reader);
+			return (table.getRowCount() == 0) ? null : table.toResultsTable();
+		} catch (final UnsupportedFlavorException exc) {
+			throw new IOException(exc);
+		}
+	}
+
+	/**
+	 * Reads a table from a file without displaying it. Delimited text files
+	 * ({@code .csv}, {@code .tsv}, {@code .txt} and {@code .xls} files saved by
+	 * ImageJ) are read by {@link TableReader}, which parses large files in
+	 * parallel. Other files, or files that {@link TableReader} fails to parse,
+	 * are opened by {@link ResultsTable#open(String)}.
+	 * <p>
+	 * Large delimited files are cached in BAR's binary format the first time
+	 * they are read (see {@link TableCache}): The cache is saved in the
+	 * background next to the file and reused as long as the file remains
+	 * unchanged. Binary tables ({@value TableCache#EXTENSION} files) can also be
+	 * opened directly.
+	 *
+	 * @param path
+	 *            The absolute pathname string of the file
+	 * @throws IOException
+	 *             if file could not be opened
+	 * @return the {@link ResultsTable} or {@code null} if table was empty
+	 *
+	 * @see #openAndDisplayTable(String, String, WindowListener)
+	 */
+	public static ResultsTable readTable(final String path) throws IOException {
+		final ColumnarTable table = readColumnarTable(path);
+		if (table == null)
+			return ResultsTable.open(path);
+		return (table.getRowCount() == 0) ? null : table.toResultsTable();
+	}
+
+	/**
+	 * Reads a table from a file into a {@link ColumnarTable}, using (or
+	 * creating) its binary cache whenever possible.
+	 *
+	 * @param path
+	 *            The absolute pathname string of the file
+	 * @throws IOException
+	 *             if a {@value TableCache#EXTENSION} file could not be read
+	 * @return the table or {@code null} if file is not a delimited text file
+	 *         or could not be parsed
+	 *
+	 * @see #readTable(String)
+	 */
+	public static ColumnarTable readColumnarTable(final String path) throws IOException {
+		final String lPath = path.toLowerCase();
+		if (lPath.endsWith(TableCache.EXTENSION))
+			return TableCache.read(new File(path));
+		if (lPath.endsWith(".csv") || lPath.endsWith(".tsv") || lPath.endsWith(".txt") || lPath.endsWith(".xls")) {
+			try {
+				final File file = new File(path);
+				ColumnarTable table = TableCache.readCached(file);
+				if (table == null) {
+					final long size = file.length();
+					final long modified = file.lastModified();
+					table = TableReader.read(file);
+					if (TableCache.isWorthCaching(file))
+						cacheTable(file, size, modified, table);
+				}
+				return table;
+			} catch (final IOException | RuntimeException exc) {
+				if (IJ.debugMode)
+					IJ.log("BAR: " + path + " could not be parsed (" + exc.getMessage() + "). Using IJ's parser...");
+			}
+		}
+		return null;
+	}
+
+	/** Saves the binary cache of a parsed table without blocking the caller */
+	private static void cacheTable(final File file, final long size, final long modified,
+			final ColumnarTable table) {
+		final Thread thread = new Thread("BAR table cache") {
+			@Override
+			public void run() {
+				try {
+					TableCache.writeCache(file, size, modified, table);
+				} catch (final IOException exc) {
+					if (IJ.debugMode)
+						IJ.log("BAR: Could not cache " + file.getName() + " (" + exc.getMessage() + ")");
+				}
+			}
+		};
+		thread.setDaemon(true); // an unfinished cache must not keep the JVM alive
+		thread.start();
 	}
 
 	/**
@@ -1181,31 +1391,18 @@ public class Utils implements PlugIn {
 		return rt;
 	}
 
+	/**
+	 * Retrieves the URL of a BAR resource from the index of BAR resources (see
+	 * {@link ResourceIndex}), i.e., without scanning the classpath.
+	 *
+	 * @param resourcePath
+	 *            the path of the resource, e.g.,
+	 *            {@code scripts/BAR/Data_Analysis/Distribution_Plotter.ijm}
+	 * @return the URL of the resource or {@code null} if it could not be
+	 *         found
+	 */
 	public static URL getBARresource(final String resourcePath) {
-		final ClassLoader loader = Thread.currentThread().getContextClassLoader();
-		URL resource = null;
-		try {
-			final Enumeration<URL> resources = loader.getResources(resourcePath);
-			while (resources.hasMoreElements()) {
-				resource = resources.nextElement();
-				final String path = urlPath(resource);
-				if (path == null)
-					continue;
-				if (path.contains("BAR"))
-					return resource;
-			}
-		} catch (final IOException exc) {
-			// proceed with return null;
-		}
-		return resource;
-	}
-
-	private static String urlPath(final URL url) {
-		try {
-			return url.toURI().toString();
-		} catch (final URISyntaxException exc) {
-			return null;
-		}
+		return ResourceIndex.getURL(resourcePath);
 	}
 
 }
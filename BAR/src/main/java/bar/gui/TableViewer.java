@@ -0,0 +1,532 @@
+/*
+ * IJ BAR: https://github.com/tferr/Scripts
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation
+ * (http://www.gnu.org/licenses/gpl.txt).
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ */
+package bar.gui;
+
+import java.awt.BorderLayout;
+import java.awt.Dimension;
+import java.awt.FlowLayout;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.File;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.JTextField;
+import javax.swing.SwingConstants;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.DefaultTableCellRenderer;
+
+import bar.ColumnarTable;
+import ij.IJ;
+import ij.WindowManager;
+import ij.gui.GUI;
+
+/**
+ * A window displaying very large tables without duplicating their data. Rows
+ * are never copied into the display: the JTable only requests the rows that
+ * are visible, and those are formatted on demand from the underlying store
+ * (a {@link ColumnarTable} or a directory listing). Memory used by the viewer
+ * is thus independent of the number of rows, except for the row order kept
+ * once the table is sorted (one {@code int} per row).
+ * <p>
+ * Clicking on a column header sorts rows by that column (clicking again
+ * reverses the order). Sorting is performed on primitive keys rather than on
+ * formatted cell values. The "Go to row" field scrolls to the specified row.
+ */
+@SuppressWarnings("serial")
+public class TableViewer extends JFrame {
+
+	/** Tables with this many rows are displayed by a TableViewer */
+	public static final int LARGE_TABLE_ROWS = 100000;
+
+	private final ViewerModel model;
+	private final JTable table;
+	private final JLabel status;
+	private int sortColumn = -1;
+	private boolean ascending;
+
+	/**
+	 * Creates a new viewer. The viewer is not displayed until
+	 * {@link #setVisible(boolean)} is called.
+	 *
+	 * @param title
+	 *            the window title
+	 * @param model
+	 *            the data to be displayed
+	 */
+	public TableViewer(final String title, final ViewerModel model) {
+		super(title);
+		this.model = model;
+		table = new JTable(model);
+		table.setAutoCreateRowSorter(false);
+		table.setFillsViewportHeight(true);
+		if (model.getColumnCount() > 8)
+			table.setAutoResizeMode(JTable.AUTO_RESIZE_OFF);
+		final DefaultTableCellRenderer rightRenderer = new DefaultTableCellRenderer();
+		rightRenderer.setHorizontalAlignment(SwingConstants.RIGHT);
+		for (int c = 0; c < model.getColumnCount(); c++) {
+			if (model.isNumeric(c))
+				table.getColumnModel().getColumn(c).setCellRenderer(rightRenderer);
+		}
+		table.getTableHeader().setReorderingAllowed(false);
+		table.getTableHeader().addMouseListener(new MouseAdapter() {
+			@Override
+			public void mouseClicked(final MouseEvent e) {
+				final int column = table.columnAtPoint(e.getPoint());
+				if (column > -1)
+					sort(column, (column == sortColumn) ? !ascending : true);
+			}
+		});
+
+		final JTextField rowField = new JTextField(8);
+		rowField.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(final ActionEvent e) {
+				try {
+					goToRow(Integer.parseInt(rowField.getText().trim()));
+				} catch (final NumberFormatException exc) {
+					IJ.beep();
+				}
+			}
+		});
+		final JPanel toolbar = new JPanel(new FlowLayout(FlowLayout.LEFT));
+		toolbar.add(new JLabel("Go to row:"));
+		toolbar.add(rowField);
+		status = new JLabel();
+		toolbar.add(status);
+		updateStatus();
+
+		add(toolbar, BorderLayout.NORTH);
+		add(new JScrollPane(table), BorderLayout.CENTER);
+		setDefaultCloseOperation(DISPOSE_ON_CLOSE);
+		addWindowListener(new WindowAdapter() {
+			@Override
+			public void windowClosed(final WindowEvent e) {
+				WindowManager.removeWindow(TableViewer.this);
+			}
+		});
+		setPreferredSize(new Dimension(Math.min(1000, Math.max(400, 100 * model.getColumnCount())), 450));
+		pack();
+	}
+
+	/**
+	 * Displays a table.
+	 *
+	 * @param table
+	 *            the table to be displayed
+	 * @param title
+	 *            the window title
+	 * @return the displayed viewer
+	 */
+	public static TableViewer show(final ColumnarTable table, final String title) {
+		final TableViewer viewer = new TableViewer(title, new ColumnarTableModel(table));
+		viewer.display(-1, -1);
+		return viewer;
+	}
+
+	/**
+	 * Displays the viewer at the specified screen location and registers it
+	 * with ImageJ's Window menu.
+	 *
+	 * @param xPos
+	 *            the screen x location. The viewer is centered on the screen
+	 *            if negative
+	 * @param yPos
+	 *            the screen y location. The viewer is centered on the screen
+	 *            if negative
+	 */
+	public void display(final int xPos, final int yPos) {
+		if (xPos < 0 || yPos < 0)
+			GUI.center(this);
+		else
+			setLocation(xPos, yPos);
+		setVisible(true);
+		WindowManager.addWindow(this);
+	}
+
+	/**
+	 * @return the displayed table or {@code null} if viewer is not displaying
+	 *         a {@link ColumnarTable} (e.g., a directory listing)
+	 */
+	public ColumnarTable getColumnarTable() {
+		return (model instanceof ColumnarTableModel) ? ((ColumnarTableModel) model).getData() : null;
+	}
+
+	/** @return the JTable displaying data */
+	public JTable getTable() {
+		return table;
+	}
+
+	/**
+	 * Converts the index of a displayed row into the index of its row in the
+	 * underlying data store.
+	 *
+	 * @param viewRow
+	 *            the index of the row in the JTable
+	 * @return the index of the row in the data store
+	 */
+	public int getModelRow(final int viewRow) {
+		return model.getStoreRow(viewRow);
+	}
+
+	/**
+	 * Scrolls to the specified row and selects it.
+	 *
+	 * @param row
+	 *            the 1-based index of the row (as currently sorted)
+	 */
+	public void goToRow(final int row) {
+		final int n = model.getRowCount();
+		if (n == 0)
+			return;
+		final int viewRow = Math.max(0, Math.min(n - 1, row - 1));
+		table.changeSelection(viewRow, 0, false, false);
+	}
+
+	/**
+	 * Sorts rows by the values of the specified column.
+	 *
+	 * @param column
+	 *            the column index
+	 * @param ascending
+	 *            the sorting order
+	 */
+	public void sort(final int column, final boolean ascending) {
+		if (!model.sort(column, ascending)) {
+			IJ.beep();
+			return;
+		}
+		sortColumn = column;
+		this.ascending = ascending;
+		updateStatus();
+	}
+
+	private void updateStatus() {
+		String msg = model.getRowCount() + " rows";
+		if (sortColumn > -1)
+			msg += ", sorted by " + model.getColumnName(sortColumn) + ((ascending) ? " (ascending)" : " (descending)");
+		status.setText(msg);
+	}
+
+	/**
+	 * A table model that formats rows on demand from an underlying data store
+	 * and that sorts rows using primitive keys. Subclasses only need to
+	 * format single cells and, optionally, provide sorting keys.
+	 */
+	public abstract static class ViewerModel extends AbstractTableModel {
+
+		/** The store row of each displayed row or null if unsorted */
+		private int[] order;
+
+		/**
+		 * Formats a single cell.
+		 *
+		 * @param row
+		 *            the row index in the data store
+		 * @param column
+		 *            the column index
+		 * @return the formatted value
+		 */
+		protected abstract String format(int row, int column);
+
+		/**
+		 * Returns the keys used to sort the specified column. Text columns
+		 * should provide the rank of each value (see
+		 * {@link #rankKeys(String[], int[])}).
+		 *
+		 * @param column
+		 *            the column index
+		 * @return the sorting key of each row in the data store, or
+		 *         {@code null} if column cannot be sorted. The array is not
+		 *         modified
+		 */
+		protected abstract double[] sortKeys(int column);
+
+		/**
+		 * @param column
+		 *            the column index
+		 * @return {@code true} if the column holds numbers (rendered right
+		 *         aligned)
+		 */
+		public boolean isNumeric(final int column) {
+			return false;
+		}
+
+		@Override
+		public boolean isCellEditable(final int row, final int column) {
+			return false;
+		}
+
+		@Override
+		public Object getValueAt(final int row, final int column) {
+			return format(getStoreRow(row), column);
+		}
+
+		int getStoreRow(final int viewRow) {
+			return (order == null) ? viewRow : order[viewRow];
+		}
+
+		boolean sort(final int column, final boolean ascending) {
+			final double[] keys = sortKeys(column);
+			if (keys == null)
+				return false;
+			order = sortedOrder(keys, ascending);
+			fireTableDataChanged();
+			return true;
+		}
+
+		/**
+		 * Ranks text values, so that they can be sorted as primitive keys.
+		 *
+		 * @param dictionary
+		 *            the distinct values
+		 * @param codes
+		 *            the dictionary index of each row or {@code null} if each
+		 *            row holds the dictionary entry at the same index
+		 * @return the rank of the value of each row
+		 */
+		protected static double[] rankKeys(final String[] dictionary, final int[] codes) {
+			final Integer[] sorted = new Integer[dictionary.length];
+			for (int i = 0; i < sorted.length; i++)
+				sorted[i] = i;
+			Arrays.sort(sorted, new Comparator<Integer>() {
+				@Override
+				public int compare(final Integer o1, final Integer o2) {
+					return dictionary[o1].compareToIgnoreCase(dictionary[o2]);
+				}
+			});
+			final double[] rank = new double[dictionary.length];
+			for (int i = 0; i < sorted.length; i++)
+				rank[sorted[i]] = i;
+			if (codes == null)
+				return rank;
+			final double[] keys = new double[codes.length];
+			for (int i = 0; i < codes.length; i++)
+				keys[i] = rank[codes[i]];
+			return keys;
+		}
+
+		/**
+		 * Sorts row indices by their keys. NaNs are sorted last in both
+		 * orders.
+		 */
+		static int[] sortedOrder(final double[] keys, final boolean ascending) {
+			final int n = keys.length;
+			final double[] k = new double[n];
+			final int[] idx = new int[n];
+			for (int i = 0; i < n; i++) {
+				final double v = (ascending) ? keys[i] : -keys[i];
+				k[i] = (Double.isNaN(v)) ? Double.POSITIVE_INFINITY : v;
+				idx[i] = i;
+			}
+			quickSort(k, idx, 0, n - 1);
+			return idx;
+		}
+
+		/** Sorts keys (and their row indices) between lo and hi, inclusive */
+		private static void quickSort(final double[] k, final int[] idx, int lo, int hi) {
+			while (hi - lo > 16) {
+				final int mid = (lo + hi) >>> 1;
+				if (k[mid] < k[lo])
+					swap(k, idx, mid, lo);
+				if (k[hi] < k[lo])
+					swap(k, idx, hi, lo);
+				if (k[hi] < k[mid])
+					swap(k, idx, hi, mid);
+				final double pivot = k[mid];
+				int i = lo;
+				int j = hi;
+				while (i <= j) {
+					while (k[i] < pivot)
+						i++;
+					while (k[j] > pivot)
+						j--;
+					if (i <= j)
+						swap(k, idx, i++, j--);
+				}
+				// Recurse into the smaller partition to bound stack depth
+				if (j - lo < hi - i) {
+					quickSort(k, idx, lo, j);
+					lo = i;
+				} else {
+					quickSort(k, idx, i, hi);
+					hi = j;
+				}
+			}
+			for (int i = lo + 1; i <= hi; i++) {
+				final double key = k[i];
+				final int index = idx[i];
+				int j = i - 1;
+				while (j >= lo && k[j] > key) {
+					k[j + 1] = k[j];
+					idx[j + 1] = idx[j];
+					j--;
+				}
+				k[j + 1] = key;
+				idx[j + 1] = index;
+			}
+		}
+
+		private static void swap(final double[] k, final int[] idx, final int a, final int b) {
+			final double tk = k[a];
+			k[a] = k[b];
+			k[b] = tk;
+			final int ti = idx[a];
+			idx[a] = idx[b];
+			idx[b] = ti;
+		}
+	}
+
+	/** Displays the columns of a {@link ColumnarTable} */
+	public static class ColumnarTableModel extends ViewerModel {
+
+		private final ColumnarTable data;
+		private final String[] headings;
+
+		public ColumnarTableModel(final ColumnarTable data) {
+			this.data = data;
+			headings = data.getHeadings();
+		}
+
+		/** @return the displayed table */
+		public ColumnarTable getData() {
+			return data;
+		}
+
+		@Override
+		public int getRowCount() {
+			return data.getRowCount();
+		}
+
+		@Override
+		public int getColumnCount() {
+			return headings.length;
+		}
+
+		@Override
+		public String getColumnName(final int column) {
+			return headings[column];
+		}
+
+		@Override
+		public boolean isNumeric(final int column) {
+			return data.isNumeric(headings[column]);
+		}
+
+		@Override
+		protected String format(final int row, final int column) {
+			final String heading = headings[column];
+			final double[] doubles = data.getColumn(heading);
+			if (doubles != null)
+				return formatNumber(doubles[row]);
+			final int[] ints = data.getIntColumn(heading);
+			if (ints != null)
+				return String.valueOf(ints[row]);
+			return data.getStringColumn(heading).get(row);
+		}
+
+		@Override
+		protected double[] sortKeys(final int column) {
+			final String heading = headings[column];
+			if (data.isNumeric(heading))
+				return data.getValues(heading);
+			final ColumnarTable.StringColumn strings = data.getStringColumn(heading);
+			return rankKeys(strings.getDictionary(), strings.getCodes());
+		}
+
+		private static String formatNumber(final double value) {
+			if (value == (long) value && Math.abs(value) < 1e9)
+				return String.valueOf((long) value);
+			return IJ.d2s(value, 4, 9);
+		}
+	}
+
+	/** Displays a list of files, numbered in their original order */
+	public static class ListingModel extends ViewerModel {
+
+		private final String dir;
+		private final File[] files;
+		private final int padDigits;
+
+		/**
+		 * @param dir
+		 *            the listed directory (ending with a file separator)
+		 * @param files
+		 *            the listed files
+		 */
+		public ListingModel(final String dir, final File[] files) {
+			this.dir = dir;
+			this.files = files;
+			padDigits = (int) (Math.log10(Math.max(1, files.length)) + 1);
+		}
+
+		/**
+		 * @param row
+		 *            the index of the row in the listing
+		 * @return the listed file
+		 */
+		public File getFile(final int row) {
+			return files[row];
+		}
+
+		@Override
+		public int getRowCount() {
+			return files.length;
+		}
+
+		@Override
+		public int getColumnCount() {
+			return 2;
+		}
+
+		@Override
+		public String getColumnName(final int column) {
+			return (column == 0) ? "#" : "Double-click on a filename to open it. Drag & drop a folder to generate new lists";
+		}
+
+		@Override
+		public boolean isNumeric(final int column) {
+			return column == 0;
+		}
+
+		@Override
+		protected String format(final int row, final int column) {
+			if (column == 0)
+				return IJ.pad(row + 1, padDigits);
+			final String name = files[row].getName();
+			return dir + ((files[row].isDirectory()) ? name + File.separator : name);
+		}
+
+		@Override
+		protected double[] sortKeys(final int column) {
+			if (column == 0) {
+				final double[] keys = new double[files.length];
+				for (int i = 0; i < keys.length; i++)
+					keys[i] = i;
+				return keys;
+			}
+			final String[] names = new String[files.length];
+			for (int i = 0; i < names.length; i++)
+				names[i] = files[i].getName();
+			return rankKeys(names, null);
+		}
+	}
+
+}
@@ -45,6 +45,7 @@ import java.io.File;
 import java.io.FileFilter;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.Locale;
 import java.util.Timer;
 import java.util.TimerTask;
@@ -1375,9 +1376,9 @@ public class Commander implements Command, ActionListener, DocumentListener, Key
 
 	/**
 	 * Evaluates matches between string an pattern according to current search
-	 * criteria
+	 * criteria. Public so that matching can be benchmarked without the GUI.
 	 */
-	boolean match(final String string, final String pattern) {
+	public boolean match(final String string, final String pattern) {
 		if (emptyQuery(pattern)) {
 			return true;
 		} else if (regex && !isConsoleMode()) {
@@ -1390,12 +1391,31 @@ public class Commander implements Command, ActionListener, DocumentListener, Key
 	}
 
 	/** Converts string to lower case according to current search criteria */
-	String getCaseSensitiveString(final String string) {
+	public String getCaseSensitiveString(final String string) {
 		return (this.regex || this.caseSensitive) ? string : string.toLowerCase(Locale.US);
 	}
 
 	/** Creates a list of filenames matching current search */
 	void setFileList() {
+		filenames.clear();
+		truncatedList = listMatchingFiles(path, filenames, maxSize);
+		if (truncatedList)
+			setStatusTooltip("Double-click to change list size or type <tt>!options</tt>.");
+	}
+
+	/**
+	 * Lists the contents of a directory matching current search.
+	 *
+	 * @param dir
+	 *            the directory path, ending with a file separator
+	 * @param list
+	 *            the list receiving the names of matching files, relative to
+	 *            {@code dir}. Directory names end with a file separator
+	 * @param maxItems
+	 *            the maximum number of items to be listed
+	 * @return {@code true} if the list was truncated at {@code maxItems}
+	 */
+	public boolean listMatchingFiles(final String dir, final List<String> list, final int maxItems) {
 		final FileFilter filter = new FileFilter() {
 			@Override
 			public boolean accept(final File file) {
@@ -1408,27 +1428,28 @@ public class Commander implements Command, ActionListener, DocumentListener, Key
 			}
 		};
 
-		truncatedList = false;
-		filenames.clear();
-		final File dir = new File(path);
-		final int rootIdx = path.length();
-		for (final File f : dir.listFiles(filter)) {
-			if (filenames.size() >= maxSize) {
-				truncatedList = true;
-				setStatusTooltip("Double-click to change list size or type <tt>!options</tt>.");
-				break;
-			}
+		final int rootIdx = dir.length();
+		for (final File f : new File(dir).listFiles(filter)) {
+			if (list.size() >= maxItems)
+				return true;
 			String name = f.getAbsolutePath().substring(rootIdx);
 			if (name.length() == 0)
 				continue;
 			if (f.isDirectory())
 				name += File.separator;
-			filenames.add(name);
+			list.add(name);
 		}
-		// Collections.sort(filenames);
+		// Collections.sort(list);
+		return false;
 	}
 
-	void setMatchingString(final String newMatchingString) {
+	/**
+	 * Sets the search query used by {@link #listMatchingFiles(String, List, int)}.
+	 *
+	 * @param newMatchingString
+	 *            the query, as typed in the search field
+	 */
+	public void setMatchingString(final String newMatchingString) {
 		this.matchingString = getCaseSensitiveString(newMatchingString);
 	}
 
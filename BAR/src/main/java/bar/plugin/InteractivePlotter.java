@@ -33,15 +33,22 @@ import java.awt.event.ActionListener;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Vector;
+import java.util.function.IntFunction;
+import java.util.regex.Pattern;
 
+import javax.swing.JCheckBoxMenuItem;
 import javax.swing.JMenuItem;
 import javax.swing.JPopupMenu;
 import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 import javax.swing.UIManager;
 
+import bar.SeriesDecimator;
 import bar.Utils;
 import ij.IJ;
+import ij.ImageListener;
 import ij.ImagePlus;
 import ij.Prefs;
 import ij.WindowManager;
@@ -101,6 +108,35 @@ public class InteractivePlotter implements PlugIn {
 	private Button datasetButton;
 	private final String DIALOG_LOC_KEY = "bar.PRloc";
 
+	/** Flag controlling the downsampling of large series */
+	private boolean decimate = true;
+
+	/**
+	 * Full-resolution data of XY series in the current plot, used for
+	 * decimation and live updates
+	 */
+	private final ArrayList<TrackedSeries> trackedSeries = new ArrayList<>();
+
+	/** The plot limits used by the last decimation */
+	private double[] decimationLimits;
+
+	/** Listener re-decimating series when plot is zoomed or panned */
+	private ImageListener zoomListener;
+
+	/** The minimum refresh interval (in ms) of plots in "follow" mode */
+	private static final int FOLLOW_INTERVAL = 100;
+
+	/**
+	 * Coalescing timer polling source tables for new rows when following
+	 * tables
+	 */
+	private Timer followTimer;
+
+	/** Running limits {xMin, xMax, yMin, yMax} of all tracked data */
+	private double[] dataLimits;
+
+	private JCheckBoxMenuItem followTableJMI;
+
 	public static void main(final String[] args) {
 		new ij.ImageJ();
 		final InteractivePlotter plugin = new InteractivePlotter();
@@ -135,7 +171,7 @@ public class InteractivePlotter implements PlugIn {
 	 * the method has not been called before.
 	 */
 	private void addDataset(final String datasetLabel, final double[] x1, final double[] y1, final double[] x2,
-			final double[] y2, final boolean vectorField) {
+			final double[] y2, final boolean vectorField, final String xHeading, final String yHeading) {
 
 		final boolean newPlot = plot == null;
 		if (newPlot) {
@@ -153,11 +189,19 @@ public class InteractivePlotter implements PlugIn {
 			pw = showPlot();
 		}
 
-		// Add the dataset (with vectors, all column choices must be valid)
+		// Add the dataset (with vectors, all column choices must be valid).
+		// Large series are downsampled, retaining full-resolution data
 		plot.setColor(dColor, dColor2);
 		if (vectorField)
 			plot.drawVectors(x1, y1, x2, y2);
-		else {
+		else if (x2 == null && y2 == null) {
+			final TrackedSeries series = new TrackedSeries(plot.getPlotObjectDesignations().length, dShape, x1, y1,
+					rt, xHeading, yHeading);
+			final double[][] xy = series.render(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+			plot.addPoints(xy[0], xy[1], Plot.toShape(dShape));
+			trackedSeries.add(series);
+			updateDataLimits(Tools.getMinMax(x1), Tools.getMinMax(y1));
+		} else {
 			plot.addPoints(x1, y1, Plot.toShape(dShape));
 			if (x2 != null)
 				plot.addHorizontalErrorBars(x2);
@@ -173,10 +217,287 @@ public class InteractivePlotter implements PlugIn {
 			plot.setColor(Color.BLACK);
 			plot.addLegend(legend);
 		}
-		plot.setLimitsToFit(true);
+		fitLimits();
 		datasetCounter++;
 	}
 
+	/**
+	 * Adds several Y-series sharing the same X-values in a single batch. The
+	 * combined axes limits are computed in one parallel pass over all columns,
+	 * series are styled using the current shape/color as starting points, and
+	 * the plot is redrawn only once.
+	 *
+	 * @param x
+	 *            the shared x-values
+	 * @param xHeading
+	 *            the heading of the X-values column or {@code null} if x-values
+	 *            are row numbers
+	 * @param yHeadings
+	 *            the headings of the Y-values columns
+	 * @param cycleShapes
+	 *            if shapes should be assigned cyclically to each series
+	 * @param cycleColors
+	 *            if colors should be assigned cyclically to each series
+	 */
+	private void addDatasets(final double[] x, final String xHeading, final String[] yHeadings,
+			final boolean cycleShapes, final boolean cycleColors) {
+
+		// Retrieve columns and compute all limits in parallel
+		final double[][] ys = new double[yHeadings.length][];
+		for (int i = 0; i < yHeadings.length; i++)
+			ys[i] = rt.getColumnAsDoubles(rt.getColumnIndex(yHeadings[i]));
+		final double[][] yMinMax = new double[ys.length][];
+		Arrays.parallelSetAll(yMinMax, new IntFunction<double[]>() {
+			@Override
+			public double[] apply(final int i) {
+				return Tools.getMinMax(ys[i]);
+			}
+		});
+		final double[] xLimits = Tools.getMinMax(x);
+		final double[] yLimits = { Double.MAX_VALUE, -Double.MAX_VALUE };
+		for (final double[] minMax : yMinMax) {
+			yLimits[0] = Math.min(yLimits[0], minMax[0]);
+			yLimits[1] = Math.max(yLimits[1], minMax[1]);
+		}
+
+		final boolean newPlot = plot == null;
+		if (newPlot) {
+			if (xLimits[0] == Double.MAX_VALUE || yLimits[0] == Double.MAX_VALUE) {
+				showMessage("Invalid data", "Chosen column(s) do not seem to contain numeric data.");
+				return;
+			}
+			plot = new Plot(WindowManager.makeUniqueName("Plotted Results"), "X", "Y", Plot.DEFAULT_FLAGS);
+			plot.setLimits(xLimits[0], xLimits[1], yLimits[0], yLimits[1]);
+			pw = showPlot();
+		}
+
+		// Add all series without redrawing the plot
+		final StringBuilder sb = new StringBuilder(legend);
+		for (int i = 0; i < ys.length; i++) {
+			plot.setColor(dColor, dColor2);
+			final TrackedSeries series = new TrackedSeries(plot.getPlotObjectDesignations().length, dShape, x,
+					ys[i], rt, xHeading, yHeadings[i]);
+			final double[][] xy = series.render(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+			plot.addPoints(xy[0], xy[1], Plot.toShape(dShape));
+			trackedSeries.add(series);
+			updateDataLimits(xLimits, yMinMax[i]);
+			if (buildLegend) {
+				if (sb.length() > 0)
+					sb.append("\n");
+				sb.append(yHeadings[i]);
+			}
+			if (cycleShapes)
+				dShape = getNextItem(S_LABELS, dShape);
+			if (cycleColors)
+				dColor = getNextItem(Colors.colors, dColor, Colors.colors.length - 2); // skip white
+		}
+		if (buildLegend) {
+			legend = sb.toString();
+			plot.setColor(Color.BLACK);
+			plot.addLegend(legend);
+		}
+
+		// Update limits and redraw once
+		final double[] limits = (newPlot) ? null : plot.getLimits();
+		if (limits == null)
+			plot.setLimits(xLimits[0], xLimits[1], yLimits[0], yLimits[1]);
+		else
+			plot.setLimits(Math.min(limits[0], xLimits[0]), Math.max(limits[1], xLimits[1]),
+					Math.min(limits[2], yLimits[0]), Math.max(limits[3], yLimits[1]));
+		decimationLimits = null;
+		plot.updateImage();
+		datasetCounter += ys.length;
+		updateDatasetButton();
+	}
+
+	/**
+	 * Prompts for the columns to be plotted in a single batch against a common
+	 * X-values column.
+	 */
+	private void addMultipleDatasets() {
+		if (rt == null)
+			return;
+		final String GEN_X_LABEL = "*Row numbers*";
+		final String[] xChoices = colChoices.clone();
+		xChoices[xChoices.length - 1] = GEN_X_LABEL;
+		final GenericDialog gd = new GenericDialog("Add Multiple Series");
+		gd.addChoice("X-values:", xChoices, GEN_X_LABEL);
+		gd.addStringField("Y-values columns:", "*", 20);
+		gd.setInsets(0, 20, 0);
+		gd.addMessage("(Column headings. Use '*' and '?' as wildcards.\n"
+				+ "Separate multiple patterns with commas)");
+		gd.addCheckbox("Assign shapes cyclically", autoNextShape);
+		gd.addCheckbox("Assign colors cyclically", true);
+		showAsSubDialog(gd);
+		if (!gd.wasOKed())
+			return;
+
+		final String xHeading = gd.getNextChoice();
+		final Pattern pattern = wildcardPattern(gd.getNextString());
+		final boolean cycleShapes = gd.getNextBoolean();
+		final boolean cycleColors = gd.getNextBoolean();
+		final boolean generatedX = GEN_X_LABEL.equals(xHeading) || !validColumn(xHeading);
+		final ArrayList<String> yHeadings = new ArrayList<>();
+		for (final String heading : colChoices) {
+			if (heading.equals(xHeading) || !validColumn(heading))
+				continue;
+			if (pattern.matcher(heading).matches())
+				yHeadings.add(heading);
+		}
+		if (yHeadings.isEmpty()) {
+			showMessage("No Matches", "No numeric columns match the specified pattern.");
+			return;
+		}
+		final double[] x = (generatedX) ? generateX(rt) : rt.getColumnAsDoubles(rt.getColumnIndex(xHeading));
+		addDatasets(x, (generatedX) ? null : xHeading, yHeadings.toArray(new String[yHeadings.size()]),
+				cycleShapes, cycleColors);
+	}
+
+	/** Converts a comma-separated list of wildcard expressions into a regex */
+	private Pattern wildcardPattern(final String wildcards) {
+		final StringBuilder regex = new StringBuilder();
+		for (final String token : wildcards.split(",")) {
+			final String wildcard = token.trim();
+			if (wildcard.isEmpty())
+				continue;
+			if (regex.length() > 0)
+				regex.append("|");
+			regex.append("(?:");
+			for (final char c : wildcard.toCharArray()) {
+				if (c == '*')
+					regex.append(".*");
+				else if (c == '?')
+					regex.append(".");
+				else
+					regex.append(Pattern.quote(String.valueOf(c)));
+			}
+			regex.append(")");
+		}
+		return Pattern.compile((regex.length() == 0) ? ".*" : regex.toString());
+	}
+
+	/**
+	 * Sets the plot limits to fit all data. Decimated series are first restored
+	 * to their full range so that zoomed out data is taken into account.
+	 */
+	private void fitLimits() {
+		if (!trackedSeries.isEmpty()) {
+			decimate(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+			decimationLimits = null;
+		}
+		plot.setLimitsToFit(true);
+	}
+
+	/** Replaces decimated series with data decimated from the given x-range */
+	private void decimate(final double xMin, final double xMax) {
+		for (final TrackedSeries series : trackedSeries) {
+			if (series.isDecimated())
+				series.replaceInPlot(xMin, xMax);
+		}
+	}
+
+	/**
+	 * Re-decimates series from full-resolution data if plot limits changed,
+	 * e.g., after zooming
+	 */
+	private void redecimate() {
+		if (plot == null || trackedSeries.isEmpty())
+			return;
+		final double[] limits = plot.getLimits();
+		if (limits == null || Arrays.equals(limits, decimationLimits))
+			return;
+		decimationLimits = limits;
+		decimate(limits[0], limits[1]);
+		plot.updateImage();
+	}
+
+	/** Expands the running limits of tracked data */
+	private void updateDataLimits(final double[] xMinMax, final double[] yMinMax) {
+		if (dataLimits == null)
+			dataLimits = new double[] { Double.MAX_VALUE, -Double.MAX_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE };
+		dataLimits[0] = Math.min(dataLimits[0], xMinMax[0]);
+		dataLimits[1] = Math.max(dataLimits[1], xMinMax[1]);
+		dataLimits[2] = Math.min(dataLimits[2], yMinMax[0]);
+		dataLimits[3] = Math.max(dataLimits[3], yMinMax[1]);
+	}
+
+	/** Starts or stops monitoring source tables for new rows */
+	private void setFollowTable(final boolean follow) {
+		if (follow) {
+			if (followTimer == null) {
+				followTimer = new Timer(FOLLOW_INTERVAL, new ActionListener() {
+					@Override
+					public void actionPerformed(final ActionEvent e) {
+						followTables();
+					}
+				});
+				followTimer.setCoalesce(true);
+			}
+			followTimer.start();
+		} else if (followTimer != null) {
+			followTimer.stop();
+		}
+		if (followTableJMI != null)
+			followTableJMI.setSelected(follow);
+	}
+
+	/**
+	 * Appends rows added to source tables since the last call to their
+	 * respective series. Axes limits are expanded using only the new data, and
+	 * the plot is redrawn at most once per call. Series whose tables were reset
+	 * (or lost rows) are reloaded from scratch, in which case limits are fitted
+	 * to the current data.
+	 */
+	private void followTables() {
+		if (plot == null || pwClosed || trackedSeries.isEmpty())
+			return;
+		final ArrayList<TrackedSeries> changed = new ArrayList<>();
+		boolean reloaded = false;
+		for (final TrackedSeries series : trackedSeries) {
+			if (series.isStale()) {
+				series.clear();
+				reloaded = true;
+			}
+		}
+		if (reloaded) {
+			// limits of stale data no longer apply: recompute them from scratch
+			dataLimits = null;
+			for (final TrackedSeries series : trackedSeries) {
+				if (series.size > 0)
+					updateDataLimits(series.getMinMax(series.x), series.getMinMax(series.y));
+			}
+		}
+		for (final TrackedSeries series : trackedSeries) {
+			if (series.appendNewRows() || (reloaded && series.size == 0))
+				changed.add(series);
+		}
+		if (changed.isEmpty())
+			return;
+
+		// Expand limits so that all data remains visible
+		final double[] limits = plot.getLimits();
+		final double[] newLimits;
+		if (dataLimits == null || dataLimits[0] > dataLimits[1] || dataLimits[2] > dataLimits[3])
+			newLimits = limits; // no finite data
+		else if (reloaded)
+			newLimits = dataLimits.clone();
+		else
+			newLimits = new double[] { Math.min(limits[0], dataLimits[0]), Math.max(limits[1], dataLimits[1]),
+					Math.min(limits[2], dataLimits[2]), Math.max(limits[3], dataLimits[3]) };
+		if (!Arrays.equals(limits, newLimits))
+			plot.setLimits(newLimits[0], newLimits[1], newLimits[2], newLimits[3]);
+		for (final TrackedSeries series : changed)
+			series.replaceInPlot(newLimits[0], newLimits[1]);
+		decimationLimits = newLimits;
+		plot.updateImage();
+	}
+
+	/** Returns the width (in pixels) of the plot image, used as n. of buckets */
+	private int plotWidth() {
+		final ImagePlus imp = (plot == null) ? null : plot.getImagePlus();
+		return (imp == null) ? PlotWindow.plotWidth : imp.getWidth();
+	}
+
 	/**
 	 * Generates abscissae from row numbers of the specified ResultsTable.
 	 * Useful for datasets in which only Y-values need to be plotted.
@@ -288,7 +609,7 @@ public class InteractivePlotter implements PlugIn {
 
 		// Dialog closure: Update plot before dismissing prompt
 		if (prompt.wasOKed() && plot != null)
-			plot.setLimitsToFit(true);
+			fitLimits();
 
 	}
 
@@ -330,9 +651,11 @@ public class InteractivePlotter implements PlugIn {
 			// incremental x-values if user chose a non-numeric column)
 			double[] x1 = validColumn(colChoices[x1Col]) ? rt.getColumnAsDoubles(x1Col) : null;
 			String x1Label = "        X-values";
+			String x1Heading = colChoices[x1Col];
 			if (!vectorData && x1 == null) {
 				x1 = generateX(rt);
 				x1Label = "X-values (gen.)";
+				x1Heading = null;
 			}
 			final boolean validX1 = x1 != null;
 			final String datasetLabel = colChoices[y1Col];
@@ -380,7 +703,7 @@ public class InteractivePlotter implements PlugIn {
 
 					// Plot data
 					if (validData) {
-						addDataset(datasetLabel, x1, y1, x2, x2, vectorData);
+						addDataset(datasetLabel, x1, y1, x2, x2, vectorData, x1Heading, datasetLabel);
 						updateDatasetButton();
 
 					} else {
@@ -418,7 +741,7 @@ public class InteractivePlotter implements PlugIn {
 
 				// Plot a single dataset if called from macro
 			} else if (validData && IJ.macroRunning()) {
-				addDataset(datasetLabel, x1, y1, x2, x2, vectorData);
+				addDataset(datasetLabel, x1, y1, x2, x2, vectorData, x1Heading, datasetLabel);
 			}
 
 			return validData;
@@ -455,6 +778,7 @@ public class InteractivePlotter implements PlugIn {
 		final boolean exitinsPlot = pw != null && plot != null;
 		customizePlotJMI.setEnabled(exitinsPlot);
 		changeTargetPlotWindowJMI.setEnabled(exitinsPlot);
+		followTableJMI.setEnabled(exitinsPlot && !pwClosed);
 	}
 
 	private class PlotInstance {
@@ -500,6 +824,7 @@ public class InteractivePlotter implements PlugIn {
 			pw = plots.get(idx).plotWindow;
 			plot = plots.get(idx).plot;
 			datasetCounter = plot.getPlotObjectDesignations().length;
+			clearTrackedSeries();
 			WindowManager.toFront(pw);
 		}
 		updateDatasetButton();
@@ -529,12 +854,15 @@ public class InteractivePlotter implements PlugIn {
 		gd.addCheckbox("Auto-select_next_Y-values", autoNextValues);
 		gd.addCheckbox("Auto-select_next_shape", autoNextShape);
 		gd.addCheckbox("Auto-select_next_color", autoNextColor);
+		gd.setInsets(20, 20, 0);
+		gd.addCheckbox("Downsample large series (lossless display)", decimate);
 		showAsSubDialog(gd);
 		if (gd.wasOKed()) {
 			dColor2 = Colors.colors[gd.getNextChoiceIndex()];
 			autoNextValues = gd.getNextBoolean();
 			autoNextShape = gd.getNextBoolean();
 			autoNextColor = gd.getNextBoolean();
+			decimate = gd.getNextBoolean();
 		}
 	}
 
@@ -738,6 +1066,148 @@ public class InteractivePlotter implements PlugIn {
 		plot = null;
 		pw = null;
 		pwClosed = false;
+		clearTrackedSeries();
+	}
+
+	/** Discards full-resolution data of series in the current plot */
+	private void clearTrackedSeries() {
+		trackedSeries.clear();
+		decimationLimits = null;
+		dataLimits = null;
+	}
+
+	/**
+	 * Full-resolution data of a XY series. Data is kept in growable buffers so
+	 * that rows appended to the source table can be added without re-reading
+	 * the entire table. Series are decimated when large enough.
+	 */
+	private class TrackedSeries {
+		private final int index;
+		private final String shape;
+		private final ResultsTable source;
+		private final String xHeading; // null if x-values are row numbers
+		private final String yHeading;
+		private double[] x;
+		private double[] y;
+		private int size;
+		private int rows;
+		private boolean monotonic;
+
+		private TrackedSeries(final int index, final String shape, final double[] x, final double[] y,
+				final ResultsTable source, final String xHeading, final String yHeading) {
+			this.index = index;
+			this.shape = shape;
+			this.x = x;
+			this.y = y;
+			this.source = source;
+			this.xHeading = xHeading;
+			this.yHeading = yHeading;
+			size = Math.min(x.length, y.length);
+			rows = (source == null) ? size : source.getCounter();
+			monotonic = SeriesDecimator.isMonotonic(x);
+		}
+
+		/**
+		 * Only plain lines are decimated: dropping interior points of marker
+		 * shapes (including "connected" circles) would remove visible markers
+		 */
+		private boolean isDecimated() {
+			return decimate && monotonic && "line".equalsIgnoreCase(shape)
+					&& SeriesDecimator.isWorthDecimating(size, plotWidth());
+		}
+
+		/** Returns the data to be plotted for the specified x-range */
+		private double[][] render(final double xMin, final double xMax) {
+			if (isDecimated())
+				return SeriesDecimator.minMax(x, y, size, xMin, xMax, plotWidth());
+			if (size == x.length && size == y.length)
+				return new double[][] { x, y };
+			return new double[][] { Arrays.copyOf(x, size), Arrays.copyOf(y, size) };
+		}
+
+		private void replaceInPlot(final double xMin, final double xMax) {
+			final double[][] xy = render(xMin, xMax);
+			plot.replace(index, shape, xy[0], xy[1]);
+		}
+
+		/**
+		 * @return {@code true} if the source table holds fewer rows than were
+		 *         read (e.g., after {@link ResultsTable#reset()})
+		 */
+		private boolean isStale() {
+			return source != null && source.getCounter() < rows;
+		}
+
+		/** Discards all data so that it can be reloaded from the source table */
+		private void clear() {
+			size = 0;
+			rows = 0;
+			monotonic = true;
+		}
+
+		/** Returns the extrema of the first {@code size} values, ignoring NaNs */
+		private double[] getMinMax(final double[] values) {
+			final double[] minMax = { Double.MAX_VALUE, -Double.MAX_VALUE };
+			for (int i = 0; i < size; i++) {
+				if (values[i] < minMax[0])
+					minMax[0] = values[i];
+				if (values[i] > minMax[1])
+					minMax[1] = values[i];
+			}
+			return minMax;
+		}
+
+		/**
+		 * Reads rows appended to the source table since the last call.
+		 *
+		 * @return {@code true} if new data was added
+		 */
+		private boolean appendNewRows() {
+			if (source == null)
+				return false;
+			final int counter = source.getCounter();
+			if (counter <= rows)
+				return false;
+			final int xCol = (xHeading == null) ? -1 : source.getColumnIndex(xHeading);
+			final int yCol = source.getColumnIndex(yHeading);
+			if (yCol == ResultsTable.COLUMN_NOT_FOUND || (xHeading != null && xCol == ResultsTable.COLUMN_NOT_FOUND))
+				return false;
+			ensureCapacity(size + counter - rows);
+			final double[] xMinMax = { Double.MAX_VALUE, -Double.MAX_VALUE };
+			final double[] yMinMax = { Double.MAX_VALUE, -Double.MAX_VALUE };
+			final int firstRow = rows;
+			try {
+				for (; rows < counter; rows++) {
+					final double xv = (xCol < 0) ? rows : source.getValueAsDouble(xCol, rows);
+					final double yv = source.getValueAsDouble(yCol, rows);
+					if (size > 0 && (Double.isNaN(xv) || xv < x[size - 1]))
+						monotonic = false;
+					x[size] = xv;
+					y[size++] = yv;
+					if (xv < xMinMax[0])
+						xMinMax[0] = xv;
+					if (xv > xMinMax[1])
+						xMinMax[1] = xv;
+					if (yv < yMinMax[0])
+						yMinMax[0] = yv;
+					if (yv > yMinMax[1])
+						yMinMax[1] = yv;
+				}
+			} catch (final IllegalArgumentException ignored) {
+				// table is being modified: remaining rows are read next time
+			}
+			if (rows > firstRow)
+				updateDataLimits(xMinMax, yMinMax);
+			return rows > firstRow;
+		}
+
+		private void ensureCapacity(final int capacity) {
+			if (capacity <= x.length && capacity <= y.length)
+				return;
+			final int newCapacity = Math.max(capacity, size + (size >> 1));
+			x = Arrays.copyOf(x, newCapacity);
+			y = Arrays.copyOf(y, newCapacity);
+		}
 	}
 
 	/**
@@ -755,9 +1225,34 @@ public class InteractivePlotter implements PlugIn {
 				if (e.getWindow() == pw) {
 					pwClosed = true;
 					updateDatasetButton();
+					setFollowTable(false);
+					if (zoomListener != null) {
+						ImagePlus.removeImageListener(zoomListener);
+						zoomListener = null;
+					}
 				}
 			}
 		});
+		if (zoomListener == null) {
+			zoomListener = new ImageListener() {
+				@Override
+				public void imageOpened(final ImagePlus imp) {
+					// do nothing
+				}
+
+				@Override
+				public void imageClosed(final ImagePlus imp) {
+					// do nothing: plot may be reopened
+				}
+
+				@Override
+				public void imageUpdated(final ImagePlus imp) {
+					if (plot != null && imp == plot.getImagePlus())
+						redecimate();
+				}
+			};
+			ImagePlus.addImageListener(zoomListener);
+		}
 		return pw;
 	}
 
@@ -829,6 +1324,16 @@ public class InteractivePlotter implements PlugIn {
 			}
 		});
 		popup.add(changeDataJMI);
+		final JMenuItem addMultipleJMI = new JMenuItem("Add Multiple Series...");
+		addMultipleJMI.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(final ActionEvent e) {
+				if (pwClosed)
+					pw = showPlot();
+				addMultipleDatasets();
+			}
+		});
+		popup.add(addMultipleJMI);
 		changeTargetPlotWindowJMI = new JMenuItem("Change Output Plot...");
 		changeTargetPlotWindowJMI.addActionListener(new ActionListener() {
 			@Override
@@ -846,6 +1351,14 @@ public class InteractivePlotter implements PlugIn {
 			}
 		});
 		popup.add(customizePlotJMI);
+		followTableJMI = new JCheckBoxMenuItem("Follow Table (Live Updates)");
+		followTableJMI.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(final ActionEvent e) {
+				setFollowTable(followTableJMI.isSelected());
+			}
+		});
+		popup.add(followTableJMI);
 		popup.addSeparator();
 		final JMenuItem preferencesJMI = new JMenuItem("Preferences...");
 		preferencesJMI.addActionListener(new ActionListener() {
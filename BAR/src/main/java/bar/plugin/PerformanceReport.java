@@ -0,0 +1,78 @@
+/*
+ * IJ BAR: https://github.com/tferr/Scripts
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation
+ * (http://www.gnu.org/licenses/gpl.txt).
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ */
+package bar.plugin;
+
+import java.io.File;
+import java.io.IOException;
+
+import bar.ScriptMetrics;
+import ij.IJ;
+import ij.gui.GenericDialog;
+import ij.io.SaveDialog;
+import ij.plugin.PlugIn;
+
+/**
+ * Displays the execution metrics of BAR scripts run during the current
+ * session (see {@link ScriptMetrics}), optionally saving them as CSV or JSON.
+ * Scripts are listed by total execution time, so that hotspots are listed
+ * first.
+ */
+public class PerformanceReport implements PlugIn {
+
+	private static final String TITLE = "BAR Performance Report";
+	private static final String[] FORMATS = { "None", "CSV", "JSON" };
+	private static String format = FORMATS[0];
+	private static boolean reset;
+
+	@Override
+	public void run(final String arg) {
+		final ScriptMetrics metrics = ScriptMetrics.getInstance();
+		if (metrics.getStats().isEmpty()) {
+			IJ.showMessage(TITLE, "No BAR scripts have been run in this session.");
+			return;
+		}
+		final GenericDialog gd = new GenericDialog(TITLE);
+		gd.addChoice("Save report as:", FORMATS, format);
+		gd.addCheckbox("Reset metrics after report", reset);
+		gd.addCheckbox("Keep recording metrics", metrics.isEnabled());
+		gd.showDialog();
+		if (gd.wasCanceled())
+			return;
+		format = gd.getNextChoice();
+		reset = gd.getNextBoolean();
+		metrics.setEnabled(gd.getNextBoolean());
+
+		metrics.toResultsTable().show(TITLE);
+		if (!FORMATS[0].equals(format))
+			save(metrics, "." + format.toLowerCase());
+		if (reset)
+			metrics.reset();
+	}
+
+	private void save(final ScriptMetrics metrics, final String extension) {
+		final SaveDialog sd = new SaveDialog("Save report as...", "BAR_metrics", extension);
+		if (sd.getFileName() == null)
+			return;
+		final File file = new File(sd.getDirectory(), sd.getFileName());
+		try {
+			if (".json".equals(extension))
+				metrics.writeJSON(file);
+			else
+				metrics.writeCSV(file);
+			IJ.showStatus("Report saved, " + file.getAbsolutePath());
+		} catch (final IOException e) {
+			IJ.error(TITLE, "Saving to " + file.getAbsolutePath() + " failed");
+			if (IJ.debugMode)
+				IJ.handleException(e);
+		}
+	}
+
+}
@@ -140,7 +140,9 @@ public class ShenCastan implements ExtendedPlugInFilter, DialogListener {
 	}
 
 	/**
-	 * Method implementing Shen-Castan edge detection.
+	 * Method implementing Shen-Castan edge detection. When not run by a
+	 * {@link PlugInFilterRunner}, {@link #setup(String, ImagePlus)} must be
+	 * called first.
 	 *
 	 * @param ip
 	 *            the ImageProcessor to be filtered (8/16/32-bit grayscale
@@ -156,7 +158,7 @@ public class ShenCastan implements ExtendedPlugInFilter, DialogListener {
 
 		final int width = ip.getWidth();
 		final int height = ip.getHeight();
-		final int slice = pfr.getSliceNumber();
+		final int slice = (pfr == null) ? ip.getSliceNumber() : pfr.getSliceNumber();
 		
 		ip.setSliceNumber(slice);
 
@@ -0,0 +1,43 @@
+/*
+ * IJ BAR: https://github.com/tferr/Scripts
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation
+ * (http://www.gnu.org/licenses/gpl.txt).
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ */
+package bar.plugin;
+
+import java.util.List;
+
+import bar.EngineWarmer;
+import ij.gui.GenericDialog;
+import ij.plugin.PlugIn;
+
+/**
+ * Sets the preferences of {@link EngineWarmer}, i.e., whether script engines
+ * are initialized in the background when BAR starts. Changes take effect on
+ * the next startup.
+ */
+public class StartupOptions implements PlugIn {
+
+	private static final String TITLE = "BAR Startup Options";
+	private static final String[] LANGUAGES = { "Languages of scripts run before", "Python, Groovy and BeanShell" };
+
+	@Override
+	public void run(final String arg) {
+		final GenericDialog gd = new GenericDialog(TITLE);
+		gd.addCheckbox("Warm up script engines at startup", EngineWarmer.isEnabled());
+		gd.addChoice("Warm up:", LANGUAGES, LANGUAGES[EngineWarmer.isUsedLanguagesOnly() ? 0 : 1]);
+		final List<String> used = EngineWarmer.getUsedExtensions();
+		gd.addMessage("Languages used so far: " + (used.isEmpty() ? "none" : String.join(", ", used)));
+		gd.showDialog();
+		if (gd.wasCanceled())
+			return;
+		EngineWarmer.setEnabled(gd.getNextBoolean());
+		EngineWarmer.setUsedLanguagesOnly(gd.getNextChoiceIndex() == 0);
+	}
+
+}
@@ -10,8 +10,7 @@
 # NN_Distances.py
 # IJ BAR: https://github.com/tferr/Scripts/
 
-import math, sys
-from bar import Utils
+from bar import SpatialIndex, Utils
 import ij.measure.ResultsTable as RT
 
 
@@ -24,28 +23,20 @@ def plot_distributions():
                            + "Check console for details", "Error")
 
 
-def distance(x1, y1, z1, x2, y2, z2):
-    """ Retrieves the distances between two points """
-    dx = (x1-x2)**2
-    dy = (y1-y2)**2
-    dz = (z1-z2)**2
-    return math.sqrt(dx+dy+dz)
-
-
 def getXYZPositons(rt, xcol_header, ycol_header, zcol_header):
     """ Retrieves valid data from the Results table """
     try:
         x = y = z = None
-        x = rt.getColumn(getColumnIndex(rt, xcol_header, case_sensitive))
-        y = rt.getColumn(getColumnIndex(rt, ycol_header, case_sensitive))
-        z = rt.getColumn(getColumnIndex(rt, zcol_header, case_sensitive))
+        x = rt.getColumnAsDoubles(getColumnIndex(rt, xcol_header, case_sensitive))
+        y = rt.getColumnAsDoubles(getColumnIndex(rt, ycol_header, case_sensitive))
+        z = rt.getColumnAsDoubles(getColumnIndex(rt, zcol_header, case_sensitive))
     finally:
         return x, y, z
 
 
 def getColumnIndex(rt, col_heading, strict_match):
     if strict_match:
-        return rt.getColumnIndex(xcol_header)
+        return rt.getColumnIndex(col_heading)
     titles = [col_heading.upper(), col_heading.title(), col_heading.lower()]
     for title in titles:
         idx = rt.getColumnIndex(title)
@@ -59,20 +50,11 @@ def calcNNDistances(rt, x, y, z=None):
     # Ignore Z positions?
     if z is None:
         logService.info("NN: Assuming 2D distances...")
-        z = [0]*len(x)
-    # Calculate distances for all positions. Retrieve NNs
-    for i in range(len(x)):
-        minDx = sys.maxint
-        nearest = 0
-        for j in range(len(x)):
-            if i == j:
-                continue
-            dst = distance(x[i], x[j], y[i], y[j], z[i], z[j])
-            if dst > 0 and dst < minDx:
-                minDx = dst
-                nearest = j+1
-        rt.setValue("NN pair", i, nearest)
-        rt.setValue("NN distance", i, minDx)
+    # Index all positions in a k-d tree and retrieve NNs in parallel. As
+    # before, coincident positions (distance of 0) are not considered NNs
+    index = SpatialIndex(x, y, z)
+    neighbors = index.allNearestNeighbors(1, True)
+    neighbors.addToTable(rt, "NN pair", "NN distance")
 
 
 def main():
@@ -0,0 +1,226 @@
+/*
+ * IJ BAR: https://github.com/tferr/Scripts
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation
+ * (http://www.gnu.org/licenses/gpl.txt).
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ */
+package bar;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Cross-checks {@link PeakFinder} against a brute-force detection: prominences
+ * found by scanning each side of every peak, and distance suppression by
+ * comparing every pair of peaks.
+ */
+public class PeakFinderTest {
+
+	private static final int SERIES = 500;
+
+	@Test
+	public void testMaximaAndMinima() {
+		final Random random = new Random(1);
+		for (int s = 0; s < SERIES; s++) {
+			final double[] y = randomSeries(random, 1 + random.nextInt(200));
+			final int minProminence = random.nextInt(3);
+			final boolean excludeEdges = random.nextBoolean();
+			final PeakFinder finder = new PeakFinder();
+			finder.setMinProminence(minProminence);
+			finder.setExcludeEdges(excludeEdges);
+			assertSame(bruteForce(null, y, false, minProminence, 0, excludeEdges), finder.findMaxima(null, y));
+			assertSame(bruteForce(null, y, true, minProminence, 0, excludeEdges), finder.findMinima(null, y));
+		}
+	}
+
+	@Test
+	public void testDistanceSuppression() {
+		final Random random = new Random(2);
+		for (int s = 0; s < SERIES; s++) {
+			final int n = 1 + random.nextInt(200);
+			final double[] y = randomSeries(random, n);
+			final double[] x = new double[n];
+			for (int i = 1; i < n; i++)
+				x[i] = x[i - 1] + random.nextDouble();
+			if (random.nextBoolean()) // unsorted x-values
+				Collections.shuffle(asList(x), random);
+			final int minDistance = 1 + random.nextInt(10);
+			final PeakFinder finder = new PeakFinder();
+			finder.setMinDistance(minDistance);
+			assertSame(bruteForce(x, y, false, 0, minDistance, false), finder.findMaxima(x, y));
+			assertSame(bruteForce(x, y, true, 0, minDistance, false), finder.findMinima(x, y));
+		}
+	}
+
+	@Test
+	public void testHeightFiltering() {
+		final double[] y = { 0, 5, 0, 2, 0, 8, 0, -3, 0 };
+		final PeakFinder finder = new PeakFinder();
+		finder.setExcludeEdges(true);
+		finder.setMinMaximaValue(3);
+		finder.setMaxMinimaValue(-1);
+		assertArrayEquals(new int[] { 5, 1 }, finder.findMaxima(null, y).getPositions());
+		assertArrayEquals(new int[] { 7 }, finder.findMinima(null, y).getPositions());
+	}
+
+	@Test
+	public void testPlateausAndNaNs() {
+		final double[] y = { 0, 4, 4, 4, 0, Double.NaN, 3, 1 };
+		final PeakFinder.Peaks maxima = new PeakFinder().findMaxima(null, y);
+		assertArrayEquals(new int[] { 2, 6 }, maxima.getPositions());
+		assertArrayEquals(new double[] { 4, 2 }, maxima.getProminences(), 0);
+	}
+
+	@Test
+	public void testDefaultProminence() {
+		final Random random = new Random(3);
+		for (int s = 0; s < 50; s++) {
+			final double scale = Math.pow(10, random.nextInt(5));
+			final double[] y = randomSeries(random, 100);
+			for (int i = 0; i < y.length; i++)
+				y[i] *= scale;
+			y[random.nextInt(y.length)] = Double.NaN;
+			final PeakFinder byDefault = new PeakFinder();
+			byDefault.setMinProminence(Double.NaN);
+			final PeakFinder explicit = new PeakFinder();
+			explicit.setMinProminence(standardDeviation(y));
+			assertSame(explicit.findMaxima(null, y), byDefault.findMaxima(null, y));
+			assertSame(explicit.findMinima(null, y), byDefault.findMinima(null, y));
+		}
+	}
+
+	/** @return small integers, so that series have plateaus, with some NaNs */
+	private static double[] randomSeries(final Random random, final int n) {
+		final double[] y = new double[n];
+		for (int i = 0; i < n; i++)
+			y[i] = (random.nextInt(20) == 0) ? Double.NaN : random.nextInt(6);
+		return y;
+	}
+
+	private static List<Double> asList(final double[] values) {
+		return new java.util.AbstractList<Double>() {
+			@Override
+			public Double get(final int i) {
+				return values[i];
+			}
+
+			@Override
+			public Double set(final int i, final Double value) {
+				final double previous = values[i];
+				values[i] = value;
+				return previous;
+			}
+
+			@Override
+			public int size() {
+				return values.length;
+			}
+		};
+	}
+
+	private static double standardDeviation(final double[] values) {
+		double sum = 0;
+		int n = 0;
+		for (final double v : values) {
+			if (!Double.isNaN(v)) {
+				sum += v;
+				n++;
+			}
+		}
+		final double mean = sum / n;
+		double ss = 0;
+		for (final double v : values) {
+			if (!Double.isNaN(v))
+				ss += (v - mean) * (v - mean);
+		}
+		return Math.sqrt(ss / (n - 1));
+	}
+
+	/**
+	 * @return the peaks ({position, prominence, height}), ranked, without
+	 *         height filtering
+	 */
+	private static List<double[]> bruteForce(final double[] x, final double[] y, final boolean minima,
+			final double minProminence, final double minDistance, final boolean excludeEdges) {
+		final int n = y.length;
+		final double[] w = new double[n];
+		for (int i = 0; i < n; i++)
+			w[i] = Double.isNaN(y[i]) ? Double.NEGATIVE_INFINITY : (minima ? -y[i] : y[i]);
+
+		final List<double[]> peaks = new ArrayList<>();
+		for (int start = 0; start < n;) {
+			int end = start;
+			while (end + 1 < n && w[end + 1] == w[start])
+				end++;
+			final boolean rises = start > 0 && w[start - 1] < w[start];
+			final boolean falls = end < n - 1 && w[end + 1] < w[end];
+			final boolean isPeak = (rises || (start == 0 && !excludeEdges))
+					&& (falls || (end == n - 1 && !excludeEdges)) && (rises || falls)
+					&& w[start] != Double.NEGATIVE_INFINITY;
+			if (isPeak) {
+				// lowest value on each side, up to a higher sample or the edge
+				double left = Double.POSITIVE_INFINITY;
+				for (int j = start - 1; j >= 0 && w[j] <= w[start]; j--)
+					left = Math.min(left, w[j]);
+				double right = Double.POSITIVE_INFINITY;
+				for (int j = end + 1; j < n && w[j] <= w[start]; j++)
+					right = Math.min(right, w[j]);
+				final double base = (left == Double.POSITIVE_INFINITY) ? right
+						: (right == Double.POSITIVE_INFINITY) ? left : Math.max(left, right);
+				final double prominence = w[start] - base;
+				if (prominence > minProminence)
+					peaks.add(new double[] { (start + end) >>> 1, prominence, w[start] });
+			}
+			start = end + 1;
+		}
+		// rank by height, ties in order of position (stable sort)
+		Collections.sort(peaks, new Comparator<double[]>() {
+			@Override
+			public int compare(final double[] a, final double[] b) {
+				return Double.compare(b[2], a[2]);
+			}
+		});
+		final List<double[]> kept = new ArrayList<>();
+		for (int r = 0; r < peaks.size(); r++) {
+			boolean keep = true;
+			for (int q = 0; q < r && minDistance > 0; q++) {
+				final double xr = (x == null) ? peaks.get(r)[0] : x[(int) peaks.get(r)[0]];
+				final double xq = (x == null) ? peaks.get(q)[0] : x[(int) peaks.get(q)[0]];
+				if (Math.abs(xr - xq) < minDistance)
+					keep = false;
+			}
+			if (keep)
+				kept.add(peaks.get(r));
+		}
+		return kept;
+	}
+
+	private static void assertSame(final List<double[]> expected, final PeakFinder.Peaks actual) {
+		final int[] positions = new int[expected.size()];
+		final double[] prominences = new double[expected.size()];
+		for (int i = 0; i < positions.length; i++) {
+			positions[i] = (int) expected.get(i)[0];
+			prominences[i] = expected.get(i)[1];
+		}
+		assertArrayEquals(positions, actual.getPositions());
+		assertArrayEquals(prominences, actual.getProminences(), 0);
+	}
+
+	private static void assertSame(final PeakFinder.Peaks expected, final PeakFinder.Peaks actual) {
+		assertEquals(expected.size(), actual.size());
+		assertArrayEquals(expected.getPositions(), actual.getPositions());
+	}
+
+}
@@ -0,0 +1,177 @@
+/*
+ * IJ BAR: https://github.com/tferr/Scripts
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation
+ * (http://www.gnu.org/licenses/gpl.txt).
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ */
+package bar;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Cross-checks {@link PolynomialFitter} against exact polynomials and against
+ * a brute-force least squares solution of the normal equations.
+ */
+public class PolynomialFitterTest {
+
+	private static final double[] CUBIC = { 2, -3, 0.5, 0.25 };
+	private static final int TRIALS = 50;
+
+	@Test
+	public void testExactCubic() {
+		final double[] x = linspace(-5, 15, 200);
+		final double[] y = evaluate(CUBIC, x);
+		final PolynomialFitter.Fit fit = new PolynomialFitter(x, y).fit(3);
+		assertEquals(3, fit.getDegree());
+		assertArrayEquals(CUBIC, fit.getCoefficients(), 1e-9);
+		assertEquals(0, fit.getRSS(), 1e-12);
+		assertEquals(1, fit.getRSquared(), 1e-12);
+		for (int i = 0; i < x.length; i++)
+			assertEquals(y[i], fit.value(x[i]), 1e-9 * Math.abs(y[i]) + 1e-9);
+	}
+
+	@Test
+	public void testNormalEquations() {
+		final Random random = new Random(1);
+		for (int trial = 0; trial < 20; trial++) {
+			final int n = 10 + random.nextInt(100);
+			final double[] x = new double[n];
+			final double[] y = new double[n];
+			for (int i = 0; i < n; i++) {
+				x[i] = 10 * random.nextDouble() - 2;
+				y[i] = random.nextGaussian() * 5 + x[i] * x[i];
+			}
+			final double[] expected = normalEquations(x, y, 2);
+			final PolynomialFitter.Fit fit = new PolynomialFitter(x, y).fit(2);
+			assertArrayEquals(expected, fit.getCoefficients(), 1e-8);
+			assertEquals(rss(expected, x, y), fit.getRSS(), 1e-8 * fit.getRSS());
+		}
+	}
+
+	@Test
+	public void testDegreeSelection() {
+		final Random random = new Random(2);
+		final double[] x = linspace(-5, 15, 500);
+		final double[] cubic = evaluate(CUBIC, x);
+		final PolynomialFitter.Criterion[] criteria = PolynomialFitter.Criterion.values();
+		final int[] hits = new int[criteria.length];
+		for (int trial = 0; trial < TRIALS; trial++) {
+			final double[] y = new double[x.length];
+			for (int i = 0; i < y.length; i++)
+				y[i] = cubic[i] + 10 * random.nextGaussian();
+			final PolynomialFitter fitter = new PolynomialFitter(x, y);
+			for (int c = 0; c < criteria.length; c++) {
+				final int degree = fitter.fitBest(0, 10, criteria[c]).getDegree();
+				assertTrue(criteria[c] + " underfitted: " + degree, degree >= 3);
+				if (degree == 3)
+					hits[c]++;
+			}
+		}
+		// AIC and CV are expected to overfit occasionally, BIC rarely
+		for (int c = 0; c < criteria.length; c++)
+			assertTrue(criteria[c] + " selected degree 3 in " + hits[c] + "/" + TRIALS,
+					hits[c] >= ((criteria[c] == PolynomialFitter.Criterion.BIC) ? 0.9 : 0.6) * TRIALS);
+	}
+
+	@Test
+	public void testFitAll() {
+		final Random random = new Random(3);
+		final int n = 50;
+		final double[] x = new double[n];
+		final double[] y = new double[n];
+		for (int i = 0; i < n; i++) {
+			x[i] = random.nextDouble();
+			y[i] = random.nextGaussian();
+		}
+		final PolynomialFitter fitter = new PolynomialFitter(x, y);
+		final PolynomialFitter.Fit[] fits = fitter.fitAll(0, 4);
+		for (int d = 0; d < fits.length; d++) {
+			assertEquals(d, fits[d].getDegree());
+			assertArrayEquals(normalEquations(x, y, d), fits[d].getCoefficients(), 1e-6);
+			if (d > 0) // nested models: RSS cannot increase with degree
+				assertTrue(fits[d].getRSS() <= fits[d - 1].getRSS() * (1 + 1e-12));
+		}
+	}
+
+	@Test
+	public void testNaNAndTooFewPoints() {
+		final double[] x = { 0, 1, Double.NaN, 2, 3 };
+		final double[] y = { 1, 3, 4, Double.NaN, 7 };
+		final PolynomialFitter fitter = new PolynomialFitter(x, y);
+		assertEquals(3, fitter.size());
+		assertArrayEquals(new double[] { 1, 2 }, fitter.fit(1).getCoefficients(), 1e-12);
+		final PolynomialFitter.Fit[] fits = fitter.fitAll(2, 3);
+		assertEquals(2, fits[0].getDegree());
+		assertNull(fits[1]);
+	}
+
+	private static double[] linspace(final double min, final double max, final int n) {
+		final double[] values = new double[n];
+		for (int i = 0; i < n; i++)
+			values[i] = min + (max - min) * i / (n - 1);
+		return values;
+	}
+
+	private static double[] evaluate(final double[] c, final double[] x) {
+		final double[] y = new double[x.length];
+		for (int i = 0; i < x.length; i++)
+			for (int j = c.length - 1; j >= 0; j--)
+				y[i] = y[i] * x[i] + c[j];
+		return y;
+	}
+
+	private static double rss(final double[] c, final double[] x, final double[] y) {
+		final double[] fitted = evaluate(c, x);
+		double rss = 0;
+		for (int i = 0; i < y.length; i++)
+			rss += (y[i] - fitted[i]) * (y[i] - fitted[i]);
+		return rss;
+	}
+
+	/** Solves (X'X) c = X'y by Gaussian elimination with partial pivoting */
+	private static double[] normalEquations(final double[] x, final double[] y, final int degree) {
+		final int k = degree + 1;
+		final double[][] a = new double[k][k + 1];
+		for (int i = 0; i < x.length; i++) {
+			for (int r = 0; r < k; r++) {
+				for (int c = 0; c < k; c++)
+					a[r][c] += Math.pow(x[i], r + c);
+				a[r][k] += Math.pow(x[i], r) * y[i];
+			}
+		}
+		for (int p = 0; p < k; p++) {
+			int pivot = p;
+			for (int r = p + 1; r < k; r++)
+				if (Math.abs(a[r][p]) > Math.abs(a[pivot][p]))
+					pivot = r;
+			final double[] swap = a[p];
+			a[p] = a[pivot];
+			a[pivot] = swap;
+			for (int r = p + 1; r < k; r++) {
+				final double f = a[r][p] / a[p][p];
+				for (int c = p; c <= k; c++)
+					a[r][c] -= f * a[p][c];
+			}
+		}
+		final double[] coefficients = new double[k];
+		for (int r = k - 1; r >= 0; r--) {
+			double sum = a[r][k];
+			for (int c = r + 1; c < k; c++)
+				sum -= a[r][c] * coefficients[c];
+			coefficients[r] = sum / a[r][r];
+		}
+		return coefficients;
+	}
+
+}
@@ -0,0 +1,156 @@
+/*
+ * IJ BAR: https://github.com/tferr/Scripts
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation
+ * (http://www.gnu.org/licenses/gpl.txt).
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ */
+package bar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Cross-checks {@link SpatialIndex} queries against brute-force pairwise
+ * comparisons.
+ */
+public class SpatialIndexTest {
+
+	private static final double TOLERANCE = 1e-12;
+
+	@Test
+	public void testAllNearestNeighbors2D() {
+		final Random random = new Random(1);
+		final double[][] xy = randomPoints(random, 5000, 2, 10);
+		assertMatchesBruteForce(xy, new SpatialIndex(xy[0], xy[1]), 3, false);
+	}
+
+	@Test
+	public void testAllNearestNeighbors3D() {
+		final Random random = new Random(2);
+		final double[][] xyz = randomPoints(random, 5000, 3, 0);
+		assertMatchesBruteForce(xyz, new SpatialIndex(xyz[0], xyz[1], xyz[2]), 4, false);
+	}
+
+	@Test
+	public void testCoincidentPoints() {
+		// Points on a coarse grid, so that many are duplicated
+		final Random random = new Random(3);
+		final double[][] xy = randomPoints(random, 2000, 2, 5);
+		final SpatialIndex index = new SpatialIndex(xy[0], xy[1]);
+		assertMatchesBruteForce(xy, index, 2, true);
+		assertMatchesBruteForce(xy, index, 2, false);
+	}
+
+	@Test
+	public void testNaNCoordinates() {
+		final Random random = new Random(4);
+		final double[][] xy = randomPoints(random, 3000, 2, 0);
+		for (int i = 0; i < xy[0].length; i += 7)
+			xy[i % 2][i] = Double.NaN;
+		final SpatialIndex index = new SpatialIndex(xy[0], xy[1]);
+		assertEquals(xy[0].length - (xy[0].length + 6) / 7, index.size());
+		final SpatialIndex.Neighbors nn = index.allNearestNeighbors(2, false);
+		assertEquals(xy[0].length, nn.size());
+		for (int i = 0; i < xy[0].length; i += 7) {
+			assertEquals(-1, nn.getIndex(i, 0));
+			assertTrue(Double.isNaN(nn.getDistance(i, 0)));
+		}
+		assertMatchesBruteForce(xy, index, 2, false);
+	}
+
+	@Test
+	public void testNearestNeighborsOfLocation() {
+		final Random random = new Random(5);
+		final double[][] xy = randomPoints(random, 1000, 2, 0);
+		final SpatialIndex index = new SpatialIndex(xy[0], xy[1]);
+		for (int q = 0; q < 100; q++) {
+			final double x = random.nextDouble();
+			final double y = random.nextDouble();
+			final SpatialIndex.Neighbors nn = index.nearestNeighbors(x, y, 0, 5);
+			final double[] expected = new double[xy[0].length];
+			for (int i = 0; i < expected.length; i++)
+				expected[i] = Math.hypot(xy[0][i] - x, xy[1][i] - y);
+			Arrays.sort(expected);
+			for (int rank = 0; rank < 5; rank++)
+				assertEquals(expected[rank], nn.getDistance(0, rank), TOLERANCE);
+		}
+		assertEquals(-1, index.nearestNeighbors(Double.NaN, 0, 0, 1).getIndex(0, 0));
+	}
+
+	@Test
+	public void testFewerPointsThanK() {
+		final SpatialIndex index = new SpatialIndex(new double[] { 0, 1 }, new double[] { 0, 0 });
+		final SpatialIndex.Neighbors nn = index.allNearestNeighbors(3, false);
+		assertEquals(1, nn.getIndex(0, 0));
+		assertEquals(1, nn.getDistance(0, 0), TOLERANCE);
+		assertEquals(-1, nn.getIndex(0, 1));
+		assertTrue(Double.isNaN(nn.getDistance(0, 2)));
+	}
+
+	/**
+	 * @return coordinates in [0, 1), rounded to a grid of {@code 1/grid} if
+	 *         {@code grid} is positive
+	 */
+	private static double[][] randomPoints(final Random random, final int n, final int dims, final int grid) {
+		final double[][] coords = new double[dims][n];
+		for (int d = 0; d < dims; d++) {
+			for (int i = 0; i < n; i++) {
+				final double v = random.nextDouble();
+				coords[d][i] = (grid > 0) ? Math.floor(v * grid) / grid : v;
+			}
+		}
+		return coords;
+	}
+
+	/** Compares NN distances (indices may differ between equidistant points) */
+	private static void assertMatchesBruteForce(final double[][] coords, final SpatialIndex index, final int k,
+			final boolean ignoreCoincident) {
+		final int n = coords[0].length;
+		final SpatialIndex.Neighbors nn = index.allNearestNeighbors(k, ignoreCoincident);
+		final double[] distances = new double[n];
+		for (int i = 0; i < n; i++) {
+			int count = 0;
+			for (int j = 0; j < n; j++) {
+				if (i == j)
+					continue;
+				double d2 = 0;
+				for (final double[] axis : coords)
+					d2 += (axis[i] - axis[j]) * (axis[i] - axis[j]);
+				if (Double.isNaN(d2) || (ignoreCoincident && d2 == 0))
+					continue;
+				distances[count++] = Math.sqrt(d2);
+			}
+			Arrays.sort(distances, 0, count);
+			for (int rank = 0; rank < k; rank++) {
+				final int neighbor = nn.getIndex(i, rank);
+				if (rank >= count || isNaN(coords, i)) {
+					assertEquals(-1, neighbor);
+					continue;
+				}
+				assertEquals(distances[rank], nn.getDistance(i, rank), TOLERANCE);
+				double d2 = 0;
+				for (final double[] axis : coords)
+					d2 += (axis[i] - axis[neighbor]) * (axis[i] - axis[neighbor]);
+				assertEquals(nn.getDistance(i, rank), Math.sqrt(d2), TOLERANCE);
+			}
+		}
+	}
+
+	private static boolean isNaN(final double[][] coords, final int i) {
+		for (final double[] axis : coords) {
+			if (Double.isNaN(axis[i]))
+				return true;
+		}
+		return false;
+	}
+
+}
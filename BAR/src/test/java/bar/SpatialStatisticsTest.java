@@ -0,0 +1,213 @@
+/*
+ * IJ BAR: https://github.com/tferr/Scripts
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation
+ * (http://www.gnu.org/licenses/gpl.txt).
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ */
+package bar;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Cross-checks {@link SpatialStatistics} neighbor counts and Ripley's K
+ * against brute-force pairwise computations.
+ */
+public class SpatialStatisticsTest {
+
+	@Test
+	public void testCountNeighbors2D() {
+		final double[][] xy = randomPoints(new Random(1), 3000, 2, 100);
+		final SpatialStatistics stats = new SpatialStatistics(xy[0], xy[1]);
+		for (final double radius : new double[] { 0.5, 3, 25 })
+			assertArrayEquals(bruteForceCounts(xy, radius), stats.countNeighbors(radius), 0);
+	}
+
+	@Test
+	public void testCountNeighbors3D() {
+		final double[][] xyz = randomPoints(new Random(2), 2000, 3, 50);
+		final SpatialStatistics stats = new SpatialStatistics(xyz[0], xyz[1], xyz[2]);
+		for (final double radius : new double[] { 2, 10 })
+			assertArrayEquals(bruteForceCounts(xyz, radius), stats.countNeighbors(radius), 0);
+	}
+
+	@Test
+	public void testNonFinitePoints() {
+		final Random random = new Random(7);
+		final double[][] xyz = randomPoints(random, 1000, 3, 50);
+		final double[] bad = { Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY };
+		for (int i = 0; i < 100; i++)
+			xyz[random.nextInt(3)][random.nextInt(1000)] = bad[random.nextInt(bad.length)];
+		final double[][][] patterns = { { xyz[0], xyz[1] }, xyz };
+		final double[][][] finitePatterns = { finitePoints(patterns[0]), finitePoints(xyz) };
+		for (int p = 0; p < patterns.length; p++) {
+			final double[][] coords = patterns[p];
+			final SpatialStatistics stats = new SpatialStatistics(coords[0], coords[1], (p == 0) ? null : coords[2]);
+			final double[][] expected = finitePatterns[p];
+			assertEquals(expected[0].length, stats.size());
+			assertArrayEquals(bruteForceCounts(coords, 5), stats.countNeighbors(5), 0);
+			final double[] radii = SpatialStatistics.radii(10, 5);
+			assertKMatchesBruteForce(expected, stats, radii, bounds(expected));
+			for (final double l : stats.ripley(radii, 9).getLowerEnvelope())
+				assertTrue(l > 0 && l < Double.POSITIVE_INFINITY);
+		}
+	}
+
+	@Test
+	public void testRipleyK2D() {
+		final double[][] xy = randomPoints(new Random(3), 1500, 2, 100);
+		final SpatialStatistics stats = new SpatialStatistics(xy[0], xy[1]);
+		final double[] radii = SpatialStatistics.radii(20, 10);
+		assertKMatchesBruteForce(xy, stats, radii, bounds(xy));
+		stats.setRegion(-10, 110, -10, 110);
+		assertKMatchesBruteForce(xy, stats, radii, new double[][] { { -10, -10 }, { 110, 110 } });
+	}
+
+	@Test
+	public void testRipleyK3D() {
+		final double[][] xyz = randomPoints(new Random(4), 1000, 3, 50);
+		final SpatialStatistics stats = new SpatialStatistics(xyz[0], xyz[1], xyz[2]);
+		assertKMatchesBruteForce(xyz, stats, SpatialStatistics.radii(10, 5), bounds(xyz));
+	}
+
+	@Test
+	public void testCompleteSpatialRandomness() {
+		// L(r) ~ r and g(r) ~ 1 for uniform points, within the CSR envelopes
+		final double[][] xy = randomPoints(new Random(5), 5000, 2, 100);
+		final SpatialStatistics stats = new SpatialStatistics(xy[0], xy[1]);
+		final double[] radii = SpatialStatistics.radii(10, 5);
+		final SpatialStatistics.Result result = stats.ripley(radii, 19);
+		final double[] l = result.getL();
+		final double[] g = result.getG();
+		final double[] lower = result.getLowerEnvelope();
+		final double[] upper = result.getUpperEnvelope();
+		for (int r = 0; r < radii.length; r++) {
+			assertEquals(radii[r], l[r], 0.05 * radii[r]);
+			assertEquals(1, g[r], 0.15);
+			assertTrue(lower[r] <= upper[r]);
+		}
+	}
+
+	@Test
+	public void testReproducibleEnvelopes() {
+		final double[][] xy = randomPoints(new Random(6), 500, 2, 100);
+		final SpatialStatistics stats = new SpatialStatistics(xy[0], xy[1]);
+		final double[] radii = SpatialStatistics.radii(10, 5);
+		stats.setSeed(42);
+		final double[] first = stats.ripley(radii, 9).getUpperEnvelope();
+		stats.setSeed(42);
+		assertArrayEquals(first, stats.ripley(radii, 9).getUpperEnvelope(), 0);
+	}
+
+	private static double[][] randomPoints(final Random random, final int n, final int dims, final double size) {
+		final double[][] coords = new double[dims][n];
+		for (int d = 0; d < dims; d++) {
+			for (int i = 0; i < n; i++)
+				coords[d][i] = random.nextDouble() * size;
+		}
+		return coords;
+	}
+
+	/** @return the minima and maxima of the coordinates, per axis */
+	private static double[][] bounds(final double[][] coords) {
+		final double[][] bounds = new double[2][coords.length];
+		for (int d = 0; d < coords.length; d++) {
+			bounds[0][d] = Double.POSITIVE_INFINITY;
+			bounds[1][d] = Double.NEGATIVE_INFINITY;
+			for (final double v : coords[d]) {
+				bounds[0][d] = Math.min(bounds[0][d], v);
+				bounds[1][d] = Math.max(bounds[1][d], v);
+			}
+		}
+		return bounds;
+	}
+
+	private static double distance2(final double[][] coords, final int i, final int j) {
+		double d2 = 0;
+		for (final double[] axis : coords)
+			d2 += (axis[i] - axis[j]) * (axis[i] - axis[j]);
+		return d2;
+	}
+
+	private static boolean isFinite(final double[][] coords, final int i) {
+		for (final double[] axis : coords) {
+			if (Double.isNaN(axis[i]) || Double.isInfinite(axis[i]))
+				return false;
+		}
+		return true;
+	}
+
+	/** @return the points with finite coordinates */
+	private static double[][] finitePoints(final double[][] coords) {
+		int n = 0;
+		for (int i = 0; i < coords[0].length; i++) {
+			if (isFinite(coords, i))
+				n++;
+		}
+		final double[][] finite = new double[coords.length][n];
+		n = 0;
+		for (int i = 0; i < coords[0].length; i++) {
+			if (!isFinite(coords, i))
+				continue;
+			for (int d = 0; d < coords.length; d++)
+				finite[d][n] = coords[d][i];
+			n++;
+		}
+		return finite;
+	}
+
+	/** @return the counts of each point, NaN for points with non-finite coordinates */
+	private static double[] bruteForceCounts(final double[][] coords, final double radius) {
+		final int n = coords[0].length;
+		final double[] counts = new double[n];
+		for (int i = 0; i < n; i++) {
+			if (!isFinite(coords, i)) {
+				counts[i] = Double.NaN;
+				continue;
+			}
+			for (int j = 0; j < n; j++) {
+				if (i != j && isFinite(coords, j) && distance2(coords, i, j) <= radius * radius)
+					counts[i]++;
+			}
+		}
+		return counts;
+	}
+
+	/** Translation-corrected K, summing the weights of all pairs */
+	private static void assertKMatchesBruteForce(final double[][] coords, final SpatialStatistics stats,
+			final double[] radii, final double[][] region) {
+		final int n = coords[0].length;
+		final int dims = coords.length;
+		double area = 1;
+		for (int d = 0; d < dims; d++)
+			area *= region[1][d] - region[0][d];
+		final double[] k = stats.ripley(radii).getK();
+		for (int r = 0; r < radii.length; r++) {
+			double sum = 0;
+			for (int i = 0; i < n; i++) {
+				for (int j = 0; j < n; j++) {
+					if (i == j || distance2(coords, i, j) > radii[r] * radii[r])
+						continue;
+					double weight = 1;
+					for (int d = 0; d < dims; d++) {
+						final double extent = region[1][d] - region[0][d];
+						weight *= extent / (extent - Math.abs(coords[d][i] - coords[d][j]));
+					}
+					sum += weight;
+				}
+			}
+			final double expected = sum * area / ((double) n * (n - 1));
+			assertEquals(expected, k[r], 1e-9 * expected);
+		}
+	}
+
+}
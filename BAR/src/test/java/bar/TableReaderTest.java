@@ -0,0 +1,233 @@
+/*
+ * IJ BAR: https://github.com/tferr/Scripts
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation
+ * (http://www.gnu.org/licenses/gpl.txt).
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ */
+package bar;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ij.measure.ResultsTable;
+
+/**
+ * Cross-checks {@link TableReader} against {@link Double#parseDouble(String)}
+ * and {@link ResultsTable#open(String)}: the fast path of number parsing, the
+ * parsing of quoted fields, the re-parsing of columns holding text past the
+ * sampled rows and the splitting of large files into chunks.
+ */
+public class TableReaderTest {
+
+	private static final String[] NUMBERS = { "0", "-0", "+0", "-0.0", "0.000", "1", "-1", "+1.5", "3.14159",
+			"1.", ".5", " -.5 ", "007", "123456789012345678", "1234567890123456789", "12345678901234567890123",
+			"0.1234567890123456789012", "9007199254740992", "9007199254740993", "18014398509481985",
+			"1e22", "1e23", "-1e22", "1e-22", "1e-23", "4.5E+22", "-2.5e-22", "7E22", "123e20", "123e-25",
+			"0.001e25", "1234567e-28", "1.7976931348623157e308", "4.9e-324", "1e400", "-1e400", "1e-400",
+			"NaN", "-NaN", "Infinity", "-Infinity", "+Infinity", "1e", "1e+", "e5", ".", "-", "+", "abc",
+			"1.2.3", "1-2", "0x10", "0x1p3", "1d", "1f", "--1", "1 2" };
+
+	@Test
+	public void testParseDouble() {
+		for (final String number : NUMBERS)
+			assertParsed(number);
+	}
+
+	@Test
+	public void testParseRandomDoubles() {
+		final Random random = new Random(1);
+		for (int i = 0; i < 200000; i++) {
+			final StringBuilder sb = new StringBuilder();
+			if (random.nextBoolean())
+				sb.append((random.nextBoolean()) ? '-' : '+');
+			final int digits = 1 + random.nextInt(25);
+			final int point = random.nextInt(digits + 1);
+			for (int d = 0; d < digits; d++) {
+				if (d == point)
+					sb.append('.');
+				sb.append((char) ('0' + random.nextInt(10)));
+			}
+			if (random.nextBoolean())
+				sb.append((random.nextBoolean()) ? 'e' : 'E').append(random.nextInt(61) - 30);
+			assertParsed(sb.toString());
+			assertParsed(Double.toString(Double.longBitsToDouble(random.nextLong())));
+			assertParsed(String.format(Locale.US, "%." + random.nextInt(20) + "g", random.nextDouble() * 1e6));
+		}
+	}
+
+	@Test
+	public void testQuotedFields() throws IOException {
+		final String csv = " ,Value,Label,Note\n" //
+				+ "1,\"-0\",\"a, b\",\"say \"\"hi\"\"\"\n" //
+				+ "2,\"1e22\",\"\",plain\n" //
+				+ "3,\" 2.5 \",\"NaN\",\"\"\"\"\n";
+		final ColumnarTable table = read(csv);
+		assertArrayEquals(new String[] { "Value", "Label", "Note" }, table.getHeadings());
+		final double[] values = table.getColumn("Value");
+		assertNotNull(values);
+		assertBitsEquals("-0", -0.0, values[0]);
+		assertBitsEquals("1e22", 1e22, values[1]);
+		assertBitsEquals(" 2.5 ", 2.5, values[2]);
+		final ColumnarTable.StringColumn labels = table.getStringColumn("Label");
+		assertEquals("a, b", labels.get(0));
+		assertEquals("", labels.get(1));
+		assertEquals("NaN", labels.get(2));
+		final ColumnarTable.StringColumn notes = table.getStringColumn("Note");
+		assertEquals("say \"hi\"", notes.get(0));
+		assertEquals("plain", notes.get(1));
+		assertEquals("\"", notes.get(2));
+	}
+
+	@Test
+	public void testResultsTableEquivalence() throws IOException {
+		final Random random = new Random(2);
+		final List<String> numeric = new ArrayList<>();
+		for (final String number : NUMBERS) {
+			if (!Double.isNaN(parse(number)) || "NaN".equals(number))
+				numeric.add(number.trim());
+		}
+		final StringBuilder csv = new StringBuilder(" ,A,B,C,D\n");
+		for (int row = 0; row < 3000; row++) {
+			csv.append(row + 1);
+			for (int c = 0; c < 3; c++)
+				csv.append(',').append(NUMBERS[random.nextInt(NUMBERS.length)].trim());
+			csv.append(',').append(numeric.get(random.nextInt(numeric.size())));
+			csv.append('\n');
+		}
+		final File file = write(csv.toString());
+		try {
+			final ColumnarTable table = TableReader.read(file);
+			final ResultsTable rt = ResultsTable.open(file.getPath());
+			assertEquals(rt.size(), table.getRowCount());
+			assertNotNull(table.getColumn("D"));
+			for (final String heading : new String[] { "A", "B", "C", "D" }) {
+				final double[] values = table.getValues(heading);
+				if (values == null) { // text past the sampled rows
+					final ColumnarTable.StringColumn strings = table.getStringColumn(heading);
+					for (int row = 0; row < rt.size(); row++)
+						assertBitsEquals(heading + row, rt.getValue(heading, row), parse(strings.get(row)));
+				} else {
+					for (int row = 0; row < rt.size(); row++)
+						assertBitsEquals(heading + row, rt.getValue(heading, row), values[row]);
+				}
+			}
+		} finally {
+			Files.delete(file.toPath());
+		}
+	}
+
+	@Test
+	public void testTextAfterSampledRows() throws IOException {
+		final Random random = new Random(3);
+		final List<String> mixed = new ArrayList<>();
+		final StringBuilder csv = new StringBuilder("Index\tMixed\tNumber\n");
+		for (int row = 0; row < 5000; row++) {
+			final String value = (row == 4321) ? "n/a" : String.format(Locale.US, "%.2f", random.nextDouble());
+			mixed.add(value);
+			csv.append(row).append('\t').append(value).append('\t').append(row * 0.5).append("\r\n");
+		}
+		final ColumnarTable table = read(csv.toString());
+		assertEquals(5000, table.getRowCount());
+		assertNull(table.getColumn("Mixed"));
+		final ColumnarTable.StringColumn strings = table.getStringColumn("Mixed");
+		for (int row = 0; row < mixed.size(); row++)
+			assertEquals(mixed.get(row), strings.get(row));
+		final double[] numbers = table.getColumn("Number");
+		for (int row = 0; row < numbers.length; row++)
+			assertBitsEquals("Number", row * 0.5, numbers[row]);
+		final ColumnarTable streamed = TableReader.read(new StringReader(csv.toString()));
+		assertNull(streamed.getColumn("Mixed"));
+		assertArrayEquals(numbers, streamed.getColumn("Number"), 0);
+	}
+
+	@Test
+	public void testMultipleChunks() throws IOException {
+		// larger than several minimum-sized chunks (1 MB), with the only text
+		// value of column 'Y' in the last chunk
+		final Random random = new Random(4);
+		final int rows = 200000;
+		final String[] xs = new String[rows];
+		final String[] ys = new String[rows];
+		final StringBuilder csv = new StringBuilder("X,Y,Z\n");
+		for (int row = 0; row < rows; row++) {
+			xs[row] = Double.toString(random.nextGaussian() * Math.pow(10, random.nextInt(40) - 20));
+			ys[row] = (row == rows - 2) ? "text" : Integer.toString(random.nextInt());
+			csv.append(xs[row]).append(',').append(ys[row]).append(',').append(row).append('\n');
+			if (row % 1000 == 0)
+				csv.append('\n'); // blank lines are skipped
+		}
+		final File file = write(csv.toString());
+		try {
+			assertTrue(file.length() > 4 << 20);
+			final ColumnarTable table = TableReader.read(file);
+			assertEquals(rows, table.getRowCount());
+			final double[] x = table.getColumn("X");
+			final double[] z = table.getColumn("Z");
+			final ColumnarTable.StringColumn y = table.getStringColumn("Y");
+			for (int row = 0; row < rows; row++) {
+				assertBitsEquals(xs[row], Double.parseDouble(xs[row]), x[row]);
+				assertEquals(ys[row], y.get(row));
+				assertBitsEquals("Z", row, z[row]);
+			}
+		} finally {
+			Files.delete(file.toPath());
+		}
+	}
+
+	private static void assertParsed(final String number) {
+		final byte[] bytes = number.getBytes(StandardCharsets.UTF_8);
+		final ByteBuffer buffer = ByteBuffer.allocate(bytes.length + 2);
+		buffer.put((byte) ',').put(bytes).put((byte) ',');
+		assertBitsEquals(number, parse(number), TableReader.parseDouble(buffer, 1, bytes.length + 1));
+	}
+
+	/** Compares bit patterns, so that -0 and 0 differ and NaNs are equal */
+	private static void assertBitsEquals(final String message, final double expected, final double actual) {
+		assertEquals(message, Double.doubleToLongBits(expected), Double.doubleToLongBits(actual));
+	}
+
+	/** @return the value parsed by {@link Double#parseDouble(String)} or NaN */
+	private static double parse(final String number) {
+		try {
+			return Double.parseDouble(number);
+		} catch (final NumberFormatException exc) {
+			return Double.NaN;
+		}
+	}
+
+	private static ColumnarTable read(final String contents) throws IOException {
+		final File file = write(contents);
+		try {
+			return TableReader.read(file);
+		} finally {
+			Files.delete(file.toPath());
+		}
+	}
+
+	private static File write(final String contents) throws IOException {
+		final File file = File.createTempFile("TableReaderTest", ".csv");
+		Files.write(file.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+		return file;
+	}
+
+}
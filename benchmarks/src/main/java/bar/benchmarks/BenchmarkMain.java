@@ -0,0 +1,63 @@
+/*
+ * IJ BAR: https://github.com/tferr/Scripts
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation
+ * (http://www.gnu.org/licenses/gpl.txt).
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ */
+package bar.benchmarks;
+
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import bar.Utils;
+
+/**
+ * Runs BAR benchmarks, accepting the usual JMH command-line options (run
+ * with {@code -h} for details). Unless specified otherwise, results are
+ * written as JSON to {@code jmh-results/BAR-<version>-<timestamp>.json}, so
+ * that results of different releases can be compared, e.g., with
+ * <a href="https://jmh.morethan.io/">JMH Visualizer</a>.
+ */
+public class BenchmarkMain {
+
+	/** The directory receiving result files */
+	public static final String RESULTS_DIR = "jmh-results";
+
+	private BenchmarkMain() {
+		// prevent instantiation of utility class
+	}
+
+	public static void main(final String[] args) throws RunnerException, CommandLineOptionException {
+		final CommandLineOptions cmdOptions = new CommandLineOptions(args);
+		if (cmdOptions.shouldHelp() || cmdOptions.shouldList() || cmdOptions.shouldListWithParams()
+				|| cmdOptions.shouldListProfilers() || cmdOptions.shouldListResultFormats()) {
+			org.openjdk.jmh.Main.main(args);
+			return;
+		}
+		final ChainedOptionsBuilder options = new OptionsBuilder().parent(cmdOptions);
+		if (!cmdOptions.getResultFormat().hasValue())
+			options.resultFormat(ResultFormatType.JSON);
+		if (!cmdOptions.getResult().hasValue()) {
+			final File dir = new File(RESULTS_DIR);
+			if (!dir.isDirectory() && !dir.mkdirs())
+				throw new RunnerException("Could not create " + dir.getAbsolutePath());
+			final String timestamp = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+			options.result(new File(dir, "BAR-" + Utils.VERSION + "-" + timestamp + ".json").getPath());
+		}
+		new Runner(options.build()).run();
+	}
+
+}
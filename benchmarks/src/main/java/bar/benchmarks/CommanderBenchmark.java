@@ -0,0 +1,93 @@
+/*
+ * IJ BAR: https://github.com/tferr/Scripts
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation
+ * (http://www.gnu.org/licenses/gpl.txt).
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ */
+package bar.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import bar.plugin.Commander;
+
+/**
+ * Benchmarks {@link Commander}'s directory listing and filename matching,
+ * without its GUI.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class CommanderBenchmark {
+
+	@Param({ "1000", "10000" })
+	private int files;
+
+	@Param({ "ab", "_1" })
+	private String query;
+
+	private Commander commander;
+	private File dir;
+	private String path;
+	private List<String> names;
+
+	@Setup(Level.Trial)
+	public void createDirectory() throws IOException {
+		dir = Fixtures.directory(files);
+		path = dir.getAbsolutePath() + File.separator;
+		commander = new Commander();
+		names = new ArrayList<>();
+		commander.setMatchingString("");
+		commander.listMatchingFiles(path, names, Integer.MAX_VALUE);
+		commander.setMatchingString(query);
+	}
+
+	@TearDown(Level.Trial)
+	public void deleteDirectory() throws IOException {
+		Fixtures.delete(dir);
+	}
+
+	/** Lists matching files, as done for every keystroke in the search field */
+	@Benchmark
+	public List<String> listMatchingFiles() {
+		final List<String> list = new ArrayList<>();
+		commander.listMatchingFiles(path, list, Integer.MAX_VALUE);
+		return list;
+	}
+
+	/** Matches names already listed, isolating matching from file I/O */
+	@Benchmark
+	public int match() {
+		int count = 0;
+		for (final String name : names) {
+			if (commander.match(commander.getCaseSensitiveString(name), query))
+				count++;
+		}
+		return count;
+	}
+
+}
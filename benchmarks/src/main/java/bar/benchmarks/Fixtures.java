@@ -0,0 +1,205 @@
+/*
+ * IJ BAR: https://github.com/tferr/Scripts
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation
+ * (http://www.gnu.org/licenses/gpl.txt).
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ */
+package bar.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Random;
+
+import org.jfree.chart.ChartFactory;
+import org.jfree.chart.JFreeChart;
+import org.jfree.chart.plot.PlotOrientation;
+import org.jfree.data.xy.XYSeries;
+import org.jfree.data.xy.XYSeriesCollection;
+
+import ij.ImagePlus;
+import ij.process.ByteProcessor;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
+
+/**
+ * Synthetic data shared by benchmarks. All data is generated from fixed seeds,
+ * so that fixtures are identical across runs and releases.
+ */
+public class Fixtures {
+
+	/** The seed of all random data */
+	public static final long SEED = 42;
+
+	private Fixtures() {
+		// prevent instantiation of utility class
+	}
+
+	/**
+	 * Creates a grayscale image of Gaussian blobs over a noisy background.
+	 *
+	 * @param bitDepth
+	 *            8, 16 or 32
+	 * @param size
+	 *            the image width and height
+	 * @return the image
+	 */
+	public static ImagePlus blobs(final int bitDepth, final int size) {
+		final Random random = new Random(SEED);
+		final float[] pixels = new float[size * size];
+		final int nBlobs = Math.max(1, size * size / 4096);
+		final double sigma = Math.max(2, size / 64d);
+		for (int b = 0; b < nBlobs; b++) {
+			final double cx = random.nextDouble() * size;
+			final double cy = random.nextDouble() * size;
+			final int r = (int) Math.ceil(3 * sigma);
+			for (int y = Math.max(0, (int) cy - r); y < Math.min(size, (int) cy + r); y++) {
+				for (int x = Math.max(0, (int) cx - r); x < Math.min(size, (int) cx + r); x++) {
+					final double d2 = (x - cx) * (x - cx) + (y - cy) * (y - cy);
+					pixels[y * size + x] += (float) (150 * Math.exp(-d2 / (2 * sigma * sigma)));
+				}
+			}
+		}
+		for (int i = 0; i < pixels.length; i++)
+			pixels[i] = Math.min(255, Math.max(0, pixels[i] + 30 + (float) (10 * random.nextGaussian())));
+		final ImageProcessor fp = new FloatProcessor(size, size, pixels);
+		final ImageProcessor ip;
+		switch (bitDepth) {
+		case 8:
+			ip = fp.convertToByteProcessor(false);
+			break;
+		case 16:
+			ip = fp.convertToShortProcessor(false);
+			break;
+		case 32:
+			ip = fp;
+			break;
+		default:
+			throw new IllegalArgumentException("Unsupported bit depth: " + bitDepth);
+		}
+		return new ImagePlus("Blobs " + bitDepth + "-bit " + size + "x" + size, ip);
+	}
+
+	/** @return a copy of the pixels of an image, to reset it between runs */
+	public static Object copyPixels(final ImageProcessor ip) {
+		if (ip instanceof ByteProcessor)
+			return ((byte[]) ip.getPixels()).clone();
+		if (ip instanceof ShortProcessor)
+			return ((short[]) ip.getPixels()).clone();
+		return ((float[]) ip.getPixels()).clone();
+	}
+
+	/**
+	 * Writes a comma-separated table of random measurements.
+	 *
+	 * @param file
+	 *            the destination file
+	 * @param rows
+	 *            the number of rows
+	 * @param columns
+	 *            the number of numeric columns (a label column is always
+	 *            added)
+	 * @throws IOException
+	 *             if the file could not be written
+	 */
+	public static void writeTable(final File file, final int rows, final int columns) throws IOException {
+		final Random random = new Random(SEED);
+		try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8))) {
+			out.print("Label");
+			for (int c = 0; c < columns; c++)
+				out.print(",Col" + c);
+			out.println();
+			for (int r = 0; r < rows; r++) {
+				out.print("ROI-" + r);
+				for (int c = 0; c < columns; c++)
+					out.print("," + (float) (random.nextGaussian() * 100));
+				out.println();
+			}
+		}
+	}
+
+	/**
+	 * Creates a directory of empty files with random names, mimicking a
+	 * folder of images.
+	 *
+	 * @return the directory
+	 */
+	public static File directory(final int nFiles) throws IOException {
+		final Random random = new Random(SEED);
+		final File dir = Files.createTempDirectory("bar-bench").toFile();
+		final String[] extensions = { ".tif", ".csv", ".py", ".ijm", ".txt" };
+		for (int i = 0; i < nFiles; i++) {
+			final StringBuilder sb = new StringBuilder();
+			for (int j = 0; j < 12; j++)
+				sb.append((char) ('a' + random.nextInt(26)));
+			sb.append('_').append(i).append(extensions[i % extensions.length]);
+			new File(dir, sb.toString()).createNewFile();
+		}
+		return dir;
+	}
+
+	/** Deletes a directory created by a fixture, and all of its contents */
+	public static void delete(final File dir) throws IOException {
+		if (dir == null || !dir.exists())
+			return;
+		Files.walkFileTree(dir.toPath(), new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException {
+				Files.delete(file);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult postVisitDirectory(final Path d, final IOException exc) throws IOException {
+				Files.delete(d);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	/**
+	 * Creates a scatter plot of random walks.
+	 *
+	 * @param nSeries
+	 *            the number of series
+	 * @param nPoints
+	 *            the number of points in each series
+	 * @return the chart
+	 */
+	public static JFreeChart scatterChart(final int nSeries, final int nPoints) {
+		final Random random = new Random(SEED);
+		final XYSeriesCollection dataset = new XYSeriesCollection();
+		for (int s = 0; s < nSeries; s++) {
+			final XYSeries series = new XYSeries("Series " + s, false, true);
+			double y = 0;
+			for (int i = 0; i < nPoints; i++) {
+				y += random.nextGaussian();
+				series.add(i, y, false);
+			}
+			dataset.addSeries(series);
+		}
+		return ChartFactory.createScatterPlot("Benchmark", "X", "Y", dataset, PlotOrientation.VERTICAL, true,
+				false, false);
+	}
+
+	/** @return random positive integers (below 2<sup>30</sup>) */
+	public static long[] randomLongs(final int n, final long seed) {
+		final Random random = new Random(seed);
+		final long[] values = new long[n];
+		for (int i = 0; i < n; i++)
+			values[i] = 1 + random.nextInt(1 << 30);
+		return values;
+	}
+
+}
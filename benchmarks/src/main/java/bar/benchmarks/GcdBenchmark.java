@@ -0,0 +1,95 @@
+/*
+ * IJ BAR: https://github.com/tferr/Scripts
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation
+ * (http://www.gnu.org/licenses/gpl.txt).
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ */
+package bar.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import net.imagej.ops.OpService;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.scijava.Context;
+
+import bar.BAR;
+
+/**
+ * Benchmarks the dispatch of the {@code bar.gcd} op: one op call per pair of
+ * numbers versus a single call of its array variants.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class GcdBenchmark {
+
+	@Param({ "10000", "1000000" })
+	private int pairs;
+
+	private Context context;
+	private OpService ops;
+	private BAR bar;
+	private long[] a;
+	private long[] b;
+	private double[] da;
+	private double[] db;
+
+	@Setup(Level.Trial)
+	public void createContext() {
+		context = new Context(OpService.class);
+		ops = context.service(OpService.class);
+		bar = ops.namespace(BAR.class);
+		a = Fixtures.randomLongs(pairs, Fixtures.SEED);
+		b = Fixtures.randomLongs(pairs, Fixtures.SEED + 1);
+		da = new double[pairs];
+		db = new double[pairs];
+		for (int i = 0; i < pairs; i++) {
+			da[i] = a[i];
+			db[i] = b[i];
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void disposeContext() {
+		context.dispose();
+	}
+
+	@Benchmark
+	public double scalarDispatch() {
+		double sum = 0;
+		for (int i = 0; i < pairs; i++)
+			sum += bar.gcd(da[i], db[i]);
+		return sum;
+	}
+
+	@Benchmark
+	public double[] doubleArray() {
+		return bar.gcd(da, db);
+	}
+
+	@Benchmark
+	public long[] longArray() {
+		return bar.gcd(a, b);
+	}
+
+}
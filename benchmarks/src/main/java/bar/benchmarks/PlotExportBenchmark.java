@@ -0,0 +1,97 @@
+/*
+ * IJ BAR: https://github.com/tferr/Scripts
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation
+ * (http://www.gnu.org/licenses/gpl.txt).
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ */
+package bar.benchmarks;
+
+import java.awt.Rectangle;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.jfree.chart.JFreeChart;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.itextpdf.text.DocumentException;
+
+import bar.PlotUtils;
+
+/**
+ * Benchmarks the export of scatter plots by {@link PlotUtils} to SVG, PDF and
+ * (600 dpi) PNG files.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class PlotExportBenchmark {
+
+	/** The number of data points of each of the chart's 4 series */
+	@Param({ "1000", "100000" })
+	private int points;
+
+	private final Rectangle bounds = new Rectangle(600, 400);
+	private JFreeChart chart;
+	private File dir;
+
+	@Setup(Level.Trial)
+	public void createChart() throws IOException {
+		chart = Fixtures.scatterChart(4, points);
+		dir = java.nio.file.Files.createTempDirectory("bar-bench").toFile();
+	}
+
+	@TearDown(Level.Trial)
+	public void deleteFiles() throws IOException {
+		Fixtures.delete(dir);
+	}
+
+	@Benchmark
+	public File exportSVG() throws IOException {
+		final File file = new File(dir, "chart.svg");
+		PlotUtils.exportChartAsSVG(chart, bounds, file);
+		return file;
+	}
+
+	@Benchmark
+	public File exportPDF() throws IOException, DocumentException {
+		final File file = new File(dir, "chart.pdf");
+		PlotUtils.exportChartAsPDF(chart, bounds, file);
+		return file;
+	}
+
+	@Benchmark
+	public File exportMultiPagePDF() throws IOException, DocumentException {
+		final File file = new File(dir, "charts.pdf");
+		PlotUtils.exportChartsAsPDF(Collections.nCopies(8, chart), bounds, file);
+		return file;
+	}
+
+	@Benchmark
+	public File exportPNG() throws IOException {
+		final File file = new File(dir, "chart.png");
+		PlotUtils.exportChartAsImage(chart, bounds, 600, file);
+		return file;
+	}
+
+}
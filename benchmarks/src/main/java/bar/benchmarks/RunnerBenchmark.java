@@ -0,0 +1,96 @@
+/*
+ * IJ BAR: https://github.com/tferr/Scripts
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation
+ * (http://www.gnu.org/licenses/gpl.txt).
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ */
+package bar.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.scijava.Context;
+import org.scijava.convert.ConvertService;
+import org.scijava.log.LogService;
+import org.scijava.module.ModuleService;
+import org.scijava.script.ScriptModule;
+import org.scijava.script.ScriptService;
+import org.scijava.ui.UIService;
+
+import bar.Runner;
+
+/**
+ * Benchmarks the dispatch of a trivial Groovy script by {@link Runner}, i.e.,
+ * the overhead of running a script rather than the script itself: from a
+ * file (compiled once and cached) and from a stream (parsed on every run).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class RunnerBenchmark {
+
+	private static final String SCRIPT = "#@ int value\n#@output int result\nresult = value + 1\n";
+
+	private Context context;
+	private Runner runner;
+	private File script;
+	private final Map<String, Object> inputs = Collections.<String, Object> singletonMap("value", 41);
+
+	@Setup(Level.Trial)
+	public void createRunner() throws IOException {
+		context = new Context(ScriptService.class, ModuleService.class, LogService.class, ConvertService.class,
+				UIService.class);
+		context.service(UIService.class).setHeadless(true);
+		runner = new Runner(context);
+		runner.setSilent(true);
+		script = File.createTempFile("bar-bench", ".groovy");
+		Files.write(script.toPath(), SCRIPT.getBytes(StandardCharsets.UTF_8));
+	}
+
+	@TearDown(Level.Trial)
+	public void disposeContext() {
+		script.delete();
+		context.dispose();
+	}
+
+	@Benchmark
+	public Object cachedFile() throws InterruptedException, ExecutionException {
+		final ScriptModule module = runner.runScriptAsync(script.getPath(), inputs).get();
+		return module.getOutput("result");
+	}
+
+	@Benchmark
+	public Object stream() throws InterruptedException, ExecutionException {
+		final ScriptModule module = runner.runScriptAsync(
+				new ByteArrayInputStream(SCRIPT.getBytes(StandardCharsets.UTF_8)), "bench.groovy", inputs, 0, null)
+				.get();
+		return module.getOutput("result");
+	}
+
+}
@@ -0,0 +1,75 @@
+/*
+ * IJ BAR: https://github.com/tferr/Scripts
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation
+ * (http://www.gnu.org/licenses/gpl.txt).
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ */
+package bar.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import bar.plugin.ShenCastan;
+import ij.ImagePlus;
+import ij.process.ImageProcessor;
+
+/**
+ * Benchmarks {@link ShenCastan#findEdges(ImageProcessor, double)} on 8, 16 and
+ * 32-bit images of increasing size.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class ShenCastanBenchmark {
+
+	@Param({ "8", "16", "32" })
+	private int bitDepth;
+
+	@Param({ "256", "1024", "2048" })
+	private int size;
+
+	private ImageProcessor ip;
+	private Object pixels;
+	private ShenCastan filter;
+
+	@Setup(Level.Trial)
+	public void createImage() {
+		final ImagePlus imp = Fixtures.blobs(bitDepth, size);
+		ip = imp.getProcessor();
+		pixels = Fixtures.copyPixels(ip);
+		filter = new ShenCastan();
+		filter.setup("", imp);
+	}
+
+	/** Edges are detected in place: Restore the input before each call */
+	@Setup(Level.Invocation)
+	public void resetImage() {
+		System.arraycopy(pixels, 0, ip.getPixels(), 0, size * size);
+	}
+
+	@Benchmark
+	public ImageProcessor findEdges() {
+		filter.findEdges(ip, 0.5d);
+		return ip;
+	}
+
+}
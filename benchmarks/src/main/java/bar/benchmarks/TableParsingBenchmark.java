@@ -0,0 +1,83 @@
+/*
+ * IJ BAR: https://github.com/tferr/Scripts
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation
+ * (http://www.gnu.org/licenses/gpl.txt).
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ */
+package bar.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import bar.ColumnarTable;
+import bar.Utils;
+import ij.measure.ResultsTable;
+
+/**
+ * Benchmarks the parsing of delimited text files by
+ * {@link Utils#openAndDisplayTable(String, String, java.awt.event.WindowListener)}
+ * , i.e., {@link Utils#readColumnarTable(String)}, without displaying tables.
+ * {@link ResultsTable#open(String)} is included as a baseline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class TableParsingBenchmark {
+
+	@Param({ "1000", "100000" })
+	private int rows;
+
+	@Param({ "10" })
+	private int columns;
+
+	private File file;
+
+	@Setup(Level.Trial)
+	public void writeTable() throws IOException {
+		file = File.createTempFile("bar-bench", ".csv");
+		Fixtures.writeTable(file, rows, columns);
+	}
+
+	@TearDown(Level.Trial)
+	public void deleteTable() {
+		file.delete();
+	}
+
+	@Benchmark
+	public ColumnarTable readColumnarTable() throws IOException {
+		return Utils.readColumnarTable(file.getPath());
+	}
+
+	@Benchmark
+	public ResultsTable readResultsTable() throws IOException {
+		return Utils.readTable(file.getPath());
+	}
+
+	@Benchmark
+	public ResultsTable baselineResultsTableOpen() throws IOException {
+		return ResultsTable.open(file.getPath());
+	}
+
+}